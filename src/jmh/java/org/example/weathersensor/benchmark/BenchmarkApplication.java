@@ -0,0 +1,67 @@
+package org.example.weathersensor.benchmark;
+
+import org.example.weathersensor.WeatherSensorApplication;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.service.SensorDataWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Boots the application without a web server. File backed databases are filled once per dataset and hour and then
+// shared by every fork, so only in-memory databases pay for loading the readings in each trial.
+final class BenchmarkApplication {
+    static final Path DATA = Path.of("target", "jmh-data");
+    private static final int LOAD_BATCH = 1000;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String database, String dataset, Map<String, Object> overrides,
+                                                Supplier<List<SensorData>> readings) {
+        var name = dataset + "-" + System.currentTimeMillis() / (60 * 60 * 1000); // Hot window data must stay recent
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.main.web-application-type", "none");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "warn");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("sensor.cache.enabled", "false");
+        var load = true;
+        switch (database) {
+            case "h2-mem" -> properties.put("spring.datasource.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+            case "h2-file" -> {
+                var file = DATA.resolve(name).toAbsolutePath();
+                load = !Files.exists(Path.of(file + ".mv.db"));
+                properties.put("spring.datasource.url", "jdbc:h2:file:" + file);
+            }
+            case "segment" -> {
+                // Rollups and sketches live in the in-memory database and are backfilled from the segments on startup
+                var segments = DATA.resolve("segments-" + name);
+                load = !Files.exists(segments);
+                properties.put("spring.datasource.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+                properties.put("sensor.storage.engine", "segment");
+                properties.put("sensor.storage.segment.directory", segments.toString());
+                properties.put("sensor.storage.segment.fsync", "false");
+            }
+            default -> throw new IllegalArgumentException("Unknown database: " + database);
+        }
+        properties.putAll(overrides);
+
+        // As command line arguments, so they win over application.properties
+        var args = properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        var context = new SpringApplicationBuilder(WeatherSensorApplication.class).run(args);
+        if (load) {
+            var writer = context.getBean(SensorDataWriter.class);
+            var all = readings.get();
+            for (int from = 0; from < all.size(); from += LOAD_BATCH) {
+                writer.write(all.subList(from, Math.min(all.size(), from + LOAD_BATCH)));
+            }
+        }
+        return context;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.weathersensor.benchmark;
+
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.service.BatchIngestResult;
+import org.example.weathersensor.service.SensorDataService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Synchronous ingest of a single reading and of a batch into an in-memory H2, including rollups and sketches
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IngestBenchmark {
+
+    @Param({"100"})
+    int sensors;
+
+    private ConfigurableApplicationContext context;
+    private SensorDataService service;
+    private List<String> sensorIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("h2-mem", "ingest", Map.of(), List::of);
+        service = context.getBean(SensorDataService.class);
+        sensorIds = SyntheticReadings.sensorIds(sensors);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public SensorData saveSensorData() {
+        return service.saveSensorData(reading());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(500)
+    public BatchIngestResult saveSensorDataBatch() {
+        List<SensorData> batch = new ArrayList<>(500);
+        for (int i = 0; i < 500; i++) {
+            batch.add(reading());
+        }
+        return service.saveSensorDataBatch(batch);
+    }
+
+    private SensorData reading() {
+        var reading = new SensorData();
+        reading.setSensorId(sensorIds.get(next++ % sensorIds.size()));
+        reading.setTemperature(20.5);
+        reading.setHumidity(55.0);
+        reading.setWindSpeed(3.2);
+        return reading;
+    }
+}
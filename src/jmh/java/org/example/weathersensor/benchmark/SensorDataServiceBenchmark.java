@@ -0,0 +1,73 @@
+package org.example.weathersensor.benchmark;
+
+import org.example.weathersensor.service.SensorDataService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// The full getMetrics call through each query tier. The hot tier queries the last 12 hours, the others six days.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SensorDataServiceBenchmark {
+
+    @Param({"hot", "rollup", "pushdown", "memory"})
+    String tier;
+
+    @Param({"temperature", "temperature,humidity,windspeed"})
+    String metrics;
+
+    @Param({"average", "p95"})
+    String statistic;
+
+    @Param({"50"})
+    int sensors;
+
+    @Param({"2000"})
+    int readingsPerSensor;
+
+    private ConfigurableApplicationContext context;
+    private SensorDataService service;
+    private List<String> sensorIds;
+    private List<String> metricList;
+    private Optional<Date> start;
+    private Optional<Date> end;
+
+    @Setup
+    public void setUp() {
+        var now = System.currentTimeMillis();
+        var overrides = switch (tier) {
+            case "hot" -> Map.<String, Object>of("sensor.hot-window.enabled", "true");
+            case "rollup" -> Map.<String, Object>of("sensor.hot-window.enabled", "false");
+            case "pushdown" -> Map.<String, Object>of("sensor.hot-window.enabled", "false", "sensor.rollup.enabled", "false");
+            case "memory" -> Map.<String, Object>of("sensor.hot-window.enabled", "false", "sensor.query.aggregate-pushdown", "false");
+            default -> throw new IllegalArgumentException("Unknown tier: " + tier);
+        };
+        context = BenchmarkApplication.start("h2-file", "service-" + sensors + "x" + readingsPerSensor, overrides,
+                () -> SyntheticReadings.generate(sensors, readingsPerSensor, 7 * SyntheticReadings.DAY, now));
+        service = context.getBean(SensorDataService.class);
+        sensorIds = SyntheticReadings.sensorIds(sensors);
+        metricList = Arrays.asList(metrics.split(","));
+        var hours = tier.equals("hot") ? 12 : 6 * 24;
+        end = Optional.of(new Date(now));
+        start = Optional.of(new Date(now - hours * 60 * 60 * 1000L));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Double> getMetrics() {
+        return service.getMetrics(sensorIds, metricList, statistic, start, end);
+    }
+}
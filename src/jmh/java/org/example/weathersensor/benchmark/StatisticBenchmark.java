@@ -0,0 +1,43 @@
+package org.example.weathersensor.benchmark;
+
+import org.example.weathersensor.service.MetricSummary;
+import org.example.weathersensor.service.Statistic;
+import org.example.weathersensor.service.StatisticRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Single pass summary of one metric in memory followed by the statistic, the work of the hot window and
+// in-memory tiers per metric and sensor
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StatisticBenchmark {
+
+    @Param({"1000", "100000"})
+    int readings;
+
+    @Param({"average", "stddev", "p95"})
+    String statistic;
+
+    private double[] values;
+    private Statistic requested;
+
+    @Setup
+    public void setUp() {
+        values = SyntheticReadings.values(readings);
+        requested = new StatisticRegistry(List.of()).get(statistic);
+    }
+
+    @Benchmark
+    public double summarize() {
+        var summary = requested.requiresSketch() ? MetricSummary.withSketch(0.01) : new MetricSummary();
+        for (double value : values) {
+            summary.add(value);
+        }
+        return requested.apply(summary);
+    }
+}
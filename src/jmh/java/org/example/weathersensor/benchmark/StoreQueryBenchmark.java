@@ -0,0 +1,71 @@
+package org.example.weathersensor.benchmark;
+
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Raw reading queries of the store against an in-memory H2, a file backed H2 and the segment engine.
+// A week of readings per sensor, queried over the last hour, day or week.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StoreQueryBenchmark {
+
+    @Param({"h2-mem", "h2-file", "segment"})
+    String database;
+
+    @Param({"10", "100"})
+    int sensors;
+
+    @Param({"2000"})
+    int readingsPerSensor;
+
+    @Param({"1", "24", "168"})
+    int rangeHours;
+
+    private ConfigurableApplicationContext context;
+    private SensorStore store;
+    private List<String> sensorIds;
+    private Date start;
+    private Date end;
+
+    @Setup
+    public void setUp() {
+        var now = System.currentTimeMillis();
+        context = BenchmarkApplication.start(database, "store-" + sensors + "x" + readingsPerSensor,
+                Map.of("sensor.hot-window.enabled", "false"),
+                () -> SyntheticReadings.generate(sensors, readingsPerSensor, 7 * SyntheticReadings.DAY, now));
+        store = context.getBean(SensorStore.class);
+        sensorIds = SyntheticReadings.sensorIds(sensors);
+        end = new Date(now);
+        start = new Date(now - rangeHours * 60 * 60 * 1000L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public SensorDataAggregate aggregate() {
+        return store.aggregateBySensorIdInAndTimestampBetween(sensorIds, start, end);
+    }
+
+    @Benchmark
+    public void findPerSensor(Blackhole blackhole) {
+        for (String sensorId : sensorIds) {
+            List<SensorData> readings = store.findBySensorIdAndTimestampBetween(sensorId, start, end);
+            blackhole.consume(readings);
+        }
+    }
+}
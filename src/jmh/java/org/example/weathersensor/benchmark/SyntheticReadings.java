@@ -0,0 +1,52 @@
+package org.example.weathersensor.benchmark;
+
+import org.example.weathersensor.data.SensorData;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// Deterministic readings of a fleet of sensors at a regular interval, the newest at the given end.
+// Temperature follows a daily cycle, humidity drifts and wind comes in gusts, so columns compress like real data.
+final class SyntheticReadings {
+    static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private SyntheticReadings() {
+    }
+
+    static List<String> sensorIds(int sensors) {
+        return IntStream.range(0, sensors).mapToObj(i -> "sensor-" + i).toList();
+    }
+
+    static List<SensorData> generate(int sensors, int readingsPerSensor, long spanMillis, long end) {
+        var random = new Random(42);
+        var interval = Math.max(1, spanMillis / readingsPerSensor);
+        List<SensorData> readings = new ArrayList<>(sensors * readingsPerSensor);
+        for (String sensorId : sensorIds(sensors)) {
+            var humidity = 40 + random.nextDouble() * 30;
+            for (int i = readingsPerSensor - 1; i >= 0; i--) {
+                var timestamp = end - i * interval - random.nextInt((int) Math.min(interval, 1000));
+                var reading = new SensorData();
+                reading.setSensorId(sensorId);
+                reading.setTimestamp(new Date(timestamp));
+                reading.setTemperature(Math.round((15 + 8 * Math.sin(2 * Math.PI * timestamp / DAY) + random.nextGaussian()) * 10) / 10.0);
+                humidity = Math.min(100, Math.max(0, humidity + random.nextGaussian() * 0.5));
+                reading.setHumidity(Math.round(humidity * 10) / 10.0);
+                reading.setWindSpeed(random.nextInt(10) == 0 ? Math.round(random.nextDouble() * 150) / 10.0 : 2.5);
+                readings.add(reading);
+            }
+        }
+        return readings;
+    }
+
+    static double[] values(int count) {
+        var random = new Random(42);
+        var values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Math.round((15 + 8 * Math.sin(i / 500.0) + random.nextGaussian()) * 10) / 10.0;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.weathersensor.load;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Starts requests on a fixed schedule and never waits for responses, so the offered load stays constant
+final class ConstantRateDriver implements Runnable {
+    private final HttpClient client;
+    private final Supplier<HttpRequest> requests;
+    private final EndpointStats stats;
+    private final double rate;
+    private final long startNanos;
+    private final long endNanos;
+    private final Semaphore inFlight;
+
+    ConstantRateDriver(HttpClient client, Supplier<HttpRequest> requests, EndpointStats stats, double rate,
+                       long startNanos, long endNanos, Semaphore inFlight) {
+        this.client = client;
+        this.requests = requests;
+        this.stats = stats;
+        this.rate = rate;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    public void run() {
+        if (rate <= 0) {
+            return;
+        }
+        var intervalNanos = 1e9 / rate;
+        for (long i = 0; ; i++) {
+            var intended = startNanos + (long) (i * intervalNanos);
+            if (intended >= endNanos || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!inFlight.tryAcquire()) {
+                stats.overloaded();
+                continue;
+            }
+            client.sendAsync(requests.get(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        inFlight.release();
+                        var success = failure == null && response.statusCode() < 400;
+                        stats.record(System.nanoTime() - intended, success);
+                    });
+        }
+    }
+}
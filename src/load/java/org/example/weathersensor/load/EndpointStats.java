@@ -0,0 +1,68 @@
+package org.example.weathersensor.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latencies of one endpoint, measured from the time a request was scheduled to start rather than when it was sent,
+// so a stalled server shows up in the percentiles instead of silently lowering the request rate
+final class EndpointStats {
+    private static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toNanos(5);
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE, 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private Histogram histogram;
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void record(long latencyNanos, boolean success) {
+        recorder.recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    void overloaded() {
+        overloaded.increment();
+    }
+
+    // Drops everything recorded during the warm-up
+    void reset() {
+        recorder.reset();
+        errors.reset();
+        overloaded.reset();
+    }
+
+    Histogram finish() {
+        histogram = recorder.getIntervalHistogram();
+        return histogram;
+    }
+
+    void printSummary(PrintStream out, double seconds) {
+        out.printf("%-10s %9d req %9.1f req/s %7d errors %7d overload  p50 %8.2f  p90 %8.2f  p99 %8.2f  p99.9 %8.2f  max %8.2f ms%n",
+                name, histogram.getTotalCount(), histogram.getTotalCount() / seconds, errors.sum(), overloaded.sum(),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    // HdrHistogram percentile distribution in milliseconds, loadable by the HdrHistogram plotter
+    void printDistribution(PrintStream out) {
+        histogram.outputPercentileDistribution(out, 1_000_000.0);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.weathersensor.load;
+
+import org.example.weathersensor.WeatherSensorApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Binder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Boots the application on a random port against a fresh file backed H2 and drives a mixed workload of sensors
+// posting readings and dashboards querying metrics at constant arrival rates. Prints throughput and latency
+// percentiles per endpoint and keeps the HdrHistogram distributions under target/load to compare runs.
+//
+//   mvn -Pload test-compile exec:exec -Dload.args="--load.write-rate=2000 --load.duration=2m"
+public final class LoadHarness {
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var run = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        var output = Path.of("target", "load", run);
+        Files.createDirectories(output);
+
+        // Ahead of the caller's arguments, which may still override any of them
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=warn",
+                "--spring.datasource.url=jdbc:h2:file:" + output.toAbsolutePath().resolve("db"),
+                "--sensor.storage.segment.directory=" + output.toAbsolutePath().resolve("segments")));
+        arguments.addAll(List.of(args));
+        var context = new SpringApplicationBuilder(WeatherSensorApplication.class).run(arguments.toArray(String[]::new));
+        try {
+            var settings = Binder.get(context.getEnvironment()).bindOrCreate("load", LoadSettings.class);
+            var port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            run(settings, URI.create("http://localhost:" + port), output);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run(LoadSettings settings, URI base, Path output) throws Exception {
+        var clientPool = Executors.newFixedThreadPool(settings.getClientThreads());
+        var client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientPool)
+                .build();
+        var writes = new EndpointStats("data");
+        var reads = new EndpointStats("metrics");
+        var inFlight = new Semaphore(settings.getMaxInFlight());
+
+        var start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        var measureFrom = start + settings.getWarmup().toNanos();
+        var end = measureFrom + settings.getDuration().toNanos();
+        List<Thread> drivers = new ArrayList<>();
+        drivers.add(new Thread(new ConstantRateDriver(client, () -> write(base, settings), writes,
+                settings.getWriteRate(), start, end, inFlight), "load-data"));
+        drivers.add(new Thread(new ConstantRateDriver(client, () -> read(base, settings), reads,
+                settings.getReadRate(), start, end, inFlight), "load-metrics"));
+        drivers.forEach(Thread::start);
+
+        System.out.printf("Warming up for %s, then measuring %.0f writes/s and %.0f reads/s for %s%n",
+                settings.getWarmup(), settings.getWriteRate(), settings.getReadRate(), settings.getDuration());
+        sleepUntil(measureFrom);
+        writes.reset();
+        reads.reset();
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+        // Give the last requests the time any request may take before the histograms are closed
+        if (!inFlight.tryAcquire(settings.getMaxInFlight(), 30, TimeUnit.SECONDS)) {
+            System.out.println("Requests still outstanding after 30s are missing from the results");
+        }
+        clientPool.shutdownNow();
+
+        var seconds = settings.getDuration().toNanos() / 1e9;
+        try (var summary = new PrintStream(Files.newOutputStream(output.resolve("summary.txt")), true, StandardCharsets.UTF_8)) {
+            summary.println(settings);
+            for (EndpointStats stats : List.of(writes, reads)) {
+                stats.finish();
+                stats.printSummary(System.out, seconds);
+                stats.printSummary(summary, seconds);
+                try (var distribution = new PrintStream(Files.newOutputStream(output.resolve(stats.name() + ".hgrm")), true, StandardCharsets.UTF_8)) {
+                    stats.printDistribution(distribution);
+                }
+            }
+        }
+        System.out.println("Histograms written to " + output.toAbsolutePath());
+    }
+
+    private static HttpRequest write(URI base, LoadSettings settings) {
+        var random = ThreadLocalRandom.current();
+        var body = String.format(Locale.ROOT, "{\"sensorId\":\"sensor-%d\",\"temperature\":%.1f,\"humidity\":%.1f,\"windSpeed\":%.1f}",
+                random.nextInt(settings.getSensors()), 15 + random.nextGaussian() * 5, 40 + random.nextDouble() * 40,
+                random.nextDouble() * 15);
+        return HttpRequest.newBuilder(base.resolve("/api/sensors/data"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static HttpRequest read(URI base, LoadSettings settings) {
+        var random = ThreadLocalRandom.current();
+        var sensorIds = random.ints(settings.getSensorsPerQuery(), 0, settings.getSensors())
+                .mapToObj(i -> "sensor-" + i)
+                .collect(Collectors.joining(","));
+        var statistic = settings.getStatistics().get(random.nextInt(settings.getStatistics().size()));
+        var query = "sensorId=" + encode(sensorIds) + "&metrics=" + encode(String.join(",", settings.getMetrics()))
+                + "&statistic=" + encode(statistic);
+        return HttpRequest.newBuilder(base.resolve("/api/sensors/metrics?" + query)).GET().build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long wait;
+        while ((wait = nanos - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.weathersensor.load;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+// Bound from the load.* arguments of the harness, everything else is passed on to the application
+@Data
+public class LoadSettings {
+    // Simulated sensors posting readings, each write picks one at random
+    private int sensors = 10_000;
+    // Requests started per second regardless of how fast earlier ones complete (open model)
+    private double writeRate = 1000;
+    private double readRate = 50;
+    private Duration warmup = Duration.ofSeconds(10);
+    private Duration duration = Duration.ofSeconds(60);
+    // Dashboard queries ask for this many random sensors at a time
+    private int sensorsPerQuery = 10;
+    private List<String> metrics = List.of("temperature", "humidity", "windspeed");
+    private List<String> statistics = List.of("average", "max", "p95");
+    // Requests still outstanding beyond this are counted as overload instead of being sent
+    private int maxInFlight = 20_000;
+    private int clientThreads = 8;
+}
@@ -0,0 +1,210 @@
+package org.example.weathersensor.load;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Launches the packaged application in its own JVM against a fresh file backed H2 and reports how long it takes from
+// launch until the first answered request, until readiness, and until request latency settles. Steady state is the
+// start of the first window after which the median latency of every window and endpoint stays within the tolerance
+// of its median over the last quarter of the run. Arguments other than startup.* are passed on to the application.
+//
+//   mvn -Pload test-compile exec:exec -Dload.main=org.example.weathersensor.load.StartupBenchmark
+//   mvn -Pload test-compile exec:exec -Dload.main=org.example.weathersensor.load.StartupBenchmark -Dload.args="
+//       --startup.jar=target/fast-start/WeatherSensor-0.0.1-SNAPSHOT.jar
+//       --startup.jvm-args=-XX:SharedArchiveFile=target/fast-start/application.jsa,-Dspring.aot.enabled=true
+//       --spring.profiles.active=fast-start"
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var run = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        var output = Path.of("target", "startup", run);
+        Files.createDirectories(output);
+
+        var environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        var settings = new Binder(ConfigurationPropertySources.get(environment)).bindOrCreate("startup", StartupSettings.class);
+
+        int port;
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        command.addAll(settings.getJvmArgs());
+        command.addAll(List.of("-jar", settings.getJar().toString(),
+                "--server.port=" + port,
+                "--spring.main.banner-mode=off",
+                "--management.endpoint.health.probes.enabled=true",
+                "--spring.datasource.url=jdbc:h2:file:" + output.toAbsolutePath().resolve("db"),
+                "--sensor.storage.segment.directory=" + output.toAbsolutePath().resolve("segments")));
+        for (String arg : args) {
+            if (!arg.startsWith("--startup.")) {
+                command.add(arg);
+            }
+        }
+
+        var launched = System.nanoTime();
+        var application = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output.resolve("app.log").toFile())
+                .start();
+        try {
+            run(settings, URI.create("http://localhost:" + port), output, application, launched);
+        } finally {
+            application.destroy();
+            application.waitFor(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void run(StartupSettings settings, URI base, Path output, Process application, long launched)
+            throws Exception {
+        var client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        var deadline = launched + settings.getStartTimeout().toNanos();
+        var firstAnswer = -1L;
+        while (firstAnswer < 0) {
+            if (!application.isAlive() || System.nanoTime() > deadline) {
+                throw new IllegalStateException("Application did not answer, see " + output.resolve("app.log"));
+            }
+            if (status(client, read(base, settings)) == 200) {
+                firstAnswer = System.nanoTime();
+            } else {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        }
+        var ready = -1L;
+
+        // Closed loop, one request at a time alternating between the endpoints, so latency is the service time alone
+        var windowNanos = settings.getWindow().toNanos();
+        var windows = (int) Math.max(1, settings.getDuration().toNanos() / windowNanos);
+        List<Histogram> writes = new ArrayList<>();
+        List<Histogram> reads = new ArrayList<>();
+        for (int i = 0; i < windows; i++) {
+            writes.add(new Histogram(TimeUnit.SECONDS.toMicros(60), 3));
+            reads.add(new Histogram(TimeUnit.SECONDS.toMicros(60), 3));
+        }
+        var end = firstAnswer + windows * windowNanos;
+        var requests = 0L;
+        var probed = 0L;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            var window = (int) ((now - firstAnswer) / windowNanos);
+            var write = requests++ % 2 == 0;
+            var status = status(client, write ? write(base, settings) : read(base, settings));
+            var micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - now);
+            if (status < 200 || status >= 300) {
+                continue;
+            }
+            (write ? writes : reads).get(window).recordValue(Math.min(micros, TimeUnit.SECONDS.toMicros(60)));
+            // Readiness lags the first answer while the warm-up runs, probed between requests until it flips
+            if (ready < 0 && now - probed > TimeUnit.MILLISECONDS.toNanos(50)) {
+                probed = System.nanoTime();
+                if (status(client, readiness(base)) == 200) {
+                    ready = probed;
+                }
+            }
+        }
+
+        var steadyWrites = steadyWindow(writes, settings.getTolerance());
+        var steadyReads = steadyWindow(reads, settings.getTolerance());
+        var steady = steadyWrites < 0 || steadyReads < 0 ? -1 : Math.max(steadyWrites, steadyReads);
+        try (var summary = new PrintStream(Files.newOutputStream(output.resolve("summary.txt")), true, StandardCharsets.UTF_8)) {
+            for (PrintStream out : List.of(System.out, summary)) {
+                out.println(settings);
+                out.printf(Locale.ROOT, "first request    %8.0f ms%n", millis(firstAnswer - launched));
+                out.println(ready < 0 ? "ready                 n/a (readiness probe not answered)"
+                        : String.format(Locale.ROOT, "ready            %8.0f ms", millis(ready - launched)));
+                out.println(steady < 0 ? "steady state          n/a (latency still settling, run longer)"
+                        : String.format(Locale.ROOT, "steady state     %8.0f ms", millis(firstAnswer - launched + steady * windowNanos)));
+                out.printf(Locale.ROOT, "%-8s %10s %10s%n", "window", "data p50", "metrics p50");
+                for (int i = 0; i < windows; i++) {
+                    out.printf(Locale.ROOT, "%-8d %8.2fms %8.2fms%n", i, median(writes.get(i)), median(reads.get(i)));
+                }
+            }
+        }
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    // First window from which every median is within tolerance of the median over the last quarter, -1 if none is
+    private static int steadyWindow(List<Histogram> windows, double tolerance) {
+        var tail = new Histogram(TimeUnit.SECONDS.toMicros(60), 3);
+        windows.subList(windows.size() - Math.max(1, windows.size() / 4), windows.size()).forEach(tail::add);
+        if (tail.getTotalCount() == 0) {
+            return -1;
+        }
+        var limit = median(tail) * (1 + tolerance);
+        var steady = windows.size();
+        while (steady > 0 && median(windows.get(steady - 1)) <= limit) {
+            steady--;
+        }
+        return steady == windows.size() ? -1 : steady;
+    }
+
+    private static double median(Histogram histogram) {
+        return histogram.getValueAtPercentile(50) / 1000.0;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static int status(HttpClient client, HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static HttpRequest readiness(URI base) {
+        return HttpRequest.newBuilder(base.resolve("/actuator/health/readiness")).GET().build();
+    }
+
+    private static HttpRequest write(URI base, StartupSettings settings) {
+        var random = ThreadLocalRandom.current();
+        var body = String.format(Locale.ROOT, "{\"sensorId\":\"sensor-%d\",\"temperature\":%.1f,\"humidity\":%.1f,\"windSpeed\":%.1f}",
+                random.nextInt(settings.getSensors()), 15 + random.nextGaussian() * 5, 40 + random.nextDouble() * 40,
+                random.nextDouble() * 15);
+        return HttpRequest.newBuilder(base.resolve("/api/sensors/data"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static HttpRequest read(URI base, StartupSettings settings) {
+        var sensorIds = ThreadLocalRandom.current().ints(settings.getSensorsPerQuery(), 0, settings.getSensors())
+                .mapToObj(i -> "sensor-" + i)
+                .collect(Collectors.joining(","));
+        var query = "sensorId=" + URLEncoder.encode(sensorIds, StandardCharsets.UTF_8) + "&metrics=temperature,humidity&statistic=average";
+        return HttpRequest.newBuilder(base.resolve("/api/sensors/metrics?" + query)).GET().build();
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.weathersensor.load;
+
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bound from the startup.* arguments of the startup benchmark, everything else is passed on to the application
+@Data
+public class StartupSettings {
+    // Started with java -jar, e.g. target/fast-start/WeatherSensor-0.0.1-SNAPSHOT.jar for the fast-start build
+    private Path jar = Path.of("target", "WeatherSensor-0.0.1-SNAPSHOT.jar");
+    // Options of the launched JVM, e.g. -XX:SharedArchiveFile=target/fast-start/application.jsa,-Dspring.aot.enabled=true
+    private List<String> jvmArgs = new ArrayList<>();
+    // Giving up when nothing was answered by then
+    private Duration startTimeout = Duration.ofMinutes(2);
+    // Requests keep going this long after the first answer, the last quarter of it defines the steady state
+    private Duration duration = Duration.ofSeconds(60);
+    // Latency percentiles are taken per window
+    private Duration window = Duration.ofSeconds(1);
+    // Steady from the first window after which every window's median stays within this much of the steady state
+    private double tolerance = 0.2;
+    private int sensors = 100;
+    private int sensorsPerQuery = 10;
+}
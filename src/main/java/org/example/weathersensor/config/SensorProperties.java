@@ -0,0 +1,206 @@
+package org.example.weathersensor.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "sensor")
+public class SensorProperties {
+    private Ingest ingest = new Ingest();
+    private Query query = new Query();
+    private Rollup rollup = new Rollup();
+    private HotWindow hotWindow = new HotWindow();
+    private Sketch sketch = new Sketch();
+    private Sample sample = new Sample();
+    private Cache cache = new Cache();
+    private Storage storage = new Storage();
+    private Observability observability = new Observability();
+    private Retention retention = new Retention();
+    private Live live = new Live();
+    private Startup startup = new Startup();
+
+    @Data
+    public static class Ingest {
+        // Number of readings persisted per transaction by the batch endpoint
+        private int batchSize = 500;
+        // Number of readings inserted per transaction by the upload endpoint
+        private int bulkBatchSize = 5000;
+        private Async async = new Async();
+        private Dedup dedup = new Dedup();
+    }
+
+    @Data
+    public static class Dedup {
+        // Drop readings whose sensorId and sequenceNumber were stored before, as sent by gateways retrying uploads.
+        // The unique index on both rejects duplicates either way, this keeps them away from the database.
+        private boolean enabled = true;
+        // Recent keys the in-memory filter remembers, between this many and twice as many
+        private int recentKeys = 1_000_000;
+        // Share of new keys below their sensor's high-water mark taken for seen ones, each costs a store lookup
+        private double falsePositiveRate = 0.01;
+    }
+
+    @Data
+    public static class Async {
+        // Acknowledge writes with 202 once queued and commit them in groups from a single writer thread
+        private boolean enabled = false;
+        // Readings accepted but not yet committed, beyond that writes are refused with 503
+        private int capacity = 100_000;
+        // A group is committed once it holds maxBatch readings or its oldest reading waited linger
+        private int maxBatch = 1000;
+        private Duration linger = Duration.ofMillis(10);
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Query {
+        // Let the database compute the statistics instead of loading every reading
+        private boolean aggregatePushdown = true;
+        // Per-sensor queries run concurrently, at most this many at once and never more than the connection pool
+        // minus one; 0 derives the limit from the pool, 1 runs them one after another
+        private int parallelism = 0;
+    }
+
+    @Data
+    public static class Rollup {
+        // Maintain minute/hour/day rollups on ingest and answer queries from them
+        private boolean enabled = true;
+    }
+
+    @Data
+    public static class HotWindow {
+        // Keep the most recent readings of every sensor in memory and answer queries inside them without the database
+        private boolean enabled = true;
+        private Duration window = Duration.ofHours(24);
+        private DataSize maxMemory = DataSize.ofMegabytes(64);
+        // Sensors without a reading for this long are dropped from memory
+        private Duration idleTimeout = Duration.ofHours(24);
+    }
+
+    @Data
+    public static class Sketch {
+        // Maintain hourly and daily quantile sketches on ingest to answer percentile statistics
+        private boolean enabled = true;
+        // Maximum relative error of a percentile, also drives the sketch size
+        private double relativeAccuracy = 0.01;
+    }
+
+    @Data
+    public static class Sample {
+        // Maintain per sensor and day reservoir samples on ingest to answer accuracy=approximate queries
+        private boolean enabled = true;
+        // Values kept per sensor, day and metric, the error of an estimate shrinks with its square root
+        private int size = 64;
+    }
+
+    @Data
+    public static class Cache {
+        // Cache metric results, writes only invalidate the entries of their sensor whose range covers them
+        private boolean enabled = true;
+        private int maxEntries = 10_000;
+        // Results of ranges that are still open at the end, ranges in the past never expire
+        private Duration openRangeTtl = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Live {
+        // Longest sliding window a subscription may ask for, its readings are held in memory
+        private Duration maxWindow = Duration.ofHours(24);
+        // Sent while the values do not change, so dead connections are noticed and proxies keep them open
+        private Duration heartbeat = Duration.ofSeconds(15);
+    }
+
+    @Data
+    public static class Startup {
+        // Run the ingest and metrics paths before the application reports ready, so the first requests find the
+        // beans created and the code compiled
+        private boolean warmUp = false;
+        private int warmUpIterations = 2000;
+        // Readiness is never held back longer than this
+        private Duration warmUpTimeout = Duration.ofSeconds(30);
+        // Exit once warmed up, for the training run that records the class data sharing archive
+        private boolean exitAfterWarmUp = false;
+    }
+
+    @Data
+    public static class Storage {
+        // jpa keeps a row per reading in sensor_data, segment keeps compressed columnar chunks in files,
+        // sharded spreads the rows over several databases by sensor id, compact keeps narrower rows keyed by
+        // integer sensor keys in sensor_reading
+        private Engine engine = Engine.JPA;
+        private Segment segment = new Segment();
+        private Sharded sharded = new Sharded();
+        private Compact compact = new Compact();
+    }
+
+    public enum Engine {
+        JPA,
+        SEGMENT,
+        SHARDED,
+        COMPACT
+    }
+
+    @Data
+    public static class Segment {
+        private Path directory = Path.of("data", "segments");
+        // Readings of a sensor are split into files per this much time, aligned to UTC
+        private Duration partition = Duration.ofDays(1);
+        // Upper bound of the readings decoded when a chunk is only partially inside a queried range
+        private int maxChunkReadings = 4096;
+        // Recent writes collect in a tail file that is merged into a single chunk once it holds this many
+        private int tailChunks = 64;
+        // Sequence numbers remembered per sensor below its highest one, to confirm retried writes
+        private int recentSequences = 4096;
+        private boolean fsync = true;
+        // Copy the sensor_data table on startup while the segment store is still empty
+        private boolean migrateFromJpa = true;
+    }
+
+    @Data
+    public static class Sharded {
+        // Number of databases, shards can be added but not removed
+        private int shards = 4;
+        // JDBC url of every shard, %d is replaced by its index
+        private String url = "jdbc:h2:./data/shards/shard-%d";
+        private String username = "sa";
+        private String password = "";
+        // Connections of the pool of every shard
+        private int poolSize = 4;
+        // Points per shard on the consistent hash ring, more spread sensors more evenly
+        private int virtualNodes = 128;
+        // Move sensors whose shard changed since the last start, e.g. because shards were added
+        private boolean rebalanceOnStartup = true;
+        // Copy the sensor_data table on startup while every shard is still empty
+        private boolean migrateFromJpa = true;
+    }
+
+    @Data
+    public static class Compact {
+        // Copy the sensor_data table on startup while sensor_reading is still empty
+        private boolean migrateFromJpa = true;
+    }
+
+    @Data
+    public static class Observability {
+        // Also count ingested readings per sensor, one series per sensor id for the first maxSensorTags sensors
+        private boolean perSensorIngest = false;
+        private int maxSensorTags = 1000;
+    }
+
+    @Data
+    public static class Retention {
+        // Expire raw readings older than raw once their rollups hold them, requires rollups to be enabled
+        private boolean enabled = false;
+        private Duration raw = Duration.ofDays(90);
+        // Minute rollups older than this are dropped too, older ranges are then answered at hour precision;
+        // unset keeps them forever
+        private Duration minuteRollups;
+        // Rows deleted per statement, with a pause after each so ingest keeps its share of the database
+        private int chunkSize = 10_000;
+        private Duration pause = Duration.ofMillis(100);
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.weathersensor.config;
+
+import org.example.weathersensor.service.SensorDataListener;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration(proxyBeanMethods = false)
+public class StartupConfiguration {
+
+    // Application beans created on startup even with spring.main.lazy-initialization=true: views that must see every
+    // write, migrations and loads done while starting, and lifecycle beans. Beans with @Scheduled methods are kept
+    // eager by Spring Boot itself.
+    @Bean
+    static LazyInitializationExcludeFilter eagerSensorBeans() {
+        return (beanName, beanDefinition, beanType) -> beanType.getName().startsWith("org.example.weathersensor.")
+                && (SensorDataListener.class.isAssignableFrom(beanType)
+                || InitializingBean.class.isAssignableFrom(beanType)
+                || SmartInitializingSingleton.class.isAssignableFrom(beanType)
+                || Lifecycle.class.isAssignableFrom(beanType));
+    }
+}
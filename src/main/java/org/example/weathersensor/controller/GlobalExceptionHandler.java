@@ -1,5 +1,8 @@
 package org.example.weathersensor.controller;
 
+import org.example.weathersensor.service.IngestQueueFullException;
+import org.example.weathersensor.service.SensorMeters;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -7,16 +10,32 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
+    private final SensorMeters meters;
+
+    public GlobalExceptionHandler(SensorMeters meters) {
+        this.meters = meters;
+    }
 
     // Handle IllegalArgumentException and return a 400 Bad Request response
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        meters.error(e, HttpStatus.BAD_REQUEST.value());
         return ResponseEntity.badRequest().body(e.getMessage());
     }
 
+    // Handle a full ingest queue and return a 503 Service Unavailable response telling when to retry
+    @ExceptionHandler(IngestQueueFullException.class)
+    public ResponseEntity<String> handleIngestQueueFull(IngestQueueFullException e) {
+        meters.error(e, HttpStatus.SERVICE_UNAVAILABLE.value());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(e.getMessage());
+    }
+
     // Handle generic exceptions and return a 500 Internal Server Error response
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleGenericException(Exception e) {
+        meters.error(e, HttpStatus.INTERNAL_SERVER_ERROR.value());
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("An exception occurred: " + e.getMessage());
     }
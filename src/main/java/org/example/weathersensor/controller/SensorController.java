@@ -1,45 +1,122 @@
 package org.example.weathersensor.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.example.weathersensor.data.SensorData;
-import org.example.weathersensor.service.SensorDataService;
+import org.example.weathersensor.service.*;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/sensors")
 public class SensorController {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
     private final SensorDataService service;
+    private final SensorDataExporter exporter;
+    private final SensorSeries series;
+    private final SensorDataUploader uploader;
+    private final SensorLiveAggregates live;
+    private final SensorGroupedMetrics grouped;
+    private final SensorLatestReadings latest;
+    private final SensorApproximateMetrics approximate;
 
-    public SensorController(SensorDataService service) {
+    public SensorController(SensorDataService service, SensorDataExporter exporter, SensorSeries series,
+                            SensorDataUploader uploader, SensorLiveAggregates live, SensorGroupedMetrics grouped,
+                            SensorLatestReadings latest, SensorApproximateMetrics approximate) {
         this.service = service;
+        this.exporter = exporter;
+        this.series = series;
+        this.uploader = uploader;
+        this.live = live;
+        this.grouped = grouped;
+        this.latest = latest;
+        this.approximate = approximate;
     }
 
     @PostMapping("/data")
     public ResponseEntity<SensorData> addSensorData(@RequestBody SensorData data) {
+        if (service.isAsyncIngest()) {
+            return ResponseEntity.accepted().body(service.enqueueSensorData(data));
+        }
         return ResponseEntity.ok(service.saveSensorData(data));
     }
 
+    @PostMapping("/data/batch")
+    public ResponseEntity<BatchIngestResult> addSensorDataBatch(@RequestBody List<SensorData> data) {
+        if (service.isAsyncIngest()) {
+            return ResponseEntity.accepted().body(service.enqueueSensorDataBatch(data));
+        }
+        var result = service.saveSensorDataBatch(data);
+        // 207 tells the gateway that only part of the batch was stored
+        var status = result.rejected() == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    // Bulk load of readings with their own timestamps as CSV or NDJSON, gzip compressed when the client says so
+    @PostMapping(value = "/data/upload", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<BatchIngestResult> uploadSensorData(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            HttpServletRequest request) throws IOException {
+
+        var format = ExportFormat.fromContentType(contentType);
+        InputStream in = request.getInputStream();
+        if (contentEncoding != null && contentEncoding.contains("gzip")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        var result = uploader.upload(in, format);
+        var status = result.rejected() == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(result);
+    }
+
+    // Current conditions from memory, every sensor without sensorId
+    @GetMapping("/latest")
+    public ResponseEntity<Map<String, LatestReading>> getLatestReadings(@RequestParam(required = false) List<String> sensorId) {
+        return ResponseEntity.ok(latest.getLatest(Optional.ofNullable(sensorId)));
+    }
+
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<IngestQueueStats> getIngestQueueStats() {
+        return ResponseEntity.ok(service.getIngestQueueStats());
+    }
+
+    @GetMapping("/metrics/cache/stats")
+    public ResponseEntity<MetricsCacheStats> getMetricsCacheStats() {
+        return ResponseEntity.ok(service.getMetricsCacheStats());
+    }
+
     @GetMapping("/metrics")
     public ResponseEntity<Map<String, Double>> getMetrics(
             @RequestParam List<String> sensorId,
             @RequestParam List<String> metrics,
             @RequestParam(defaultValue = "average") String statistic,
+            @RequestParam(defaultValue = "exact") String accuracy,
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date startDate,
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date endDate) {
 
-        // If both startDate and endDate are not provided, use the last 24 hours
-        if (startDate == null && endDate == null) {
-            endDate = new Date();
-            startDate = new Date(endDate.getTime() - 24 * 60 * 60 * 1000);
-        } else if (endDate == null) { // If only endDate is not provided, use the current date
-            endDate = new Date();
-        } else if (startDate == null) { // If only startDate is not provided, throw IllegalArgumentException
+        // accuracy=approximate is routed to getApproximateMetrics
+        if (!"exact".equals(accuracy)) {
+            throw new IllegalArgumentException("Invalid accuracy: " + accuracy + ", only exact and approximate are supported");
+        }
+        // Without dates the last 24 hours are used and without an end date the range ends now,
+        // both resolved by the service so that cached results of open ranges can be recognized
+        if (startDate == null && endDate != null) { // If only startDate is not provided, throw IllegalArgumentException
             throw new IllegalArgumentException("Missing start date, it has to be defined");
         }
 
@@ -48,12 +125,119 @@ public class SensorController {
                     sensorId,
                     metrics,
                     statistic,
-                    Optional.of(startDate),
-                    Optional.of(endDate)
+                    Optional.ofNullable(startDate),
+                    Optional.ofNullable(endDate)
             );
             return ResponseEntity.ok(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of(e.getMessage(), Double.NaN));
         }
     }
+
+    // accuracy=approximate estimates the statistic from samples, with the bounds of its confidence interval
+    @GetMapping(value = "/metrics", params = {"accuracy=approximate", "!groupBy"})
+    public ResponseEntity<Map<String, ApproximateMetric>> getApproximateMetrics(
+            @RequestParam List<String> sensorId,
+            @RequestParam List<String> metrics,
+            @RequestParam(defaultValue = "average") String statistic,
+            @RequestParam(defaultValue = "0.95") double confidence,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date startDate,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date endDate) {
+
+        if (startDate == null && endDate != null) {
+            throw new IllegalArgumentException("Missing start date, it has to be defined");
+        }
+        return ResponseEntity.ok(approximate.getMetrics(sensorId, metrics, statistic,
+                Optional.ofNullable(startDate), Optional.ofNullable(endDate), confidence));
+    }
+
+    // groupBy=sensor returns the statistic of every sensor separately instead of pooled, streamed as it is computed.
+    // Without sensorId every sensor is included, with an interval the statistic is given per bucket.
+    @GetMapping(value = "/metrics", params = "groupBy")
+    public void getGroupedMetrics(
+            @RequestParam(required = false) List<String> sensorId,
+            @RequestParam List<String> metrics,
+            @RequestParam(defaultValue = "average") String statistic,
+            @RequestParam(defaultValue = "exact") String accuracy,
+            @RequestParam String groupBy,
+            @RequestParam(required = false) String interval,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date startDate,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date endDate,
+            HttpServletResponse response) throws IOException {
+
+        if (!"sensor".equalsIgnoreCase(groupBy)) {
+            throw new IllegalArgumentException("Invalid groupBy: " + groupBy + ", only sensor is supported");
+        }
+        if (!"exact".equals(accuracy)) {
+            throw new IllegalArgumentException("Invalid accuracy: " + accuracy + ", grouped statistics are always exact");
+        }
+        if (startDate == null && endDate != null) {
+            throw new IllegalArgumentException("Missing start date, it has to be defined");
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        grouped.write(Optional.ofNullable(sensorId), metrics, statistic, Optional.ofNullable(interval),
+                Optional.ofNullable(startDate), Optional.ofNullable(endDate), response.getOutputStream());
+    }
+
+    @GetMapping("/metrics/series")
+    public ResponseEntity<Map<String, List<SeriesPoint>>> getSeries(
+            @RequestParam List<String> sensorId,
+            @RequestParam List<String> metrics,
+            @RequestParam(defaultValue = "average") String statistic,
+            @RequestParam String interval,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date startDate,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date endDate,
+            @RequestParam(required = false) Integer points) {
+
+        if (startDate == null && endDate != null) {
+            throw new IllegalArgumentException("Missing start date, it has to be defined");
+        }
+        return ResponseEntity.ok(series.getSeries(sensorId, metrics, statistic, interval,
+                Optional.ofNullable(startDate), Optional.ofNullable(endDate), Optional.ofNullable(points)));
+    }
+
+    // Pushes the statistic over the sliding window whenever it changes, as "metrics" events
+    @GetMapping(value = "/metrics/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeMetrics(
+            @RequestParam List<String> sensorId,
+            @RequestParam List<String> metrics,
+            @RequestParam(defaultValue = "average") String statistic,
+            @RequestParam(defaultValue = "5m") String window) {
+        return live.subscribe(sensorId, metrics, statistic, window);
+    }
+
+    // Streams the raw readings of the sensors merged by timestamp, gzip compressed when the client accepts it
+    @GetMapping("/export")
+    public void exportSensorData(
+            @RequestParam List<String> sensorId,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date startDate,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date endDate,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+
+        // Validated before anything is written, once streaming started the status can no longer change
+        var exportFormat = ExportFormat.from(format);
+        if (startDate == null && endDate != null) {
+            throw new IllegalArgumentException("Missing start date, it has to be defined");
+        }
+        var end = endDate == null ? new Date() : endDate;
+        var start = startDate == null ? new Date(end.getTime() - DAY) : startDate;
+        if (start.after(end)) {
+            throw new IllegalArgumentException("Start date cannot be after end date");
+        }
+
+        response.setContentType(exportFormat.contentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"sensors." + exportFormat.extension() + "\"");
+        var gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            out = new GZIPOutputStream(out, 64 * 1024);
+        }
+        exporter.export(sensorId, start, end, exportFormat, out);
+        if (gzip) {
+            ((GZIPOutputStream) out).finish();
+        }
+    }
 }
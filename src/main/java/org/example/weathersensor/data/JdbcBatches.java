@@ -0,0 +1,49 @@
+package org.example.weathersensor.data;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+final class JdbcBatches {
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private JdbcBatches() {
+    }
+
+    // Runs the statement once per row in one batch and returns the rows whose key another transaction inserted first.
+    // The row locks of those make the statement wait until the other transaction ended; H2 then goes on with the rest
+    // of the batch and keeps the transaction usable, so the caller can apply them again onto the committed rows.
+    static <T> List<T> executeAll(JdbcTemplate jdbcTemplate, String sql, List<T> rows, Function<T, Object[]> args) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.execute(sql, (PreparedStatementCallback<List<T>>) statement -> {
+            for (T row : rows) {
+                new ArgumentPreparedStatementSetter(args.apply(row)).setValues(statement);
+                statement.addBatch();
+            }
+            try {
+                statement.executeBatch();
+                return List.of();
+            } catch (BatchUpdateException e) {
+                var counts = e.getUpdateCounts();
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState()) || counts.length != rows.size()) {
+                    throw e;
+                }
+                List<T> conflicting = new ArrayList<>();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == Statement.EXECUTE_FAILED) {
+                        conflicting.add(rows.get(i));
+                    }
+                }
+                return conflicting;
+            }
+        });
+    }
+}
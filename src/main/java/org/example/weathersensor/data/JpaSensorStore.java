@@ -0,0 +1,140 @@
+package org.example.weathersensor.data;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+// One row per reading in the sensor_data table, the default engine
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaSensorStore implements SensorStore {
+    // Matches allocationSize of the id sequence of SensorData, Hibernate hands out the same kind of ranges
+    private static final int ID_BLOCK = 50;
+    private static final String INSERT = "INSERT INTO sensor_data (" + SensorDataRows.COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // Without an index on the timestamp the table is scanned in id order, where the oldest readings usually come first
+    private static final String DELETE_BEFORE = "DELETE FROM sensor_data WHERE timestamp < ? FETCH FIRST ? ROWS ONLY";
+
+    private final SensorDataRepository repository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    public JpaSensorStore(SensorDataRepository repository, EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<SensorData> saveAll(List<SensorData> readings) {
+        return repository.saveAll(readings);
+    }
+
+    // Plain JDBC batches, nothing enters the persistence context
+    @Override
+    public void insertAll(List<SensorData> readings) {
+        var ids = allocateIds(readings.size());
+        jdbcTemplate.batchUpdate(INSERT, readings, readings.size(), (statement, reading) -> {
+            statement.setLong(1, ids.next());
+            statement.setString(2, reading.getSensorId());
+            statement.setTimestamp(3, new Timestamp(reading.getTimestamp().getTime()));
+            statement.setObject(4, reading.getTemperature(), Types.DOUBLE);
+            statement.setObject(5, reading.getHumidity(), Types.DOUBLE);
+            statement.setObject(6, reading.getWindSpeed(), Types.DOUBLE);
+            statement.setObject(7, reading.getSequenceNumber(), Types.BIGINT);
+        });
+    }
+
+    // Every sequence value v reserves the ids (v - 50, v] like the pooled optimizer of Hibernate does,
+    // values too small to reserve a whole block are skipped the same way
+    private PrimitiveIterator.OfLong allocateIds(int count) {
+        List<Long> blocks = new ArrayList<>();
+        while (blocks.size() * ID_BLOCK < count) {
+            var value = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR sensor_data_seq", Long.class);
+            if (value != null && value >= ID_BLOCK) {
+                blocks.add(value);
+            }
+        }
+        return blocks.stream().flatMapToLong(value -> LongStream.rangeClosed(value - ID_BLOCK + 1, value)).iterator();
+    }
+
+    @Override
+    public List<SensorData> findBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        return repository.findBySensorIdAndTimestampBetween(sensorId, startDate, endDate);
+    }
+
+    // Every reading is detached once read, so the persistence context does not grow with the result
+    @Override
+    public Stream<SensorData> streamBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        return repository.streamBySensorIdAndTimestampBetween(sensorId, startDate, endDate).map(reading -> {
+            entityManager.detach(reading);
+            return reading;
+        });
+    }
+
+    @Override
+    public SensorDataAggregate aggregateBySensorIdInAndTimestampBetween(Collection<String> sensorIds, Date startDate, Date endDate) {
+        return repository.aggregateBySensorIdInAndTimestampBetween(sensorIds, startDate, endDate);
+    }
+
+    @Override
+    public void aggregateBySensor(Collection<String> sensorIds, Date startDate, Date endDate,
+                                  BiConsumer<String, SensorDataAggregate> consumer) {
+        SensorDataRows.aggregateBySensor(jdbcTemplate, sensorIds, startDate, endDate, consumer);
+    }
+
+    // Plain JDBC, so the readings never become managed entities
+    @Override
+    public void scanBySensor(Collection<String> sensorIds, Date startDate, Date endDate, Consumer<SensorData> consumer) {
+        SensorDataRows.scanBySensor(jdbcTemplate, sensorIds, startDate, endDate, consumer);
+    }
+
+    @Override
+    public void latestBySensor(Consumer<SensorData> consumer) {
+        SensorDataRows.latestBySensor(jdbcTemplate, consumer);
+    }
+
+    @Override
+    public boolean containsSequence(String sensorId, long sequenceNumber) {
+        return SensorDataRows.containsSequence(jdbcTemplate, sensorId, sequenceNumber);
+    }
+
+    @Override
+    public void recentSequences(int limit, BiConsumer<String, Long> consumer) {
+        SensorDataRows.recentSequences(jdbcTemplate, limit, consumer);
+    }
+
+    // Every chunk commits on its own
+    @Override
+    public long deleteBefore(Date before, int limit) {
+        return jdbcTemplate.update(DELETE_BEFORE, new Timestamp(before.getTime()), limit);
+    }
+
+    @Override
+    public void scan(Date since, int pageSize, Consumer<List<SensorData>> consumer) {
+        var lastId = Long.MIN_VALUE;
+        List<SensorData> page;
+        do {
+            page = since == null
+                    ? repository.findByIdGreaterThanOrderById(lastId, Limit.of(pageSize))
+                    : repository.findByIdGreaterThanAndTimestampGreaterThanEqualOrderById(lastId, since, Limit.of(pageSize));
+            if (!page.isEmpty()) {
+                consumer.accept(page);
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.weathersensor.data;
+
+import java.util.Locale;
+
+public enum Metric {
+    TEMPERATURE("temperature"),
+    HUMIDITY("humidity"),
+    WINDSPEED("windspeed");
+
+    private final String key;
+
+    Metric(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public Double valueOf(SensorData data) {
+        return switch (this) {
+            case TEMPERATURE -> data.getTemperature();
+            case HUMIDITY -> data.getHumidity();
+            case WINDSPEED -> data.getWindSpeed();
+        };
+    }
+
+    public void setValue(SensorData data, Double value) {
+        switch (this) {
+            case TEMPERATURE -> data.setTemperature(value);
+            case HUMIDITY -> data.setHumidity(value);
+            case WINDSPEED -> data.setWindSpeed(value);
+        }
+    }
+
+    public static Metric from(String metric) {
+        return switch (metric.toLowerCase(Locale.ROOT)) {
+            case "temperature" -> TEMPERATURE;
+            case "humidity" -> HUMIDITY;
+            case "windspeed" -> WINDSPEED;
+            default -> throw new IllegalArgumentException("Invalid metric: " + metric);
+        };
+    }
+}
@@ -0,0 +1,5 @@
+package org.example.weathersensor.data;
+
+// Rollup buckets of one metric merged over a set of sensors and a bucket range
+public record MetricAggregate(Metric metric, long count, double sum, double min, double max, double sumSquares) {
+}
@@ -0,0 +1,4 @@
+package org.example.weathersensor.data;
+
+public record MetricSample(Metric metric, long population, byte[] sample) {
+}
@@ -0,0 +1,4 @@
+package org.example.weathersensor.data;
+
+public record MetricSketch(Metric metric, byte[] sketch) {
+}
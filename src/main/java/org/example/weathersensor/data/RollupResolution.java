@@ -0,0 +1,22 @@
+package org.example.weathersensor.data;
+
+// Bucket sizes of the pre-aggregated rollups, aligned on the UTC epoch
+public enum RollupResolution {
+    MINUTE(60_000L),
+    HOUR(60 * 60_000L),
+    DAY(24 * 60 * 60_000L);
+
+    private final long millis;
+
+    RollupResolution(long millis) {
+        this.millis = millis;
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, millis) * millis;
+    }
+}
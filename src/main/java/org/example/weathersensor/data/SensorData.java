@@ -6,14 +6,23 @@ import lombok.Data;
 import java.util.Date;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_sensor_data_sensor_id_timestamp", columnList = "sensorId, timestamp"),
+        // Rejects a retried reading that got past the in-memory duplicate checks, readings without a number never clash
+        @Index(name = "uk_sensor_data_sensor_id_sequence_number", columnList = "sensorId, sequenceNumber", unique = true)})
 @Data
 public class SensorData {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // Incremental id generation
+    // Pooled sequence so Hibernate can pre-allocate ids and batch the inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sensor_data_seq")
+    @SequenceGenerator(name = "sensor_data_seq", sequenceName = "sensor_data_seq", allocationSize = 50)
     private Long id;
     private String sensorId;
     private Double temperature;
     private Double humidity;
     private Double windSpeed;
     private Date timestamp;
+    // Optional key the client gives a reading, a per-sensor counter or the device clock, a reading sent again with
+    // the same key is dropped as a duplicate
+    private Long sequenceNumber;
 }
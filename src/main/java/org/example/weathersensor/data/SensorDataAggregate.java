@@ -0,0 +1,52 @@
+package org.example.weathersensor.data;
+
+// Per metric COUNT/SUM/MIN/MAX/SUM of squares computed by the database over a set of sensors and a time range
+public record SensorDataAggregate(
+        Long temperatureCount, Double temperatureSum, Double temperatureMin, Double temperatureMax, Double temperatureSumSquares,
+        Long humidityCount, Double humiditySum, Double humidityMin, Double humidityMax, Double humiditySumSquares,
+        Long windSpeedCount, Double windSpeedSum, Double windSpeedMin, Double windSpeedMax, Double windSpeedSumSquares) {
+
+    public long count(Metric metric) {
+        var count = switch (metric) {
+            case TEMPERATURE -> temperatureCount;
+            case HUMIDITY -> humidityCount;
+            case WINDSPEED -> windSpeedCount;
+        };
+        return count == null ? 0 : count;
+    }
+
+    public double sum(Metric metric) {
+        var sum = switch (metric) {
+            case TEMPERATURE -> temperatureSum;
+            case HUMIDITY -> humiditySum;
+            case WINDSPEED -> windSpeedSum;
+        };
+        return sum == null ? 0.0 : sum;
+    }
+
+    // SQL MIN/MAX are NULL when no row matched
+    public Double min(Metric metric) {
+        return switch (metric) {
+            case TEMPERATURE -> temperatureMin;
+            case HUMIDITY -> humidityMin;
+            case WINDSPEED -> windSpeedMin;
+        };
+    }
+
+    public Double max(Metric metric) {
+        return switch (metric) {
+            case TEMPERATURE -> temperatureMax;
+            case HUMIDITY -> humidityMax;
+            case WINDSPEED -> windSpeedMax;
+        };
+    }
+
+    public double sumSquares(Metric metric) {
+        var sumSquares = switch (metric) {
+            case TEMPERATURE -> temperatureSumSquares;
+            case HUMIDITY -> humiditySumSquares;
+            case WINDSPEED -> windSpeedSumSquares;
+        };
+        return sumSquares == null ? 0.0 : sumSquares;
+    }
+}
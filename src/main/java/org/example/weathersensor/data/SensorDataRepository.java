@@ -1,11 +1,17 @@
 package org.example.weathersensor.data;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
@@ -14,4 +20,31 @@ public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
             "AND s.timestamp BETWEEN :startDate AND :endDate")
     List<SensorData> findBySensorIdAndTimestampBetween(
             String sensorId, Date startDate, Date endDate);
+
+    // Read through a cursor in pages of the fetch size instead of materializing the whole result
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SensorData s WHERE s.sensorId = :sensorId " +
+            "AND s.timestamp BETWEEN :startDate AND :endDate ORDER BY s.timestamp")
+    Stream<SensorData> streamBySensorIdAndTimestampBetween(
+            String sensorId, Date startDate, Date endDate);
+
+    // Single round trip for every metric of every requested sensor, served by the (sensorId, timestamp) index
+    @Query("SELECT new org.example.weathersensor.data.SensorDataAggregate(" +
+            "COUNT(s.temperature), SUM(s.temperature), MIN(s.temperature), MAX(s.temperature), " +
+            "SUM(s.temperature * s.temperature), " +
+            "COUNT(s.humidity), SUM(s.humidity), MIN(s.humidity), MAX(s.humidity), " +
+            "SUM(s.humidity * s.humidity), " +
+            "COUNT(s.windSpeed), SUM(s.windSpeed), MIN(s.windSpeed), MAX(s.windSpeed), " +
+            "SUM(s.windSpeed * s.windSpeed)) " +
+            "FROM SensorData s WHERE s.sensorId IN :sensorIds " +
+            "AND s.timestamp BETWEEN :startDate AND :endDate")
+    SensorDataAggregate aggregateBySensorIdInAndTimestampBetween(
+            Collection<String> sensorIds, Date startDate, Date endDate);
+
+    // Keyset paging through the readings stored since a point in time
+    List<SensorData> findByIdGreaterThanAndTimestampGreaterThanEqualOrderById(Long id, Date timestamp, Limit limit);
+
+    List<SensorData> findByIdGreaterThanOrderById(Long id, Limit limit);
 }
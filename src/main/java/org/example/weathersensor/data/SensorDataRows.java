@@ -0,0 +1,111 @@
+package org.example.weathersensor.data;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// SQL fragments and mappers shared by the engines that read the sensor_data table through plain JDBC
+public final class SensorDataRows {
+    public static final String COLUMNS = "id, sensor_id, timestamp, temperature, humidity, wind_speed, sequence_number";
+    // Same order as the components of SensorDataAggregate
+    public static final String AGGREGATES =
+            "COUNT(temperature), SUM(temperature), MIN(temperature), MAX(temperature), SUM(temperature * temperature), " +
+            "COUNT(humidity), SUM(humidity), MIN(humidity), MAX(humidity), SUM(humidity * humidity), " +
+            "COUNT(wind_speed), SUM(wind_speed), MIN(wind_speed), MAX(wind_speed), SUM(wind_speed * wind_speed)";
+    public static final RowMapper<SensorData> READING = (rs, row) -> {
+        var reading = new SensorData();
+        reading.setId(rs.getLong(1));
+        reading.setSensorId(rs.getString(2));
+        reading.setTimestamp(new Date(rs.getTimestamp(3).getTime()));
+        reading.setTemperature(rs.getObject(4, Double.class));
+        reading.setHumidity(rs.getObject(5, Double.class));
+        reading.setWindSpeed(rs.getObject(6, Double.class));
+        reading.setSequenceNumber(rs.getObject(7, Long.class));
+        return reading;
+    };
+
+    private SensorDataRows() {
+    }
+
+    // The AGGREGATES columns starting at column from
+    public static SensorDataAggregate aggregate(ResultSet rs, int from) throws SQLException {
+        return new SensorDataAggregate(
+                rs.getLong(from), rs.getObject(from + 1, Double.class), rs.getObject(from + 2, Double.class),
+                rs.getObject(from + 3, Double.class), rs.getObject(from + 4, Double.class),
+                rs.getLong(from + 5), rs.getObject(from + 6, Double.class), rs.getObject(from + 7, Double.class),
+                rs.getObject(from + 8, Double.class), rs.getObject(from + 9, Double.class),
+                rs.getLong(from + 10), rs.getObject(from + 11, Double.class), rs.getObject(from + 12, Double.class),
+                rs.getObject(from + 13, Double.class), rs.getObject(from + 14, Double.class));
+    }
+
+    public static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    // One GROUP BY query over the sensors, every sensor in the table when sensorIds is null
+    public static void aggregateBySensor(JdbcTemplate jdbcTemplate, Collection<String> sensorIds, Date start, Date end,
+                                         BiConsumer<String, SensorDataAggregate> consumer) {
+        if (sensorIds != null && sensorIds.isEmpty()) {
+            return;
+        }
+        List<Object> args = new ArrayList<>();
+        var where = rangeOf(sensorIds, start, end, args);
+        jdbcTemplate.query("SELECT sensor_id, " + AGGREGATES + " FROM sensor_data" + where + " GROUP BY sensor_id",
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(1), aggregate(rs, 2)), args.toArray());
+    }
+
+    // Read through one cursor ordered by the (sensor_id, timestamp) index, every sensor when sensorIds is null
+    public static void scanBySensor(JdbcTemplate jdbcTemplate, Collection<String> sensorIds, Date start, Date end,
+                                    Consumer<SensorData> consumer) {
+        if (sensorIds != null && sensorIds.isEmpty()) {
+            return;
+        }
+        List<Object> args = new ArrayList<>();
+        var where = rangeOf(sensorIds, start, end, args);
+        jdbcTemplate.query("SELECT " + COLUMNS + " FROM sensor_data" + where + " ORDER BY sensor_id, timestamp",
+                (RowCallbackHandler) rs -> consumer.accept(READING.mapRow(rs, rs.getRow())), args.toArray());
+    }
+
+    // One query joining every sensor to its latest timestamp, both sides served by the (sensor_id, timestamp) index
+    public static void latestBySensor(JdbcTemplate jdbcTemplate, Consumer<SensorData> consumer) {
+        jdbcTemplate.query("SELECT d." + COLUMNS.replace(", ", ", d.") + " FROM sensor_data d JOIN " +
+                        "(SELECT sensor_id, MAX(timestamp) AS latest FROM sensor_data GROUP BY sensor_id) m " +
+                        "ON d.sensor_id = m.sensor_id AND d.timestamp = m.latest",
+                (RowCallbackHandler) rs -> consumer.accept(READING.mapRow(rs, rs.getRow())));
+    }
+
+    // A point lookup in the unique (sensor_id, sequence_number) index
+    public static boolean containsSequence(JdbcTemplate jdbcTemplate, String sensorId, long sequenceNumber) {
+        return !jdbcTemplate.queryForList("SELECT id FROM sensor_data WHERE sensor_id = ? AND sequence_number = ?",
+                Long.class, sensorId, sequenceNumber).isEmpty();
+    }
+
+    // Backwards along the primary key, ids grow with every insert
+    public static void recentSequences(JdbcTemplate jdbcTemplate, int limit, BiConsumer<String, Long> consumer) {
+        jdbcTemplate.query("SELECT sensor_id, sequence_number FROM sensor_data WHERE sequence_number IS NOT NULL " +
+                        "ORDER BY id DESC FETCH FIRST ? ROWS ONLY",
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(1), rs.getLong(2)), limit);
+    }
+
+    private static String rangeOf(Collection<String> sensorIds, Date start, Date end, List<Object> args) {
+        var where = " WHERE timestamp BETWEEN ? AND ?";
+        args.add(new Timestamp(start.getTime()));
+        args.add(new Timestamp(end.getTime()));
+        if (sensorIds != null) {
+            where += " AND sensor_id IN (" + placeholders(sensorIds.size()) + ")";
+            args.addAll(sensorIds);
+        }
+        return where;
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.weathersensor.data;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+// Running count/sum/min/max/sum of squares of one metric of one sensor within one time bucket
+@Entity
+@Table(name = "sensor_rollup")
+@IdClass(SensorRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorRollup {
+    @Id
+    private String sensorId;
+    @Id
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+    @Id
+    private long bucketStart; // Epoch millis
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Metric metric;
+    @Column(name = "reading_count")
+    private long count;
+    @Column(name = "value_sum")
+    private double sum;
+    @Column(name = "value_min")
+    private double min;
+    @Column(name = "value_max")
+    private double max;
+    @Column(name = "value_sum_squares")
+    private double sumSquares;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String sensorId;
+        private RollupResolution resolution;
+        private long bucketStart;
+        private Metric metric;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.weathersensor.data;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SensorRollupRepository extends JpaRepository<SensorRollup, SensorRollup.Key>, SensorRollupRepositoryCustom {
+
+    // Buckets in [from, to) of the given resolution, merged per metric across all requested sensors
+    @Query("SELECT new org.example.weathersensor.data.MetricAggregate(" +
+            "r.metric, SUM(r.count), SUM(r.sum), MIN(r.min), MAX(r.max), SUM(r.sumSquares)) " +
+            "FROM SensorRollup r WHERE r.resolution = :resolution AND r.sensorId IN :sensorIds " +
+            "AND r.bucketStart >= :from AND r.bucketStart < :to GROUP BY r.metric")
+    List<MetricAggregate> aggregate(RollupResolution resolution, Collection<String> sensorIds, long from, long to);
+}
@@ -0,0 +1,12 @@
+package org.example.weathersensor.data;
+
+import java.util.Collection;
+
+public interface SensorRollupRepositoryCustom {
+
+    // Adds the deltas onto the stored buckets, creating the ones that do not exist yet
+    void accumulate(Collection<SensorRollup> deltas);
+
+    // Deletes at most limit buckets of the resolution that started before the given epoch millis
+    int deleteBefore(RollupResolution resolution, long before, int limit);
+}
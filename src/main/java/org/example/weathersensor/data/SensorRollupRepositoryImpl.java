@@ -0,0 +1,60 @@
+package org.example.weathersensor.data;
+
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+import java.util.List;
+
+class SensorRollupRepositoryImpl implements SensorRollupRepositoryCustom {
+    // A bucket that conflicted exists once applied again, only one deleted again in between conflicts twice
+    static final int MAX_ATTEMPTS = 3;
+    private static final String ACCUMULATE = """
+            MERGE INTO sensor_rollup r
+            USING (VALUES (CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS BIGINT), CAST(? AS VARCHAR),
+                    CAST(? AS BIGINT), CAST(? AS DOUBLE PRECISION), CAST(? AS DOUBLE PRECISION),
+                    CAST(? AS DOUBLE PRECISION), CAST(? AS DOUBLE PRECISION)))
+                AS d(sensor_id, resolution, bucket_start, metric, reading_count, value_sum, value_min, value_max, value_sum_squares)
+            ON r.sensor_id = d.sensor_id AND r.resolution = d.resolution
+                AND r.bucket_start = d.bucket_start AND r.metric = d.metric
+            WHEN MATCHED THEN UPDATE SET
+                reading_count = r.reading_count + d.reading_count,
+                value_sum = r.value_sum + d.value_sum,
+                value_min = LEAST(r.value_min, d.value_min),
+                value_max = GREATEST(r.value_max, d.value_max),
+                value_sum_squares = r.value_sum_squares + d.value_sum_squares
+            WHEN NOT MATCHED THEN INSERT
+                (sensor_id, resolution, bucket_start, metric, reading_count, value_sum, value_min, value_max, value_sum_squares)
+                VALUES (d.sensor_id, d.resolution, d.bucket_start, d.metric, d.reading_count, d.value_sum, d.value_min, d.value_max, d.value_sum_squares)
+            """;
+
+    private static final String DELETE_BEFORE =
+            "DELETE FROM sensor_rollup WHERE resolution = ? AND bucket_start < ? FETCH FIRST ? ROWS ONLY";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SensorRollupRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void accumulate(Collection<SensorRollup> deltas) {
+        // Neither write sees the other's uncommitted new bucket, so both insert it and the one that waited fails.
+        // Applied again, those find the committed bucket and add onto it.
+        List<SensorRollup> pending = List.copyOf(deltas);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            pending = JdbcBatches.executeAll(jdbcTemplate, ACCUMULATE, pending, d -> new Object[]{d.getSensorId(),
+                    d.getResolution().name(), d.getBucketStart(), d.getMetric().name(),
+                    d.getCount(), d.getSum(), d.getMin(), d.getMax(), d.getSumSquares()});
+        }
+        if (!pending.isEmpty()) {
+            throw new ConcurrencyFailureException(pending.size() + " rollup buckets still conflict after "
+                    + MAX_ATTEMPTS + " attempts");
+        }
+    }
+
+    @Override
+    public int deleteBefore(RollupResolution resolution, long before, int limit) {
+        return jdbcTemplate.update(DELETE_BEFORE, resolution.name(), before, limit);
+    }
+}
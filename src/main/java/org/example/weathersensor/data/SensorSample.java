@@ -0,0 +1,41 @@
+package org.example.weathersensor.data;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
+
+import java.io.Serializable;
+
+// Uniform reservoir sample of the values of one metric of one sensor within one day. Updates only write the columns
+// that changed, most writes to a full sample leave it as it was and only count the population up.
+@Entity
+@Table(name = "sensor_sample")
+@DynamicUpdate
+@IdClass(SensorSample.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorSample {
+    @Id
+    private String sensorId;
+    @Id
+    private long bucketStart; // Epoch millis of the UTC day
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Metric metric;
+    // Values seen, the sample holds min(population, sample size) of them
+    private long population;
+    @Column(length = 65536)
+    private byte[] sample;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String sensorId;
+        private long bucketStart;
+        private Metric metric;
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.weathersensor.data;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SensorSampleRepository extends JpaRepository<SensorSample, SensorSample.Key>, SensorSampleRepositoryCustom {
+
+    // Locks the samples about to be extended, may return a few more than needed
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM SensorSample s WHERE s.sensorId IN :sensorIds AND s.bucketStart IN :bucketStarts " +
+            "ORDER BY s.sensorId, s.bucketStart, s.metric")
+    List<SensorSample> findForUpdate(Collection<String> sensorIds, Collection<Long> bucketStarts);
+
+    @Query("SELECT new org.example.weathersensor.data.MetricSample(s.metric, s.population, s.sample) FROM SensorSample s " +
+            "WHERE s.sensorId IN :sensorIds AND s.metric IN :metrics AND s.bucketStart >= :from AND s.bucketStart < :to")
+    List<MetricSample> findSamples(Collection<String> sensorIds, Collection<Metric> metrics, long from, long to);
+}
@@ -0,0 +1,9 @@
+package org.example.weathersensor.data;
+
+import java.util.List;
+
+public interface SensorSampleRepositoryCustom {
+
+    // Inserts the samples of new days and returns the ones another transaction created the day of meanwhile
+    List<SensorSample> insertNew(List<SensorSample> samples);
+}
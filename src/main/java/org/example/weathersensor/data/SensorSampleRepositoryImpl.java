@@ -0,0 +1,30 @@
+package org.example.weathersensor.data;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+
+class SensorSampleRepositoryImpl implements SensorSampleRepositoryCustom {
+    private static final String INSERT =
+            "INSERT INTO sensor_sample (sensor_id, bucket_start, metric, population, sample) VALUES (?, ?, ?, ?, ?)";
+
+    // Concurrent writes insert overlapping days in the same order, so one waits for the other instead of both
+    // waiting for each other
+    private static final Comparator<SensorSample> KEY_ORDER = Comparator.comparing(SensorSample::getSensorId)
+            .thenComparingLong(SensorSample::getBucketStart)
+            .thenComparing(SensorSample::getMetric);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SensorSampleRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<SensorSample> insertNew(List<SensorSample> samples) {
+        return JdbcBatches.executeAll(jdbcTemplate, INSERT, samples.stream().sorted(KEY_ORDER).toList(),
+                s -> new Object[]{s.getSensorId(), s.getBucketStart(), s.getMetric().name(), s.getPopulation(),
+                        s.getSample()});
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.weathersensor.data;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Serialized quantile sketch of one metric of one sensor within one time bucket
+@Entity
+@Table(name = "sensor_sketch")
+@IdClass(SensorRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorSketch {
+    @Id
+    private String sensorId;
+    @Id
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+    @Id
+    private long bucketStart; // Epoch millis
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Metric metric;
+    @Column(length = 65536)
+    private byte[] sketch;
+}
@@ -0,0 +1,26 @@
+package org.example.weathersensor.data;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SensorSketchRepository extends JpaRepository<SensorSketch, SensorRollup.Key>, SensorSketchRepositoryCustom {
+
+    // Locks the sketches about to be merged into, may return a few more than needed
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM SensorSketch s WHERE s.sensorId IN :sensorIds AND s.bucketStart IN :bucketStarts " +
+            "ORDER BY s.sensorId, s.resolution, s.bucketStart, s.metric")
+    List<SensorSketch> findForUpdate(Collection<String> sensorIds, Collection<Long> bucketStarts);
+
+    @Query("SELECT new org.example.weathersensor.data.MetricSketch(s.metric, s.sketch) FROM SensorSketch s " +
+            "WHERE s.resolution = :resolution AND s.sensorId IN :sensorIds AND s.metric IN :metrics " +
+            "AND s.bucketStart >= :from AND s.bucketStart < :to")
+    List<MetricSketch> findSketches(RollupResolution resolution, Collection<String> sensorIds,
+                                    Collection<Metric> metrics, long from, long to);
+}
@@ -0,0 +1,9 @@
+package org.example.weathersensor.data;
+
+import java.util.List;
+
+public interface SensorSketchRepositoryCustom {
+
+    // Inserts the sketches of new buckets and returns the ones another transaction created the bucket of meanwhile
+    List<SensorSketch> insertNew(List<SensorSketch> sketches);
+}
@@ -0,0 +1,31 @@
+package org.example.weathersensor.data;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+
+class SensorSketchRepositoryImpl implements SensorSketchRepositoryCustom {
+    private static final String INSERT =
+            "INSERT INTO sensor_sketch (sensor_id, resolution, bucket_start, metric, sketch) VALUES (?, ?, ?, ?, ?)";
+
+    // Concurrent writes insert overlapping buckets in the same order, so one waits for the other instead of both
+    // waiting for each other
+    private static final Comparator<SensorSketch> KEY_ORDER = Comparator.comparing(SensorSketch::getSensorId)
+            .thenComparing(SensorSketch::getResolution)
+            .thenComparingLong(SensorSketch::getBucketStart)
+            .thenComparing(SensorSketch::getMetric);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SensorSketchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<SensorSketch> insertNew(List<SensorSketch> sketches) {
+        return JdbcBatches.executeAll(jdbcTemplate, INSERT, sketches.stream().sorted(KEY_ORDER).toList(),
+                s -> new Object[]{s.getSensorId(), s.getResolution().name(), s.getBucketStart(), s.getMetric().name(),
+                        s.getSketch()});
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.weathersensor.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Where raw readings are kept, selected with sensor.storage.engine. Rollups and sketches stay in the database either way.
+public interface SensorStore {
+
+    List<SensorData> saveAll(List<SensorData> readings);
+
+    // Inserts new readings as fast as the engine allows, for bulk loads that need neither ids nor managed entities
+    void insertAll(List<SensorData> readings);
+
+    List<SensorData> findBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate);
+
+    // Readings of one sensor in timestamp order, produced while the stream is consumed. Must be closed, and for the
+    // database engine consumed inside a transaction.
+    Stream<SensorData> streamBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate);
+
+    // Splits sensors into groups that are aggregated concurrently, one query per group. By default into parts groups
+    // of about the same size, engines that keep sensors apart return one group per place they are kept in.
+    default List<List<String>> split(Set<String> sensorIds, int parts) {
+        List<String> ids = new ArrayList<>(sensorIds);
+        var count = Math.max(1, Math.min(parts, ids.size()));
+        List<List<String>> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add(ids.subList(i * ids.size() / count, (i + 1) * ids.size() / count));
+        }
+        return groups;
+    }
+
+    SensorDataAggregate aggregateBySensorIdInAndTimestampBetween(Collection<String> sensorIds, Date startDate, Date endDate);
+
+    // The aggregate of every sensor with readings in the range, each handed to the consumer on its own. Covers every
+    // stored sensor when sensorIds is null.
+    void aggregateBySensor(Collection<String> sensorIds, Date startDate, Date endDate,
+                           BiConsumer<String, SensorDataAggregate> consumer);
+
+    // Hands the readings in the range to the consumer sensor after sensor, the readings of a sensor one after another
+    // in timestamp order. Covers every stored sensor when sensorIds is null. For the database engine inside a
+    // transaction.
+    void scanBySensor(Collection<String> sensorIds, Date startDate, Date endDate, Consumer<SensorData> consumer);
+
+    // Hands the most recent reading of every stored sensor to the consumer, read with a single query where the engine
+    // allows. Readings of a sensor sharing the latest timestamp may all be handed over.
+    void latestBySensor(Consumer<SensorData> consumer);
+
+    // Whether a reading of the sensor with this client sequence number is stored. Only asked about keys the in-memory
+    // duplicate filter has probably seen, engines that do not keep sequence numbers trust the filter and answer true.
+    boolean containsSequence(String sensorId, long sequenceNumber);
+
+    // Hands the sensor id and sequence number of up to about limit of the most recently stored readings that have one
+    // to the consumer, newest first. Engines that do not keep sequence numbers hand over none.
+    default void recentSequences(int limit, BiConsumer<String, Long> consumer) {
+    }
+
+    // Removes readings older than before, about limit at a time, and returns how many were removed, 0 once none are
+    // left. Engines partitioned by time drop whole partitions that ended before it, however many readings they hold.
+    long deleteBefore(Date before, int limit);
+
+    // Hands every reading stored at or after since (everything when null) to the consumer, pageSize readings at a time
+    void scan(Date since, int pageSize, Consumer<List<SensorData>> consumer);
+}
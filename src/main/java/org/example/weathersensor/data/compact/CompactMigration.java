@@ -0,0 +1,57 @@
+package org.example.weathersensor.data.compact;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataRepository;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Copies the sensor_data table into an empty sensor_reading table when switching engines. Runs while the context
+// starts, before the hot window and the rollup backfill read from the store. Rows keep their ids and the table
+// itself is left untouched.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "compact")
+public class CompactMigration implements InitializingBean {
+    private static final int PAGE_SIZE = 10_000;
+
+    private final SensorDataRepository repository;
+    private final CompactSensorStore store;
+    private final SensorProperties properties;
+
+    public CompactMigration(SensorDataRepository repository, CompactSensorStore store, SensorProperties properties) {
+        this.repository = repository;
+        this.store = store;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.getStorage().getCompact().isMigrateFromJpa() && store.isEmpty()) {
+            migrate();
+        }
+    }
+
+    public long migrate() {
+        var copied = 0L;
+        var lastId = Long.MIN_VALUE;
+        List<SensorData> page;
+        do {
+            page = repository.findByIdGreaterThanOrderById(lastId, Limit.of(PAGE_SIZE));
+            if (!page.isEmpty()) {
+                store.mergeAll(page);
+                copied += page.size();
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        if (copied > 0) {
+            log.info("Copied {} readings of {} sensors from sensor_data into sensor_reading", copied, store.sensorCount());
+        }
+        return copied;
+    }
+}
@@ -0,0 +1,267 @@
+package org.example.weathersensor.data.compact;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorDataRows;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.example.weathersensor.data.SensorDataRows.AGGREGATES;
+
+// Readings in the sensor_reading table of the main database, with the sensor id replaced by an integer key from the
+// sensor_registry table and the timestamp kept as epoch millis. Rows and the (sensor_key, timestamp) index are
+// about half the size of sensor_data for typical ids. Ids are translated at this boundary, callers only see
+// SensorData with its string sensor id.
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "compact")
+public class CompactSensorStore implements SensorStore, DisposableBean {
+    private static final String COLUMNS = "id, sensor_key, timestamp, temperature, humidity, wind_speed, sequence_number";
+    private static final String INSERT = "INSERT INTO sensor_reading (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE = "MERGE INTO sensor_reading (" + COLUMNS + ") KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND = "SELECT " + COLUMNS + " FROM sensor_reading WHERE sensor_key = ? " +
+            "AND timestamp BETWEEN ? AND ? ORDER BY timestamp";
+    private static final String AGGREGATE = "SELECT " + AGGREGATES + " FROM sensor_reading " +
+            "WHERE sensor_key IN (%s) AND timestamp BETWEEN ? AND ?";
+    private static final SensorDataAggregate NO_READINGS = new SensorDataAggregate(
+            0L, null, null, null, null, 0L, null, null, null, null, 0L, null, null, null, null);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource registrationDataSource;
+    private final SensorRegistry registry;
+    private final RowMapper<SensorData> reading;
+
+    @Autowired
+    public CompactSensorStore(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties) {
+        this(jdbcTemplate, registrationDataSource(dataSourceProperties));
+    }
+
+    CompactSensorStore(JdbcTemplate jdbcTemplate, DataSource registrationDataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.registrationDataSource = registrationDataSource;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sensor_reading (id BIGINT PRIMARY KEY, sensor_key INT NOT NULL, " +
+                "timestamp BIGINT NOT NULL, temperature DOUBLE PRECISION, humidity DOUBLE PRECISION, wind_speed DOUBLE PRECISION, sequence_number BIGINT)");
+        // Tables created before readings had sequence numbers
+        jdbcTemplate.execute("ALTER TABLE sensor_reading ADD COLUMN IF NOT EXISTS sequence_number BIGINT");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_sensor_reading_sensor_key_timestamp ON sensor_reading (sensor_key, timestamp)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_sensor_reading_sensor_key_sequence_number " +
+                "ON sensor_reading (sensor_key, sequence_number)");
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS sensor_reading_seq");
+        registry = new SensorRegistry(jdbcTemplate, new JdbcTemplate(registrationDataSource));
+        reading = (rs, row) -> {
+            var data = new SensorData();
+            data.setId(rs.getLong(1));
+            data.setSensorId(registry.sensorIdOf(rs.getInt(2)));
+            data.setTimestamp(new Date(rs.getLong(3)));
+            data.setTemperature(rs.getObject(4, Double.class));
+            data.setHumidity(rs.getObject(5, Double.class));
+            data.setWindSpeed(rs.getObject(6, Double.class));
+            data.setSequenceNumber(rs.getObject(7, Long.class));
+            return data;
+        };
+    }
+
+    // New sensors are rare, one connection that is closed again while idle serves all registrations
+    private static DataSource registrationDataSource(DataSourceProperties properties) {
+        var dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("sensor-registry");
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setMinimumIdle(0);
+        return dataSource;
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT id FROM sensor_reading FETCH FIRST 1 ROWS ONLY", Long.class).isEmpty();
+    }
+
+    int sensorCount() {
+        return registry.size();
+    }
+
+    // The readings get their ids
+    @Override
+    public List<SensorData> saveAll(List<SensorData> readings) {
+        if (readings.isEmpty()) {
+            return readings;
+        }
+        var ids = jdbcTemplate.queryForList("SELECT NEXT VALUE FOR sensor_reading_seq FROM SYSTEM_RANGE(1, ?)",
+                Long.class, readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            readings.get(i).setId(ids.get(i));
+        }
+        write(INSERT, readings);
+        return readings;
+    }
+
+    @Override
+    public void insertAll(List<SensorData> readings) {
+        saveAll(readings);
+    }
+
+    // Rows that already have an id, e.g. copied from sensor_data, writing them again is harmless
+    public void mergeAll(List<SensorData> readings) {
+        if (readings.isEmpty()) {
+            return;
+        }
+        write(MERGE, readings);
+        var maxId = readings.stream().mapToLong(SensorData::getId).max().orElse(0);
+        var current = jdbcTemplate.queryForObject("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES " +
+                "WHERE SEQUENCE_NAME = 'SENSOR_READING_SEQ'", Long.class);
+        if (current == null || current <= maxId) {
+            jdbcTemplate.execute("ALTER SEQUENCE sensor_reading_seq RESTART WITH " + (maxId + 1));
+        }
+    }
+
+    // New sensors are registered before the batch starts, binding only looks their keys up in memory
+    private void write(String sql, List<SensorData> readings) {
+        readings.stream().map(SensorData::getSensorId).distinct().forEach(registry::register);
+        jdbcTemplate.batchUpdate(sql, readings, readings.size(), this::bind);
+    }
+
+    private void bind(PreparedStatement statement, SensorData data) throws SQLException {
+        statement.setLong(1, data.getId());
+        statement.setInt(2, registry.register(data.getSensorId()));
+        statement.setLong(3, data.getTimestamp().getTime());
+        statement.setObject(4, data.getTemperature(), Types.DOUBLE);
+        statement.setObject(5, data.getHumidity(), Types.DOUBLE);
+        statement.setObject(6, data.getWindSpeed(), Types.DOUBLE);
+        statement.setObject(7, data.getSequenceNumber(), Types.BIGINT);
+    }
+
+    @Override
+    public List<SensorData> findBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        return registry.keyOf(sensorId)
+                .map(key -> jdbcTemplate.query(FIND, reading, key, startDate.getTime(), endDate.getTime()))
+                .orElseGet(List::of);
+    }
+
+    @Override
+    public Stream<SensorData> streamBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        return registry.keyOf(sensorId)
+                .map(key -> jdbcTemplate.queryForStream(FIND, reading, key, startDate.getTime(), endDate.getTime()))
+                .orElseGet(Stream::empty);
+    }
+
+    @Override
+    public SensorDataAggregate aggregateBySensorIdInAndTimestampBetween(Collection<String> sensorIds, Date startDate, Date endDate) {
+        var keys = registry.keysOf(sensorIds);
+        if (keys.isEmpty()) {
+            return NO_READINGS;
+        }
+        var args = new Object[keys.size() + 2];
+        for (int i = 0; i < keys.size(); i++) {
+            args[i] = keys.get(i);
+        }
+        args[keys.size()] = startDate.getTime();
+        args[keys.size() + 1] = endDate.getTime();
+        return jdbcTemplate.queryForObject(AGGREGATE.formatted(SensorDataRows.placeholders(keys.size())),
+                (rs, row) -> SensorDataRows.aggregate(rs, 1), args);
+    }
+
+    @Override
+    public void aggregateBySensor(Collection<String> sensorIds, Date startDate, Date endDate,
+                                  BiConsumer<String, SensorDataAggregate> consumer) {
+        List<Object> args = new ArrayList<>();
+        var where = rangeOf(sensorIds, startDate, endDate, args);
+        if (where != null) {
+            jdbcTemplate.query("SELECT sensor_key, " + AGGREGATES + " FROM sensor_reading" + where + " GROUP BY sensor_key",
+                    (RowCallbackHandler) rs -> consumer.accept(registry.sensorIdOf(rs.getInt(1)), SensorDataRows.aggregate(rs, 2)),
+                    args.toArray());
+        }
+    }
+
+    @Override
+    public void scanBySensor(Collection<String> sensorIds, Date startDate, Date endDate, Consumer<SensorData> consumer) {
+        List<Object> args = new ArrayList<>();
+        var where = rangeOf(sensorIds, startDate, endDate, args);
+        if (where != null) {
+            jdbcTemplate.query("SELECT " + COLUMNS + " FROM sensor_reading" + where + " ORDER BY sensor_key, timestamp",
+                    (RowCallbackHandler) rs -> consumer.accept(reading.mapRow(rs, rs.getRow())), args.toArray());
+        }
+    }
+
+    @Override
+    public void latestBySensor(Consumer<SensorData> consumer) {
+        jdbcTemplate.query("SELECT r." + COLUMNS.replace(", ", ", r.") + " FROM sensor_reading r JOIN " +
+                        "(SELECT sensor_key, MAX(timestamp) AS latest FROM sensor_reading GROUP BY sensor_key) m " +
+                        "ON r.sensor_key = m.sensor_key AND r.timestamp = m.latest",
+                (RowCallbackHandler) rs -> consumer.accept(reading.mapRow(rs, rs.getRow())));
+    }
+
+    // null when none of the sensors is known
+    private String rangeOf(Collection<String> sensorIds, Date start, Date end, List<Object> args) {
+        var where = " WHERE timestamp BETWEEN ? AND ?";
+        args.add(start.getTime());
+        args.add(end.getTime());
+        if (sensorIds != null) {
+            var keys = registry.keysOf(sensorIds);
+            if (keys.isEmpty()) {
+                return null;
+            }
+            where += " AND sensor_key IN (" + SensorDataRows.placeholders(keys.size()) + ")";
+            args.addAll(keys);
+        }
+        return where;
+    }
+
+    @Override
+    public boolean containsSequence(String sensorId, long sequenceNumber) {
+        return registry.keyOf(sensorId)
+                .map(key -> !jdbcTemplate.queryForList("SELECT id FROM sensor_reading WHERE sensor_key = ? AND sequence_number = ?",
+                        Long.class, key, sequenceNumber).isEmpty())
+                .orElse(false);
+    }
+
+    @Override
+    public void recentSequences(int limit, BiConsumer<String, Long> consumer) {
+        jdbcTemplate.query("SELECT sensor_key, sequence_number FROM sensor_reading WHERE sequence_number IS NOT NULL " +
+                        "ORDER BY id DESC FETCH FIRST ? ROWS ONLY",
+                (RowCallbackHandler) rs -> consumer.accept(registry.sensorIdOf(rs.getInt(1)), rs.getLong(2)), limit);
+    }
+
+    @Override
+    public long deleteBefore(Date before, int limit) {
+        return jdbcTemplate.update("DELETE FROM sensor_reading WHERE timestamp < ? FETCH FIRST ? ROWS ONLY",
+                before.getTime(), limit);
+    }
+
+    @Override
+    public void scan(Date since, int pageSize, Consumer<List<SensorData>> consumer) {
+        var lastId = Long.MIN_VALUE;
+        List<SensorData> page;
+        do {
+            page = since == null
+                    ? jdbcTemplate.query("SELECT " + COLUMNS + " FROM sensor_reading WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY",
+                            reading, lastId, pageSize)
+                    : jdbcTemplate.query("SELECT " + COLUMNS + " FROM sensor_reading WHERE id > ? AND timestamp >= ? ORDER BY id FETCH FIRST ? ROWS ONLY",
+                            reading, lastId, since.getTime(), pageSize);
+            if (!page.isEmpty()) {
+                consumer.accept(page);
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+    }
+
+    @Override
+    public void destroy() {
+        if (registrationDataSource instanceof HikariDataSource pool) {
+            pool.close();
+        }
+    }
+}
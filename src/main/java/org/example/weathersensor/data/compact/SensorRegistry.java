@@ -0,0 +1,92 @@
+package org.example.weathersensor.data.compact;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps external sensor ids to the integer keys stored with every reading. Loaded once, afterwards lookups are served
+// from memory and only sensors missing there are looked up in the table. New sensors are registered on a connection
+// of their own that commits every statement, so a key that was handed out is never rolled back together with the
+// readings that needed it. That connection comes from a separate pool: a second one from the pool the writer's
+// transaction holds a connection of would leave as many concurrent first writes waiting as that pool has connections.
+final class SensorRegistry {
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate registration;
+    private final Map<String, Integer> keys = new ConcurrentHashMap<>();
+    private final Map<Integer, String> sensorIds = new ConcurrentHashMap<>();
+
+    SensorRegistry(JdbcTemplate jdbcTemplate, JdbcTemplate registration) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.registration = registration;
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sensor_registry (" +
+                "sensor_key INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, sensor_id VARCHAR(255) NOT NULL UNIQUE)");
+        jdbcTemplate.query("SELECT sensor_key, sensor_id FROM sensor_registry",
+                (RowCallbackHandler) rs -> remember(rs.getInt(1), rs.getString(2)));
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    // Registers sensors seen for the first time
+    int register(String sensorId) {
+        var key = keys.get(sensorId);
+        if (key != null) {
+            return key;
+        }
+        try {
+            registration.update("MERGE INTO sensor_registry (sensor_id) KEY (sensor_id) VALUES (?)", sensorId);
+        } catch (DataIntegrityViolationException e) {
+            // Registered concurrently by another writer, its key is read below
+        }
+        key = registration.queryForObject("SELECT sensor_key FROM sensor_registry WHERE sensor_id = ?",
+                Integer.class, sensorId);
+        remember(key, sensorId);
+        return key;
+    }
+
+    // Empty for sensors that never stored a reading, reading does not register them
+    Optional<Integer> keyOf(String sensorId) {
+        var key = keys.get(sensorId);
+        if (key != null) {
+            return Optional.of(key);
+        }
+        // Registered by another instance sharing the database, unknown sensors are looked up again every time
+        var found = jdbcTemplate.queryForList("SELECT sensor_key FROM sensor_registry WHERE sensor_id = ?",
+                Integer.class, sensorId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        remember(found.get(0), sensorId);
+        return Optional.of(found.get(0));
+    }
+
+    // The keys of the known sensors among sensorIds
+    List<Integer> keysOf(Collection<String> sensorIds) {
+        List<Integer> found = new ArrayList<>(sensorIds.size());
+        for (String sensorId : new LinkedHashSet<>(sensorIds)) {
+            keyOf(sensorId).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    String sensorIdOf(int key) {
+        var sensorId = sensorIds.get(key);
+        if (sensorId != null) {
+            return sensorId;
+        }
+        // Registered by another instance sharing the database
+        sensorId = jdbcTemplate.queryForObject("SELECT sensor_id FROM sensor_registry WHERE sensor_key = ?",
+                String.class, key);
+        remember(key, sensorId);
+        return sensorId;
+    }
+
+    private void remember(int key, String sensorId) {
+        sensorIds.put(key, sensorId);
+        keys.put(sensorId, key);
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.weathersensor.data.segment;
+
+import java.nio.ByteBuffer;
+
+// Reads a BitOutput stream in place, usually straight from a memory mapped segment
+final class BitInput {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private long position;
+
+    BitInput(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    boolean readBit() {
+        return read(1) == 1;
+    }
+
+    long read(int bits) {
+        long value = 0;
+        while (bits > 0) {
+            var current = buffer.get(offset + (int) (position >>> 3)) & 0xFF;
+            var available = 8 - (int) (position & 7);
+            var n = Math.min(available, bits);
+            value = (value << n) | ((current >>> (available - n)) & ((1 << n) - 1));
+            position += n;
+            bits -= n;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.weathersensor.data.segment;
+
+import java.util.Arrays;
+
+// Growable most significant bit first bit stream
+final class BitOutput {
+    private byte[] bytes = new byte[256];
+    private long bitLength;
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    // Writes the lowest bits of value
+    void write(long value, int bits) {
+        while (bits > 0) {
+            var index = (int) (bitLength >>> 3);
+            if (index == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            var free = 8 - (int) (bitLength & 7);
+            var n = Math.min(free, bits);
+            var chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+            bytes[index] |= (byte) (chunk << (free - n));
+            bitLength += n;
+            bits -= n;
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, (int) ((bitLength + 7) >>> 3));
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.weathersensor.data.segment;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Exact record of the sequence numbers stored per sensor within a window below the highest one, one bit each.
+// Segment chunks do not keep sequence numbers, so this is what confirms a duplicate; anything older than the window
+// or written before a restart is unknown and reported as not stored.
+final class RecentSequences {
+    private final int window;
+    private final Map<String, Window> sensors = new ConcurrentHashMap<>();
+
+    RecentSequences(int window) {
+        this.window = Math.max(64, (window + 63) / 64 * 64);
+    }
+
+    void add(String sensorId, long sequenceNumber) {
+        sensors.computeIfAbsent(sensorId, id -> new Window(window)).add(sequenceNumber);
+    }
+
+    boolean contains(String sensorId, long sequenceNumber) {
+        var sequences = sensors.get(sensorId);
+        return sequences != null && sequences.contains(sequenceNumber);
+    }
+
+    // Ring of bits indexed by sequence number modulo the window size
+    private static final class Window {
+        private final long[] bits;
+        private final int size;
+        private long highest = Long.MIN_VALUE;
+
+        Window(int size) {
+            this.size = size;
+            this.bits = new long[size / 64];
+        }
+
+        synchronized void add(long sequenceNumber) {
+            if (highest != Long.MIN_VALUE && sequenceNumber <= highest - size) {
+                return;
+            }
+            if (sequenceNumber > highest) {
+                if (highest == Long.MIN_VALUE || sequenceNumber - highest >= size) {
+                    Arrays.fill(bits, 0L);
+                } else {
+                    for (long cleared = highest + 1; cleared < sequenceNumber; cleared++) {
+                        clear(cleared);
+                    }
+                }
+                highest = sequenceNumber;
+            }
+            var index = Math.floorMod(sequenceNumber, size);
+            bits[index >>> 6] |= 1L << index;
+        }
+
+        synchronized boolean contains(long sequenceNumber) {
+            if (highest == Long.MIN_VALUE || sequenceNumber > highest || sequenceNumber <= highest - size) {
+                return false;
+            }
+            var index = Math.floorMod(sequenceNumber, size);
+            return (bits[index >>> 6] & 1L << index) != 0;
+        }
+
+        private void clear(long sequenceNumber) {
+            var index = Math.floorMod(sequenceNumber, size);
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.example.weathersensor.data.segment;
+
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Readings of one sensor sorted by time, compressed Gorilla style: timestamps as delta of deltas and every metric as
+// its own column of XORed doubles. On disk a chunk is framed as length, CRC32, header and bit stream. The header holds
+// per metric count/sum/min/max/sum of squares, so chunks entirely inside a queried range are aggregated without decoding.
+final class SegmentChunk {
+    static final Metric[] METRICS = Metric.values();
+    static final int FRAME_BYTES = 8;
+    static final int HEADER_BYTES = 4 + 3 * 8 + METRICS.length * 5 * 8;
+    // Stands for a missing metric in a column, decoded back to null
+    private static final long MISSING = Double.doubleToLongBits(Double.NaN);
+
+    final long[] timestamps;
+    final double[][] values;
+    final int count;
+
+    private SegmentChunk(long[] timestamps, double[][] values, int count) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.count = count;
+    }
+
+    static SegmentChunk of(List<SensorData> readings) {
+        var sorted = new ArrayList<>(readings);
+        sorted.sort((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
+        var timestamps = new long[sorted.size()];
+        var values = new double[METRICS.length][sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            var reading = sorted.get(i);
+            timestamps[i] = reading.getTimestamp().getTime();
+            for (int m = 0; m < METRICS.length; m++) {
+                var value = METRICS[m].valueOf(reading);
+                values[m][i] = value == null ? Double.NaN : value;
+            }
+        }
+        return new SegmentChunk(timestamps, values, sorted.size());
+    }
+
+    // Merges chunks that may overlap in time into one sorted chunk
+    static SegmentChunk merge(List<SegmentChunk> chunks) {
+        var total = chunks.stream().mapToInt(chunk -> chunk.count).sum();
+        var order = new long[total][];
+        var position = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            for (int i = 0; i < chunks.get(c).count; i++) {
+                order[position++] = new long[]{chunks.get(c).timestamps[i], c, i};
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(a[0], b[0]));
+        var timestamps = new long[total];
+        var values = new double[METRICS.length][total];
+        for (int i = 0; i < total; i++) {
+            var source = chunks.get((int) order[i][1]);
+            var index = (int) order[i][2];
+            timestamps[i] = source.timestamps[index];
+            for (int m = 0; m < METRICS.length; m++) {
+                values[m][i] = source.values[m][index];
+            }
+        }
+        return new SegmentChunk(timestamps, values, total);
+    }
+
+    // Splits into chunks of at most maxReadings, so a partially covered chunk never costs more than that to decode
+    List<SegmentChunk> split(int maxReadings) {
+        if (count <= maxReadings) {
+            return List.of(this);
+        }
+        List<SegmentChunk> parts = new ArrayList<>();
+        for (int from = 0; from < count; from += maxReadings) {
+            var to = Math.min(count, from + maxReadings);
+            var partValues = new double[METRICS.length][];
+            for (int m = 0; m < METRICS.length; m++) {
+                partValues[m] = Arrays.copyOfRange(values[m], from, to);
+            }
+            parts.add(new SegmentChunk(Arrays.copyOfRange(timestamps, from, to), partValues, to - from));
+        }
+        return parts;
+    }
+
+    List<SensorData> toReadings(String sensorId, long from, long to) {
+        List<SensorData> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (timestamps[i] < from || timestamps[i] > to) {
+                continue;
+            }
+            var reading = new SensorData();
+            reading.setSensorId(sensorId);
+            reading.setTimestamp(new Date(timestamps[i]));
+            for (int m = 0; m < METRICS.length; m++) {
+                METRICS[m].setValue(reading, Double.isNaN(values[m][i]) ? null : values[m][i]);
+            }
+            readings.add(reading);
+        }
+        return readings;
+    }
+
+    // Frame of this chunk, absorbedTail records the tail file folded into it
+    byte[] encode(long absorbedTail) {
+        var bits = new BitOutput();
+        encodeTimestamps(bits);
+        for (double[] column : values) {
+            encodeColumn(bits, column);
+        }
+        var payload = bits.toByteArray();
+
+        var frame = ByteBuffer.allocate(FRAME_BYTES + HEADER_BYTES + payload.length);
+        frame.putInt(HEADER_BYTES + payload.length);
+        frame.putInt(0); // CRC, filled in below
+        frame.putInt(count);
+        frame.putLong(timestamps[0]);
+        frame.putLong(timestamps[count - 1]);
+        frame.putLong(absorbedTail);
+        for (double[] column : values) {
+            long present = 0;
+            double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sumSquares = 0;
+            for (int i = 0; i < count; i++) {
+                var value = column[i];
+                if (!Double.isNaN(value)) {
+                    present++;
+                    sum += value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    sumSquares += value * value;
+                }
+            }
+            frame.putLong(present).putDouble(sum).putDouble(min).putDouble(max).putDouble(sumSquares);
+        }
+        frame.put(payload);
+
+        var crc = new CRC32();
+        crc.update(frame.array(), FRAME_BYTES, HEADER_BYTES + payload.length);
+        frame.putInt(4, (int) crc.getValue());
+        return frame.array();
+    }
+
+    // Header of the frame at offset, or null when the frame is torn or corrupt
+    static Header readHeader(ByteBuffer buffer, int offset, int limit) {
+        if (offset + FRAME_BYTES + HEADER_BYTES > limit) {
+            return null;
+        }
+        var length = buffer.getInt(offset);
+        if (length < HEADER_BYTES || (long) offset + FRAME_BYTES + length > limit) {
+            return null;
+        }
+        var crc = new CRC32();
+        crc.update(buffer.slice(offset + FRAME_BYTES, length));
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+
+        var position = offset + FRAME_BYTES;
+        var count = buffer.getInt(position);
+        var minTimestamp = buffer.getLong(position + 4);
+        var maxTimestamp = buffer.getLong(position + 12);
+        var absorbedTail = buffer.getLong(position + 20);
+        position += 28;
+        var counts = new long[METRICS.length];
+        var sums = new double[METRICS.length];
+        var mins = new double[METRICS.length];
+        var maxs = new double[METRICS.length];
+        var sumSquares = new double[METRICS.length];
+        for (int m = 0; m < METRICS.length; m++) {
+            counts[m] = buffer.getLong(position);
+            sums[m] = buffer.getDouble(position + 8);
+            mins[m] = buffer.getDouble(position + 16);
+            maxs[m] = buffer.getDouble(position + 24);
+            sumSquares[m] = buffer.getDouble(position + 32);
+            position += 40;
+        }
+        return new Header(offset, FRAME_BYTES + length, count, minTimestamp, maxTimestamp, absorbedTail,
+                counts, sums, mins, maxs, sumSquares);
+    }
+
+    static SegmentChunk decode(ByteBuffer buffer, Header header) {
+        var bits = new BitInput(buffer, header.offset() + FRAME_BYTES + HEADER_BYTES);
+        var timestamps = decodeTimestamps(bits, header.count());
+        var values = new double[METRICS.length][];
+        for (int m = 0; m < METRICS.length; m++) {
+            values[m] = decodeColumn(bits, header.count());
+        }
+        return new SegmentChunk(timestamps, values, header.count());
+    }
+
+    // First timestamp in full, then the change of the delta in 1, 9, 12, 16 or 68 bits
+    private void encodeTimestamps(BitOutput bits) {
+        bits.write(timestamps[0], 64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            var delta = timestamps[i] - timestamps[i - 1];
+            var deltaOfDelta = delta - previousDelta;
+            previousDelta = delta;
+            if (deltaOfDelta == 0) {
+                bits.writeBit(false);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                bits.write(0b10, 2);
+                bits.write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                bits.write(0b110, 3);
+                bits.write(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                bits.write(0b1110, 4);
+                bits.write(deltaOfDelta + 2047, 12);
+            } else {
+                bits.write(0b1111, 4);
+                bits.write(deltaOfDelta, 64);
+            }
+        }
+    }
+
+    private static long[] decodeTimestamps(BitInput bits, int count) {
+        var timestamps = new long[count];
+        timestamps[0] = bits.read(64);
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long deltaOfDelta;
+            if (!bits.readBit()) {
+                deltaOfDelta = 0;
+            } else if (!bits.readBit()) {
+                deltaOfDelta = bits.read(7) - 63;
+            } else if (!bits.readBit()) {
+                deltaOfDelta = bits.read(9) - 255;
+            } else if (!bits.readBit()) {
+                deltaOfDelta = bits.read(12) - 2047;
+            } else {
+                deltaOfDelta = bits.read(64);
+            }
+            previousDelta += deltaOfDelta;
+            timestamps[i] = timestamps[i - 1] + previousDelta;
+        }
+        return timestamps;
+    }
+
+    // First value in full, then the XOR with the previous value: a single 0 bit when unchanged, otherwise only its
+    // meaningful bits, reusing the previous leading/trailing zero counts when they still fit
+    private void encodeColumn(BitOutput bits, double[] column) {
+        var previous = bitsOf(column[0]);
+        bits.write(previous, 64);
+        var previousLeading = -1;
+        var previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            var current = bitsOf(column[i]);
+            var xor = current ^ previous;
+            previous = current;
+            if (xor == 0) {
+                bits.writeBit(false);
+                continue;
+            }
+            bits.writeBit(true);
+            var leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            var trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                bits.writeBit(false);
+                bits.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                var significant = 64 - leading - trailing;
+                bits.writeBit(true);
+                bits.write(leading, 5);
+                bits.write(significant == 64 ? 0 : significant, 6);
+                bits.write(xor >>> trailing, significant);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+    }
+
+    private static double[] decodeColumn(BitInput bits, int count) {
+        var column = new double[count];
+        var previous = bits.read(64);
+        column[0] = Double.longBitsToDouble(previous);
+        var leading = 0;
+        var trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (bits.readBit()) {
+                if (bits.readBit()) {
+                    leading = (int) bits.read(5);
+                    var significant = (int) bits.read(6);
+                    if (significant == 0) {
+                        significant = 64;
+                    }
+                    trailing = 64 - leading - significant;
+                }
+                previous ^= bits.read(64 - leading - trailing) << trailing;
+            }
+            column[i] = Double.longBitsToDouble(previous);
+        }
+        return column;
+    }
+
+    private static long bitsOf(double value) {
+        return Double.isNaN(value) ? MISSING : Double.doubleToRawLongBits(value);
+    }
+
+    record Header(int offset, int frameLength, int count, long minTimestamp, long maxTimestamp, long absorbedTail,
+                  long[] counts, double[] sums, double[] mins, double[] maxs, double[] sumSquares) {
+
+        boolean overlaps(long from, long to) {
+            return minTimestamp <= to && maxTimestamp >= from;
+        }
+
+        boolean within(long from, long to) {
+            return minTimestamp >= from && maxTimestamp <= to;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.weathersensor.data.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Append-only file of chunk frames, read through a memory mapping of its committed length.
+// Not thread safe, guarded by the lock of its partition.
+@Slf4j
+final class SegmentFile {
+    private final Path path;
+    private final boolean fsync;
+    private final List<SegmentChunk.Header> chunks = new ArrayList<>();
+    private long length;
+    private volatile MappedByteBuffer mapped; // Mapped lazily by the first reader
+
+    private SegmentFile(Path path, boolean fsync) {
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    // Indexes the chunk headers and cuts off a frame torn by a crash
+    static SegmentFile open(Path path, boolean fsync) throws IOException {
+        var file = new SegmentFile(path, fsync);
+        if (!Files.exists(path)) {
+            return file;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment larger than 2GB: " + path);
+            }
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            var offset = 0;
+            SegmentChunk.Header header;
+            while ((header = SegmentChunk.readHeader(buffer, offset, (int) size)) != null) {
+                file.chunks.add(header);
+                offset += header.frameLength();
+            }
+            if (offset < size) {
+                log.warn("Truncating {} from {} to {} bytes, the last write was incomplete", path, size, offset);
+                channel.truncate(offset);
+            }
+            file.length = offset;
+        }
+        return file;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    List<SegmentChunk.Header> chunks() {
+        return Collections.unmodifiableList(chunks);
+    }
+
+    long length() {
+        return length;
+    }
+
+    void append(List<byte[]> frames) throws IOException {
+        if (frames.isEmpty()) {
+            return;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var position = length;
+            for (byte[] frame : frames) {
+                var buffer = ByteBuffer.wrap(frame);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            // Only indexed once written, readers never map a frame that is still being written
+            var offset = (int) length;
+            for (byte[] frame : frames) {
+                chunks.add(rebase(SegmentChunk.readHeader(ByteBuffer.wrap(frame), 0, frame.length), offset));
+                offset += frame.length;
+            }
+            length = position;
+            mapped = null;
+        }
+    }
+
+    // Cuts the file back to its first chunkCount chunks, together with anything a failed append left behind them
+    void truncate(int chunkCount) throws IOException {
+        var offset = chunkCount < chunks.size() ? chunks.get(chunkCount).offset() : length;
+        if (Files.exists(path)) {
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                if (fsync) {
+                    channel.force(false);
+                }
+            }
+        }
+        chunks.subList(Math.min(chunkCount, chunks.size()), chunks.size()).clear();
+        length = offset;
+        mapped = null;
+    }
+
+    // Mapping of every committed chunk, remapped after the file grew
+    ByteBuffer map() throws IOException {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        if (mapped == null) {
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+        }
+        return mapped;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+        chunks.clear();
+        length = 0;
+        mapped = null;
+    }
+
+    private static SegmentChunk.Header rebase(SegmentChunk.Header header, int offset) {
+        return new SegmentChunk.Header(offset, header.frameLength(), header.count(), header.minTimestamp(),
+                header.maxTimestamp(), header.absorbedTail(), header.counts(), header.sums(), header.mins(),
+                header.maxs(), header.sumSquares());
+    }
+}
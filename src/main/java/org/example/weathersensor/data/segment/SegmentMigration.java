@@ -0,0 +1,58 @@
+package org.example.weathersensor.data.segment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataRepository;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Copies the sensor_data table into an empty segment store when switching engines. Runs while the context starts,
+// before the hot window and the rollup backfill read from the store. The table itself is left untouched.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "segment")
+public class SegmentMigration implements InitializingBean {
+    private static final int PAGE_SIZE = 10_000;
+
+    private final SensorDataRepository repository;
+    private final SegmentSensorStore store;
+    private final SensorProperties properties;
+
+    public SegmentMigration(SensorDataRepository repository, SegmentSensorStore store, SensorProperties properties) {
+        this.repository = repository;
+        this.store = store;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.getStorage().getSegment().isMigrateFromJpa() && store.isEmpty()) {
+            migrate();
+        }
+    }
+
+    public long migrate() {
+        var copied = 0L;
+        var lastId = Long.MIN_VALUE;
+        List<SensorData> page;
+        do {
+            page = repository.findByIdGreaterThanOrderById(lastId, Limit.of(PAGE_SIZE));
+            if (!page.isEmpty()) {
+                store.saveAll(page);
+                copied += page.size();
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        // Everything copied is history, so all but the current partitions can be compacted right away
+        store.sealBefore(System.currentTimeMillis());
+        if (copied > 0) {
+            log.info("Copied {} readings from sensor_data into the segment store", copied);
+        }
+        return copied;
+    }
+}
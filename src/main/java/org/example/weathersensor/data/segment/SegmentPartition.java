@@ -0,0 +1,202 @@
+package org.example.weathersensor.data.segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Readings of one sensor within one time partition. Writes append small chunks to a tail file; once it holds enough
+// of them they are merged into one chunk appended to the base file. That chunk records the sequence of the tail it
+// absorbed, so a crash before the tail file is deleted never duplicates readings.
+final class SegmentPartition {
+    private final Path directory;
+    private final long start;
+    private final int maxChunkReadings;
+    private final int tailChunks;
+    private final boolean fsync;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private SegmentFile base;
+    private SegmentFile tail;
+    private long tailSequence;
+    private boolean dropped;
+
+    private SegmentPartition(Path directory, long start, int maxChunkReadings, int tailChunks, boolean fsync) {
+        this.directory = directory;
+        this.start = start;
+        this.maxChunkReadings = maxChunkReadings;
+        this.tailChunks = tailChunks;
+        this.fsync = fsync;
+    }
+
+    static SegmentPartition open(Path directory, long start, int maxChunkReadings, int tailChunks, boolean fsync)
+            throws IOException {
+        var partition = new SegmentPartition(directory, start, maxChunkReadings, tailChunks, fsync);
+        partition.base = SegmentFile.open(partition.basePath(), fsync);
+        var absorbed = partition.base.chunks().stream().mapToLong(SegmentChunk.Header::absorbedTail).max().orElse(0);
+        partition.tailSequence = absorbed + 1;
+        try (var files = Files.newDirectoryStream(directory, start + "-*.tail")) {
+            for (Path file : files) {
+                var name = file.getFileName().toString();
+                var sequence = Long.parseLong(name.substring(name.lastIndexOf('-') + 1, name.length() - ".tail".length()));
+                if (sequence <= absorbed) {
+                    Files.delete(file); // Already merged into the base before the crash
+                } else {
+                    partition.tailSequence = Math.max(partition.tailSequence, sequence);
+                }
+            }
+        }
+        partition.tail = SegmentFile.open(partition.tailPath(), fsync);
+        return partition;
+    }
+
+    long start() {
+        return start;
+    }
+
+    void append(List<SegmentChunk> chunks) throws IOException {
+        finish(stage(chunks), true);
+    }
+
+    // Appends the chunks to the tail and keeps the partition locked until finish, which keeps them or cuts them off
+    // again. Other writes and reads of the partition wait meanwhile, so nothing lands behind chunks that may go.
+    // Returns the mark finish cuts back to, negative if nothing was appended.
+    int stage(List<SegmentChunk> chunks) throws IOException {
+        List<byte[]> frames = new ArrayList<>(chunks.size());
+        for (SegmentChunk chunk : chunks) {
+            frames.add(chunk.encode(0));
+        }
+        lock.writeLock().lock();
+        if (dropped) {
+            return -1; // Expired by retention while the write was on its way, the readings are past retention too
+        }
+        var mark = tail.chunks().size();
+        try {
+            tail.append(frames);
+            return mark;
+        } catch (IOException | RuntimeException e) {
+            try {
+                tail.truncate(mark);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            lock.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    // Ends a stage on the thread that started it
+    void finish(int mark, boolean keep) throws IOException {
+        try {
+            if (mark < 0 || dropped) {
+                return;
+            }
+            if (!keep) {
+                tail.truncate(mark);
+            } else if (tail.chunks().size() >= tailChunks) {
+                absorbTail();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Folds the tail into the base and rewrites the base into as few chunks as possible,
+    // for partitions that no longer receive writes
+    void seal() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!tail.chunks().isEmpty()) {
+                absorbTail();
+            }
+            var readings = base.chunks().stream().mapToLong(SegmentChunk.Header::count).sum();
+            if (base.chunks().size() <= (readings + maxChunkReadings - 1) / maxChunkReadings) {
+                return;
+            }
+            var frames = encode(decodeAll(base), tailSequence - 1);
+            var rewritten = directory.resolve(start + ".seg.tmp");
+            Files.deleteIfExists(rewritten);
+            SegmentFile.open(rewritten, fsync).append(frames);
+            Files.move(rewritten, basePath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            base = SegmentFile.open(basePath(), fsync);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Deletes the files of the partition and returns the number of readings they held,
+    // readers that still hold the partition see it empty
+    long drop() throws IOException {
+        lock.writeLock().lock();
+        try {
+            var readings = 0L;
+            for (SegmentFile file : List.of(base, tail)) {
+                readings += file.chunks().stream().mapToLong(SegmentChunk.Header::count).sum();
+                file.delete();
+            }
+            dropped = true;
+            return readings;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Hands every chunk overlapping the range to the visitor, together with the mapping it lives in
+    void read(long from, long to, ChunkVisitor visitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (dropped) {
+                return;
+            }
+            for (SegmentFile file : List.of(base, tail)) {
+                var buffer = file.map();
+                for (SegmentChunk.Header header : file.chunks()) {
+                    if (header.overlaps(from, to)) {
+                        visitor.visit(header, buffer);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void absorbTail() throws IOException {
+        base.append(encode(decodeAll(tail), tailSequence));
+        tail.delete();
+        tailSequence++;
+        tail = SegmentFile.open(tailPath(), fsync);
+    }
+
+    private SegmentChunk decodeAll(SegmentFile file) throws IOException {
+        var buffer = file.map();
+        List<SegmentChunk> chunks = new ArrayList<>(file.chunks().size());
+        for (SegmentChunk.Header header : file.chunks()) {
+            chunks.add(SegmentChunk.decode(buffer, header));
+        }
+        return SegmentChunk.merge(chunks);
+    }
+
+    private List<byte[]> encode(SegmentChunk merged, long absorbedTail) {
+        List<byte[]> frames = new ArrayList<>();
+        for (SegmentChunk chunk : merged.split(maxChunkReadings)) {
+            frames.add(chunk.encode(absorbedTail));
+        }
+        return frames;
+    }
+
+    private Path basePath() {
+        return directory.resolve(start + ".seg");
+    }
+
+    private Path tailPath() {
+        return directory.resolve(start + "-" + tailSequence + ".tail");
+    }
+
+    interface ChunkVisitor {
+        void visit(SegmentChunk.Header header, ByteBuffer buffer);
+    }
+}
@@ -0,0 +1,403 @@
+package org.example.weathersensor.data.segment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Append-only store of compressed per sensor, per time partition segment files under sensor.storage.segment.directory,
+// one directory per sensor named after the hex of its id. Files are read through memory mappings and aggregates use
+// the summaries in the chunk headers wherever a chunk lies entirely inside the range.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "segment")
+public class SegmentSensorStore implements SensorStore {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final SensorProperties.Segment settings;
+    private final long partitionMillis;
+    private final Map<String, ConcurrentSkipListMap<Long, SegmentPartition>> sensors = new ConcurrentHashMap<>();
+    private final RecentSequences sequences;
+
+    public SegmentSensorStore(SensorProperties properties) throws IOException {
+        this.settings = properties.getStorage().getSegment();
+        this.partitionMillis = settings.getPartition().toMillis();
+        this.sequences = new RecentSequences(settings.getRecentSequences());
+        Files.createDirectories(settings.getDirectory());
+        try (var directories = Files.newDirectoryStream(settings.getDirectory(), Files::isDirectory)) {
+            for (Path directory : directories) {
+                var sensorId = new String(HEX.parseHex(directory.getFileName().toString()), StandardCharsets.UTF_8);
+                for (long start : partitionStarts(directory)) {
+                    partitionsOf(sensorId).put(start, openPartition(directory, start));
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return sensors.isEmpty();
+    }
+
+    // Files cannot be rolled back together with the rollups and sketches of the same readings. Inside a transaction
+    // the chunks are appended right before it commits and their partitions stay locked until it completed, a rolled
+    // back commit cuts them off again; a failed append fails the commit. Outside of one they are appended right away.
+    @Override
+    public List<SensorData> saveAll(List<SensorData> readings) {
+        var write = new StagedWrite(readings);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(write);
+            return readings;
+        }
+        var staged = false;
+        try {
+            write.stage();
+            staged = true;
+        } finally {
+            write.finish(staged);
+        }
+        return readings;
+    }
+
+    // Segments never go through JPA, bulk loads take the same path as every other write
+    @Override
+    public void insertAll(List<SensorData> readings) {
+        saveAll(readings);
+    }
+
+    @Override
+    public List<SensorData> findBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        var from = startDate.getTime();
+        var to = endDate.getTime();
+        List<SensorData> readings = new ArrayList<>();
+        for (SegmentPartition partition : partitionsBetween(sensorId, from, to)) {
+            read(sensorId, partition, from, to, (header, buffer) ->
+                    readings.addAll(SegmentChunk.decode(buffer, header).toReadings(sensorId, from, to)));
+        }
+        readings.sort(Comparator.comparing(SensorData::getTimestamp));
+        return readings;
+    }
+
+    // Decodes one partition at a time, memory is bounded by the readings of a sensor within one partition
+    @Override
+    public Stream<SensorData> streamBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        var from = startDate.getTime();
+        var to = endDate.getTime();
+        return partitionsBetween(sensorId, from, to).stream().flatMap(partition -> {
+            List<SensorData> readings = new ArrayList<>();
+            read(sensorId, partition, from, to, (header, buffer) ->
+                    readings.addAll(SegmentChunk.decode(buffer, header).toReadings(sensorId, from, to)));
+            readings.sort(Comparator.comparing(SensorData::getTimestamp));
+            return readings.stream();
+        });
+    }
+
+    @Override
+    public SensorDataAggregate aggregateBySensorIdInAndTimestampBetween(Collection<String> sensorIds, Date startDate, Date endDate) {
+        var from = startDate.getTime();
+        var to = endDate.getTime();
+        var metrics = SegmentChunk.METRICS.length;
+        var counts = new long[metrics];
+        var sums = new double[metrics];
+        var mins = new double[metrics];
+        var maxs = new double[metrics];
+        var sumSquares = new double[metrics];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+
+        for (String sensorId : new LinkedHashSet<>(sensorIds)) {
+            for (SegmentPartition partition : partitionsBetween(sensorId, from, to)) {
+                read(sensorId, partition, from, to, (header, buffer) -> {
+                    if (header.within(from, to)) {
+                        for (int m = 0; m < metrics; m++) {
+                            counts[m] += header.counts()[m];
+                            sums[m] += header.sums()[m];
+                            mins[m] = Math.min(mins[m], header.mins()[m]);
+                            maxs[m] = Math.max(maxs[m], header.maxs()[m]);
+                            sumSquares[m] += header.sumSquares()[m];
+                        }
+                        return;
+                    }
+                    var chunk = SegmentChunk.decode(buffer, header);
+                    for (int i = 0; i < chunk.count; i++) {
+                        if (chunk.timestamps[i] < from || chunk.timestamps[i] > to) {
+                            continue;
+                        }
+                        for (int m = 0; m < metrics; m++) {
+                            var value = chunk.values[m][i];
+                            if (!Double.isNaN(value)) {
+                                counts[m]++;
+                                sums[m] += value;
+                                mins[m] = Math.min(mins[m], value);
+                                maxs[m] = Math.max(maxs[m], value);
+                                sumSquares[m] += value * value;
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        // Same shape as the SQL aggregate, everything but the count is null without readings
+        return new SensorDataAggregate(
+                counts[0], orNull(counts[0], sums[0]), orNull(counts[0], mins[0]), orNull(counts[0], maxs[0]), orNull(counts[0], sumSquares[0]),
+                counts[1], orNull(counts[1], sums[1]), orNull(counts[1], mins[1]), orNull(counts[1], maxs[1]), orNull(counts[1], sumSquares[1]),
+                counts[2], orNull(counts[2], sums[2]), orNull(counts[2], mins[2]), orNull(counts[2], maxs[2]), orNull(counts[2], sumSquares[2]));
+    }
+
+    private static Double orNull(long count, double value) {
+        return count == 0 ? null : value;
+    }
+
+    // Every sensor is summed from its own chunk headers, sensors without a partition in the range are skipped
+    @Override
+    public void aggregateBySensor(Collection<String> sensorIds, Date startDate, Date endDate,
+                                  BiConsumer<String, SensorDataAggregate> consumer) {
+        for (String sensorId : sensorIds == null ? sensors.keySet() : new LinkedHashSet<>(sensorIds)) {
+            if (partitionsBetween(sensorId, startDate.getTime(), endDate.getTime()).isEmpty()) {
+                continue;
+            }
+            var aggregate = aggregateBySensorIdInAndTimestampBetween(List.of(sensorId), startDate, endDate);
+            if (Arrays.stream(SegmentChunk.METRICS).anyMatch(metric -> aggregate.count(metric) > 0)) {
+                consumer.accept(sensorId, aggregate);
+            }
+        }
+    }
+
+    // Only the newest partition of every sensor is decoded
+    @Override
+    public void latestBySensor(Consumer<SensorData> consumer) {
+        for (var sensor : sensors.entrySet()) {
+            var newest = sensor.getValue().lastEntry();
+            if (newest == null) {
+                continue;
+            }
+            try (var readings = streamBySensorIdAndTimestampBetween(sensor.getKey(), new Date(newest.getKey()),
+                    new Date(Long.MAX_VALUE))) {
+                readings.reduce((earlier, later) -> later).ifPresent(consumer);
+            }
+        }
+    }
+
+    @Override
+    public void scanBySensor(Collection<String> sensorIds, Date startDate, Date endDate, Consumer<SensorData> consumer) {
+        for (String sensorId : sensorIds == null ? sensors.keySet() : new LinkedHashSet<>(sensorIds)) {
+            try (var readings = streamBySensorIdAndTimestampBetween(sensorId, startDate, endDate)) {
+                readings.forEach(consumer);
+            }
+        }
+    }
+
+    @Override
+    public void scan(Date since, int pageSize, Consumer<List<SensorData>> consumer) {
+        var from = since == null ? Long.MIN_VALUE : since.getTime();
+        List<SensorData> page = new ArrayList<>(pageSize);
+        for (String sensorId : sensors.keySet()) {
+            for (SegmentPartition partition : partitionsBetween(sensorId, from, Long.MAX_VALUE)) {
+                read(sensorId, partition, from, Long.MAX_VALUE, (header, buffer) -> {
+                    for (SensorData reading : SegmentChunk.decode(buffer, header).toReadings(sensorId, from, Long.MAX_VALUE)) {
+                        page.add(reading);
+                        if (page.size() == pageSize) {
+                            consumer.accept(List.copyOf(page));
+                            page.clear();
+                        }
+                    }
+                });
+            }
+        }
+        if (!page.isEmpty()) {
+            consumer.accept(page);
+        }
+    }
+
+    // Chunks do not keep sequence numbers, so only the recent ones written since startup are known. Anything else is
+    // reported as not stored: a retry beyond that is stored twice rather than a new reading dropped.
+    @Override
+    public boolean containsSequence(String sensorId, long sequenceNumber) {
+        return sequences.contains(sensorId, sequenceNumber);
+    }
+
+    // Dropping a partition is a file delete, the limit only decides when to return after a partition
+    @Override
+    public long deleteBefore(Date before, int limit) {
+        var cutoff = before.getTime();
+        var deleted = 0L;
+        for (var sensor : sensors.entrySet()) {
+            var partitions = sensor.getValue();
+            for (SegmentPartition partition : partitions.headMap(cutoff - partitionMillis, true).values()) {
+                partitions.remove(partition.start(), partition);
+                try {
+                    deleted += partition.drop();
+                } catch (IOException e) {
+                    throw new DataAccessResourceFailureException("Could not drop segment of sensor " + sensor.getKey(), e);
+                }
+                if (deleted >= limit) {
+                    return deleted;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    // Compacts the partitions that ended before now, they no longer receive writes from live ingest
+    @Scheduled(fixedDelayString = "${sensor.storage.segment.seal-interval:PT1H}")
+    public void sealPartitions() {
+        sealBefore(System.currentTimeMillis());
+    }
+
+    public void sealBefore(long timestamp) {
+        sensors.forEach((sensorId, partitions) -> partitions.headMap(partitionStart(timestamp) - partitionMillis, true)
+                .values().forEach(partition -> {
+                    try {
+                        partition.seal();
+                    } catch (IOException e) {
+                        log.warn("Could not seal partition {} of sensor {}", partition.start(), sensorId, e);
+                    }
+                }));
+    }
+
+    private void read(String sensorId, SegmentPartition partition, long from, long to, SegmentPartition.ChunkVisitor visitor) {
+        try {
+            partition.read(from, to, visitor);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not read segment of sensor " + sensorId, e);
+        }
+    }
+
+    private Collection<SegmentPartition> partitionsBetween(String sensorId, long from, long to) {
+        var partitions = sensors.get(sensorId);
+        if (partitions == null || from > to) {
+            return List.of();
+        }
+        var fromStart = from == Long.MIN_VALUE ? Long.MIN_VALUE : partitionStart(from);
+        return partitions.subMap(fromStart, true, to, true).values();
+    }
+
+    private ConcurrentSkipListMap<Long, SegmentPartition> partitionsOf(String sensorId) {
+        return sensors.computeIfAbsent(sensorId, id -> new ConcurrentSkipListMap<>());
+    }
+
+    private SegmentPartition partition(String sensorId, long start) throws IOException {
+        var partitions = partitionsOf(sensorId);
+        var partition = partitions.get(start);
+        if (partition != null) {
+            return partition;
+        }
+        synchronized (partitions) {
+            partition = partitions.get(start);
+            if (partition == null) {
+                var directory = settings.getDirectory().resolve(HEX.formatHex(sensorId.getBytes(StandardCharsets.UTF_8)));
+                Files.createDirectories(directory);
+                partition = openPartition(directory, start);
+                partitions.put(start, partition);
+            }
+            return partition;
+        }
+    }
+
+    private SegmentPartition openPartition(Path directory, long start) throws IOException {
+        return SegmentPartition.open(directory, start, Math.max(1, settings.getMaxChunkReadings()),
+                Math.max(1, settings.getTailChunks()), settings.isFsync());
+    }
+
+    private long partitionStart(long timestamp) {
+        return Math.floorDiv(timestamp, partitionMillis) * partitionMillis;
+    }
+
+    // The chunks of one write, staged partition by partition in sensor and time order, so concurrent writes lock the
+    // partitions they share in the same order
+    private final class StagedWrite implements TransactionSynchronization {
+        private final Map<String, Map<Long, List<SensorData>>> grouped;
+        private final List<Stage> stages = new ArrayList<>();
+
+        StagedWrite(List<SensorData> readings) {
+            grouped = readings.stream().collect(Collectors.groupingBy(SensorData::getSensorId, TreeMap::new,
+                    Collectors.groupingBy(reading -> partitionStart(reading.getTimestamp().getTime()), TreeMap::new,
+                            Collectors.toList())));
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            stage();
+        }
+
+        @Override
+        public void afterCommit() {
+            finish(true); // Before the listeners, which must not wait on the partitions
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            finish(status == STATUS_COMMITTED);
+        }
+
+        void stage() {
+            grouped.forEach((sensorId, partitions) -> partitions.forEach((start, partitionReadings) -> {
+                try {
+                    var partition = partition(sensorId, start);
+                    var chunks = SegmentChunk.of(partitionReadings).split(settings.getMaxChunkReadings());
+                    stages.add(new Stage(sensorId, partition, partition.stage(chunks), partitionReadings));
+                } catch (IOException e) {
+                    throw new DataAccessResourceFailureException("Could not write segment of sensor " + sensorId, e);
+                }
+            }));
+        }
+
+        // Releases every partition, kept chunks are durable already so a failed merge of the tail only delays it
+        void finish(boolean keep) {
+            for (Stage stage : stages) {
+                try {
+                    stage.partition().finish(stage.mark(), keep);
+                } catch (IOException e) {
+                    log.error("Could not {} segment of sensor {}", keep ? "merge tail of" : "cut rolled back chunks off",
+                            stage.sensorId(), e);
+                }
+                if (keep) {
+                    stage.readings().stream()
+                            .filter(reading -> reading.getSequenceNumber() != null)
+                            .forEach(reading -> sequences.add(stage.sensorId(), reading.getSequenceNumber()));
+                }
+            }
+            stages.clear();
+        }
+    }
+
+    private record Stage(String sensorId, SegmentPartition partition, int mark, List<SensorData> readings) {
+    }
+
+    // Partitions present as a base or tail file, leftovers of an interrupted seal are dropped
+    private static SortedSet<Long> partitionStarts(Path directory) throws IOException {
+        SortedSet<Long> starts = new TreeSet<>();
+        try (var files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                var name = file.getFileName().toString();
+                if (name.endsWith(".seg.tmp")) {
+                    Files.delete(file);
+                } else if (name.endsWith(".seg")) {
+                    starts.add(Long.parseLong(name.substring(0, name.length() - ".seg".length())));
+                } else if (name.endsWith(".tail")) {
+                    starts.add(Long.parseLong(name.substring(0, name.lastIndexOf('-'))));
+                }
+            }
+        }
+        return starts;
+    }
+}
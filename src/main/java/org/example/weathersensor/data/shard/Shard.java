@@ -0,0 +1,192 @@
+package org.example.weathersensor.data.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorDataRows;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.example.weathersensor.data.SensorDataRows.AGGREGATES;
+import static org.example.weathersensor.data.SensorDataRows.COLUMNS;
+import static org.example.weathersensor.data.SensorDataRows.READING;
+
+// One database holding the sensor_data rows of the sensors the ring assigns to it, with its own connection pool.
+// Ids are unique across shards: the shard's own sequence times MAX_SHARDS plus the shard index, so rows keep their id
+// when they move to another shard.
+final class Shard implements AutoCloseable {
+    static final int MAX_SHARDS = 1024;
+
+    private static final String INSERT = "INSERT INTO sensor_data (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE = "MERGE INTO sensor_data (" + COLUMNS + ") KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND = "SELECT " + COLUMNS + " FROM sensor_data WHERE sensor_id = ? " +
+            "AND timestamp BETWEEN ? AND ? ORDER BY timestamp";
+    private static final String AGGREGATE = "SELECT " + AGGREGATES + " FROM sensor_data " +
+            "WHERE sensor_id IN (%s) AND timestamp BETWEEN ? AND ?";
+
+    private final int index;
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    Shard(int index, String url, String username, String password, int poolSize) {
+        this.index = index;
+        dataSource = new HikariDataSource();
+        dataSource.setPoolName("shard-" + index);
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setMaximumPoolSize(Math.max(1, poolSize));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(1000);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sensor_data (id BIGINT PRIMARY KEY, sensor_id VARCHAR(255), " +
+                "timestamp TIMESTAMP(6), temperature DOUBLE PRECISION, humidity DOUBLE PRECISION, wind_speed DOUBLE PRECISION, sequence_number BIGINT)");
+        // Shards created before readings had sequence numbers
+        jdbcTemplate.execute("ALTER TABLE sensor_data ADD COLUMN IF NOT EXISTS sequence_number BIGINT");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_sensor_data_sensor_id_timestamp ON sensor_data (sensor_id, timestamp)");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_sensor_data_sensor_id_sequence_number " +
+                "ON sensor_data (sensor_id, sequence_number)");
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS sensor_data_seq");
+    }
+
+    int index() {
+        return index;
+    }
+
+    boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT id FROM sensor_data FETCH FIRST 1 ROWS ONLY", Long.class).isEmpty();
+    }
+
+    // Gives the readings the ids they are inserted with
+    void assignIds(List<SensorData> readings) {
+        var ids = jdbcTemplate.queryForList("SELECT NEXT VALUE FOR sensor_data_seq FROM SYSTEM_RANGE(1, ?)",
+                Long.class, readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            readings.get(i).setId(ids.get(i) * MAX_SHARDS + index);
+        }
+    }
+
+    // New rows of readings that got their ids, a failing row leaves the ones before it stored
+    void insert(List<SensorData> readings) {
+        write(INSERT, readings);
+    }
+
+    // Removes the rows of readings inserted before, for writes that did not commit after all
+    void delete(List<SensorData> readings) {
+        jdbcTemplate.batchUpdate("DELETE FROM sensor_data WHERE id = ?", readings, readings.size(),
+                (statement, reading) -> statement.setLong(1, reading.getId()));
+    }
+
+    // Rows that already have an id, writing them again is harmless
+    void merge(List<SensorData> readings) {
+        write(MERGE, readings);
+    }
+
+    private void write(String sql, List<SensorData> readings) {
+        jdbcTemplate.batchUpdate(sql, readings, readings.size(), Shard::bind);
+    }
+
+    private static void bind(PreparedStatement statement, SensorData reading) throws SQLException {
+        statement.setLong(1, reading.getId());
+        statement.setString(2, reading.getSensorId());
+        statement.setTimestamp(3, new Timestamp(reading.getTimestamp().getTime()));
+        statement.setObject(4, reading.getTemperature(), Types.DOUBLE);
+        statement.setObject(5, reading.getHumidity(), Types.DOUBLE);
+        statement.setObject(6, reading.getWindSpeed(), Types.DOUBLE);
+        statement.setObject(7, reading.getSequenceNumber(), Types.BIGINT);
+    }
+
+    // Starts new ids past the given one, after rows were copied in from elsewhere
+    void reserveIdsUpTo(long id) {
+        var next = id / MAX_SHARDS + 1;
+        var current = jdbcTemplate.queryForObject("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES " +
+                "WHERE SEQUENCE_NAME = 'SENSOR_DATA_SEQ'", Long.class);
+        if (current == null || current < next) {
+            jdbcTemplate.execute("ALTER SEQUENCE sensor_data_seq RESTART WITH " + next);
+        }
+    }
+
+    List<SensorData> find(String sensorId, Date start, Date end) {
+        return jdbcTemplate.query(FIND, READING, sensorId, new Timestamp(start.getTime()), new Timestamp(end.getTime()));
+    }
+
+    // Holds a connection until closed
+    Stream<SensorData> stream(String sensorId, Date start, Date end) {
+        return jdbcTemplate.queryForStream(FIND, READING, sensorId, new Timestamp(start.getTime()), new Timestamp(end.getTime()));
+    }
+
+    SensorDataAggregate aggregate(Collection<String> sensorIds, Date start, Date end) {
+        var sql = AGGREGATE.formatted(SensorDataRows.placeholders(sensorIds.size()));
+        var args = new Object[sensorIds.size() + 2];
+        var i = 0;
+        for (String sensorId : sensorIds) {
+            args[i++] = sensorId;
+        }
+        args[i++] = new Timestamp(start.getTime());
+        args[i] = new Timestamp(end.getTime());
+        return jdbcTemplate.queryForObject(sql, (rs, row) -> SensorDataRows.aggregate(rs, 1), args);
+    }
+
+    void aggregateBySensor(Collection<String> sensorIds, Date start, Date end,
+                           BiConsumer<String, SensorDataAggregate> consumer) {
+        SensorDataRows.aggregateBySensor(jdbcTemplate, sensorIds, start, end, consumer);
+    }
+
+    void scanBySensor(Collection<String> sensorIds, Date start, Date end, Consumer<SensorData> consumer) {
+        SensorDataRows.scanBySensor(jdbcTemplate, sensorIds, start, end, consumer);
+    }
+
+    void latestBySensor(Consumer<SensorData> consumer) {
+        SensorDataRows.latestBySensor(jdbcTemplate, consumer);
+    }
+
+    boolean containsSequence(String sensorId, long sequenceNumber) {
+        return SensorDataRows.containsSequence(jdbcTemplate, sensorId, sequenceNumber);
+    }
+
+    void recentSequences(int limit, BiConsumer<String, Long> consumer) {
+        SensorDataRows.recentSequences(jdbcTemplate, limit, consumer);
+    }
+
+    // Keyset pages in id order, since is inclusive and may be null
+    List<SensorData> page(Long afterId, Date since, int pageSize) {
+        var after = afterId == null ? Long.MIN_VALUE : afterId;
+        return since == null
+                ? jdbcTemplate.query("SELECT " + COLUMNS + " FROM sensor_data WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY",
+                        READING, after, pageSize)
+                : jdbcTemplate.query("SELECT " + COLUMNS + " FROM sensor_data WHERE id > ? AND timestamp >= ? ORDER BY id FETCH FIRST ? ROWS ONLY",
+                        READING, after, new Timestamp(since.getTime()), pageSize);
+    }
+
+    // Every reading of the sensor, holds a connection until closed
+    Stream<SensorData> streamSensor(String sensorId) {
+        return jdbcTemplate.queryForStream("SELECT " + COLUMNS + " FROM sensor_data WHERE sensor_id = ?", READING, sensorId);
+    }
+
+    List<String> sensorIds() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT sensor_id FROM sensor_data", String.class);
+    }
+
+    int deleteSensor(String sensorId, int limit) {
+        return jdbcTemplate.update("DELETE FROM sensor_data WHERE sensor_id = ? FETCH FIRST ? ROWS ONLY", sensorId, limit);
+    }
+
+    int deleteBefore(Date before, int limit) {
+        return jdbcTemplate.update("DELETE FROM sensor_data WHERE timestamp < ? FETCH FIRST ? ROWS ONLY",
+                new Timestamp(before.getTime()), limit);
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
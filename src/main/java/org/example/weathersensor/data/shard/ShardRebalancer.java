@@ -0,0 +1,102 @@
+package org.example.weathersensor.data.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataRepository;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Puts readings where the ring wants them while the context starts, before anything reads from the store: copies the
+// sensor_data table into empty shards when switching engines, and moves the sensors whose shard changed, e.g. after
+// shards were added. Rows keep their ids and are copied before they are deleted, so an interrupted run is simply
+// repeated on the next start.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "sharded")
+public class ShardRebalancer implements InitializingBean {
+    private static final int PAGE_SIZE = 10_000;
+
+    private final SensorDataRepository repository;
+    private final ShardedSensorStore store;
+    private final SensorProperties properties;
+
+    public ShardRebalancer(SensorDataRepository repository, ShardedSensorStore store, SensorProperties properties) {
+        this.repository = repository;
+        this.store = store;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        var settings = properties.getStorage().getSharded();
+        if (settings.isMigrateFromJpa() && store.isEmpty()) {
+            migrate();
+        } else if (settings.isRebalanceOnStartup()) {
+            rebalance();
+        }
+    }
+
+    // The table itself is left untouched
+    public long migrate() {
+        var copied = 0L;
+        var lastId = Long.MIN_VALUE;
+        List<SensorData> page;
+        do {
+            page = repository.findByIdGreaterThanOrderById(lastId, Limit.of(PAGE_SIZE));
+            if (!page.isEmpty()) {
+                store.mergeAll(page);
+                copied += page.size();
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        if (copied > 0) {
+            log.info("Copied {} readings from sensor_data into {} shards", copied, store.shards().size());
+        }
+        return copied;
+    }
+
+    // Returns the number of readings moved
+    public long rebalance() {
+        var moved = 0L;
+        for (Shard shard : store.shards()) {
+            for (String sensorId : shard.sensorIds()) {
+                var target = store.shardOf(sensorId);
+                if (target != shard) {
+                    var readings = move(sensorId, shard);
+                    log.info("Moved {} readings of sensor {} from shard {} to shard {}", readings, sensorId,
+                            shard.index(), target.index());
+                    moved += readings;
+                }
+            }
+        }
+        return moved;
+    }
+
+    // Copies to wherever mergeAll routes the sensor now, then deletes from the source
+    private long move(String sensorId, Shard source) {
+        var copied = 0L;
+        try (var readings = source.streamSensor(sensorId)) {
+            List<SensorData> page = new ArrayList<>(PAGE_SIZE);
+            for (var iterator = readings.iterator(); iterator.hasNext(); ) {
+                page.add(iterator.next());
+                if (page.size() == PAGE_SIZE || !iterator.hasNext()) {
+                    store.mergeAll(page);
+                    copied += page.size();
+                    page.clear();
+                }
+            }
+        }
+        // Deleted in chunks to keep every transaction small
+        int deleted;
+        do {
+            deleted = source.deleteSensor(sensorId, PAGE_SIZE);
+        } while (deleted == PAGE_SIZE);
+        return copied;
+    }
+}
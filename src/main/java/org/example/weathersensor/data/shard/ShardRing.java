@@ -0,0 +1,42 @@
+package org.example.weathersensor.data.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+// Consistent hash ring: every shard owns many points on a 64 bit ring and a sensor belongs to the shard of the first
+// point at or after its hash. Adding a shard only moves the sensors that land on its new points, about 1/n of them.
+final class ShardRing {
+    private final TreeMap<Long, Integer> points = new TreeMap<>();
+
+    ShardRing(int shards, int virtualNodes) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            for (int node = 0; node < Math.max(1, virtualNodes); node++) {
+                points.putIfAbsent(hash("shard-" + shard + "#" + node), shard);
+            }
+        }
+    }
+
+    int shardOf(String sensorId) {
+        var point = points.ceilingEntry(hash(sensorId));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    // FNV-1a over the UTF-8 bytes, spread over all 64 bits by the murmur3 finalizer. Stable across versions and
+    // restarts, which the placement of stored readings depends on.
+    static long hash(String value) {
+        var h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
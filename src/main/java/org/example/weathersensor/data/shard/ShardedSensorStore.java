@@ -0,0 +1,279 @@
+package org.example.weathersensor.data.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Readings spread over sensor.storage.sharded.shards databases, every sensor kept whole in the shard the consistent
+// hash ring assigns to it. Each shard has its own pool and its own writer lock, so writes of sensors on different
+// shards never wait for each other. Aggregates over sensors of several shards are split per shard by split, which
+// the caller runs concurrently and merges.
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "sensor.storage", name = "engine", havingValue = "sharded")
+public class ShardedSensorStore implements SensorStore, DisposableBean {
+    private final List<Shard> shards = new ArrayList<>();
+    private final ShardRing ring;
+
+    public ShardedSensorStore(SensorProperties properties) {
+        var settings = properties.getStorage().getSharded();
+        if (settings.getShards() > Shard.MAX_SHARDS) {
+            throw new IllegalArgumentException("At most " + Shard.MAX_SHARDS + " shards are supported");
+        }
+        ring = new ShardRing(settings.getShards(), settings.getVirtualNodes());
+        for (int i = 0; i < settings.getShards(); i++) {
+            shards.add(new Shard(i, settings.getUrl().formatted(i), settings.getUsername(), settings.getPassword(),
+                    settings.getPoolSize()));
+        }
+    }
+
+    List<Shard> shards() {
+        return shards;
+    }
+
+    Shard shardOf(String sensorId) {
+        return shards.get(ring.shardOf(sensorId));
+    }
+
+    public boolean isEmpty() {
+        return shards.stream().allMatch(Shard::isEmpty);
+    }
+
+    // Every shard commits on its own. Inside a transaction the rows are inserted right before it commits and deleted
+    // again if it rolls back after all, so a failed write that is retried is not stored twice. A shard that fails
+    // fails the commit, after removing what it and the shards before it inserted.
+    @Override
+    public List<SensorData> saveAll(List<SensorData> readings) {
+        var write = new ShardWrite(byShard(readings));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(write);
+        } else {
+            write.insert();
+        }
+        return readings;
+    }
+
+    @Override
+    public void insertAll(List<SensorData> readings) {
+        saveAll(readings);
+    }
+
+    // Rows keep their ids, so copying them again does not duplicate them. Ids copied in from elsewhere are not of the
+    // shard form, so every shard starts its new ids past all of them, not only past those it received.
+    public void mergeAll(List<SensorData> readings) {
+        byShard(readings).forEach(Shard::merge);
+        var maxId = readings.stream().mapToLong(SensorData::getId).max().orElse(0);
+        shards.forEach(shard -> shard.reserveIdsUpTo(maxId));
+    }
+
+    private Map<Shard, List<SensorData>> byShard(List<SensorData> readings) {
+        return readings.stream().collect(Collectors.groupingBy(reading -> shardOf(reading.getSensorId()),
+                () -> new TreeMap<>(Comparator.comparingInt(Shard::index)), Collectors.toList()));
+    }
+
+    // The readings of one write per shard, with their ids assigned up front so the stored readings can be returned
+    // before they are inserted
+    private static final class ShardWrite implements TransactionSynchronization {
+        private final Map<Shard, List<SensorData>> groups;
+        private final List<Shard> attempted = new ArrayList<>();
+
+        ShardWrite(Map<Shard, List<SensorData>> groups) {
+            this.groups = groups;
+            groups.forEach(Shard::assignIds);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            insert();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status != STATUS_COMMITTED && !attempted.isEmpty()) {
+                try {
+                    remove();
+                } catch (RuntimeException e) {
+                    log.error("Could not remove the rows of a rolled back write from the shards", e);
+                }
+            }
+        }
+
+        void insert() {
+            try {
+                groups.forEach((shard, readings) -> {
+                    attempted.add(shard);
+                    shard.insert(readings);
+                });
+            } catch (RuntimeException e) {
+                try {
+                    remove();
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        private void remove() {
+            for (Shard shard : attempted) {
+                shard.delete(groups.get(shard));
+            }
+            attempted.clear();
+        }
+    }
+
+    @Override
+    public List<SensorData> findBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        return shardOf(sensorId).find(sensorId, startDate, endDate);
+    }
+
+    @Override
+    public Stream<SensorData> streamBySensorIdAndTimestampBetween(String sensorId, Date startDate, Date endDate) {
+        return shardOf(sensorId).stream(sensorId, startDate, endDate);
+    }
+
+    // One group per shard holding any of the sensors, so every query runs against a single database
+    @Override
+    public List<List<String>> split(Set<String> sensorIds, int parts) {
+        Map<Shard, List<String>> groups = new TreeMap<>(Comparator.comparingInt(Shard::index));
+        for (String sensorId : sensorIds) {
+            groups.computeIfAbsent(shardOf(sensorId), shard -> new ArrayList<>()).add(sensorId);
+        }
+        return groups.isEmpty() ? List.of(List.of()) : List.copyOf(groups.values());
+    }
+
+    // Sensors of several shards are queried one shard after another, callers wanting them concurrently use split
+    @Override
+    public SensorDataAggregate aggregateBySensorIdInAndTimestampBetween(Collection<String> sensorIds, Date startDate, Date endDate) {
+        List<SensorDataAggregate> partials = new ArrayList<>();
+        for (List<String> group : split(new LinkedHashSet<>(sensorIds), shards.size())) {
+            if (!group.isEmpty()) {
+                partials.add(shardOf(group.get(0)).aggregate(group, startDate, endDate));
+            }
+        }
+        return merge(partials);
+    }
+
+    // Shard after shard, a sensor is only ever kept in one of them
+    @Override
+    public void aggregateBySensor(Collection<String> sensorIds, Date startDate, Date endDate,
+                                  BiConsumer<String, SensorDataAggregate> consumer) {
+        forEachShard(sensorIds, (shard, group) -> shard.aggregateBySensor(group, startDate, endDate, consumer));
+    }
+
+    @Override
+    public void scanBySensor(Collection<String> sensorIds, Date startDate, Date endDate, Consumer<SensorData> consumer) {
+        forEachShard(sensorIds, (shard, group) -> shard.scanBySensor(group, startDate, endDate, consumer));
+    }
+
+    @Override
+    public void latestBySensor(Consumer<SensorData> consumer) {
+        shards.forEach(shard -> shard.latestBySensor(consumer));
+    }
+
+    @Override
+    public boolean containsSequence(String sensorId, long sequenceNumber) {
+        return shardOf(sensorId).containsSequence(sensorId, sequenceNumber);
+    }
+
+    // An equal share from every shard, shard by shard, since ids of different shards do not tell which came first
+    @Override
+    public void recentSequences(int limit, BiConsumer<String, Long> consumer) {
+        var share = (limit + shards.size() - 1) / shards.size();
+        shards.forEach(shard -> shard.recentSequences(share, consumer));
+    }
+
+    // Every shard with all of its sensors when sensorIds is null
+    private void forEachShard(Collection<String> sensorIds, BiConsumer<Shard, Collection<String>> action) {
+        if (sensorIds == null) {
+            shards.forEach(shard -> action.accept(shard, null));
+            return;
+        }
+        for (List<String> group : split(new LinkedHashSet<>(sensorIds), shards.size())) {
+            if (!group.isEmpty()) {
+                action.accept(shardOf(group.get(0)), group);
+            }
+        }
+    }
+
+    static SensorDataAggregate merge(List<SensorDataAggregate> partials) {
+        if (partials.size() == 1) {
+            return partials.get(0);
+        }
+        var metrics = Metric.values();
+        var counts = new long[metrics.length];
+        var sums = new double[metrics.length];
+        var mins = new double[metrics.length];
+        var maxs = new double[metrics.length];
+        var sumSquares = new double[metrics.length];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        for (SensorDataAggregate partial : partials) {
+            for (int m = 0; m < metrics.length; m++) {
+                if (partial.count(metrics[m]) == 0) {
+                    continue;
+                }
+                counts[m] += partial.count(metrics[m]);
+                sums[m] += partial.sum(metrics[m]);
+                mins[m] = Math.min(mins[m], partial.min(metrics[m]));
+                maxs[m] = Math.max(maxs[m], partial.max(metrics[m]));
+                sumSquares[m] += partial.sumSquares(metrics[m]);
+            }
+        }
+        // Same shape as the SQL aggregate, everything but the count is null without readings
+        return new SensorDataAggregate(
+                counts[0], orNull(counts[0], sums[0]), orNull(counts[0], mins[0]), orNull(counts[0], maxs[0]), orNull(counts[0], sumSquares[0]),
+                counts[1], orNull(counts[1], sums[1]), orNull(counts[1], mins[1]), orNull(counts[1], maxs[1]), orNull(counts[1], sumSquares[1]),
+                counts[2], orNull(counts[2], sums[2]), orNull(counts[2], mins[2]), orNull(counts[2], maxs[2]), orNull(counts[2], sumSquares[2]));
+    }
+
+    private static Double orNull(long count, double value) {
+        return count == 0 ? null : value;
+    }
+
+    @Override
+    public long deleteBefore(Date before, int limit) {
+        long deleted = 0;
+        for (Shard shard : shards) {
+            deleted += shard.deleteBefore(before, (int) (limit - deleted));
+            if (deleted >= limit) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void scan(Date since, int pageSize, Consumer<List<SensorData>> consumer) {
+        for (Shard shard : shards) {
+            Long lastId = null;
+            List<SensorData> page;
+            do {
+                page = shard.page(lastId, since, pageSize);
+                if (!page.isEmpty()) {
+                    consumer.accept(page);
+                    lastId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == pageSize);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        shards.forEach(Shard::close);
+    }
+}
@@ -0,0 +1,6 @@
+package org.example.weathersensor.service;
+
+// Estimate of a statistic with the bounds of its confidence interval, from sampleSize of the population values
+public record ApproximateMetric(double estimate, double lower, double upper, double confidence, long sampleSize,
+                                long population) {
+}
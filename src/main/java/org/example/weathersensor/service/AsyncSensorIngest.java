@@ -0,0 +1,194 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Write-behind ingest: requests only enqueue, a single writer thread commits the readings in groups.
+// Stops after the web server, so everything accepted before shutdown is still committed.
+@Slf4j
+@Component
+public class AsyncSensorIngest implements SmartLifecycle {
+    private final SensorDataWriter writer;
+    private final SensorMeters meters;
+    private final SensorProperties properties;
+    private final ConcurrentLinkedQueue<SensorData> queue = new ConcurrentLinkedQueue<>();
+    // Accepted but not yet committed readings, reserved before they are enqueued to bound the queue without locks
+    private final AtomicInteger depth = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong lastCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private volatile boolean running;
+    private volatile Thread drainer;
+
+    public AsyncSensorIngest(SensorDataWriter writer, SensorMeters meters, SensorProperties properties) {
+        this.writer = writer;
+        this.meters = meters;
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.getIngest().getAsync().isEnabled();
+    }
+
+    public boolean offer(List<SensorData> readings) {
+        var count = readings.size();
+        var capacity = properties.getIngest().getAsync().getCapacity();
+        int current;
+        do {
+            current = depth.get();
+            if (current + count > capacity) {
+                rejected.add(count);
+                return false;
+            }
+        } while (!depth.compareAndSet(current, current + count));
+        // Checked after reserving, so the drainer never finishes while a reserved reading is still on its way
+        if (!running) {
+            depth.addAndGet(-count);
+            rejected.add(count);
+            return false;
+        }
+        queue.addAll(readings);
+        accepted.add(count);
+        if (current == 0) {
+            LockSupport.unpark(drainer);
+        }
+        return true;
+    }
+
+    public IngestQueueStats stats() {
+        var commitCount = commits.sum();
+        return new IngestQueueStats(isEnabled(), depth.get(), properties.getIngest().getAsync().getCapacity(),
+                accepted.sum(), rejected.sum(), committed.sum(), failed.sum(), duplicates.sum(), commitCount,
+                commitCount == 0 ? 0.0 : commitNanos.sum() / 1e6 / commitCount,
+                lastCommitNanos.get() / 1e6, maxCommitNanos.get() / 1e6);
+    }
+
+    private void drain() {
+        var config = properties.getIngest().getAsync();
+        var maxBatch = Math.max(1, config.getMaxBatch());
+        var lingerNanos = config.getLinger().toNanos();
+        List<SensorData> batch = new ArrayList<>(maxBatch);
+        var deadline = 0L;
+
+        while (running || depth.get() > 0) {
+            var next = queue.poll();
+            if (next != null) {
+                if (batch.isEmpty()) {
+                    deadline = System.nanoTime() + lingerNanos;
+                }
+                batch.add(next);
+                if (batch.size() < maxBatch) {
+                    continue;
+                }
+            } else if (batch.isEmpty()) {
+                LockSupport.parkNanos(this, Math.max(lingerNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+                continue;
+            } else if (running && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(this, Math.min(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(1)));
+                continue;
+            }
+            try {
+                commit(batch);
+            } catch (Throwable e) {
+                // Only errors get here, the writer thread must outlive them or nothing accepted is ever committed
+                failed.add(batch.size());
+                log.error("Dropping {} readings", batch.size(), e);
+            } finally {
+                depth.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<SensorData> batch) {
+        var start = System.nanoTime();
+        try {
+            var saved = writer.write(batch).size();
+            committed.add(saved);
+            duplicates.add(batch.size() - saved);
+        } catch (RuntimeException e) {
+            // One bad reading must not sink the whole group, retry them one by one
+            log.warn("Group commit of {} readings failed, retrying individually", batch.size(), e);
+            for (SensorData reading : batch) {
+                try {
+                    reading.setId(null);
+                    var saved = writer.write(List.of(reading)).size();
+                    committed.add(saved);
+                    duplicates.add(1 - saved);
+                } catch (RuntimeException readingFailure) {
+                    if (reading.getSequenceNumber() != null && readingFailure instanceof DataAccessException dataFailure
+                            && SensorIngestKeys.isUniqueViolation(dataFailure)) {
+                        duplicates.increment(); // Sent again and already stored, nothing is lost
+                        meters.duplicate("index");
+                    } else {
+                        failed.increment();
+                        log.error("Dropping reading of sensor {}", reading.getSensorId(), readingFailure);
+                    }
+                }
+            }
+        }
+        var elapsed = System.nanoTime() - start;
+        commits.increment();
+        commitNanos.add(elapsed);
+        lastCommitNanos.set(elapsed);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return isEnabled();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        drainer = new Thread(this::drain, "sensor-ingest-writer");
+        drainer.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        var thread = drainer;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Ingest queue flushed, {} readings committed", committed.sum());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Lower than the web server, so stopped only after it stopped accepting requests
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+}
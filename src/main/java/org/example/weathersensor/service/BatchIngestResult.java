@@ -0,0 +1,11 @@
+package org.example.weathersensor.service;
+
+import java.util.List;
+
+// Duplicates were acknowledged without being stored again, their sequence number was stored before
+public record BatchIngestResult(int accepted, int rejected, int duplicates, List<Rejection> rejections) {
+
+    // Position of the rejected reading in the submitted batch and why it was dropped
+    public record Rejection(int index, String reason) {
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.RollupResolution;
+
+// Splits a half-open time range into the coarsest whole buckets that fit inside it and the leftover edges
+final class BucketCover {
+
+    interface Buckets {
+        void accept(RollupResolution resolution, long firstBucket, long lastBucketEnd);
+    }
+
+    interface Edge {
+        void accept(long from, long to);
+    }
+
+    private BucketCover() {
+    }
+
+    static void cover(long from, long to, RollupResolution[] coarsestFirst, Buckets buckets, Edge edge) {
+        cover(from, to, coarsestFirst, 0, buckets, edge);
+    }
+
+    private static void cover(long from, long to, RollupResolution[] coarsestFirst, int level, Buckets buckets, Edge edge) {
+        if (from >= to) {
+            return;
+        }
+        if (level == coarsestFirst.length) {
+            edge.accept(from, to);
+            return;
+        }
+
+        var resolution = coarsestFirst[level];
+        var firstBucket = Math.floorDiv(from + resolution.millis() - 1, resolution.millis()) * resolution.millis();
+        var lastBucketEnd = resolution.bucketStart(to);
+        if (firstBucket >= lastBucketEnd) {
+            cover(from, to, coarsestFirst, level + 1, buckets, edge); // No whole bucket of this size fits
+            return;
+        }
+
+        buckets.accept(resolution, firstBucket, lastBucketEnd);
+        cover(from, firstBucket, coarsestFirst, level + 1, buckets, edge);
+        cover(lastBucketEnd, to, coarsestFirst, level + 1, buckets, edge);
+    }
+}
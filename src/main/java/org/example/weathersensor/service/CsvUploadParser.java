@@ -0,0 +1,169 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// RFC 4180 records read character by character from a buffer, the header names the columns in any order.
+// Columns are matched ignoring case and underscores, so both the export header and sensor_id style names work.
+final class CsvUploadParser implements UploadParser {
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private int position;
+    private int limit;
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int sensorIdColumn = -1;
+    private int timestampColumn = -1;
+    private int sequenceNumberColumn = -1;
+    private final Map<Metric, Integer> metricColumns = new EnumMap<>(Metric.class);
+    private boolean headerRead;
+
+    CsvUploadParser(InputStream in) {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public SensorData next() throws IOException {
+        if (!headerRead) {
+            readHeader();
+        }
+        if (!readRecord()) {
+            return null;
+        }
+        var reading = new SensorData();
+        reading.setSensorId(column(sensorIdColumn));
+        UploadParser.checkSensorId(reading);
+        reading.setTimestamp(UploadParser.parseTimestamp(column(timestampColumn)));
+        if (sequenceNumberColumn >= 0) {
+            reading.setSequenceNumber(UploadParser.parseSequenceNumber(column(sequenceNumberColumn)));
+        }
+        for (Map.Entry<Metric, Integer> column : metricColumns.entrySet()) {
+            var metric = column.getKey();
+            metric.setValue(reading, UploadParser.parseValue(metric.key(), column(column.getValue())));
+        }
+        return reading;
+    }
+
+    private void readHeader() throws IOException {
+        headerRead = true;
+        if (!readRecord()) {
+            throw new IllegalArgumentException("Missing CSV header");
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            var name = fields.get(i).trim().replace("_", "").toLowerCase(Locale.ROOT);
+            switch (name) {
+                case "sensorid" -> sensorIdColumn = i;
+                case "timestamp" -> timestampColumn = i;
+                case "sequencenumber" -> sequenceNumberColumn = i;
+                default -> {
+                    for (Metric metric : Metric.values()) {
+                        if (metric.key().equals(name)) {
+                            metricColumns.put(metric, i);
+                        }
+                    }
+                }
+            }
+        }
+        if (sensorIdColumn < 0 || timestampColumn < 0) {
+            throw new IllegalArgumentException("CSV header must name the sensorId and timestamp columns");
+        }
+    }
+
+    // Columns missing at the end of a short record are treated as empty
+    private String column(int index) {
+        return index < fields.size() ? fields.get(index).trim() : null;
+    }
+
+    // Reads the fields of the next non-empty line, false at the end of the input
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        var quoted = false;
+        var started = false;
+        while (true) {
+            var c = read();
+            if (c < 0) {
+                if (quoted) {
+                    throw new InvalidRecordException("Unterminated quoted field");
+                }
+                if (!started) {
+                    return false;
+                }
+                fields.add(field.toString());
+                return true;
+            }
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> {
+                    quoted = true;
+                    started = true;
+                }
+                case ',' -> {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    started = true;
+                }
+                case '\r', '\n' -> {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    if (started) {
+                        fields.add(field.toString());
+                        return true;
+                    }
+                }
+                default -> {
+                    field.append((char) c);
+                    started = true;
+                }
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        var read = reader.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.weathersensor.service;
+
+import java.time.Duration;
+
+// Raised when the asynchronous ingest queue cannot take the readings, the caller should retry later
+public class IngestQueueFullException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public IngestQueueFullException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.weathersensor.service;
+
+public record IngestQueueStats(
+        boolean enabled,
+        int queueDepth,
+        int capacity,
+        long accepted,
+        long rejected,
+        long committed,
+        long failed,
+        // Dropped because their sequence number was stored before
+        long duplicates,
+        long commits,
+        double averageCommitMillis,
+        double lastCommitMillis,
+        double maxCommitMillis) {
+}
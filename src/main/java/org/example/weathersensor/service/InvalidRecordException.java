@@ -0,0 +1,9 @@
+package org.example.weathersensor.service;
+
+// A record of an upload that cannot be stored, the upload continues with the next record
+class InvalidRecordException extends RuntimeException {
+
+    InvalidRecordException(String message) {
+        super(message);
+    }
+}
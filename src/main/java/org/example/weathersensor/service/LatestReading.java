@@ -0,0 +1,28 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.SensorData;
+
+import java.util.Date;
+
+// Immutable copy of the most recent reading of a sensor, shaped like SensorData in responses
+public record LatestReading(Long id, String sensorId, Double temperature, Double humidity, Double windSpeed,
+                            Date timestamp) {
+
+    public LatestReading {
+        timestamp = new Date(timestamp.getTime());
+    }
+
+    static LatestReading of(SensorData reading) {
+        return new LatestReading(reading.getId(), reading.getSensorId(), reading.getTemperature(),
+                reading.getHumidity(), reading.getWindSpeed(), reading.getTimestamp());
+    }
+
+    @Override
+    public Date timestamp() {
+        return new Date(timestamp.getTime());
+    }
+
+    boolean isNewerThan(LatestReading other) {
+        return timestamp.getTime() >= other.timestamp.getTime();
+    }
+}
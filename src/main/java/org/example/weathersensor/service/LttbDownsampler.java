@@ -0,0 +1,125 @@
+package org.example.weathersensor.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Largest-triangle-three-buckets downsampling of points arriving in time order. The range is split into equal time
+// buckets and each keeps the point forming the largest triangle with the point kept before it and the average of the
+// next bucket, which preserves peaks and the overall shape. Only two buckets are held at a time, series shorter than
+// the threshold are returned as they are.
+final class LttbDownsampler {
+    private final int threshold;
+    private final long from;
+    private final long span;
+    private final List<SeriesPoint> kept = new ArrayList<>();
+    private List<SeriesPoint> buffered = new ArrayList<>();
+    private boolean downsampling;
+    private SeriesPoint first;
+    private SeriesPoint last;
+    private List<SeriesPoint> current = new ArrayList<>();
+    private long currentBucket = -1;
+    private List<SeriesPoint> next = new ArrayList<>();
+    private long nextBucket = -1;
+
+    LttbDownsampler(int threshold, long from, long to) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("Number of points must be at least 3");
+        }
+        this.threshold = threshold;
+        this.from = from;
+        this.span = Math.max(1, to - from + 1);
+    }
+
+    void add(SeriesPoint point) {
+        if (!downsampling) {
+            buffered.add(point);
+            if (buffered.size() > threshold) {
+                downsampling = true;
+                var replay = buffered;
+                buffered = null;
+                replay.forEach(this::bucket);
+            }
+            return;
+        }
+        bucket(point);
+    }
+
+    List<SeriesPoint> finish() {
+        if (!downsampling) {
+            return buffered;
+        }
+        // The newest point is always kept, it is taken out of the buckets again
+        var newest = last;
+        var tail = next.isEmpty() ? current : next;
+        tail.remove(tail.size() - 1);
+        if (!next.isEmpty()) {
+            select(current, average(next));
+            select(next, newest);
+        } else {
+            select(current, newest);
+        }
+        kept.add(newest);
+        return kept;
+    }
+
+    private void bucket(SeriesPoint point) {
+        if (first == null) {
+            first = point;
+            kept.add(point);
+            return;
+        }
+        last = point;
+        var bucket = (point.timestamp().getTime() - from) * (threshold - 2) / span;
+        if (currentBucket < 0) {
+            currentBucket = bucket;
+        }
+        if (bucket == currentBucket) {
+            current.add(point);
+            return;
+        }
+        if (nextBucket < 0) {
+            nextBucket = bucket;
+        }
+        if (bucket != nextBucket) {
+            // The bucket after next started, next is complete and the current one can be decided
+            select(current, average(next));
+            current = next;
+            currentBucket = nextBucket;
+            next = new ArrayList<>();
+            nextBucket = bucket;
+        }
+        next.add(point);
+    }
+
+    private void select(List<SeriesPoint> bucket, SeriesPoint following) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        var previous = kept.get(kept.size() - 1);
+        var ax = (double) previous.timestamp().getTime();
+        var ay = previous.value();
+        var cx = (double) following.timestamp().getTime();
+        var cy = following.value();
+        SeriesPoint selected = null;
+        var largest = -1.0;
+        for (SeriesPoint point : bucket) {
+            var area = Math.abs((ax - cx) * (point.value() - ay) - (ax - point.timestamp().getTime()) * (cy - ay));
+            if (area > largest) {
+                largest = area;
+                selected = point;
+            }
+        }
+        kept.add(selected);
+    }
+
+    private static SeriesPoint average(List<SeriesPoint> bucket) {
+        double time = 0;
+        double value = 0;
+        for (SeriesPoint point : bucket) {
+            time += point.timestamp().getTime();
+            value += point.value();
+        }
+        return new SeriesPoint(new Date((long) (time / bucket.size())), value / bucket.size());
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.weathersensor.service;
+
+// Mergeable count/sum/min/max/sum of squares of one metric, whether computed by the database or in memory.
+// Accumulates primitives only, missing readings are simply never added.
+public final class MetricSummary {
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sumSquares;
+    private QuantileSketch sketch; // Only kept when a quantile was requested
+
+    public static MetricSummary withSketch(double relativeAccuracy) {
+        var summary = new MetricSummary();
+        summary.sketch = new QuantileSketch(relativeAccuracy);
+        return summary;
+    }
+
+    public static MetricSummary of(QuantileSketch sketch) {
+        var summary = of(sketch.count(), sketch.sum(), sketch.min(), sketch.max(), sketch.sumSquares());
+        summary.sketch = sketch;
+        return summary;
+    }
+
+    public static MetricSummary of(long count, double sum, Double min, Double max, double sumSquares) {
+        var summary = new MetricSummary();
+        if (count > 0) {
+            summary.count = count;
+            summary.sum = sum;
+            summary.min = min;
+            summary.max = max;
+            summary.sumSquares = sumSquares;
+        }
+        return summary;
+    }
+
+    public void add(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sumSquares += value * value;
+        if (sketch != null) {
+            sketch.add(value);
+        }
+    }
+
+    public void merge(MetricSummary other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sumSquares += other.sumSquares;
+        if (sketch != null && other.sketch != null) {
+            sketch.merge(other.sketch);
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    // Statistics that are undefined for an empty range are reported as NaN
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double average() {
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+    public double sumSquares() {
+        return sumSquares;
+    }
+
+    public QuantileSketch sketch() {
+        return sketch;
+    }
+
+    // Population variance, clamped because rounding can push E[x^2] - E[x]^2 slightly below zero
+    public double variance() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        var mean = sum / count;
+        return Math.max(0.0, sumSquares / count - mean * mean);
+    }
+}
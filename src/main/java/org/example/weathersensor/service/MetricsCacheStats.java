@@ -0,0 +1,11 @@
+package org.example.weathersensor.service;
+
+public record MetricsCacheStats(
+        boolean enabled,
+        int size,
+        int maxEntries,
+        long hits,
+        long misses,
+        long evictions,
+        long invalidations) {
+}
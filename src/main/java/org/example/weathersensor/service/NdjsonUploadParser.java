@@ -0,0 +1,86 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+// One JSON object per reading, read token by token from a single parser over the whole body. Unknown fields are
+// skipped, timestamps may be epoch milliseconds or ISO-8601 strings as written by the export.
+final class NdjsonUploadParser implements UploadParser {
+    private final JsonParser parser;
+
+    NdjsonUploadParser(InputStream in, ObjectMapper mapper) throws IOException {
+        this.parser = mapper.getFactory().createParser(in);
+    }
+
+    @Override
+    public SensorData next() throws IOException {
+        var token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            throw new InvalidRecordException("Expected a JSON object");
+        }
+        var reading = new SensorData();
+        // The object is read to its end before failing, so parsing can continue with the next one
+        String invalid = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var name = parser.currentName();
+            parser.nextToken();
+            try {
+                read(name, reading);
+            } catch (InvalidRecordException e) {
+                parser.skipChildren();
+                if (invalid == null) {
+                    invalid = e.getMessage();
+                }
+            }
+        }
+        if (invalid != null) {
+            throw new InvalidRecordException(invalid);
+        }
+        if (reading.getTimestamp() == null) {
+            throw new InvalidRecordException("Missing timestamp");
+        }
+        return UploadParser.checkSensorId(reading);
+    }
+
+    private void read(String name, SensorData reading) throws IOException {
+        var token = parser.currentToken();
+        switch (name) {
+            case "sensorId" -> reading.setSensorId(token == JsonToken.VALUE_NULL ? null : scalar(name));
+            case "timestamp" -> reading.setTimestamp(token == JsonToken.VALUE_NUMBER_INT
+                    ? new Date(parser.getLongValue())
+                    : UploadParser.parseTimestamp(token == JsonToken.VALUE_NULL ? null : scalar(name)));
+            case "sequenceNumber" -> reading.setSequenceNumber(token == JsonToken.VALUE_NUMBER_INT
+                    && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER
+                    ? Long.valueOf(parser.getLongValue())
+                    : UploadParser.parseSequenceNumber(token == JsonToken.VALUE_NULL ? null : scalar(name)));
+            case "temperature", "humidity", "windSpeed" -> {
+                var metric = Metric.from(name);
+                if (token.isNumeric()) {
+                    metric.setValue(reading, UploadParser.checkValue(metric.key(), parser.getDoubleValue()));
+                } else {
+                    metric.setValue(reading, UploadParser.parseValue(metric.key(),
+                            token == JsonToken.VALUE_NULL ? null : scalar(name)));
+                }
+            }
+            default -> parser.skipChildren();
+        }
+    }
+
+    private String scalar(String name) throws IOException {
+        if (!parser.currentToken().isScalarValue()) {
+            throw new InvalidRecordException("Invalid " + name);
+        }
+        return parser.getText();
+    }
+}
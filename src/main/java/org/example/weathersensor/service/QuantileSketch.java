@@ -0,0 +1,262 @@
+package org.example.weathersensor.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+// Mergeable quantile sketch with a relative error guarantee (DDSketch). Values are counted in logarithmically
+// sized buckets, so any quantile is within relativeAccuracy of the true value whatever the data distribution,
+// and merging two sketches just adds their bucket counts.
+public final class QuantileSketch {
+    private static final byte FORMAT_VERSION = 1;
+    private static final double MIN_INDEXABLE = 1e-9; // Smaller magnitudes are counted as zero
+    private static final int MAX_BUCKETS = 2048; // Per sign, lowest magnitudes are collapsed beyond that
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Store positives = new Store();
+    private final Store negatives = new Store();
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double sumSquares;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public double sumSquares() {
+        return sumSquares;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    public void add(double value) {
+        if (value > MIN_INDEXABLE) {
+            positives.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negatives.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        sum += value;
+        sumSquares += value * value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of different accuracy");
+        }
+        positives.merge(other.positives);
+        negatives.merge(other.negatives);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        sumSquares += other.sumSquares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Value at quantile q in [0, 1], NaN when nothing was added
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        var rank = (long) (q * (count - 1));
+        if (rank <= 0) {
+            return min; // The extremes are tracked exactly
+        }
+        if (rank >= count - 1) {
+            return max;
+        }
+        double value;
+        if (rank < negatives.total) {
+            // Largest magnitude first, that is the most negative value
+            value = -value(negatives.indexAtRank(negatives.total - 1 - rank));
+        } else if (rank < negatives.total + zeroCount) {
+            value = 0.0;
+        } else {
+            value = value(positives.indexAtRank(rank - negatives.total - zeroCount));
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    public byte[] toBytes() {
+        var out = new ByteArrayOutputStream(64 + 2 * (positives.counts.length + negatives.counts.length));
+        out.write(FORMAT_VERSION);
+        writeDouble(out, relativeAccuracy);
+        writeVarLong(out, count);
+        writeVarLong(out, zeroCount);
+        writeDouble(out, sum);
+        writeDouble(out, sumSquares);
+        writeDouble(out, min);
+        writeDouble(out, max);
+        positives.write(out);
+        negatives.write(out);
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        var in = ByteBuffer.wrap(bytes);
+        if (in.get() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported sketch format");
+        }
+        var sketch = new QuantileSketch(in.getDouble());
+        sketch.count = readVarLong(in);
+        sketch.zeroCount = readVarLong(in);
+        sketch.sum = in.getDouble();
+        sketch.sumSquares = in.getDouble();
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        sketch.positives.read(in);
+        sketch.negatives.read(in);
+        return sketch;
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        out.writeBytes(ByteBuffer.allocate(Double.BYTES).putDouble(value).array());
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            var b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    // Dense bucket counts for a contiguous range of indexes
+    private static final class Store {
+        private long[] counts = new long[0];
+        private int offset; // Index of counts[0]
+        private long total;
+
+        void add(int index, long count) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - counts.length / 2;
+            } else if (index < offset) {
+                resize(index, false);
+            } else if (index >= offset + counts.length) {
+                resize(index, true);
+            }
+            index = Math.max(index, offset); // Below the kept range, collapse into the lowest bucket
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        void merge(Store other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        int indexAtRank(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) {
+                    return offset + i;
+                }
+            }
+            return offset + counts.length - 1;
+        }
+
+        // Doubles the range towards the required index, folding what falls below MAX_BUCKETS into the lowest bucket
+        private void resize(int required, boolean upwards) {
+            var end = offset + counts.length;
+            var needed = upwards ? required + 1 - offset : end - required;
+            var length = Math.min(MAX_BUCKETS, Math.max(needed, counts.length * 2));
+            var from = upwards ? Math.max(offset, required + 1 - length) : end - length;
+            var grown = new long[length];
+            for (int i = 0; i < counts.length; i++) {
+                grown[Math.max(offset + i, from) - from] += counts[i];
+            }
+            counts = grown;
+            offset = from;
+        }
+
+        void write(ByteArrayOutputStream out) {
+            var first = 0;
+            var last = counts.length - 1;
+            while (first <= last && counts[first] == 0) {
+                first++;
+            }
+            while (last >= first && counts[last] == 0) {
+                last--;
+            }
+            var length = last - first + 1;
+            writeVarLong(out, length);
+            if (length > 0) {
+                var lowestIndex = offset + first;
+                writeVarLong(out, ((lowestIndex << 1) ^ (lowestIndex >> 31)) & 0xFFFFFFFFL); // Zigzag, indexes can be negative
+                for (int i = first; i <= last; i++) {
+                    writeVarLong(out, counts[i]);
+                }
+            }
+        }
+
+        void read(ByteBuffer in) {
+            var length = (int) readVarLong(in);
+            if (length == 0) {
+                return;
+            }
+            var zigzag = (int) readVarLong(in);
+            offset = (zigzag >>> 1) ^ -(zigzag & 1);
+            counts = new long[length];
+            for (int i = 0; i < length; i++) {
+                counts[i] = readVarLong(in);
+                total += counts[i];
+            }
+        }
+    }
+}
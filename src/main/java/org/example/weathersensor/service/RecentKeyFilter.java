@@ -0,0 +1,79 @@
+package org.example.weathersensor.service;
+
+import java.util.Arrays;
+
+// Bloom filter of (sensor id, sequence number) keys that forgets old keys: keys go into the current generation, which
+// is swapped for an empty one once it holds capacity keys, and lookups check it and the previous one. So the last
+// capacity keys are always remembered, at most twice as many, in a fixed amount of memory. Never answers false for a
+// remembered key, answers true for a key it never saw with about falsePositiveRate.
+final class RecentKeyFilter {
+    private final int capacity;
+    private final long bits;
+    private final int hashes;
+    private long[] current;
+    private long[] previous;
+    private int count;
+
+    RecentKeyFilter(int capacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.capacity = Math.max(1, capacity);
+        // A key is looked up in both generations, each gets half of the false positive rate
+        var rate = falsePositiveRate / 2;
+        var optimalBits = -this.capacity * Math.log(rate) / (Math.log(2) * Math.log(2));
+        var words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(optimalBits / Long.SIZE)));
+        bits = (long) words * Long.SIZE;
+        hashes = (int) Math.max(1, Math.round((double) bits / this.capacity * Math.log(2)));
+        current = new long[words];
+        previous = new long[words];
+    }
+
+    synchronized void add(String sensorId, long sequenceNumber) {
+        if (count == capacity) {
+            var emptied = previous;
+            Arrays.fill(emptied, 0);
+            previous = current;
+            current = emptied;
+            count = 0;
+        }
+        var hash = hash(sensorId, sequenceNumber);
+        var step = mix(hash) | 1;
+        for (int i = 0; i < hashes; i++) {
+            var bit = Math.floorMod(hash + i * step, bits);
+            current[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        count++;
+    }
+
+    synchronized boolean mightContain(String sensorId, long sequenceNumber) {
+        var hash = hash(sensorId, sequenceNumber);
+        var step = mix(hash) | 1;
+        return contains(current, hash, step) || contains(previous, hash, step);
+    }
+
+    private boolean contains(long[] generation, long hash, long step) {
+        for (int i = 0; i < hashes; i++) {
+            var bit = Math.floorMod(hash + i * step, bits);
+            if ((generation[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Double hashing: the i-th bit is hash + i * step, step derived from hash and odd so the bits differ
+    private static long hash(String sensorId, long sequenceNumber) {
+        return mix(sensorId.hashCode() * 0x9E3779B97F4A7C15L + sequenceNumber);
+    }
+
+    // Finalizer of MurmurHash3, spreads every input bit over the whole word
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.weathersensor.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+// Uniform random sample of a stream of values (algorithm R): after n values every one of them is kept with
+// probability capacity / n, whatever the order they arrived in
+final class Reservoir {
+    private final double[] values;
+    private int size;
+    private long population;
+
+    Reservoir(int capacity) {
+        values = new double[capacity];
+    }
+
+    // A stored sample continued with this capacity. A full sample cannot grow without losing uniformity, a larger
+    // one is shrunk to a random subset of itself.
+    static Reservoir of(long population, byte[] bytes, int capacity, Random random) {
+        var stored = values(bytes);
+        var full = stored.length < population;
+        var reservoir = new Reservoir(full ? Math.min(capacity, stored.length) : capacity);
+        var kept = Math.min(stored.length, reservoir.values.length);
+        for (int i = 0; i < kept; i++) {
+            if (kept < stored.length) { // Partial shuffle picks the random subset
+                var pick = i + random.nextInt(stored.length - i);
+                var value = stored[pick];
+                stored[pick] = stored[i];
+                stored[i] = value;
+            }
+            reservoir.values[reservoir.size++] = stored[i];
+        }
+        reservoir.population = population;
+        return reservoir;
+    }
+
+    void add(double value, Random random) {
+        population++;
+        if (size < values.length) {
+            values[size++] = value;
+            return;
+        }
+        var slot = (long) (random.nextDouble() * population);
+        if (slot < values.length) {
+            values[(int) slot] = value;
+        }
+    }
+
+    long population() {
+        return population;
+    }
+
+    byte[] toBytes() {
+        var buffer = ByteBuffer.allocate(size * Double.BYTES);
+        for (int i = 0; i < size; i++) {
+            buffer.putDouble(values[i]);
+        }
+        return buffer.array();
+    }
+
+    static double[] values(byte[] bytes) {
+        var values = new double[bytes.length / Double.BYTES];
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    double[] values() {
+        return Arrays.copyOf(values, size);
+    }
+}
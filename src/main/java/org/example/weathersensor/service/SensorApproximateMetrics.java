@@ -0,0 +1,96 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.MetricSample;
+import org.example.weathersensor.data.RollupResolution;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+// Statistics estimated from the daily samples instead of every reading, for long ranges over many sensors where an
+// answer within a known error is worth more than an exact one. Whole days inside the range come from the samples,
+// the partial days at its edges are aggregated exactly from rollups or raw readings.
+@Component
+public class SensorApproximateMetrics {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final RollupResolution[] DAYS = {RollupResolution.DAY};
+
+    private final SensorSamples samples;
+    private final SensorRollups rollups;
+    private final SensorStore store;
+    private final StatisticRegistry statistics;
+    private final SensorMeters meters;
+
+    public SensorApproximateMetrics(SensorSamples samples, SensorRollups rollups, SensorStore store,
+                                    StatisticRegistry statistics, SensorMeters meters) {
+        this.samples = samples;
+        this.rollups = rollups;
+        this.store = store;
+        this.statistics = statistics;
+        this.meters = meters;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, ApproximateMetric> getMetrics(List<String> sensorIds, List<String> metrics, String statistic,
+                                                     Optional<Date> startDate, Optional<Date> endDate, double confidence) {
+        if (!samples.isEnabled()) {
+            throw new IllegalArgumentException("Approximate statistics need sensor.sample.enabled=true");
+        }
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("Invalid confidence: " + confidence + ", it has to be between 0 and 1");
+        }
+        var end = endDate.orElse(new Date());
+        var start = startDate.orElse(new Date(end.getTime() - DAY));
+        if (start.after(end)) {
+            throw new IllegalArgumentException("Start date cannot be after end date");
+        }
+        var key = statistics.get(statistic).key().toLowerCase(Locale.ROOT);
+        if (!StratifiedEstimate.STATISTICS.contains(key)) {
+            throw new IllegalArgumentException("Statistic " + statistic + " is not available with accuracy=approximate, "
+                    + "use one of " + new TreeSet<>(StratifiedEstimate.STATISTICS));
+        }
+        var requested = metrics.stream().map(Metric::from).toList();
+
+        var sample = meters.startQuery();
+        var ids = new LinkedHashSet<>(sensorIds);
+        Map<Metric, StratifiedEstimate> estimates = new EnumMap<>(Metric.class);
+        requested.forEach(metric -> estimates.put(metric, new StratifiedEstimate()));
+        BucketCover.cover(start.getTime(), end.getTime() + 1, DAYS,
+                (resolution, from, to) -> {
+                    for (MetricSample stored : samples.find(ids, estimates.keySet(), from, to)) {
+                        estimates.get(stored.metric()).addStratum(stored.population(), Reservoir.values(stored.sample()));
+                    }
+                },
+                (from, to) -> exactly(ids, new Date(from), new Date(to - 1)).forEach((metric, summary) -> {
+                    var estimate = estimates.get(metric);
+                    if (estimate != null) {
+                        estimate.addExact(summary.count(), summary.sum());
+                    }
+                }));
+
+        Map<String, ApproximateMetric> result = new HashMap<>();
+        for (int i = 0; i < metrics.size(); i++) {
+            result.put(metrics.get(i), estimates.get(requested.get(i)).estimate(key, confidence));
+        }
+        meters.queried(sample, key, "sample", ids.size());
+        return result;
+    }
+
+    private Map<Metric, MetricSummary> exactly(Set<String> sensorIds, Date start, Date end) {
+        return rollups.isEnabled()
+                ? rollups.summarize(sensorIds, start, end, (from, to) -> aggregate(sensorIds, from, to))
+                : aggregate(sensorIds, start, end);
+    }
+
+    private Map<Metric, MetricSummary> aggregate(Set<String> sensorIds, Date start, Date end) {
+        var aggregate = meters.timeStore("aggregate", () -> store.aggregateBySensorIdInAndTimestampBetween(sensorIds, start, end));
+        Map<Metric, MetricSummary> summaries = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            summaries.put(metric, MetricSummary.of(aggregate.count(metric), aggregate.sum(metric),
+                    aggregate.min(metric), aggregate.max(metric), aggregate.sumSquares(metric)));
+        }
+        return summaries;
+    }
+}
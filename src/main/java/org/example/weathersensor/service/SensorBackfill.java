@@ -0,0 +1,36 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+// Derives rollups, sketches and samples from readings stored before they were enabled, before the server accepts traffic
+@Component
+public class SensorBackfill implements SmartInitializingSingleton {
+    private static final int PAGE_SIZE = 10_000;
+
+    private final SensorStore store;
+    private final SensorRollups rollups;
+    private final SensorSketches sketches;
+    private final SensorSamples samples;
+
+    public SensorBackfill(SensorStore store, SensorRollups rollups, SensorSketches sketches, SensorSamples samples) {
+        this.store = store;
+        this.rollups = rollups;
+        this.sketches = sketches;
+        this.samples = samples;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (rollups.isEnabled() && rollups.isEmpty()) {
+            store.scan(null, PAGE_SIZE, rollups::record);
+        }
+        if (sketches.isEnabled() && sketches.isEmpty()) {
+            store.scan(null, PAGE_SIZE, sketches::record);
+        }
+        if (samples.isEnabled() && samples.isEmpty()) {
+            store.scan(null, PAGE_SIZE, samples::record);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Writes the raw readings of a set of sensors to a stream as they are read. Every sensor is read through its own
+// cursor in timestamp order and the cursors are merged, so memory does not depend on the number of readings.
+@Component
+public class SensorDataExporter {
+    private static final String CSV_HEADER = "sensorId,timestamp,temperature,humidity,windSpeed";
+
+    private final SensorStore store;
+    private final ObjectMapper mapper;
+    private final SensorMeters meters;
+    private final SensorProperties properties;
+
+    public SensorDataExporter(SensorStore store, ObjectMapper mapper, SensorMeters meters, SensorProperties properties) {
+        this.store = store;
+        this.mapper = mapper;
+        this.meters = meters;
+        this.properties = properties;
+    }
+
+    // Returns the number of readings written, out is flushed but left open
+    @Transactional(readOnly = true)
+    public long export(List<String> sensorIds, Date start, Date end, ExportFormat format, OutputStream out) throws IOException {
+        SensorRetention.requireRawReadings(properties, start);
+        List<Stream<SensorData>> streams = new ArrayList<>();
+        try {
+            for (String sensorId : new LinkedHashSet<>(sensorIds)) {
+                streams.add(store.streamBySensorIdAndTimestampBetween(sensorId, start, end));
+            }
+            var readings = merge(streams);
+            var written = format == ExportFormat.CSV ? writeCsv(readings, out) : writeNdjson(readings, out);
+            meters.rowsScanned("export", written);
+            return written;
+        } finally {
+            streams.forEach(Stream::close);
+        }
+    }
+
+    // One JSON document per line, shaped like the readings returned by the API
+    private long writeNdjson(Iterator<SensorData> readings, OutputStream out) throws IOException {
+        var writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long written = 0;
+        try (var generator = writer.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (readings.hasNext()) {
+                writer.writeValue(generator, readings.next());
+                generator.writeRaw('\n');
+                written++;
+            }
+        }
+        out.flush();
+        return written;
+    }
+
+    // Timestamps as ISO-8601 instants, missing metrics as empty fields
+    private long writeCsv(Iterator<SensorData> readings, OutputStream out) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        long written = 0;
+        while (readings.hasNext()) {
+            var reading = readings.next();
+            writer.write(csvField(reading.getSensorId()));
+            writer.write(',');
+            writer.write(reading.getTimestamp().toInstant().toString());
+            for (Metric metric : Metric.values()) {
+                writer.write(',');
+                var value = metric.valueOf(reading);
+                if (value != null) {
+                    writer.write(Double.toString(value));
+                }
+            }
+            writer.write('\n');
+            written++;
+        }
+        writer.flush();
+        return written;
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // K-way merge by timestamp, readings of the same time keep the order of the requested sensors
+    static Iterator<SensorData> merge(List<Stream<SensorData>> streams) {
+        var heads = new PriorityQueue<Head>(Math.max(1, streams.size()), Comparator
+                .comparing((Head head) -> head.reading.getTimestamp())
+                .thenComparingInt(head -> head.source));
+        List<Iterator<SensorData>> sources = new ArrayList<>(streams.size());
+        for (int i = 0; i < streams.size(); i++) {
+            var source = streams.get(i).iterator();
+            sources.add(source);
+            if (source.hasNext()) {
+                heads.add(new Head(source.next(), i));
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public SensorData next() {
+                var head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                var source = sources.get(head.source);
+                if (source.hasNext()) {
+                    heads.add(new Head(source.next(), head.source));
+                }
+                return head.reading;
+            }
+        };
+    }
+
+    private record Head(SensorData reading, int source) {
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.SensorData;
+
+import java.util.List;
+
+// Notified with stored readings once the transaction that wrote them has committed
+public interface SensorDataListener {
+
+    void onSaved(List<SensorData> readings);
+}
@@ -1,25 +1,179 @@
 package org.example.weathersensor.service;
 
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
 import org.example.weathersensor.data.SensorData;
-import org.example.weathersensor.data.SensorDataRepository;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 public class SensorDataService {
-    private final SensorDataRepository repository;
+    private final SensorStore store;
+    private final SensorDataWriter writer;
+    private final AsyncSensorIngest asyncIngest;
+    private final SensorRollups rollups;
+    private final SensorHotWindow hotWindow;
+    private final SensorSketches sketches;
+    private final StatisticRegistry statistics;
+    private final SensorQueryExecutor queries;
+    private final SensorMetricsCache cache;
+    private final SensorMeters meters;
+    private final SensorProperties properties;
 
-    public SensorDataService(SensorDataRepository repository) {
-        this.repository = repository;
+    public SensorDataService(SensorStore store, SensorDataWriter writer, AsyncSensorIngest asyncIngest,
+                             SensorRollups rollups, SensorHotWindow hotWindow, SensorSketches sketches,
+                             StatisticRegistry statistics, SensorQueryExecutor queries, SensorMetricsCache cache,
+                             SensorMeters meters, SensorProperties properties) {
+        this.store = store;
+        this.writer = writer;
+        this.asyncIngest = asyncIngest;
+        this.rollups = rollups;
+        this.hotWindow = hotWindow;
+        this.sketches = sketches;
+        this.statistics = statistics;
+        this.queries = queries;
+        this.cache = cache;
+        this.meters = meters;
+        this.properties = properties;
     }
 
+    // A duplicate is acknowledged like its first delivery, only without an id
     public SensorData saveSensorData(SensorData data) {
         data.setTimestamp(new Date()); // Fill with current date
-        return repository.save(data);
+        try {
+            var saved = writer.write(List.of(data));
+            return saved.isEmpty() ? data : saved.get(0);
+        } catch (DataAccessException e) {
+            if (!isRejectedDuplicate(data, e)) {
+                throw e;
+            }
+            data.setId(null);
+            return data;
+        }
+    }
+
+    public BatchIngestResult saveSensorDataBatch(List<SensorData> batch) {
+        var batchSize = Math.max(1, properties.getIngest().getBatchSize());
+        List<BatchIngestResult.Rejection> rejections = new ArrayList<>();
+        var valid = prepareBatch(batch, rejections);
+        var invalid = rejections.size();
+        List<SensorData> chunk = new ArrayList<>(Math.min(batchSize, valid.size()));
+        List<Integer> chunkIndexes = new ArrayList<>(Math.min(batchSize, valid.size()));
+        var accepted = 0;
+
+        for (int index : valid) {
+            chunk.add(batch.get(index));
+            chunkIndexes.add(index);
+            if (chunk.size() == batchSize) {
+                accepted += saveChunk(chunk, chunkIndexes, rejections);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            accepted += saveChunk(chunk, chunkIndexes, rejections);
+        }
+
+        rejections.sort(Comparator.comparingInt(BatchIngestResult.Rejection::index));
+        // Every valid reading was stored, rejected or dropped as a duplicate
+        var duplicates = valid.size() - accepted - (rejections.size() - invalid);
+        return new BatchIngestResult(accepted, rejections.size(), duplicates, rejections);
+    }
+
+    public boolean isAsyncIngest() {
+        return asyncIngest.isEnabled();
+    }
+
+    public IngestQueueStats getIngestQueueStats() {
+        return asyncIngest.stats();
+    }
+
+    public SensorData enqueueSensorData(SensorData data) {
+        data.setTimestamp(new Date()); // Fill with current date
+        offer(List.of(data));
+        return data;
+    }
+
+    // The whole batch is queued or refused, the rejections only report invalid readings
+    public BatchIngestResult enqueueSensorDataBatch(List<SensorData> batch) {
+        List<BatchIngestResult.Rejection> rejections = new ArrayList<>();
+        var valid = prepareBatch(batch, rejections);
+        offer(valid.stream().map(batch::get).toList());
+        return new BatchIngestResult(valid.size(), rejections.size(), 0, rejections);
+    }
+
+    private void offer(List<SensorData> readings) {
+        if (!readings.isEmpty() && !asyncIngest.offer(readings)) {
+            throw new IngestQueueFullException("Ingest queue is full, retry later",
+                    properties.getIngest().getAsync().getRetryAfter());
+        }
+    }
+
+    // Stamps the valid readings of a batch with one receipt time and returns their indexes
+    private List<Integer> prepareBatch(List<SensorData> batch, List<BatchIngestResult.Rejection> rejections) {
+        var timestamp = new Date();
+        List<Integer> valid = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            var data = batch.get(i);
+            if (data == null || data.getSensorId() == null || data.getSensorId().isBlank()) {
+                rejections.add(new BatchIngestResult.Rejection(i, "Missing sensor id"));
+                continue;
+            }
+            data.setId(null); // Always insert, never merge into an existing row
+            data.setTimestamp(timestamp);
+            valid.add(i);
+        }
+        return valid;
+    }
+
+    // Each chunk commits in its own transaction, so a failure only rejects the rows of that chunk
+    private int saveChunk(List<SensorData> chunk, List<Integer> chunkIndexes, List<BatchIngestResult.Rejection> rejections) {
+        var saved = 0;
+        try {
+            saved = writer.write(chunk).size();
+        } catch (DataAccessException e) {
+            if (SensorIngestKeys.isUniqueViolation(e)) {
+                saved = saveEach(chunk, chunkIndexes, rejections);
+            } else {
+                for (int index : chunkIndexes) {
+                    rejections.add(new BatchIngestResult.Rejection(index, e.getMostSpecificCause().getMessage()));
+                }
+            }
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+        return saved;
+    }
+
+    // A reading sent again got past the in-memory checks, e.g. by a concurrent retry, and the unique index rejected
+    // the chunk. Every reading gets its own transaction so only the duplicate is dropped.
+    private int saveEach(List<SensorData> chunk, List<Integer> chunkIndexes, List<BatchIngestResult.Rejection> rejections) {
+        var saved = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            var reading = chunk.get(i);
+            reading.setId(null);
+            try {
+                saved += writer.write(List.of(reading)).size();
+            } catch (DataAccessException e) {
+                if (!isRejectedDuplicate(reading, e)) {
+                    rejections.add(new BatchIngestResult.Rejection(chunkIndexes.get(i), e.getMostSpecificCause().getMessage()));
+                }
+            }
+        }
+        return saved;
+    }
+
+    private boolean isRejectedDuplicate(SensorData reading, DataAccessException e) {
+        var duplicate = reading.getSequenceNumber() != null && SensorIngestKeys.isUniqueViolation(e);
+        if (duplicate) {
+            meters.duplicate("index");
+        }
+        return duplicate;
     }
 
     public Map<String, Double> getMetrics(List<String> sensorId, List<String> metrics, String statistic, Optional<Date> startDate, Optional<Date> endDate) {
@@ -28,18 +182,108 @@ public class SensorDataService {
 
         validateDateRange(start, end);
 
-        List<SensorData> data = new ArrayList<>();
-        for (String id : sensorId) {
-            data.addAll(repository.findBySensorIdAndTimestampBetween(id, start, end));
+        var requested = metrics.stream().map(Metric::from).toList();
+        var requestedStatistic = statistics.get(statistic);
+        var key = SensorMetricsCache.key(sensorId, metrics, requestedStatistic.key(), startDate, endDate);
+        return cache.get(key, () -> computeMetrics(sensorId, metrics, requested, requestedStatistic, start, end));
+    }
+
+    public MetricsCacheStats getMetricsCacheStats() {
+        return cache.stats();
+    }
+
+    private Map<String, Double> computeMetrics(List<String> sensorId, List<String> metrics, List<Metric> requested,
+                                               Statistic requestedStatistic, Date start, Date end) {
+        var sample = meters.startQuery();
+        var ids = new LinkedHashSet<>(sensorId);
+        Supplier<MetricSummary> newSummary = requestedStatistic.requiresSketch()
+                ? sketches::newSummary
+                : MetricSummary::new;
+
+        var hot = hotWindow.summarize(ids, start, end, newSummary);
+        Map<Metric, MetricSummary> summaries;
+        String tier;
+        if (hot.isPresent()) {
+            summaries = hot.get();
+            tier = "hot";
+        } else if (requestedStatistic.requiresSketch() && sketches.isEnabled()) {
+            summaries = sketches.summarize(ids, requested, start, end, (from, to) -> aggregateInMemory(ids, requested, from, to, newSummary));
+            tier = "sketch";
+        } else if (requestedStatistic.requiresSketch() || !properties.getQuery().isAggregatePushdown()) {
+            SensorRetention.requireRawReadings(properties, start);
+            summaries = aggregateInMemory(ids, requested, start, end, newSummary);
+            tier = "memory";
+        } else if (rollups.isEnabled()) {
+            summaries = rollups.summarize(ids, start, end, (from, to) -> aggregateInDatabase(ids, from, to));
+            tier = "rollup";
+        } else {
+            summaries = aggregateInDatabase(ids, start, end);
+            tier = "database";
         }
 
         Map<String, Double> result = new HashMap<>();
 
-        for (String metric : metrics) {
-            var value = calculateSensorDate(data, metric, statistic);
-            result.put(metric, value);
+        for (int i = 0; i < metrics.size(); i++) {
+            result.put(metrics.get(i), requestedStatistic.apply(summaries.get(requested.get(i))));
+        }
+
+        meters.queried(sample, requestedStatistic.key(), tier, ids.size());
+        return result;
+    }
+
+    // Splits the sensors into one IN query per available connection, or per shard, and merges the partial aggregates
+    private Map<Metric, MetricSummary> aggregateInDatabase(Set<String> sensorIds, Date start, Date end) {
+        var partials = queries.map(store.split(sensorIds, queries.parallelism()), ids -> {
+            var aggregate = meters.timeStore("aggregate", () -> store.aggregateBySensorIdInAndTimestampBetween(ids, start, end));
+            meters.rowsScanned("aggregate", Arrays.stream(Metric.values()).mapToLong(aggregate::count).max().orElse(0));
+            return aggregate;
+        });
+        Map<Metric, MetricSummary> summaries = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            var summary = new MetricSummary();
+            for (SensorDataAggregate aggregate : partials) {
+                summary.merge(MetricSummary.of(aggregate.count(metric), aggregate.sum(metric),
+                        aggregate.min(metric), aggregate.max(metric), aggregate.sumSquares(metric)));
+            }
+            summaries.put(metric, summary);
         }
+        return summaries;
+    }
+
+    // Fallback that loads the readings of every sensor concurrently and aggregates all requested metrics in a single pass
+    private Map<Metric, MetricSummary> aggregateInMemory(Set<String> sensorIds, List<Metric> metrics, Date start, Date end,
+                                                         Supplier<MetricSummary> newSummary) {
+        var distinct = EnumSet.noneOf(Metric.class);
+        distinct.addAll(metrics);
+        var requested = distinct.toArray(new Metric[0]);
+
+        // Each sensor is summarized on its own and only the summaries are merged, the readings are never collected
+        var partials = queries.map(sensorIds, id -> {
+            var summaries = new MetricSummary[requested.length];
+            for (int i = 0; i < summaries.length; i++) {
+                summaries[i] = newSummary.get();
+            }
+            var readings = meters.timeStore("find", () -> store.findBySensorIdAndTimestampBetween(id, start, end));
+            meters.rowsScanned("find", readings.size());
+            for (SensorData d : readings) {
+                for (int i = 0; i < requested.length; i++) {
+                    var value = requested[i].valueOf(d);
+                    if (value != null) {
+                        summaries[i].add(value);
+                    }
+                }
+            }
+            return summaries;
+        });
 
+        Map<Metric, MetricSummary> result = new EnumMap<>(Metric.class);
+        for (int i = 0; i < requested.length; i++) {
+            var summary = newSummary.get();
+            for (MetricSummary[] partial : partials) {
+                summary.merge(partial[i]);
+            }
+            result.put(requested[i], summary);
+        }
         return result;
     }
 
@@ -57,33 +301,5 @@ public class SensorDataService {
             throw new IllegalArgumentException(
                     "Start date cannot be after end date");
         }
-
-        // Ensure date range is no more than 1 month
-        if (ChronoUnit.DAYS.between(startDateTime, endDateTime) > 30) {
-            throw new IllegalArgumentException(
-                    "Date range cannot exceed 1 month");
-        }
-    }
-
-    private double calculateSensorDate(List<SensorData> data, String metric, String statistic) {
-        var values = data.stream()
-                .map(d -> getMetricValue(d, metric))
-                .toList();
-
-        return switch (statistic.toLowerCase()) {
-            case "min" -> Collections.min(values);
-            case "max" -> Collections.max(values);
-            case "sum" -> values.stream().mapToDouble(Double::doubleValue).sum();
-            default -> Math.round(values.stream().mapToDouble(Double::doubleValue).average().orElse(0.0) * 10.0) / 10.0;
-        };
-    }
-
-    private double getMetricValue(SensorData data, String metric) {
-        return switch (metric.toLowerCase()) {
-            case "temperature" -> data.getTemperature();
-            case "humidity" -> data.getHumidity();
-            case "windspeed" -> data.getWindSpeed();
-            default -> throw new IllegalArgumentException("Invalid metric: " + metric);
-        };
     }
 }
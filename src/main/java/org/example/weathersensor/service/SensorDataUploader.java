@@ -0,0 +1,132 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Bulk loads of historical readings with their own timestamps. The body is parsed one record at a time and inserted
+// in batches that each commit on their own, so memory only holds one batch however large the upload is.
+@Component
+public class SensorDataUploader {
+    // Every rejected record is counted, only the first ones are listed
+    static final int MAX_REJECTIONS = 1000;
+
+    private final SensorDataWriter writer;
+    private final ObjectMapper mapper;
+    private final SensorProperties properties;
+
+    public SensorDataUploader(SensorDataWriter writer, ObjectMapper mapper, SensorProperties properties) {
+        this.writer = writer;
+        this.mapper = mapper;
+        this.properties = properties;
+    }
+
+    // Records are numbered from 0 in the order they appear. Malformed JSON ends the upload, the readings before it
+    // are kept and the rejection tells where parsing stopped.
+    public BatchIngestResult upload(InputStream in, ExportFormat format) throws IOException {
+        var batchSize = Math.max(1, properties.getIngest().getBulkBatchSize());
+        var parser = format == ExportFormat.CSV ? new CsvUploadParser(in) : new NdjsonUploadParser(in, mapper);
+        var upload = new Upload(batchSize);
+        var index = 0;
+        while (true) {
+            SensorData reading;
+            try {
+                reading = parser.next();
+            } catch (InvalidRecordException e) {
+                upload.reject(index++, e.getMessage());
+                continue;
+            } catch (JsonProcessingException e) {
+                upload.reject(index, "Malformed JSON, upload stopped: " + e.getOriginalMessage());
+                break;
+            }
+            if (reading == null) {
+                break;
+            }
+            upload.add(reading, index++);
+        }
+        upload.flush();
+        upload.rejections.sort(Comparator.comparingInt(BatchIngestResult.Rejection::index));
+        return new BatchIngestResult(upload.accepted, upload.rejected, upload.duplicates, upload.rejections);
+    }
+
+    private class Upload {
+        private final int batchSize;
+        private final List<SensorData> batch;
+        private final int[] batchIndexes;
+        private final List<BatchIngestResult.Rejection> rejections = new ArrayList<>();
+        private int accepted;
+        private int rejected;
+        private int duplicates;
+
+        Upload(int batchSize) {
+            this.batchSize = batchSize;
+            this.batch = new ArrayList<>(batchSize);
+            this.batchIndexes = new int[batchSize];
+        }
+
+        void add(SensorData reading, int index) {
+            batchIndexes[batch.size()] = index;
+            batch.add(reading);
+            if (batch.size() == batchSize) {
+                flush();
+            }
+        }
+
+        // A failed batch rejects its readings and the upload goes on with the next one
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                inserted(writer.insert(batch).size(), batch.size());
+            } catch (DataAccessException e) {
+                if (SensorIngestKeys.isUniqueViolation(e)) {
+                    insertEach();
+                } else {
+                    for (int i = 0; i < batch.size(); i++) {
+                        reject(batchIndexes[i], e.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+            batch.clear();
+        }
+
+        // A reading sent again got past the in-memory checks and the unique index rejected the batch, every reading
+        // gets its own transaction so only the duplicate is dropped
+        private void insertEach() {
+            for (int i = 0; i < batch.size(); i++) {
+                var reading = batch.get(i);
+                try {
+                    inserted(writer.insert(List.of(reading)).size(), 1);
+                } catch (DataAccessException e) {
+                    if (reading.getSequenceNumber() != null && SensorIngestKeys.isUniqueViolation(e)) {
+                        duplicates++;
+                    } else {
+                        reject(batchIndexes[i], e.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+        }
+
+        private void inserted(int inserted, int submitted) {
+            accepted += inserted;
+            duplicates += submitted - inserted;
+        }
+
+        void reject(int index, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REJECTIONS) {
+                rejections.add(new BatchIngestResult.Rejection(index, reason));
+            }
+        }
+    }
+}
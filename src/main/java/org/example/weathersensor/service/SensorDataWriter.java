@@ -0,0 +1,90 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+// Persists readings together with everything derived from them in one transaction
+@Slf4j
+@Component
+public class SensorDataWriter {
+    private final SensorStore store;
+    private final SensorRollups rollups;
+    private final SensorSketches sketches;
+    private final SensorSamples samples;
+    private final SensorIngestKeys keys;
+    private final List<SensorDataListener> listeners;
+    private final SensorMeters meters;
+
+    public SensorDataWriter(SensorStore store, SensorRollups rollups, SensorSketches sketches, SensorSamples samples,
+                            SensorIngestKeys keys, List<SensorDataListener> listeners, SensorMeters meters) {
+        this.store = store;
+        this.rollups = rollups;
+        this.sketches = sketches;
+        this.samples = samples;
+        this.keys = keys;
+        this.listeners = listeners;
+        this.meters = meters;
+    }
+
+    // Returns the stored readings, readings sent before under the same sequence number are left out
+    @Transactional
+    public List<SensorData> write(List<SensorData> readings) {
+        var admitted = keys.admit(readings);
+        if (admitted.isEmpty()) {
+            return admitted;
+        }
+        return persist(admitted, batch -> meters.timeStore("save", () -> store.saveAll(batch)));
+    }
+
+    // Bulk loads: the store inserts the readings without ids or managed entities. Returns the inserted readings,
+    // duplicates are left out like in write.
+    @Transactional
+    public List<SensorData> insert(List<SensorData> readings) {
+        var admitted = keys.admit(readings);
+        if (admitted.isEmpty()) {
+            return admitted;
+        }
+        return persist(admitted, batch -> meters.timeStore("insert", () -> {
+            store.insertAll(batch);
+            return batch;
+        }));
+    }
+
+    private List<SensorData> persist(List<SensorData> readings, UnaryOperator<List<SensorData>> save) {
+        if (rollups.isEnabled()) {
+            rollups.record(readings);
+        }
+        if (sketches.isEnabled()) {
+            sketches.record(readings);
+        }
+        if (samples.isEnabled()) {
+            samples.record(readings);
+        }
+        // Last, so a store outside the database only receives readings once everything else succeeded
+        var saved = save.apply(readings);
+        // In-memory views must never see readings that were rolled back
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // The readings are committed, a failing view must neither stop the others nor fail the write,
+                // which a client or the async writer would then store again
+                for (SensorDataListener listener : listeners) {
+                    try {
+                        listener.onSaved(saved);
+                    } catch (RuntimeException e) {
+                        log.error("{} missed {} committed readings", listener.getClass().getSimpleName(), saved.size(), e);
+                    }
+                }
+            }
+        });
+        return saved;
+    }
+}
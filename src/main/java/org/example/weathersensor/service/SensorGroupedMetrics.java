@@ -0,0 +1,218 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+// The statistic per sensor instead of pooled over all of them, written to a stream while it is computed so whole
+// fleets fit in one response. Without an interval plain statistics come from one GROUP BY over the sensors, statistics
+// needing a sketch and per bucket statistics from a single pass over the readings ordered by sensor that only holds
+// the sensor and bucket being filled.
+@Component
+public class SensorGroupedMetrics {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private final SensorStore store;
+    private final SensorSketches sketches;
+    private final StatisticRegistry statistics;
+    private final SensorMeters meters;
+    private final ObjectMapper mapper;
+    private final SensorProperties properties;
+
+    public SensorGroupedMetrics(SensorStore store, SensorSketches sketches, StatisticRegistry statistics,
+                                SensorMeters meters, ObjectMapper mapper, SensorProperties properties) {
+        this.store = store;
+        this.sketches = sketches;
+        this.statistics = statistics;
+        this.meters = meters;
+        this.mapper = mapper;
+        this.properties = properties;
+    }
+
+    // Writes {"sensor": {"metric": value}} or, with an interval, {"sensor": [{"timestamp": ..., "metric": value}]}
+    // for every sensor with readings in the range, every stored sensor without sensorIds. Everything is validated
+    // before the first byte is written. Returns the number of sensors written, out is flushed but left open.
+    @Transactional(readOnly = true)
+    public long write(Optional<List<String>> sensorIds, List<String> metrics, String statistic, Optional<String> interval,
+                      Optional<Date> startDate, Optional<Date> endDate, OutputStream out) throws IOException {
+        var end = endDate.orElse(new Date());
+        var start = startDate.orElse(new Date(end.getTime() - DAY));
+        if (start.after(end)) {
+            throw new IllegalArgumentException("Start date cannot be after end date");
+        }
+        SensorRetention.requireRawReadings(properties, start);
+        var intervalMillis = interval.map(value -> SensorSeries.parseInterval(value).toMillis());
+        if (intervalMillis.isPresent() && (end.getTime() - start.getTime()) / intervalMillis.get() >= SensorSeries.MAX_BUCKETS) {
+            throw new IllegalArgumentException("Interval " + interval.get() + " yields more than "
+                    + SensorSeries.MAX_BUCKETS + " buckets per sensor, use a longer interval");
+        }
+        Map<Metric, String> names = new EnumMap<>(Metric.class);
+        for (String metric : metrics) {
+            names.putIfAbsent(Metric.from(metric), metric);
+        }
+        var requestedStatistic = statistics.get(statistic);
+        Supplier<MetricSummary> newSummary = requestedStatistic.requiresSketch()
+                ? sketches::newSummary
+                : MetricSummary::new;
+        Collection<String> ids = sensorIds.<Collection<String>>map(LinkedHashSet::new).orElse(null);
+
+        var sample = meters.startQuery();
+        var writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long sensors;
+        try (var generator = writer.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            var groups = new GroupWriter(generator, writer, names, requestedStatistic, newSummary, intervalMillis.orElse(null));
+            generator.writeStartObject();
+            if (intervalMillis.isEmpty() && !requestedStatistic.requiresSketch()) {
+                store.aggregateBySensor(ids, start, end, groups::writeAggregate);
+            } else {
+                store.scanBySensor(ids, start, end, groups::add);
+                groups.finish();
+                meters.rowsScanned("grouped", groups.rows);
+            }
+            generator.writeEndObject();
+            sensors = groups.sensors;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        meters.queried(sample, requestedStatistic.key(), "grouped", (int) Math.min(sensors, Integer.MAX_VALUE));
+        return sensors;
+    }
+
+    // Folds readings arriving sensor after sensor, and within a sensor in timestamp order
+    private static final class GroupWriter {
+        private final JsonGenerator generator;
+        private final ObjectWriter writer;
+        private final Metric[] metrics;
+        private final String[] names;
+        private final Statistic statistic;
+        private final Supplier<MetricSummary> newSummary;
+        private final Long intervalMillis;
+        private final MetricSummary[] summaries;
+        private String sensorId;
+        private long bucket = Long.MIN_VALUE;
+        private long sensors;
+        private long rows;
+
+        GroupWriter(JsonGenerator generator, ObjectWriter writer, Map<Metric, String> names, Statistic statistic,
+                    Supplier<MetricSummary> newSummary, Long intervalMillis) {
+            this.generator = generator;
+            this.writer = writer;
+            this.metrics = names.keySet().toArray(new Metric[0]);
+            this.names = names.values().toArray(new String[0]);
+            this.statistic = statistic;
+            this.newSummary = newSummary;
+            this.intervalMillis = intervalMillis;
+            this.summaries = new MetricSummary[metrics.length];
+        }
+
+        void writeAggregate(String sensorId, SensorDataAggregate aggregate) {
+            for (int m = 0; m < metrics.length; m++) {
+                var metric = metrics[m];
+                summaries[m] = MetricSummary.of(aggregate.count(metric), aggregate.sum(metric),
+                        aggregate.min(metric), aggregate.max(metric), aggregate.sumSquares(metric));
+            }
+            try {
+                generator.writeFieldName(sensorId);
+                writeStatistics();
+                sensors++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void add(SensorData reading) {
+            try {
+                if (!reading.getSensorId().equals(sensorId)) {
+                    finish();
+                    sensorId = reading.getSensorId();
+                    sensors++;
+                    generator.writeFieldName(sensorId);
+                    if (intervalMillis != null) {
+                        generator.writeStartArray();
+                    }
+                    reset();
+                }
+                if (intervalMillis != null) {
+                    var readingBucket = Math.floorDiv(reading.getTimestamp().getTime(), intervalMillis) * intervalMillis;
+                    if (readingBucket != bucket) {
+                        writeBucket();
+                        bucket = readingBucket;
+                        reset();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows++;
+            for (int m = 0; m < metrics.length; m++) {
+                var value = metrics[m].valueOf(reading);
+                if (value != null) {
+                    summaries[m].add(value);
+                }
+            }
+        }
+
+        // Closes the sensor being filled
+        void finish() throws IOException {
+            if (sensorId == null) {
+                return;
+            }
+            if (intervalMillis == null) {
+                writeStatistics();
+            } else {
+                writeBucket();
+                generator.writeEndArray();
+            }
+            sensorId = null;
+            bucket = Long.MIN_VALUE;
+        }
+
+        private void reset() {
+            for (int m = 0; m < metrics.length; m++) {
+                summaries[m] = newSummary.get();
+            }
+        }
+
+        // Like the series, metrics without readings in the bucket are left out, and buckets without any
+        private void writeBucket() throws IOException {
+            if (bucket == Long.MIN_VALUE || Arrays.stream(summaries).allMatch(summary -> summary.count() == 0)) {
+                return;
+            }
+            generator.writeStartObject();
+            generator.writeFieldName("timestamp");
+            writer.writeValue(generator, new Date(bucket));
+            writeFields(true);
+            generator.writeEndObject();
+        }
+
+        private void writeStatistics() throws IOException {
+            generator.writeStartObject();
+            writeFields(false);
+            generator.writeEndObject();
+        }
+
+        private void writeFields(boolean skipEmpty) throws IOException {
+            for (int m = 0; m < metrics.length; m++) {
+                if (!skipEmpty || summaries[m].count() > 0) {
+                    generator.writeNumberField(names[m], statistic.apply(summaries[m]));
+                }
+            }
+        }
+    }
+}
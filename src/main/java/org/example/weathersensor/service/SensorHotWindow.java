@@ -0,0 +1,266 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Recent readings of every active sensor kept in memory, so queries over the last hours never reach the database.
+// Notified first, listeners reacting to new readings can rely on them being queryable.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SensorHotWindow implements SensorDataListener, SmartInitializingSingleton {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int WARM_UP_PAGE_SIZE = 10_000;
+
+    private final SensorStore store;
+    private final SensorProperties properties;
+    private final Map<String, SensorRingBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    // Sensors without a buffer had no readings at or after this time, or were evicted before it
+    private final AtomicLong unknownSensorFloor = new AtomicLong(System.currentTimeMillis());
+
+    public SensorHotWindow(SensorStore store, SensorProperties properties) {
+        this.store = store;
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.getHotWindow().isEnabled();
+    }
+
+    long allocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    @Override
+    public void onSaved(List<SensorData> readings) {
+        if (!isEnabled()) {
+            return;
+        }
+        var values = new double[Metric.values().length];
+        var now = System.currentTimeMillis();
+        for (SensorData reading : readings) {
+            append(reading.getSensorId(), reading.getTimestamp().getTime(), valuesOf(reading, values), now);
+        }
+    }
+
+    private void append(String sensorId, long timestamp, double[] values, long now) {
+        // Backfilled readings from before what the window covers are neither needed nor worth a buffer
+        if (timestamp < unknownSensorFloor.get() && !buffers.containsKey(sensorId)) {
+            return;
+        }
+        var window = properties.getHotWindow().getWindow().toMillis();
+        // Memory is reserved outside the buffer locks, eviction needs to lock other buffers
+        while (true) {
+            var buffer = bufferOf(sensorId);
+            int growFrom;
+            synchronized (buffer) {
+                if (buffer.isRetired()) {
+                    continue; // Evicted meanwhile, start over with a fresh buffer
+                }
+                if (timestamp < buffer.floor()) {
+                    return; // The buffer makes no claim about readings this old
+                }
+                if (!buffer.isFull() || buffer.newest() - buffer.oldest() >= window) {
+                    buffer.append(timestamp, values, now);
+                    buffer.evictBefore(buffer.newest() - window);
+                    return;
+                }
+                growFrom = buffer.capacity();
+            }
+
+            var growBytes = bytesFor(growFrom);
+            var reserved = reserve(growBytes, sensorId);
+            synchronized (buffer) {
+                if (buffer.isRetired()) {
+                    release(reserved ? growBytes : 0);
+                    continue;
+                }
+                if (reserved && buffer.capacity() == growFrom) {
+                    buffer.grow(growFrom * 2);
+                } else {
+                    release(reserved ? growBytes : 0); // Out of budget, the oldest reading gets overwritten
+                }
+                buffer.append(timestamp, values, now);
+                buffer.evictBefore(buffer.newest() - window);
+                return;
+            }
+        }
+    }
+
+    private SensorRingBuffer bufferOf(String sensorId) {
+        var buffer = buffers.get(sensorId);
+        if (buffer != null) {
+            return buffer;
+        }
+        var bytes = bytesFor(INITIAL_CAPACITY);
+        if (!reserve(bytes, sensorId)) {
+            allocatedBytes.addAndGet(bytes); // Always hand out a buffer, otherwise the reading is lost from memory
+        }
+        var created = new SensorRingBuffer(INITIAL_CAPACITY, unknownSensorFloor.get());
+        buffer = buffers.putIfAbsent(sensorId, created);
+        if (buffer != null) {
+            release(bytes);
+            return buffer;
+        }
+        return created;
+    }
+
+    private boolean reserve(long bytes, String requestingSensor) {
+        var budget = properties.getHotWindow().getMaxMemory().toBytes();
+        while (true) {
+            var allocated = allocatedBytes.get();
+            if (allocated + bytes <= budget) {
+                if (allocatedBytes.compareAndSet(allocated, allocated + bytes)) {
+                    return true;
+                }
+            } else if (!evictLeastRecentlyWritten(requestingSensor)) {
+                return false;
+            }
+        }
+    }
+
+    private void release(long bytes) {
+        allocatedBytes.addAndGet(-bytes);
+    }
+
+    private static long bytesFor(int capacity) {
+        return (long) capacity * SensorRingBuffer.BYTES_PER_READING;
+    }
+
+    private static double[] valuesOf(SensorData reading, double[] values) {
+        for (Metric metric : Metric.values()) {
+            var value = metric.valueOf(reading);
+            values[metric.ordinal()] = value == null ? Double.NaN : value;
+        }
+        return values;
+    }
+
+    private boolean evictLeastRecentlyWritten(String requestingSensor) {
+        String victim = null;
+        var victimLastWrite = Long.MAX_VALUE;
+        for (var entry : buffers.entrySet()) {
+            var lastWrite = entry.getValue().lastWrite();
+            if (lastWrite < victimLastWrite && !entry.getKey().equals(requestingSensor)) {
+                victim = entry.getKey();
+                victimLastWrite = lastWrite;
+            }
+        }
+        return victim != null && evict(victim);
+    }
+
+    private boolean evict(String sensorId) {
+        var buffer = buffers.get(sensorId);
+        if (buffer == null) {
+            return false;
+        }
+        synchronized (buffer) {
+            if (buffer.isRetired()) {
+                return false;
+            }
+            // Raised before the buffer disappears, so a replacement buffer never claims the evicted readings
+            unknownSensorFloor.accumulateAndGet(buffer.newest() + 1, Math::max);
+            buffer.retire();
+            buffers.remove(sensorId, buffer);
+            release(bytesFor(buffer.capacity()));
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${sensor.hot-window.eviction-interval:PT1M}")
+    public void evictIdleSensors() {
+        var idleSince = System.currentTimeMillis() - properties.getHotWindow().getIdleTimeout().toMillis();
+        buffers.forEach((sensorId, buffer) -> {
+            if (buffer.lastWrite() < idleSince) {
+                evict(sensorId);
+            }
+        });
+    }
+
+    // Answers from memory only when every sensor's buffer holds all of its readings in [start, end]
+    Optional<Map<Metric, MetricSummary>> summarize(Set<String> sensorIds, Date start, Date end,
+                                                   Supplier<MetricSummary> newSummary) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        var from = start.getTime();
+        var summaries = new MetricSummary[Metric.values().length];
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = newSummary.get();
+        }
+        for (String sensorId : sensorIds) {
+            var buffer = buffers.get(sensorId);
+            if (buffer == null) {
+                if (from < unknownSensorFloor.get()) {
+                    return Optional.empty();
+                }
+                continue;
+            }
+            synchronized (buffer) {
+                if (from < buffer.floor()) {
+                    return Optional.empty();
+                }
+                buffer.summarize(from, end.getTime(), summaries);
+            }
+        }
+
+        Map<Metric, MetricSummary> result = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            result.put(metric, summaries[metric.ordinal()]);
+        }
+        return Optional.of(result);
+    }
+
+    // The readings at or after start of every sensor, only when the buffers hold all of them
+    Optional<List<SensorData>> readingsSince(Set<String> sensorIds, Date start) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        var from = start.getTime();
+        List<SensorData> readings = new ArrayList<>();
+        for (String sensorId : sensorIds) {
+            var buffer = buffers.get(sensorId);
+            if (buffer == null) {
+                if (from < unknownSensorFloor.get()) {
+                    return Optional.empty();
+                }
+                continue;
+            }
+            synchronized (buffer) {
+                if (from < buffer.floor()) {
+                    return Optional.empty();
+                }
+                buffer.readings(sensorId, from, readings);
+            }
+        }
+        return Optional.of(readings);
+    }
+
+    // Loads the last window of readings before the server accepts traffic, so the window is useful right away
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!isEnabled()) {
+            return;
+        }
+        var from = new Date(System.currentTimeMillis() - properties.getHotWindow().getWindow().toMillis());
+        var now = System.currentTimeMillis();
+        unknownSensorFloor.set(from.getTime());
+        var values = new double[Metric.values().length];
+        store.scan(from, WARM_UP_PAGE_SIZE, page -> {
+            for (SensorData reading : page) {
+                append(reading.getSensorId(), reading.getTimestamp().getTime(), valuesOf(reading, values), now);
+            }
+        });
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Drops readings a gateway sent again, recognized by the sequence number the client gave them. A key above the
+// highest stored sequence number of its sensor is new without any further check, which covers every reading of a
+// gateway that is not retrying. Lower keys are looked up in a filter of recently stored keys, and only the ones it has
+// probably seen are confirmed with the store. Both are loaded from the most recently stored keys at startup. Keys the
+// filter forgot, or that a concurrent request is still writing, reach the unique (sensor id, sequence number) index of
+// the database engines, which rejects the duplicate. The segment engine has no such index and keeps no sequence numbers
+// in its files, so there those keys and every key sent before a restart are stored again.
+@Slf4j
+@Component
+public class SensorIngestKeys implements SensorDataListener, SmartInitializingSingleton {
+    private final SensorStore store;
+    private final SensorMeters meters;
+    private final SensorProperties properties;
+    private final Map<String, Long> highWaterMarks = new ConcurrentHashMap<>();
+    private final RecentKeyFilter recent;
+
+    public SensorIngestKeys(SensorStore store, SensorMeters meters, SensorProperties properties) {
+        this.store = store;
+        this.meters = meters;
+        this.properties = properties;
+        var dedup = properties.getIngest().getDedup();
+        recent = new RecentKeyFilter(dedup.getRecentKeys(), dedup.getFalsePositiveRate());
+    }
+
+    public boolean isEnabled() {
+        return properties.getIngest().getDedup().isEnabled();
+    }
+
+    // The readings without the ones stored before or repeated within the list, the list itself when none is dropped
+    public List<SensorData> admit(List<SensorData> readings) {
+        if (!isEnabled()) {
+            return readings;
+        }
+        List<SensorData> admitted = null;
+        Map<String, Set<Long>> seen = new HashMap<>();
+        for (int i = 0; i < readings.size(); i++) {
+            var reading = readings.get(i);
+            var sequenceNumber = reading.getSequenceNumber();
+            var duplicate = sequenceNumber != null && (isRepeated(seen, reading) || isStored(reading.getSensorId(), sequenceNumber));
+            if (duplicate && admitted == null) {
+                admitted = new ArrayList<>(readings.subList(0, i));
+            } else if (!duplicate && admitted != null) {
+                admitted.add(reading);
+            }
+        }
+        return admitted == null ? readings : admitted;
+    }
+
+    private boolean isRepeated(Map<String, Set<Long>> seen, SensorData reading) {
+        var repeated = !seen.computeIfAbsent(reading.getSensorId(), sensorId -> new HashSet<>()).add(reading.getSequenceNumber());
+        if (repeated) {
+            meters.duplicate("batch");
+        }
+        return repeated;
+    }
+
+    private boolean isStored(String sensorId, long sequenceNumber) {
+        var highWaterMark = highWaterMarks.get(sensorId);
+        if (highWaterMark == null || sequenceNumber > highWaterMark || !recent.mightContain(sensorId, sequenceNumber)) {
+            return false;
+        }
+        var stored = store.containsSequence(sensorId, sequenceNumber);
+        if (stored) {
+            meters.duplicate("filter");
+        }
+        return stored;
+    }
+
+    // Whether a write failed on a unique index. Plain JDBC reports DuplicateKeyException, Hibernate only the generic
+    // integrity violation with the SQL state of one.
+    public static boolean isUniqueViolation(DataAccessException e) {
+        if (e instanceof DuplicateKeyException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && "23505".equals(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Keys only count as seen once committed, a rolled back reading may be sent again
+    @Override
+    public void onSaved(List<SensorData> readings) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (SensorData reading : readings) {
+            if (reading.getSequenceNumber() != null) {
+                remember(reading.getSensorId(), reading.getSequenceNumber());
+            }
+        }
+    }
+
+    private void remember(String sensorId, long sequenceNumber) {
+        highWaterMarks.merge(sensorId, sequenceNumber, Math::max);
+        recent.add(sensorId, sequenceNumber);
+    }
+
+    // Loaded before the server accepts traffic, so a gateway retrying across a restart is still caught in memory
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!isEnabled()) {
+            return;
+        }
+        var loaded = new int[1];
+        store.recentSequences(properties.getIngest().getDedup().getRecentKeys(), (sensorId, sequenceNumber) -> {
+            remember(sensorId, sequenceNumber);
+            loaded[0]++;
+        });
+        log.info("Loaded {} recent sequence numbers of {} sensors", loaded[0], highWaterMarks.size());
+    }
+}
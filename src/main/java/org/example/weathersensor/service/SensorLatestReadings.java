@@ -0,0 +1,67 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The most recent reading of every sensor, answering "what is each sensor reading right now" without the database.
+// Every sensor maps to an immutable snapshot that writers swap with compare-and-set, so readers never block and
+// writers of different sensors never wait for each other. Backfilled readings older than the snapshot are ignored.
+@Slf4j
+@Component
+public class SensorLatestReadings implements SensorDataListener, SmartInitializingSingleton {
+    private final SensorStore store;
+    private final Map<String, LatestReading> latest = new ConcurrentHashMap<>();
+
+    public SensorLatestReadings(SensorStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void onSaved(List<SensorData> readings) {
+        for (SensorData reading : readings) {
+            offer(LatestReading.of(reading));
+        }
+    }
+
+    private void offer(LatestReading reading) {
+        while (true) {
+            var current = latest.get(reading.sensorId());
+            if (current == null) {
+                if (latest.putIfAbsent(reading.sensorId(), reading) == null) {
+                    return;
+                }
+            } else if (!reading.isNewerThan(current) || latest.replace(reading.sensorId(), current, reading)) {
+                return;
+            }
+        }
+    }
+
+    // The requested sensors in request order, all sensors ordered by id without sensorIds. Sensors that never stored
+    // a reading are left out.
+    public Map<String, LatestReading> getLatest(Optional<List<String>> sensorIds) {
+        if (sensorIds.isEmpty()) {
+            return new TreeMap<>(latest);
+        }
+        Map<String, LatestReading> result = new LinkedHashMap<>();
+        for (String sensorId : sensorIds.get()) {
+            var reading = latest.get(sensorId);
+            if (reading != null) {
+                result.put(sensorId, reading);
+            }
+        }
+        return result;
+    }
+
+    // Loaded with one query before the server accepts traffic, writes racing with it keep whichever reading is newer
+    @Override
+    public void afterSingletonsInstantiated() {
+        store.latestBySensor(reading -> offer(LatestReading.of(reading)));
+        log.info("Loaded the latest reading of {} sensors", latest.size());
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Statistics over a sliding window of the most recent readings, pushed to subscribers as Server-Sent Events.
+// Every distinct subscription keeps one sliding window per metric that stored readings are added to as they commit;
+// subscribers asking for the same sensors, metrics, statistic and window share it. Values are pushed every
+// sensor.live.push-interval when they changed, without ever querying the database again.
+@Slf4j
+@Component
+public class SensorLiveAggregates implements SensorDataListener {
+    private final SensorHotWindow hotWindow;
+    private final SensorStore store;
+    private final StatisticRegistry statistics;
+    private final SensorProperties properties;
+    private final Map<Key, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, List<Subscription>> bySensor = new ConcurrentHashMap<>();
+
+    public SensorLiveAggregates(SensorHotWindow hotWindow, SensorStore store, StatisticRegistry statistics,
+                                SensorProperties properties) {
+        this.hotWindow = hotWindow;
+        this.store = store;
+        this.statistics = statistics;
+        this.properties = properties;
+    }
+
+    public SseEmitter subscribe(List<String> sensorIds, List<String> metrics, String statistic, String window) {
+        if (sensorIds.isEmpty() || metrics.isEmpty()) {
+            throw new IllegalArgumentException("At least one sensor id and one metric are required");
+        }
+        var requestedStatistic = statistics.get(statistic);
+        if (requestedStatistic.requiresSketch()) {
+            throw new IllegalArgumentException("Statistic " + statistic + " is not available for live subscriptions");
+        }
+        var windowMillis = parseWindow(window).toMillis();
+        var requested = new TreeSet<Metric>();
+        metrics.forEach(metric -> requested.add(Metric.from(metric)));
+        var key = new Key(List.copyOf(new TreeSet<>(sensorIds)), List.copyOf(requested), requestedStatistic.key(), windowMillis);
+
+        var emitter = new SseEmitter(0L);
+        while (true) {
+            var subscription = subscriptions.get(key);
+            if (subscription == null) {
+                subscription = open(key, requestedStatistic);
+            }
+            Map<String, Double> values;
+            synchronized (subscription) {
+                if (subscription.closed) {
+                    continue; // Its last subscriber left meanwhile
+                }
+                var joined = subscription;
+                subscription.emitters.add(emitter);
+                Runnable leave = () -> leave(joined, emitter);
+                emitter.onCompletion(leave);
+                emitter.onTimeout(leave);
+                emitter.onError(error -> leave.run());
+                values = subscription.values(System.currentTimeMillis());
+            }
+            send(emitter, values);
+            return emitter;
+        }
+    }
+
+    int subscriptionCount() {
+        return subscriptions.size();
+    }
+
+    // Values of every subscription as they would be pushed now
+    List<Map<String, Double>> currentValues() {
+        var now = System.currentTimeMillis();
+        List<Map<String, Double>> values = new ArrayList<>();
+        for (Subscription subscription : subscriptions.values()) {
+            synchronized (subscription) {
+                values.add(subscription.values(now));
+            }
+        }
+        return values;
+    }
+
+    // Registered before the readings so far are loaded, subscribers joining meanwhile wait on its monitor. A reading
+    // committing at that very moment may be counted twice until it leaves the window.
+    private Subscription open(Key key, Statistic statistic) {
+        var subscription = new Subscription(key, statistic);
+        synchronized (subscription) {
+            var existing = subscriptions.putIfAbsent(key, subscription);
+            if (existing != null) {
+                return existing;
+            }
+            for (String sensorId : key.sensorIds()) {
+                bySensor.compute(sensorId, (id, list) -> {
+                    var updated = list == null ? new CopyOnWriteArrayList<Subscription>() : list;
+                    updated.add(subscription);
+                    return updated;
+                });
+            }
+            var start = new Date(System.currentTimeMillis() - key.window());
+            var ids = new LinkedHashSet<>(key.sensorIds());
+            var readings = hotWindow.readingsSince(ids, start).orElseGet(() -> {
+                List<SensorData> loaded = new ArrayList<>();
+                for (String sensorId : ids) {
+                    loaded.addAll(store.findBySensorIdAndTimestampBetween(sensorId, start, new Date()));
+                }
+                return loaded;
+            });
+            readings.sort(Comparator.comparing(SensorData::getTimestamp));
+            readings.forEach(subscription::add);
+        }
+        return subscription;
+    }
+
+    private void leave(Subscription subscription, SseEmitter emitter) {
+        synchronized (subscription) {
+            subscription.emitters.remove(emitter);
+            if (!subscription.emitters.isEmpty() || subscription.closed) {
+                return;
+            }
+            subscription.closed = true;
+            subscriptions.remove(subscription.key, subscription);
+            for (String sensorId : subscription.key.sensorIds()) {
+                bySensor.computeIfPresent(sensorId, (id, list) -> {
+                    list.remove(subscription);
+                    return list.isEmpty() ? null : list;
+                });
+            }
+        }
+    }
+
+    @Override
+    public void onSaved(List<SensorData> readings) {
+        if (bySensor.isEmpty()) {
+            return;
+        }
+        for (SensorData reading : readings) {
+            var interested = bySensor.get(reading.getSensorId());
+            if (interested != null) {
+                for (Subscription subscription : interested) {
+                    synchronized (subscription) {
+                        subscription.add(reading);
+                    }
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sensor.live.push-interval:PT1S}")
+    public void push() {
+        var now = System.currentTimeMillis();
+        var heartbeat = properties.getLive().getHeartbeat().toMillis();
+        for (Subscription subscription : subscriptions.values()) {
+            Map<String, Double> values;
+            List<SseEmitter> emitters;
+            synchronized (subscription) {
+                values = subscription.values(now);
+                if (values.equals(subscription.lastSent) && now - subscription.lastSentAt < heartbeat) {
+                    continue;
+                }
+                subscription.lastSent = values;
+                subscription.lastSentAt = now;
+                emitters = List.copyOf(subscription.emitters);
+            }
+            // Outside the monitor, so a slow client holds up neither the writes adding readings nor the other pushes
+            for (SseEmitter emitter : emitters) {
+                send(emitter, values);
+            }
+        }
+    }
+
+    // A failed send completes the emitter, which makes it leave its subscription
+    private static void send(SseEmitter emitter, Map<String, Double> values) {
+        try {
+            emitter.send(SseEmitter.event().name("metrics").data(values));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private Duration parseWindow(String window) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid window: " + window);
+        }
+        if (duration.toMillis() <= 0 || duration.compareTo(properties.getLive().getMaxWindow()) > 0) {
+            throw new IllegalArgumentException("Window must be positive and at most " + properties.getLive().getMaxWindow());
+        }
+        return duration;
+    }
+
+    private record Key(List<String> sensorIds, List<Metric> metrics, String statistic, long window) {
+    }
+
+    // Guarded by its own monitor
+    private static final class Subscription {
+        private final Key key;
+        private final Statistic statistic;
+        private final Map<Metric, SlidingWindow> windows = new EnumMap<>(Metric.class);
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private Map<String, Double> lastSent;
+        private long lastSentAt;
+        private boolean closed;
+
+        Subscription(Key key, Statistic statistic) {
+            this.key = key;
+            this.statistic = statistic;
+            key.metrics().forEach(metric -> windows.put(metric, new SlidingWindow(key.window())));
+        }
+
+        void add(SensorData reading) {
+            var timestamp = reading.getTimestamp().getTime();
+            if (timestamp < System.currentTimeMillis() - key.window()) {
+                return; // Backfilled, never inside the window
+            }
+            windows.forEach((metric, window) -> {
+                var value = metric.valueOf(reading);
+                if (value != null) {
+                    window.add(timestamp, value);
+                }
+            });
+        }
+
+        Map<String, Double> values(long now) {
+            Map<String, Double> values = new LinkedHashMap<>();
+            windows.forEach((metric, window) -> {
+                window.advance(now);
+                values.put(metric.key(), statistic.apply(window.summary()));
+            });
+            return values;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.weathersensor.service;
+
+import io.micrometer.core.instrument.*;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Micrometer meters of the query and ingest paths. Meters with varying tags are resolved through providers that cache
+// them by tags, so recording on the hot path never registers anything. Percentile histograms are switched on per meter
+// name through management.metrics.distribution.percentiles-histogram.
+@Component
+public class SensorMeters implements SensorDataListener {
+    static final String QUERY = "sensor.query";
+    static final String QUERY_SENSORS = "sensor.query.sensors";
+    static final String QUERY_ROWS = "sensor.query.rows";
+    static final String STORE = "sensor.store";
+    static final String INGEST = "sensor.ingest.readings";
+    static final String INGEST_BY_SENSOR = "sensor.ingest.sensor.readings";
+    static final String INGEST_DUPLICATES = "sensor.ingest.duplicates";
+    static final String ERRORS = "sensor.errors";
+
+    private final MeterRegistry registry;
+    private final SensorProperties.Observability settings;
+    private final Meter.MeterProvider<Timer> queries;
+    private final DistributionSummary querySensors;
+    private final Meter.MeterProvider<DistributionSummary> queryRows;
+    private final Meter.MeterProvider<Timer> storeCalls;
+    private final Counter ingested;
+    private final Map<String, Counter> ingestedBySensor = new ConcurrentHashMap<>();
+    private final Meter.MeterProvider<Counter> duplicates;
+    private final Meter.MeterProvider<Counter> errors;
+
+    public SensorMeters(MeterRegistry registry, SensorProperties properties) {
+        this.registry = registry;
+        this.settings = properties.getObservability();
+        this.queries = Timer.builder(QUERY)
+                .description("Metric queries that were not answered from the cache, by statistic and answering tier")
+                .withRegistry(registry);
+        this.querySensors = DistributionSummary.builder(QUERY_SENSORS)
+                .description("Distinct sensor ids per metric query")
+                .register(registry);
+        this.queryRows = DistributionSummary.builder(QUERY_ROWS)
+                .description("Raw readings read or aggregated by one store call of a metric query")
+                .baseUnit("rows")
+                .withRegistry(registry);
+        this.storeCalls = Timer.builder(STORE)
+                .description("Calls of the raw reading store, including the hydration of the readings")
+                .withRegistry(registry);
+        this.ingested = Counter.builder(INGEST)
+                .description("Readings committed")
+                .register(registry);
+        this.duplicates = Counter.builder(INGEST_DUPLICATES)
+                .description("Readings dropped because their sequence number was stored before, by the check that caught them")
+                .withRegistry(registry);
+        this.errors = Counter.builder(ERRORS)
+                .description("Exceptions turned into error responses, by type")
+                .withRegistry(registry);
+    }
+
+    public Timer.Sample startQuery() {
+        return Timer.start(registry);
+    }
+
+    public void queried(Timer.Sample sample, String statistic, String tier, int sensors) {
+        sample.stop(queries.withTags("statistic", statistic, "tier", tier));
+        querySensors.record(sensors);
+    }
+
+    public void rowsScanned(String operation, long rows) {
+        queryRows.withTags("operation", operation).record(rows);
+    }
+
+    public <T> T timeStore(String operation, Supplier<T> call) {
+        var sample = Timer.start(registry);
+        try {
+            return call.get();
+        } finally {
+            sample.stop(storeCalls.withTags("operation", operation));
+        }
+    }
+
+    public void duplicate(String check) {
+        duplicates.withTags("check", check).increment();
+    }
+
+    public void error(Throwable e, int status) {
+        errors.withTags("exception", e.getClass().getSimpleName(), "status", String.valueOf(status)).increment();
+    }
+
+    // After commit, so rolled back writes are never counted
+    @Override
+    public void onSaved(List<SensorData> readings) {
+        ingested.increment(readings.size());
+        if (!settings.isPerSensorIngest()) {
+            return;
+        }
+        for (SensorData reading : readings) {
+            var counter = sensorCounter(reading.getSensorId());
+            if (counter != null) {
+                counter.increment();
+            }
+        }
+    }
+
+    // Sensors beyond the limit are only counted in the total, one series per sensor of a whole fleet would not scale
+    private Counter sensorCounter(String sensorId) {
+        var counter = ingestedBySensor.get(sensorId);
+        if (counter == null && ingestedBySensor.size() < settings.getMaxSensorTags()) {
+            counter = ingestedBySensor.computeIfAbsent(sensorId, id -> Counter.builder(INGEST_BY_SENSOR)
+                    .description("Readings committed per sensor")
+                    .tag("sensor", id)
+                    .register(registry));
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Bounded LRU cache of metric results. Ranges that ended in the past never change and stay until evicted for
+// space, ranges still open at the end expire after a TTL. Stored readings only invalidate the entries of their
+// sensor whose range covers them. Runs after the other listeners, so a result computed after an invalidation
+// already sees the new readings everywhere.
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class SensorMetricsCache implements SensorDataListener {
+    private final SensorProperties properties;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Key>> keysBySensor = new HashMap<>();
+    // Results being computed, marked stale when a write lands in their range before they are stored
+    private final Set<Loading> loading = ConcurrentHashMap.newKeySet();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public SensorMetricsCache(SensorProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.getCache().isEnabled();
+    }
+
+    // Sensor ids and metrics are compared as sets, an absent start or end is resolved at query time
+    public static Key key(Collection<String> sensorIds, Collection<String> metrics, String statistic,
+                          Optional<Date> startDate, Optional<Date> endDate) {
+        return new Key(List.copyOf(new TreeSet<>(sensorIds)), List.copyOf(new TreeSet<>(metrics)), statistic,
+                startDate.map(Date::getTime).orElse(null), endDate.map(Date::getTime).orElse(null));
+    }
+
+    public Map<String, Double> get(Key key, Supplier<Map<String, Double>> compute) {
+        if (!isEnabled()) {
+            return compute.get();
+        }
+        var now = System.currentTimeMillis();
+        synchronized (this) {
+            var entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.increment();
+                return entry.result;
+            }
+            if (entry != null) {
+                remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+
+        var pending = new Loading(key, now);
+        loading.add(pending);
+        Map<String, Double> result = null;
+        try {
+            result = Collections.unmodifiableMap(new HashMap<>(compute.get()));
+        } finally {
+            // Under the same monitor as onSaved, so a write either still finds the result loading or already cached
+            synchronized (this) {
+                loading.remove(pending);
+                if (result != null && !pending.stale) {
+                    put(key, result, now);
+                }
+            }
+        }
+        return result;
+    }
+
+    private synchronized void put(Key key, Map<String, Double> result, long now) {
+        var open = key.end() == null || key.end() >= now;
+        var expiresAt = open ? now + properties.getCache().getOpenRangeTtl().toMillis() : Long.MAX_VALUE;
+        if (entries.put(key, new Entry(result, expiresAt)) == null) {
+            key.sensorIds().forEach(id -> keysBySensor.computeIfAbsent(id, k -> new HashSet<>()).add(key));
+        }
+        var maxEntries = properties.getCache().getMaxEntries();
+        var eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            var evicted = eldest.next();
+            eldest.remove();
+            unindex(evicted);
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public void onSaved(List<SensorData> readings) {
+        if (!isEnabled()) {
+            return;
+        }
+        // Time span of the new readings per sensor, one lookup per sensor instead of per reading
+        Map<String, long[]> spans = new HashMap<>();
+        for (SensorData reading : readings) {
+            var timestamp = reading.getTimestamp().getTime();
+            spans.merge(reading.getSensorId(), new long[]{timestamp, timestamp},
+                    (span, other) -> new long[]{Math.min(span[0], other[0]), Math.max(span[1], other[1])});
+        }
+
+        synchronized (this) {
+            spans.forEach((sensorId, span) -> {
+                for (Loading pending : loading) {
+                    if (pending.key.sensorIds().contains(sensorId)
+                            && pending.key.covers(span[0], span[1], pending.startedAt)) {
+                        pending.stale = true;
+                    }
+                }
+            });
+            var now = System.currentTimeMillis();
+            spans.forEach((sensorId, span) -> {
+                var keys = keysBySensor.get(sensorId);
+                if (keys == null) {
+                    return;
+                }
+                for (Key key : List.copyOf(keys)) {
+                    if (key.covers(span[0], span[1], now)) {
+                        remove(key);
+                        invalidations.increment();
+                    }
+                }
+            });
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysBySensor.clear();
+    }
+
+    public MetricsCacheStats stats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new MetricsCacheStats(isEnabled(), size, properties.getCache().getMaxEntries(),
+                hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    private void remove(Key key) {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void unindex(Key key) {
+        for (String id : key.sensorIds()) {
+            var keys = keysBySensor.get(id);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysBySensor.remove(id);
+            }
+        }
+    }
+
+    public record Key(List<String> sensorIds, List<String> metrics, String statistic, Long start, Long end) {
+
+        // An absent start means the 24 hours before the end, an absent end means now
+        boolean covers(long from, long to, long now) {
+            var end = this.end != null ? this.end : Long.MAX_VALUE;
+            var start = this.start != null ? this.start : (this.end != null ? this.end : now) - 24 * 60 * 60 * 1000;
+            return from <= end && to >= start;
+        }
+    }
+
+    private record Entry(Map<String, Double> result, long expiresAt) {
+    }
+
+    private static final class Loading {
+        private final Key key;
+        private final long startedAt;
+        private volatile boolean stale;
+
+        private Loading(Key key, long startedAt) {
+            this.key = key;
+            this.startedAt = startedAt;
+        }
+    }
+}
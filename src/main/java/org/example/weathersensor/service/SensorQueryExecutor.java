@@ -0,0 +1,101 @@
+package org.example.weathersensor.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.weathersensor.config.SensorProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Runs independent per-sensor queries concurrently. Every task holds a database connection, so the
+// number of tasks in flight across all requests is capped below the connection pool size. The requests waiting
+// for them must not hold one meanwhile: open-in-view is disabled, and a caller inside a transaction runs its
+// tasks itself on the connection it has.
+@Component
+public class SensorQueryExecutor implements DisposableBean {
+    private final int parallelism;
+    private final Executor executor;
+
+    @Autowired
+    public SensorQueryExecutor(SensorProperties properties, DataSource dataSource, Environment environment) {
+        this(parallelism(properties.getQuery().getParallelism(), dataSource), Threading.VIRTUAL.isActive(environment));
+    }
+
+    SensorQueryExecutor(int parallelism, boolean virtualThreads) {
+        this.parallelism = Math.max(1, parallelism);
+        if (this.parallelism == 1) {
+            executor = null;
+        } else if (virtualThreads) {
+            // Virtual threads are cheap to start, the limit blocks the submitting request instead of queueing
+            var virtual = new SimpleAsyncTaskExecutor("sensor-query-");
+            virtual.setVirtualThreads(true);
+            virtual.setConcurrencyLimit(this.parallelism);
+            executor = virtual;
+        } else {
+            var threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(this.parallelism, task -> {
+                var thread = new Thread(task, "sensor-query-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Leaves one connection of the pool to the queries request threads run themselves
+    private static int parallelism(int configured, DataSource dataSource) {
+        var poolSize = dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 1;
+        var limit = Math.max(1, poolSize - 1);
+        return configured > 0 ? Math.min(configured, limit) : limit;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    // Applies the task to every key and returns the results in key order, failures are rethrown as is
+    public <K, T> List<T> map(Collection<K> keys, Function<K, T> task) {
+        if (executor == null || keys.size() < 2 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return keys.stream().map(task).toList();
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(key), executor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor instanceof ExecutorService pool) {
+            pool.shutdownNow();
+        }
+    }
+}
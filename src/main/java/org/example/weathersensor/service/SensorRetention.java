@@ -0,0 +1,105 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.RollupResolution;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.function.IntToLongFunction;
+
+// Expires raw readings past sensor.retention.raw. Rollups are maintained on every write, so the minute/hour/day
+// aggregates of expired readings are already stored and long ranges keep their answers. Deletes run in chunks of
+// their own transaction with a pause after each, so ingest is never blocked for long.
+@Slf4j
+@Component
+public class SensorRetention {
+    private final SensorStore store;
+    private final SensorRollups rollups;
+    private final SensorMeters meters;
+    private final SensorProperties properties;
+
+    public SensorRetention(SensorStore store, SensorRollups rollups, SensorMeters meters, SensorProperties properties) {
+        this.store = store;
+        this.rollups = rollups;
+        this.meters = meters;
+        this.properties = properties;
+    }
+
+    @Scheduled(fixedDelayString = "${sensor.retention.interval:PT1H}")
+    public void expire() {
+        var retention = properties.getRetention();
+        if (!retention.isEnabled()) {
+            return;
+        }
+        if (!rollups.isEnabled()) {
+            log.warn("Retention skipped, readings are only expired while rollups keep their aggregates");
+            return;
+        }
+        var now = System.currentTimeMillis();
+        var rawBefore = new Date(now - retention.getRaw().toMillis());
+        var readings = inChunks(limit -> meters.timeStore("expire", () -> store.deleteBefore(rawBefore, limit)));
+        if (readings > 0) {
+            log.info("Expired {} readings older than {}", readings, rawBefore.toInstant());
+        }
+        if (retention.getMinuteRollups() != null && minuteRollupHorizon(properties, now) == Long.MIN_VALUE) {
+            log.warn("Minute rollups kept, sensor.retention.minute-rollups is shorter than sensor.retention.raw");
+        } else if (retention.getMinuteRollups() != null) {
+            var minutesBefore = new Date(minuteRollupHorizon(properties, now));
+            var buckets = inChunks(limit -> rollups.expire(RollupResolution.MINUTE, minutesBefore, limit));
+            if (buckets > 0) {
+                log.info("Expired {} minute rollups older than {}", buckets, minutesBefore.toInstant());
+            }
+        }
+    }
+
+    // Oldest time raw readings are kept from, Long.MIN_VALUE while they are never expired
+    static long rawHorizon(SensorProperties properties, long now) {
+        var retention = properties.getRetention();
+        return retention.isEnabled() && properties.getRollup().isEnabled()
+                ? now - retention.getRaw().toMillis()
+                : Long.MIN_VALUE;
+    }
+
+    // Minute rollups are only dropped when they outlive the raw readings, so every range keeps one source or the other
+    static long minuteRollupHorizon(SensorProperties properties, long now) {
+        var minuteRollups = properties.getRetention().getMinuteRollups();
+        if (minuteRollups == null || rawHorizon(properties, now) == Long.MIN_VALUE
+                || minuteRollups.compareTo(properties.getRetention().getRaw()) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return now - minuteRollups.toMillis();
+    }
+
+    // For answers computed from raw readings alone, which would silently miss the expired ones
+    static void requireRawReadings(SensorProperties properties, Date start) {
+        var horizon = rawHorizon(properties, System.currentTimeMillis());
+        if (start.getTime() < horizon) {
+            throw new IllegalArgumentException("Raw readings are only kept for " + properties.getRetention().getRaw()
+                    + ", start must not be before " + Instant.ofEpochMilli(horizon));
+        }
+    }
+
+    // Deletes until a chunk comes back short, pausing after every full one
+    private long inChunks(IntToLongFunction deleteChunk) {
+        var limit = Math.max(1, properties.getRetention().getChunkSize());
+        var pause = properties.getRetention().getPause().toMillis();
+        long total = 0;
+        while (true) {
+            var deleted = deleteChunk.applyAsLong(limit);
+            total += deleted;
+            if (deleted < limit) {
+                return total;
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+
+import java.util.Date;
+import java.util.List;
+
+// Time ordered readings of one sensor in parallel primitive columns, oldest overwritten first.
+// Missing metric values are stored as NaN. Callers synchronize on the buffer.
+final class SensorRingBuffer {
+    static final int BYTES_PER_READING = Long.BYTES + Metric.values().length * Double.BYTES;
+
+    private long[] timestamps;
+    private double[][] columns;
+    private int head; // Physical index of the oldest reading
+    private int size;
+    private long floor; // Every reading at or after this time is held by the buffer
+    private volatile long lastWrite; // Read without the lock to pick eviction victims
+    private boolean retired;
+
+    SensorRingBuffer(int capacity, long floor) {
+        this.timestamps = new long[capacity];
+        this.columns = new double[Metric.values().length][capacity];
+        this.floor = floor;
+    }
+
+    int capacity() {
+        return timestamps.length;
+    }
+
+    boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    long floor() {
+        return floor;
+    }
+
+    long lastWrite() {
+        return lastWrite;
+    }
+
+    long newest() {
+        return size == 0 ? Long.MIN_VALUE : timestamps[physical(size - 1)];
+    }
+
+    long oldest() {
+        return size == 0 ? Long.MAX_VALUE : timestamps[head];
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    void retire() {
+        retired = true;
+    }
+
+    void grow(int capacity) {
+        var grownTimestamps = new long[capacity];
+        var grownColumns = new double[columns.length][capacity];
+        for (int i = 0; i < size; i++) {
+            var p = physical(i);
+            grownTimestamps[i] = timestamps[p];
+            for (int c = 0; c < columns.length; c++) {
+                grownColumns[c][i] = columns[c][p];
+            }
+        }
+        timestamps = grownTimestamps;
+        columns = grownColumns;
+        head = 0;
+    }
+
+    void append(long timestamp, double[] values, long now) {
+        lastWrite = now;
+        if (size > 0 && timestamp < timestamps[head] && isFull()) {
+            floor = Math.max(floor, timestamp + 1); // Too old to keep, the buffer no longer covers it
+            return;
+        }
+        if (isFull()) {
+            floor = Math.max(floor, timestamps[head] + 1);
+            head = physical(1);
+            size--;
+        }
+
+        // Readings from concurrent writers can commit slightly out of order, shift them into place
+        var position = size;
+        while (position > 0 && timestamps[physical(position - 1)] > timestamp) {
+            copy(physical(position - 1), physical(position));
+            position--;
+        }
+        var p = physical(position);
+        timestamps[p] = timestamp;
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][p] = values[c];
+        }
+        size++;
+    }
+
+    void evictBefore(long cutoff) {
+        while (size > 0 && timestamps[head] < cutoff) {
+            head = physical(1);
+            size--;
+        }
+        floor = Math.max(floor, cutoff);
+    }
+
+    // Adds every reading within [from, to] to the per metric summaries, indexed by metric ordinal
+    void summarize(long from, long to, MetricSummary[] summaries) {
+        for (int i = firstAtOrAfter(from); i < size; i++) {
+            var p = physical(i);
+            if (timestamps[p] > to) {
+                break;
+            }
+            for (int c = 0; c < summaries.length; c++) {
+                var value = columns[c][p];
+                if (summaries[c] != null && !Double.isNaN(value)) {
+                    summaries[c].add(value);
+                }
+            }
+        }
+    }
+
+    // Adds every reading at or after from to the list, in timestamp order
+    void readings(String sensorId, long from, List<SensorData> into) {
+        var metrics = Metric.values();
+        for (int i = firstAtOrAfter(from); i < size; i++) {
+            var p = physical(i);
+            var reading = new SensorData();
+            reading.setSensorId(sensorId);
+            reading.setTimestamp(new Date(timestamps[p]));
+            for (int c = 0; c < metrics.length; c++) {
+                metrics[c].setValue(reading, Double.isNaN(columns[c][p]) ? null : columns[c][p]);
+            }
+            into.add(reading);
+        }
+    }
+
+    private int firstAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (timestamps[physical(mid)] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void copy(int from, int to) {
+        timestamps[to] = timestamps[from];
+        for (double[] column : columns) {
+            column[to] = column[from];
+        }
+    }
+
+    private int physical(int logical) {
+        var p = head + logical;
+        return p >= timestamps.length ? p - timestamps.length : p;
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.*;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+// Minute/hour/day rollups maintained on ingest and used to answer long ranges without scanning raw readings
+@Component
+public class SensorRollups {
+    private static final RollupResolution[] COARSEST_FIRST = {
+            RollupResolution.DAY, RollupResolution.HOUR, RollupResolution.MINUTE};
+    private static final RollupResolution[] HOURS_FIRST = {RollupResolution.DAY, RollupResolution.HOUR};
+
+    private final SensorRollupRepository rollupRepository;
+    private final SensorProperties properties;
+
+    public SensorRollups(SensorRollupRepository rollupRepository, SensorProperties properties) {
+        this.rollupRepository = rollupRepository;
+        this.properties = properties;
+    }
+
+    public boolean isEmpty() {
+        return rollupRepository.count() == 0;
+    }
+
+    public boolean isEnabled() {
+        return properties.getRollup().isEnabled();
+    }
+
+    // Folds the readings into one delta per bucket before touching the database
+    @Transactional
+    public void record(List<SensorData> readings) {
+        Map<SensorRollup.Key, SensorRollup> deltas = new TreeMap<>(
+                Comparator.comparing(SensorRollup.Key::getSensorId)
+                        .thenComparing(SensorRollup.Key::getResolution)
+                        .thenComparingLong(SensorRollup.Key::getBucketStart)
+                        .thenComparing(SensorRollup.Key::getMetric)); // Stable order keeps row locks deadlock free
+        for (SensorData reading : readings) {
+            var timestamp = reading.getTimestamp().getTime();
+            for (Metric metric : Metric.values()) {
+                var value = metric.valueOf(reading);
+                if (value == null) {
+                    continue;
+                }
+                for (RollupResolution resolution : RollupResolution.values()) {
+                    var key = new SensorRollup.Key(reading.getSensorId(), resolution, resolution.bucketStart(timestamp), metric);
+                    var delta = deltas.get(key);
+                    if (delta == null) {
+                        deltas.put(key, new SensorRollup(key.getSensorId(), resolution, key.getBucketStart(), metric,
+                                1, value, value, value, value * value));
+                    } else {
+                        delta.setCount(delta.getCount() + 1);
+                        delta.setSum(delta.getSum() + value);
+                        delta.setMin(Math.min(delta.getMin(), value));
+                        delta.setMax(Math.max(delta.getMax(), value));
+                        delta.setSumSquares(delta.getSumSquares() + value * value);
+                    }
+                }
+            }
+        }
+        rollupRepository.accumulate(deltas.values());
+    }
+
+    // Drops at most limit buckets of the resolution that started before the given time, returns how many
+    public int expire(RollupResolution resolution, Date before, int limit) {
+        return rollupRepository.deleteBefore(resolution, before.getTime(), limit);
+    }
+
+    // Summarises the inclusive range [start, end] from the coarsest buckets that fit entirely inside it, delegating
+    // the ragged edges that no minute bucket covers to raw. Where retention dropped the raw readings the edges are
+    // widened to the minute buckets around them, and where it dropped those too to the hour buckets, so old ranges
+    // are answered at that precision instead of losing their edges.
+    Map<Metric, MetricSummary> summarize(Set<String> sensorIds, Date start, Date end,
+                                         BiFunction<Date, Date, Map<Metric, MetricSummary>> raw) {
+        Map<Metric, MetricSummary> result = new EnumMap<>(Metric.class);
+        for (Metric metric : Metric.values()) {
+            result.put(metric, new MetricSummary());
+        }
+        BucketCover.Buckets buckets = (resolution, from, to) -> {
+            for (MetricAggregate aggregate : rollupRepository.aggregate(resolution, sensorIds, from, to)) {
+                result.get(aggregate.metric()).merge(MetricSummary.of(aggregate.count(), aggregate.sum(),
+                        aggregate.min(), aggregate.max(), aggregate.sumSquares()));
+            }
+        };
+        var now = System.currentTimeMillis();
+        var hoursUntil = bucketEnd(RollupResolution.HOUR, SensorRetention.minuteRollupHorizon(properties, now));
+        var minutesUntil = Math.max(hoursUntil, bucketEnd(RollupResolution.MINUTE, SensorRetention.rawHorizon(properties, now)));
+        var from = start.getTime();
+        var to = end.getTime() + 1;
+
+        BucketCover.cover(from, Math.min(to, hoursUntil), HOURS_FIRST, buckets, widenedTo(RollupResolution.HOUR, buckets));
+        BucketCover.cover(Math.max(from, hoursUntil), Math.min(to, minutesUntil), COARSEST_FIRST, buckets,
+                widenedTo(RollupResolution.MINUTE, buckets));
+        BucketCover.cover(Math.max(from, minutesUntil), to, COARSEST_FIRST, buckets,
+                (edgeFrom, edgeTo) -> raw.apply(new Date(edgeFrom), new Date(edgeTo - 1))
+                        .forEach((metric, summary) -> result.get(metric).merge(summary)));
+        return result;
+    }
+
+    // The whole buckets of the resolution overlapping an edge
+    static BucketCover.Edge widenedTo(RollupResolution resolution, BucketCover.Buckets buckets) {
+        return (from, to) -> buckets.accept(resolution, resolution.bucketStart(from), bucketEnd(resolution, to));
+    }
+
+    // First bucket boundary at or after the time, Long.MIN_VALUE stays as it is
+    static long bucketEnd(RollupResolution resolution, long time) {
+        return time == Long.MIN_VALUE ? time : resolution.bucketStart(time - 1) + resolution.millis();
+    }
+}
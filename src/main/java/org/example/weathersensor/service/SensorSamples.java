@@ -0,0 +1,95 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.*;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Daily reservoir samples per sensor and metric, the strata of approximate statistics. Together with the number of
+// values each one stands for, they give unbiased estimates with a known error for ranges of any length.
+@Component
+public class SensorSamples {
+    // Rounds of continuing samples before giving up on days whose insert keeps conflicting
+    static final int MAX_ROUNDS = 3;
+
+    private final SensorSampleRepository sampleRepository;
+    private final SensorProperties properties;
+
+    public SensorSamples(SensorSampleRepository sampleRepository, SensorProperties properties) {
+        this.sampleRepository = sampleRepository;
+        this.properties = properties;
+    }
+
+    public boolean isEmpty() {
+        return sampleRepository.count() == 0;
+    }
+
+    public boolean isEnabled() {
+        return properties.getSample().isEnabled();
+    }
+
+    // Continues the stored samples with the readings in the order they arrived, under a row lock
+    @Transactional
+    public void record(List<SensorData> readings) {
+        Map<SensorSample.Key, List<Double>> deltas = new LinkedHashMap<>();
+        Set<String> sensorIds = new HashSet<>();
+        Set<Long> bucketStarts = new HashSet<>();
+        for (SensorData reading : readings) {
+            var day = RollupResolution.DAY.bucketStart(reading.getTimestamp().getTime());
+            for (Metric metric : Metric.values()) {
+                var value = metric.valueOf(reading);
+                if (value != null) {
+                    deltas.computeIfAbsent(new SensorSample.Key(reading.getSensorId(), day, metric), k -> new ArrayList<>())
+                            .add(value);
+                    sensorIds.add(reading.getSensorId());
+                    bucketStarts.add(day);
+                }
+            }
+        }
+
+        var random = ThreadLocalRandom.current();
+        var capacity = properties.getSample().getSize();
+        // The lock only covers days that exist, a concurrent write creating the same new day makes its insert fail
+        // here once it committed; those continue the committed sample in another round
+        for (int round = 0; !deltas.isEmpty(); round++) {
+            if (round == MAX_ROUNDS) {
+                throw new ConcurrencyFailureException(deltas.size() + " sample days still conflict after "
+                        + MAX_ROUNDS + " rounds");
+            }
+            List<SensorSample> changed = new ArrayList<>(deltas.size());
+            for (SensorSample stored : sampleRepository.findForUpdate(sensorIds, bucketStarts)) {
+                var delta = deltas.remove(keyOf(stored));
+                if (delta != null) {
+                    var reservoir = Reservoir.of(stored.getPopulation(), stored.getSample(), capacity, random);
+                    delta.forEach(value -> reservoir.add(value, random));
+                    stored.setPopulation(reservoir.population());
+                    stored.setSample(reservoir.toBytes());
+                    changed.add(stored);
+                }
+            }
+            sampleRepository.saveAll(changed);
+            List<SensorSample> created = new ArrayList<>(deltas.size());
+            deltas.forEach((key, values) -> {
+                var reservoir = new Reservoir(capacity);
+                values.forEach(value -> reservoir.add(value, random));
+                created.add(new SensorSample(key.getSensorId(), key.getBucketStart(), key.getMetric(),
+                        reservoir.population(), reservoir.toBytes()));
+            });
+            var taken = sampleRepository.insertNew(created);
+            deltas.keySet().retainAll(new HashSet<>(taken.stream().map(SensorSamples::keyOf).toList()));
+        }
+    }
+
+    private static SensorSample.Key keyOf(SensorSample sample) {
+        return new SensorSample.Key(sample.getSensorId(), sample.getBucketStart(), sample.getMetric());
+    }
+
+    // Samples of the days starting in [from, to)
+    List<MetricSample> find(Set<String> sensorIds, Collection<Metric> metrics, long from, long to) {
+        return sampleRepository.findSamples(sensorIds, metrics, from, to);
+    }
+}
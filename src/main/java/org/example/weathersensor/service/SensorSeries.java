@@ -0,0 +1,150 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// A statistic per metric over consecutive buckets of a fixed interval, aligned to the epoch. The readings of all
+// sensors are merged by timestamp and folded into the bucket they fall in, in a single pass that only holds the
+// bucket being filled. Buckets without readings are left out.
+@Component
+public class SensorSeries {
+    // Without downsampling every bucket is returned, this keeps a response within a few megabytes
+    static final long MAX_BUCKETS = 100_000;
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private final SensorStore store;
+    private final SensorSketches sketches;
+    private final StatisticRegistry statistics;
+    private final SensorMeters meters;
+    private final SensorProperties properties;
+
+    public SensorSeries(SensorStore store, SensorSketches sketches, StatisticRegistry statistics, SensorMeters meters,
+                        SensorProperties properties) {
+        this.store = store;
+        this.sketches = sketches;
+        this.statistics = statistics;
+        this.meters = meters;
+        this.properties = properties;
+    }
+
+    // With points the series of every metric is downsampled to at most that many points with LTTB
+    @Transactional(readOnly = true)
+    public Map<String, List<SeriesPoint>> getSeries(List<String> sensorIds, List<String> metrics, String statistic,
+                                                    String interval, Optional<Date> startDate, Optional<Date> endDate,
+                                                    Optional<Integer> points) {
+        var end = endDate.orElse(new Date());
+        var start = startDate.orElse(new Date(end.getTime() - DAY));
+        if (start.after(end)) {
+            throw new IllegalArgumentException("Start date cannot be after end date");
+        }
+        SensorRetention.requireRawReadings(properties, start);
+        var intervalMillis = parseInterval(interval).toMillis();
+        if (points.isEmpty() && (end.getTime() - start.getTime()) / intervalMillis >= MAX_BUCKETS) {
+            throw new IllegalArgumentException("Interval " + interval + " yields more than " + MAX_BUCKETS
+                    + " buckets, use a longer interval or limit the points");
+        }
+        var requested = metrics.stream().map(Metric::from).toList();
+        var requestedStatistic = statistics.get(statistic);
+        Supplier<MetricSummary> newSummary = requestedStatistic.requiresSketch()
+                ? sketches::newSummary
+                : MetricSummary::new;
+
+        Map<String, List<SeriesPoint>> result = new LinkedHashMap<>();
+        Map<Metric, Consumer<SeriesPoint>> sinks = new EnumMap<>(Metric.class);
+        Map<Metric, LttbDownsampler> downsamplers = new EnumMap<>(Metric.class);
+        for (int i = 0; i < metrics.size(); i++) {
+            var metric = requested.get(i);
+            if (sinks.containsKey(metric)) {
+                continue;
+            }
+            if (points.isPresent()) {
+                var downsampler = new LttbDownsampler(points.get(), start.getTime(), end.getTime());
+                downsamplers.put(metric, downsampler);
+                sinks.put(metric, downsampler::add);
+            } else {
+                List<SeriesPoint> series = new ArrayList<>();
+                result.put(metrics.get(i), series);
+                sinks.put(metric, series::add);
+            }
+        }
+        var distinct = sinks.keySet().toArray(new Metric[0]);
+
+        List<Stream<SensorData>> streams = new ArrayList<>();
+        long rows = 0;
+        try {
+            for (String sensorId : new LinkedHashSet<>(sensorIds)) {
+                streams.add(store.streamBySensorIdAndTimestampBetween(sensorId, start, end));
+            }
+            var readings = SensorDataExporter.merge(streams);
+            var summaries = new MetricSummary[distinct.length];
+            var bucket = Long.MIN_VALUE;
+            while (readings.hasNext()) {
+                var reading = readings.next();
+                rows++;
+                var readingBucket = Math.floorDiv(reading.getTimestamp().getTime(), intervalMillis) * intervalMillis;
+                if (readingBucket != bucket) {
+                    emit(bucket, distinct, summaries, requestedStatistic, sinks);
+                    bucket = readingBucket;
+                    for (int m = 0; m < distinct.length; m++) {
+                        summaries[m] = newSummary.get();
+                    }
+                }
+                for (int m = 0; m < distinct.length; m++) {
+                    var value = distinct[m].valueOf(reading);
+                    if (value != null) {
+                        summaries[m].add(value);
+                    }
+                }
+            }
+            emit(bucket, distinct, summaries, requestedStatistic, sinks);
+        } finally {
+            streams.forEach(Stream::close);
+        }
+        meters.rowsScanned("series", rows);
+
+        for (int i = 0; i < metrics.size(); i++) {
+            var downsampler = downsamplers.get(requested.get(i));
+            if (downsampler != null && !result.containsKey(metrics.get(i))) {
+                result.put(metrics.get(i), downsampler.finish());
+            }
+        }
+        return result;
+    }
+
+    private static void emit(long bucket, Metric[] metrics, MetricSummary[] summaries, Statistic statistic,
+                             Map<Metric, Consumer<SeriesPoint>> sinks) {
+        if (bucket == Long.MIN_VALUE) {
+            return;
+        }
+        var timestamp = new Date(bucket);
+        for (int m = 0; m < metrics.length; m++) {
+            if (summaries[m].count() > 0) {
+                sinks.get(metrics[m]).accept(new SeriesPoint(timestamp, statistic.apply(summaries[m])));
+            }
+        }
+    }
+
+    static Duration parseInterval(String interval) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(interval);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        }
+        if (duration.toMillis() <= 0) {
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        }
+        return duration;
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.*;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+// Hourly and daily quantile sketches per sensor and metric, merged at query time to answer percentiles
+@Component
+public class SensorSketches {
+    private static final RollupResolution[] COARSEST_FIRST = {RollupResolution.DAY, RollupResolution.HOUR};
+    // Rounds of merging before giving up on buckets whose insert keeps conflicting
+    static final int MAX_ROUNDS = 3;
+
+    private final SensorSketchRepository sketchRepository;
+    private final SensorProperties properties;
+
+    public SensorSketches(SensorSketchRepository sketchRepository, SensorProperties properties) {
+        this.sketchRepository = sketchRepository;
+        this.properties = properties;
+    }
+
+    public boolean isEmpty() {
+        return sketchRepository.count() == 0;
+    }
+
+    public boolean isEnabled() {
+        return properties.getSketch().isEnabled();
+    }
+
+    public MetricSummary newSummary() {
+        return MetricSummary.withSketch(properties.getSketch().getRelativeAccuracy());
+    }
+
+    // Sketches the readings per bucket in memory, then merges them into the stored sketches under a row lock
+    @Transactional
+    public void record(List<SensorData> readings) {
+        Map<SensorRollup.Key, QuantileSketch> deltas = new HashMap<>();
+        Set<String> sensorIds = new HashSet<>();
+        Set<Long> bucketStarts = new HashSet<>();
+        for (SensorData reading : readings) {
+            var timestamp = reading.getTimestamp().getTime();
+            for (Metric metric : Metric.values()) {
+                var value = metric.valueOf(reading);
+                if (value == null) {
+                    continue;
+                }
+                for (RollupResolution resolution : COARSEST_FIRST) {
+                    var key = new SensorRollup.Key(reading.getSensorId(), resolution, resolution.bucketStart(timestamp), metric);
+                    deltas.computeIfAbsent(key, k -> new QuantileSketch(properties.getSketch().getRelativeAccuracy()))
+                            .add(value);
+                    sensorIds.add(key.getSensorId());
+                    bucketStarts.add(key.getBucketStart());
+                }
+            }
+        }
+
+        // The lock only covers buckets that exist, a concurrent write creating the same new bucket makes its insert
+        // fail here once it committed; those are merged into the committed sketch in another round
+        for (int round = 0; !deltas.isEmpty(); round++) {
+            if (round == MAX_ROUNDS) {
+                throw new ConcurrencyFailureException(deltas.size() + " sketch buckets still conflict after "
+                        + MAX_ROUNDS + " rounds");
+            }
+            List<SensorSketch> changed = new ArrayList<>(deltas.size());
+            for (SensorSketch stored : sketchRepository.findForUpdate(sensorIds, bucketStarts)) {
+                var delta = deltas.remove(keyOf(stored));
+                if (delta != null) {
+                    var merged = QuantileSketch.fromBytes(stored.getSketch());
+                    merged.merge(delta);
+                    stored.setSketch(merged.toBytes());
+                    changed.add(stored);
+                }
+            }
+            sketchRepository.saveAll(changed);
+            List<SensorSketch> created = new ArrayList<>(deltas.size());
+            deltas.forEach((key, sketch) -> created.add(new SensorSketch(key.getSensorId(), key.getResolution(),
+                    key.getBucketStart(), key.getMetric(), sketch.toBytes())));
+            var taken = sketchRepository.insertNew(created);
+            deltas.keySet().retainAll(new HashSet<>(taken.stream().map(SensorSketches::keyOf).toList()));
+        }
+    }
+
+    private static SensorRollup.Key keyOf(SensorSketch sketch) {
+        return new SensorRollup.Key(sketch.getSensorId(), sketch.getResolution(), sketch.getBucketStart(), sketch.getMetric());
+    }
+
+    // Merges the coarsest sketches covering the inclusive range [start, end], the edges come from raw. Edges whose raw
+    // readings retention dropped are widened to the hour sketches around them.
+    Map<Metric, MetricSummary> summarize(Set<String> sensorIds, List<Metric> metrics, Date start, Date end,
+                                         BiFunction<Date, Date, Map<Metric, MetricSummary>> raw) {
+        Map<Metric, MetricSummary> result = new EnumMap<>(Metric.class);
+        for (Metric metric : metrics) {
+            result.put(metric, newSummary());
+        }
+        BucketCover.Buckets buckets = (resolution, from, to) -> {
+            for (MetricSketch stored : sketchRepository.findSketches(resolution, sensorIds, result.keySet(), from, to)) {
+                result.get(stored.metric()).merge(MetricSummary.of(QuantileSketch.fromBytes(stored.sketch())));
+            }
+        };
+        var hoursUntil = SensorRollups.bucketEnd(RollupResolution.HOUR,
+                SensorRetention.rawHorizon(properties, System.currentTimeMillis()));
+        var from = start.getTime();
+        var to = end.getTime() + 1;
+
+        BucketCover.cover(from, Math.min(to, hoursUntil), COARSEST_FIRST, buckets,
+                SensorRollups.widenedTo(RollupResolution.HOUR, buckets));
+        BucketCover.cover(Math.max(from, hoursUntil), to, COARSEST_FIRST, buckets,
+                (edgeFrom, edgeTo) -> raw.apply(new Date(edgeFrom), new Date(edgeTo - 1))
+                        .forEach((metric, summary) -> result.get(metric).merge(summary)));
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.weathersensor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Runs the ingest and metrics paths before the application reports ready. Readiness only flips once the application
+// runners finished, so the first real requests find the beans created and the hot code compiled. Warm-up readings
+// are written in a transaction that is rolled back, which is only possible while raw readings are kept in the main
+// database; queries ask for a sensor without readings and their cache entries are dropped afterwards.
+@Slf4j
+@Component
+public class SensorWarmUp implements ApplicationRunner {
+    static final String SENSOR_ID = "warm-up";
+    private static final List<String> METRICS = List.of("temperature", "humidity", "windspeed");
+    // One statistic per answering tier: hot window and rollups, rollups with their edges, sketches
+    private static final List<String> STATISTICS = List.of("average", "max", "p95");
+    private static final List<Long> RANGES = List.of(TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(30),
+            TimeUnit.DAYS.toMillis(7));
+
+    private final SensorDataService service;
+    private final SensorDataWriter writer;
+    private final SensorMetricsCache cache;
+    private final TransactionTemplate transactions;
+    private final SensorProperties properties;
+    private final ConfigurableApplicationContext context;
+
+    public SensorWarmUp(SensorDataService service, SensorDataWriter writer, SensorMetricsCache cache,
+                        TransactionTemplate transactions, SensorProperties properties,
+                        ConfigurableApplicationContext context) {
+        this.service = service;
+        this.writer = writer;
+        this.cache = cache;
+        this.transactions = transactions;
+        this.properties = properties;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        var startup = properties.getStartup();
+        if (startup.isWarmUp()) {
+            warmUp(startup.getWarmUpIterations(), startup.getWarmUpTimeout().toNanos());
+        }
+        if (startup.isExitAfterWarmUp()) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    int warmUp(int iterations, long timeoutNanos) {
+        var start = System.nanoTime();
+        var engine = properties.getStorage().getEngine();
+        var ingest = engine == SensorProperties.Engine.JPA || engine == SensorProperties.Engine.COMPACT;
+        var iteration = 0;
+        while (iteration < iterations && System.nanoTime() - start < timeoutNanos) {
+            if (ingest) {
+                ingest(iteration);
+            }
+            query(iteration);
+            iteration++;
+        }
+        cache.clear();
+        log.info("Warmed up with {} iterations in {} ms{}", iteration, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                ingest ? "" : ", without ingest as the " + engine + " engine cannot roll writes back");
+        return iteration;
+    }
+
+    // Flushed so the inserts reach the database, then rolled back with everything derived from the reading
+    private void ingest(int iteration) {
+        var reading = new SensorData();
+        reading.setSensorId(SENSOR_ID);
+        reading.setTimestamp(new Date());
+        reading.setTemperature(15.0 + iteration % 10);
+        reading.setHumidity(50.0 + iteration % 20);
+        reading.setWindSpeed(5.0 + iteration % 5);
+        transactions.executeWithoutResult(status -> {
+            writer.write(List.of(reading));
+            status.flush();
+            status.setRollbackOnly();
+        });
+    }
+
+    // A different end every time, so the cache never answers in place of the query tiers
+    private void query(int iteration) {
+        var end = new Date(System.currentTimeMillis() - iteration);
+        var start = new Date(end.getTime() - RANGES.get(iteration % RANGES.size()));
+        service.getMetrics(List.of(SENSOR_ID), METRICS, STATISTICS.get(iteration % STATISTICS.size()),
+                Optional.of(start), Optional.of(end));
+    }
+}
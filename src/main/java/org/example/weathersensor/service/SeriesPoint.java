@@ -0,0 +1,7 @@
+package org.example.weathersensor.service;
+
+import java.util.Date;
+
+// Statistic of one bucket, stamped with the start of the bucket
+public record SeriesPoint(Date timestamp, double value) {
+}
@@ -0,0 +1,123 @@
+package org.example.weathersensor.service;
+
+// Count, sum, sum of squares, min and max of one metric over the readings of the last window milliseconds, updated in
+// amortized constant time per reading. Running sums are kept for the readings inside the window and monotonic deques
+// for min and max: the max deque holds the readings that no later, larger reading shadows, so its head is the maximum
+// and it is popped as readings leave the window. Readings are taken in arrival order, one arriving with an older
+// timestamp than the newest is treated as if it had the newest timestamp. Not thread safe.
+final class SlidingWindow {
+    private final long window;
+    private final LongRing timestamps = new LongRing();
+    private final LongRing values = new LongRing(); // Raw bits of the doubles
+    private final LongRing maxima = new LongRing(); // Sequences of readings with decreasing values
+    private final LongRing minima = new LongRing(); // Sequences of readings with increasing values
+    private long firstSequence; // Sequence of the oldest reading still inside
+    private double sum;
+    private double sumSquares;
+
+    SlidingWindow(long window) {
+        this.window = window;
+    }
+
+    void add(long timestamp, double value) {
+        var sequence = firstSequence + timestamps.size();
+        timestamps.addLast(timestamps.isEmpty() ? timestamp : Math.max(timestamp, timestamps.peekLast()));
+        values.addLast(Double.doubleToRawLongBits(value));
+        while (!maxima.isEmpty() && valueOf(maxima.peekLast()) <= value) {
+            maxima.pollLast();
+        }
+        maxima.addLast(sequence);
+        while (!minima.isEmpty() && valueOf(minima.peekLast()) >= value) {
+            minima.pollLast();
+        }
+        minima.addLast(sequence);
+        sum += value;
+        sumSquares += value * value;
+    }
+
+    // Drops the readings older than the window as seen at now
+    void advance(long now) {
+        var cutoff = now - window;
+        while (!timestamps.isEmpty() && timestamps.peekFirst() < cutoff) {
+            var value = Double.longBitsToDouble(values.pollFirst());
+            timestamps.pollFirst();
+            sum -= value;
+            sumSquares -= value * value;
+            if (maxima.peekFirst() == firstSequence) {
+                maxima.pollFirst();
+            }
+            if (minima.peekFirst() == firstSequence) {
+                minima.pollFirst();
+            }
+            firstSequence++;
+        }
+        if (timestamps.isEmpty()) {
+            sum = 0; // Sheds the rounding error subtracting accumulated
+            sumSquares = 0;
+        }
+    }
+
+    MetricSummary summary() {
+        if (timestamps.isEmpty()) {
+            return new MetricSummary();
+        }
+        return MetricSummary.of(timestamps.size(), sum, valueOf(minima.peekFirst()), valueOf(maxima.peekFirst()),
+                Math.max(0, sumSquares));
+    }
+
+    private double valueOf(long sequence) {
+        return Double.longBitsToDouble(values.get((int) (sequence - firstSequence)));
+    }
+
+    // Growable ring of longs used as a deque
+    static final class LongRing {
+        private long[] elements = new long[16];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return elements[(head + index) & (elements.length - 1)];
+        }
+
+        long peekFirst() {
+            return elements[head];
+        }
+
+        long peekLast() {
+            return get(size - 1);
+        }
+
+        void addLast(long element) {
+            if (size == elements.length) {
+                var grown = new long[elements.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = get(i);
+                }
+                elements = grown;
+                head = 0;
+            }
+            elements[(head + size) & (elements.length - 1)] = element;
+            size++;
+        }
+
+        long pollFirst() {
+            var element = elements[head];
+            head = (head + 1) & (elements.length - 1);
+            size--;
+            return element;
+        }
+
+        long pollLast() {
+            size--;
+            return get(size);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.weathersensor.service;
+
+public enum StandardStatistic implements Statistic {
+    MIN("min") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return summary.min();
+        }
+    },
+    MAX("max") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return summary.max();
+        }
+    },
+    SUM("sum") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return summary.sum();
+        }
+    },
+    AVERAGE("average") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return Math.round(summary.average() * 10.0) / 10.0;
+        }
+    },
+    COUNT("count") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return summary.count();
+        }
+    },
+    RANGE("range") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return summary.max() - summary.min();
+        }
+    },
+    VARIANCE("variance") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return summary.variance();
+        }
+    },
+    STDDEV("stddev") {
+        @Override
+        public double apply(MetricSummary summary) {
+            return Math.sqrt(summary.variance());
+        }
+    },
+    P50("p50", 0.50),
+    P90("p90", 0.90),
+    P95("p95", 0.95),
+    P99("p99", 0.99);
+
+    private final String key;
+    private final double quantile;
+
+    StandardStatistic(String key) {
+        this(key, Double.NaN);
+    }
+
+    // Percentiles, approximated within the sketch relative accuracy
+    StandardStatistic(String key, double quantile) {
+        this.key = key;
+        this.quantile = quantile;
+    }
+
+    @Override
+    public String key() {
+        return key;
+    }
+
+    @Override
+    public double apply(MetricSummary summary) {
+        return summary.sketch().quantile(quantile);
+    }
+
+    @Override
+    public boolean requiresSketch() {
+        return !Double.isNaN(quantile);
+    }
+}
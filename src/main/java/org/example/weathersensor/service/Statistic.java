@@ -0,0 +1,16 @@
+package org.example.weathersensor.service;
+
+// A statistic that can be requested through the statistic parameter of the metrics query.
+// Beans implementing it are picked up by the StatisticRegistry.
+public interface Statistic {
+
+    // Name used in requests, matched case insensitively
+    String key();
+
+    double apply(MetricSummary summary);
+
+    // Whether apply needs summary.sketch(), which makes the query read the quantile sketches
+    default boolean requiresSketch() {
+        return false;
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.weathersensor.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class StatisticRegistry {
+    private final Map<String, Statistic> statistics = new ConcurrentHashMap<>();
+
+    public StatisticRegistry(List<Statistic> custom) {
+        for (StandardStatistic statistic : StandardStatistic.values()) {
+            register(statistic);
+        }
+        custom.forEach(this::register);
+    }
+
+    public void register(Statistic statistic) {
+        statistics.put(statistic.key().toLowerCase(Locale.ROOT), statistic);
+    }
+
+    public Statistic get(String statistic) {
+        var found = statistics.get(statistic.toLowerCase(Locale.ROOT));
+        if (found == null) {
+            throw new IllegalArgumentException("Invalid statistic: " + statistic);
+        }
+        return found;
+    }
+}
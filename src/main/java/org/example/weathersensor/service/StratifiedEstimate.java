@@ -0,0 +1,88 @@
+package org.example.weathersensor.service;
+
+import java.util.Set;
+
+// Stratified sampling estimator: every stratum contributes its population times its sample mean, and its variance
+// with the finite population correction, so strata sampled completely add no error. Exactly known parts of the range
+// are added as strata without error.
+final class StratifiedEstimate {
+    static final Set<String> STATISTICS = Set.of("count", "sum", "average");
+
+    private long population;
+    private long sampled;
+    private double total;
+    private double totalVariance;
+
+    void addStratum(long stratumPopulation, double[] sample) {
+        var n = sample.length;
+        if (n == 0) {
+            return;
+        }
+        double mean = 0;
+        for (double value : sample) {
+            mean += value;
+        }
+        mean /= n;
+        if (n < stratumPopulation) {
+            double squares = 0;
+            for (double value : sample) {
+                squares += (value - mean) * (value - mean);
+            }
+            var variance = n > 1 ? squares / (n - 1) : 0.0;
+            totalVariance += (double) stratumPopulation * stratumPopulation * (1.0 - (double) n / stratumPopulation) * variance / n;
+        }
+        total += stratumPopulation * mean;
+        population += stratumPopulation;
+        sampled += n;
+    }
+
+    void addExact(long count, double sum) {
+        total += sum;
+        population += count;
+        sampled += count;
+    }
+
+    ApproximateMetric estimate(String statistic, double confidence) {
+        var z = normalQuantile(0.5 + confidence / 2);
+        return switch (statistic) {
+            case "count" -> new ApproximateMetric(population, population, population, confidence, sampled, population);
+            case "sum" -> interval(total, Math.sqrt(totalVariance), z, confidence);
+            case "average" -> population == 0
+                    ? interval(Double.NaN, Double.NaN, z, confidence)
+                    : interval(total / population, Math.sqrt(totalVariance) / population, z, confidence);
+            default -> throw new IllegalArgumentException("Statistic " + statistic + " is not available with accuracy=approximate");
+        };
+    }
+
+    private ApproximateMetric interval(double estimate, double standardError, double z, double confidence) {
+        return new ApproximateMetric(estimate, estimate - z * standardError, estimate + z * standardError, confidence,
+                sampled, population);
+    }
+
+    // Acklam's rational approximation of the inverse standard normal distribution, relative error below 1.2e-9
+    static double normalQuantile(double p) {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+        final double low = 0.02425;
+        if (p < low) {
+            var q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            var q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        var q = p - 0.5;
+        var r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
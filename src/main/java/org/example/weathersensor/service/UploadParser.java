@@ -0,0 +1,77 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.SensorData;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+// Reads the records of an upload one at a time
+interface UploadParser {
+
+    // The next reading, or null at the end of the input. Throws InvalidRecordException for a record that cannot be
+    // stored, parsing then continues with the following record; an IOException means the rest cannot be read.
+    SensorData next() throws IOException;
+
+    // Epoch milliseconds or an ISO-8601 date time with offset, as written by the export
+    static Date parseTimestamp(String value) {
+        if (value == null || value.isEmpty()) {
+            throw new InvalidRecordException("Missing timestamp");
+        }
+        try {
+            if (isInteger(value)) {
+                return new Date(Long.parseLong(value));
+            }
+            return Date.from(OffsetDateTime.parse(value).toInstant());
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new InvalidRecordException("Invalid timestamp: " + value);
+        }
+    }
+
+    static Double parseValue(String field, String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return checkValue(field, Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            throw new InvalidRecordException("Invalid " + field + ": " + value);
+        }
+    }
+
+    static Long parseSequenceNumber(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidRecordException("Invalid sequenceNumber: " + value);
+        }
+    }
+
+    static Double checkValue(String field, double value) {
+        if (!Double.isFinite(value)) {
+            throw new InvalidRecordException("Invalid " + field + ": " + value);
+        }
+        return value;
+    }
+
+    static SensorData checkSensorId(SensorData reading) {
+        if (reading.getSensorId() == null || reading.getSensorId().isBlank()) {
+            throw new InvalidRecordException("Missing sensor id");
+        }
+        return reading;
+    }
+
+    private static boolean isInteger(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if ((c < '0' || c > '9') && !(i == 0 && c == '-' && value.length() > 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,13 +1,22 @@
 package org.example.weathersensor.controller;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.service.IngestQueueFullException;
+import org.example.weathersensor.service.SensorMeters;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 
+import java.time.Duration;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class GlobalExceptionHandlerTest {
 
-    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler(new SensorMeters(registry, new SensorProperties()));
 
     @Test
     void shouldHandleIllegalArgument() {
@@ -27,6 +36,16 @@ class GlobalExceptionHandlerTest {
         assertEquals("", response.getBody());
     }
 
+    @Test
+    void shouldHandleIngestQueueFull() {
+        var exception = new IngestQueueFullException("Ingest queue is full, retry later", Duration.ofSeconds(2));
+        var response = handler.handleIngestQueueFull(exception);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("Ingest queue is full, retry later", response.getBody());
+    }
+
     @Test
     void shouldHandleGeneralException() {
         var exception = new Exception("Generic exception");
@@ -44,4 +63,14 @@ class GlobalExceptionHandlerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         assertEquals("An exception occurred: null", response.getBody());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldCountErrorsByType() {
+        handler.handleIllegalArgument(new IllegalArgumentException("Invalid argument"));
+        handler.handleIllegalArgument(new IllegalArgumentException("Invalid argument"));
+        handler.handleGenericException(new IllegalStateException("Broken"));
+
+        assertEquals(2, registry.get("sensor.errors").tags("exception", "IllegalArgumentException", "status", "400").counter().count());
+        assertEquals(1, registry.get("sensor.errors").tags("exception", "IllegalStateException", "status", "500").counter().count());
+    }
+}
@@ -1,7 +1,19 @@
 package org.example.weathersensor.controller;
 
 import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.service.ApproximateMetric;
+import org.example.weathersensor.service.BatchIngestResult;
+import org.example.weathersensor.service.ExportFormat;
+import org.example.weathersensor.service.SensorDataExporter;
 import org.example.weathersensor.service.SensorDataService;
+import org.example.weathersensor.service.SensorDataUploader;
+import org.example.weathersensor.service.LatestReading;
+import org.example.weathersensor.service.SensorApproximateMetrics;
+import org.example.weathersensor.service.SensorGroupedMetrics;
+import org.example.weathersensor.service.SensorLatestReadings;
+import org.example.weathersensor.service.SensorLiveAggregates;
+import org.example.weathersensor.service.SensorSeries;
+import org.example.weathersensor.service.SeriesPoint;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +21,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
 
@@ -20,6 +35,27 @@ class SensorControllerTest {
     @Mock
     private SensorDataService sensorDataService;
 
+    @Mock
+    private SensorDataExporter exporter;
+
+    @Mock
+    private SensorSeries series;
+
+    @Mock
+    private SensorDataUploader uploader;
+
+    @Mock
+    private SensorLiveAggregates live;
+
+    @Mock
+    private SensorGroupedMetrics grouped;
+
+    @Mock
+    private SensorLatestReadings latest;
+
+    @Mock
+    private SensorApproximateMetrics approximate;
+
     @InjectMocks
     private SensorController sensorController;
 
@@ -47,6 +83,43 @@ class SensorControllerTest {
         verify(sensorDataService, times(1)).saveSensorData(sensorData);
     }
 
+    @Test
+    void shouldAcceptDataWhenIngestIsAsynchronous() {
+        var sensorData = new SensorData();
+        when(sensorDataService.isAsyncIngest()).thenReturn(true);
+        when(sensorDataService.enqueueSensorData(sensorData)).thenReturn(sensorData);
+
+        var response = sensorController.addSensorData(sensorData);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(sensorData, response.getBody());
+        verify(sensorDataService, never()).saveSensorData(any());
+    }
+
+    @Test
+    void shouldSuccessfullyAddDataBatch() {
+        var batch = List.of(new SensorData(), new SensorData());
+        var result = new BatchIngestResult(2, 0, 0, List.of());
+        when(sensorDataService.saveSensorDataBatch(batch)).thenReturn(result);
+
+        var response = sensorController.addSensorDataBatch(batch);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
+    @Test
+    void shouldReturnMultiStatusForPartiallyRejectedBatch() {
+        var batch = List.of(new SensorData(), new SensorData());
+        var result = new BatchIngestResult(1, 1, 0, List.of(new BatchIngestResult.Rejection(1, "Missing sensor id")));
+        when(sensorDataService.saveSensorDataBatch(batch)).thenReturn(result);
+
+        var response = sensorController.addSensorDataBatch(batch);
+
+        assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     void shouldSuccessfullyGetData() {
@@ -63,7 +136,7 @@ class SensorControllerTest {
                 any(Optional.class), any(Optional.class)))
                 .thenReturn(expectedResult);
 
-        var response = sensorController.getMetrics(sensorId, metrics, statistic, startDate, endDate);
+        var response = sensorController.getMetrics(sensorId, metrics, statistic, "exact", startDate, endDate);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedResult, response.getBody());
@@ -87,7 +160,7 @@ class SensorControllerTest {
                 any(Optional.class), any(Optional.class)))
                 .thenReturn(expectedResult);
 
-        var response = sensorController.getMetrics(sensorId, metrics, statistic, startDate, endDate);
+        var response = sensorController.getMetrics(sensorId, metrics, statistic, "exact", startDate, endDate);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedResult, response.getBody());
@@ -110,7 +183,7 @@ class SensorControllerTest {
                 .thenReturn(expectedResult);
 
         var response = sensorController.getMetrics(
-                sensorId, metrics, statistic, null, null);
+                sensorId, metrics, statistic, "exact", null, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedResult, response.getBody());
@@ -134,7 +207,7 @@ class SensorControllerTest {
                 .thenReturn(expectedResult);
 
         var response = sensorController.getMetrics(
-                sensorId, metrics, statistic, startDate, null);
+                sensorId, metrics, statistic, "exact", startDate, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedResult, response.getBody());
@@ -158,7 +231,7 @@ class SensorControllerTest {
                 .thenReturn(expectedResult);
 
         assertThrows(IllegalArgumentException.class, () -> sensorController.getMetrics(
-                sensorId, metrics, statistic, null, endDate));
+                sensorId, metrics, statistic, "exact", null, endDate));
     }
 
 
@@ -177,11 +250,122 @@ class SensorControllerTest {
                 .thenThrow(new IllegalArgumentException(errorMessage));
 
         var response = sensorController.getMetrics(
-                sensorId, metrics, statistic, startDate, endDate);
+                sensorId, metrics, statistic, "exact", startDate, endDate);
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertNotNull(response.getBody());
         assertTrue(response.getBody().containsKey(errorMessage));
         assertEquals(Double.NaN, response.getBody().get(errorMessage));
     }
+
+    @Test
+    void shouldReturnApproximateMetricsWithConfidenceInterval() {
+        var expected = Map.of("temperature", new ApproximateMetric(10.7, 10.5, 10.9, 0.95, 640, 100_000));
+        when(approximate.getMetrics(List.of("sensor1"), List.of("temperature"), "average",
+                Optional.of(new Date(0)), Optional.empty(), 0.95)).thenReturn(expected);
+
+        var response = sensorController.getApproximateMetrics(List.of("sensor1"), List.of("temperature"), "average",
+                0.95, new Date(0), null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(expected, response.getBody());
+    }
+
+    @Test
+    void shouldRejectUnknownAccuracy() throws Exception {
+        var response = new MockHttpServletResponse();
+
+        assertThrows(IllegalArgumentException.class, () -> sensorController.getMetrics(
+                List.of("sensor1"), List.of("temperature"), "average", "approximat", null, null));
+        assertThrows(IllegalArgumentException.class, () -> sensorController.getGroupedMetrics(
+                null, List.of("temperature"), "max", "approximate", "sensor", null, null, null, response));
+        verifyNoInteractions(sensorDataService, grouped);
+    }
+
+    @Test
+    void shouldExportGzipCompressedCsv() throws Exception {
+        var response = new MockHttpServletResponse();
+        var startDate = new Date(0);
+        var endDate = new Date(1000);
+
+        sensorController.exportSensorData(List.of("sensor1"), "csv", startDate, endDate, "gzip, deflate", response);
+
+        assertEquals("text/csv", response.getContentType());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        verify(exporter).export(eq(List.of("sensor1")), eq(startDate), eq(endDate), eq(ExportFormat.CSV), any());
+    }
+
+    @Test
+    void shouldRejectExportWithInvalidFormatBeforeWriting() throws Exception {
+        var response = new MockHttpServletResponse();
+
+        assertThrows(IllegalArgumentException.class, () -> sensorController.exportSensorData(
+                List.of("sensor1"), "xml", null, null, null, response));
+        assertFalse(response.isCommitted());
+        verifyNoInteractions(exporter);
+    }
+
+    @Test
+    void shouldReturnMultiStatusForPartiallyRejectedUpload() throws Exception {
+        var request = new MockHttpServletRequest();
+        request.setContent("sensorId,timestamp\nsensor1,0\n,0\n".getBytes());
+        var result = new BatchIngestResult(1, 1, 0, List.of(new BatchIngestResult.Rejection(1, "Missing sensor id")));
+        when(uploader.upload(any(), eq(ExportFormat.CSV))).thenReturn(result);
+
+        var response = sensorController.uploadSensorData("text/csv; charset=utf-8", null, request);
+
+        assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
+    @Test
+    void shouldStreamMetricsGroupedBySensorForAllSensors() throws Exception {
+        var response = new MockHttpServletResponse();
+
+        sensorController.getGroupedMetrics(null, List.of("temperature"), "max", "exact", "sensor", "1h", null, null, response);
+
+        assertEquals("application/json", response.getContentType());
+        verify(grouped).write(eq(Optional.empty()), eq(List.of("temperature")), eq("max"), eq(Optional.of("1h")),
+                eq(Optional.empty()), eq(Optional.empty()), any());
+    }
+
+    @Test
+    void shouldRejectUnsupportedGroupBy() throws Exception {
+        var response = new MockHttpServletResponse();
+
+        assertThrows(IllegalArgumentException.class, () -> sensorController.getGroupedMetrics(
+                null, List.of("temperature"), "max", "exact", "metric", null, null, null, response));
+        verifyNoInteractions(grouped);
+    }
+
+    @Test
+    void shouldReturnLatestReadingsOfAllSensors() {
+        var readings = Map.of("sensor1", new LatestReading(1L, "sensor1", 20.0, 50.0, 3.0, new Date(0)));
+        when(latest.getLatest(Optional.empty())).thenReturn(readings);
+
+        var response = sensorController.getLatestReadings(null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(readings, response.getBody());
+    }
+
+    @Test
+    void shouldSubscribeToLiveMetrics() {
+        var emitter = new SseEmitter();
+        when(live.subscribe(List.of("sensor1"), List.of("temperature"), "max", "10m")).thenReturn(emitter);
+
+        assertSame(emitter, sensorController.subscribeMetrics(List.of("sensor1"), List.of("temperature"), "max", "10m"));
+    }
+
+    @Test
+    void shouldSuccessfullyGetSeries() {
+        var points = Map.of("temperature", List.of(new SeriesPoint(new Date(0), 20.0)));
+        when(series.getSeries(List.of("sensor1"), List.of("temperature"), "average", "5m",
+                Optional.empty(), Optional.empty(), Optional.of(100))).thenReturn(points);
+
+        var response = sensorController.getSeries(List.of("sensor1"), List.of("temperature"), "average", "5m", null, null, 100);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(points, response.getBody());
+    }
 }
@@ -0,0 +1,48 @@
+package org.example.weathersensor.data;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import(JpaSensorStore.class)
+class JpaSensorStoreTest {
+    @Autowired
+    private JpaSensorStore store;
+
+    @Test
+    void shouldInsertSequenceNumbers() {
+        store.insertAll(List.of(reading("sensor1", 7L)));
+
+        assertTrue(store.containsSequence("sensor1", 7));
+        assertFalse(store.containsSequence("sensor1", 8));
+    }
+
+    @Test
+    void shouldHandOverMostRecentSequenceNumbersFirst() {
+        store.insertAll(List.of(reading("sensor1", 1L), reading("sensor2", null), reading("sensor2", 4L)));
+        store.insertAll(List.of(reading("sensor1", 2L)));
+        List<String> recent = new ArrayList<>();
+
+        store.recentSequences(2, (sensorId, sequenceNumber) -> recent.add(sensorId + ":" + sequenceNumber));
+
+        assertEquals(List.of("sensor1:2", "sensor2:4"), recent);
+    }
+
+    private static SensorData reading(String sensorId, Long sequenceNumber) {
+        var reading = new SensorData();
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(1000));
+        reading.setSequenceNumber(sequenceNumber);
+        return reading;
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.weathersensor.data;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SensorRollupRepositoryTest {
+    @Autowired
+    private SensorRollupRepository repository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldAddOntoBucketConcurrentWriteCreated() throws Exception {
+        var accumulated = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var first = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            repository.accumulate(List.of(delta(1.0), delta("sensor2", 5.0)));
+            accumulated.countDown();
+            await(commit);
+        }));
+        accumulated.await();
+        // Misses the uncommitted bucket of the first write and waits on it when inserting its own
+        var second = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> repository.accumulate(List.of(delta(3.0)))));
+        Thread.sleep(200);
+        commit.countDown();
+        first.get();
+        second.get();
+
+        var aggregate = repository.aggregate(RollupResolution.HOUR, List.of("sensor1"), 0, Long.MAX_VALUE);
+        assertEquals(1, aggregate.size());
+        assertEquals(2, aggregate.get(0).count());
+        assertEquals(4.0, aggregate.get(0).sum());
+        assertEquals(1.0, aggregate.get(0).min());
+        assertEquals(3.0, aggregate.get(0).max());
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    void shouldGiveUpOnBucketsThatKeepConflicting() {
+        var jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.execute(anyString(), anyCallback()))
+                .thenAnswer(invocation -> List.of(delta(1.0)));
+
+        assertThrows(ConcurrencyFailureException.class,
+                () -> new SensorRollupRepositoryImpl(jdbcTemplate).accumulate(List.of(delta(1.0))));
+        verify(jdbcTemplate, times(SensorRollupRepositoryImpl.MAX_ATTEMPTS))
+                .execute(anyString(), anyCallback());
+    }
+
+    private static PreparedStatementCallback<Object> anyCallback() {
+        return any();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SensorRollup delta(double value) {
+        return delta("sensor1", value);
+    }
+
+    private static SensorRollup delta(String sensorId, double value) {
+        return new SensorRollup(sensorId, RollupResolution.HOUR, 3_600_000, Metric.TEMPERATURE, 1, value, value, value,
+                value * value);
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.weathersensor.data.compact;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSensorStoreTest {
+    private String url;
+    private DriverManagerDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        // Kept in memory until the JVM exits, so a second store can reopen the same tables
+        url = "jdbc:h2:mem:compact-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        dataSource = new DriverManagerDataSource(url, "sa", "");
+    }
+
+    @Test
+    void shouldTranslateSensorIdsToKeysAndBack() {
+        var store = open();
+        store.saveAll(List.of(reading(null, "sensor-a", 1000, 10.0), reading(null, "sensor-b", 2000, 20.0),
+                reading(null, "sensor-a", 3000, null)));
+
+        var found = store.findBySensorIdAndTimestampBetween("sensor-a", new Date(0), new Date(5000));
+        var aggregate = store.aggregateBySensorIdInAndTimestampBetween(List.of("sensor-a", "unknown"), new Date(0), new Date(5000));
+
+        assertEquals(2, store.sensorCount());
+        assertEquals(List.of("sensor-a", "sensor-a"), found.stream().map(SensorData::getSensorId).toList());
+        assertEquals(List.of(new Date(1000), new Date(3000)), found.stream().map(SensorData::getTimestamp).toList());
+        assertNull(found.get(1).getTemperature());
+        assertEquals(1, aggregate.count(Metric.TEMPERATURE));
+        assertEquals(10.0, aggregate.sum(Metric.TEMPERATURE));
+        assertTrue(store.findBySensorIdAndTimestampBetween("unknown", new Date(0), new Date(5000)).isEmpty());
+        assertEquals(0, store.aggregateBySensorIdInAndTimestampBetween(List.of("unknown"), new Date(0), new Date(5000))
+                .count(Metric.TEMPERATURE));
+        assertEquals(2, store.sensorCount());
+    }
+
+    @Test
+    void shouldReloadRegistryAndContinueIdsAfterMergedRows() {
+        open().mergeAll(List.of(reading(100L, "sensor-a", 1000, 1.0), reading(101L, "sensor-b", 1000, 2.0)));
+
+        var reopened = open();
+        var saved = reopened.saveAll(List.of(reading(null, "sensor-b", 2000, 3.0)));
+        Map<String, Double> sums = new TreeMap<>();
+        reopened.aggregateBySensor(null, new Date(0), new Date(5000),
+                (sensorId, aggregate) -> sums.put(sensorId, aggregate.sum(Metric.TEMPERATURE)));
+
+        assertEquals(2, reopened.sensorCount());
+        assertTrue(saved.get(0).getId() > 101);
+        assertEquals(Map.of("sensor-a", 1.0, "sensor-b", 5.0), sums);
+    }
+
+    @Test
+    void shouldFindSensorsRegisteredByAnotherInstance() {
+        var store = open();
+        var other = open();
+        other.saveAll(List.of(reading(null, "sensor-c", 1000, 7.0)));
+
+        var found = store.findBySensorIdAndTimestampBetween("sensor-c", new Date(0), new Date(5000));
+        var aggregate = store.aggregateBySensorIdInAndTimestampBetween(List.of("sensor-c"), new Date(0), new Date(5000));
+
+        assertEquals(List.of(7.0), found.stream().map(SensorData::getTemperature).toList());
+        assertEquals(7.0, aggregate.sum(Metric.TEMPERATURE));
+        assertEquals(1, store.sensorCount());
+    }
+
+    @Test
+    void shouldRejectRepeatedSequenceNumberOfSensor() {
+        var store = open();
+        var first = reading(null, "sensor-a", 1000, 1.0);
+        first.setSequenceNumber(7L);
+        var otherSensor = reading(null, "sensor-b", 1000, 2.0);
+        otherSensor.setSequenceNumber(7L);
+        store.saveAll(List.of(first, otherSensor, reading(null, "sensor-a", 2000, 3.0), reading(null, "sensor-a", 3000, 4.0)));
+        var repeated = reading(null, "sensor-a", 4000, 1.0);
+        repeated.setSequenceNumber(7L);
+
+        assertThrows(DuplicateKeyException.class, () -> store.saveAll(List.of(repeated)));
+        assertTrue(store.containsSequence("sensor-a", 7));
+        assertFalse(store.containsSequence("sensor-a", 8));
+        assertFalse(store.containsSequence("unknown", 7));
+        assertEquals(7L, store.findBySensorIdAndTimestampBetween("sensor-a", new Date(0), new Date(5000)).get(0).getSequenceNumber());
+    }
+
+    @Test
+    void shouldRegisterNewSensorWhileWriterHoldsEveryPooledConnection() {
+        try (var pool = new HikariDataSource()) {
+            pool.setJdbcUrl(url);
+            pool.setUsername("sa");
+            pool.setMaximumPoolSize(1);
+            pool.setConnectionTimeout(500);
+            var store = new CompactSensorStore(new JdbcTemplate(pool), dataSource);
+
+            new TransactionTemplate(new DataSourceTransactionManager(pool)).executeWithoutResult(status ->
+                    store.saveAll(List.of(reading(null, "sensor-a", 1000, 1.0))));
+
+            assertEquals(1, store.sensorCount());
+            assertEquals(1, store.findBySensorIdAndTimestampBetween("sensor-a", new Date(0), new Date(5000)).size());
+        }
+    }
+
+    private CompactSensorStore open() {
+        return new CompactSensorStore(new JdbcTemplate(dataSource), dataSource);
+    }
+
+    private static SensorData reading(Long id, String sensorId, long timestamp, Double temperature) {
+        var reading = new SensorData();
+        reading.setId(id);
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(temperature);
+        return reading;
+    }
+}
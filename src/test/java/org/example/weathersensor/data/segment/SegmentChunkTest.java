@@ -0,0 +1,71 @@
+package org.example.weathersensor.data.segment;
+
+import org.example.weathersensor.data.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentChunkTest {
+
+    @Test
+    void shouldRoundTripReadingsWithGapsAndMissingValues() {
+        var random = new Random(7);
+        List<SensorData> readings = new ArrayList<>();
+        var timestamp = 1_700_000_000_000L;
+        for (int i = 0; i < 1000; i++) {
+            // Mostly regular intervals with jitter, occasional long gaps and out of order arrivals
+            timestamp += i % 97 == 0 ? 3_600_000 : 1000 + random.nextInt(21) - 10;
+            var reading = reading(i % 13 == 0 ? timestamp - 5000 : timestamp, 20 + random.nextGaussian(), 50.5, i % 5 == 0 ? null : -random.nextDouble());
+            readings.add(reading);
+        }
+
+        var frame = SegmentChunk.of(readings).encode(0);
+        var header = SegmentChunk.readHeader(ByteBuffer.wrap(frame), 0, frame.length);
+        var decoded = SegmentChunk.decode(ByteBuffer.wrap(frame), header).toReadings("sensor1", Long.MIN_VALUE, Long.MAX_VALUE);
+
+        var expected = new ArrayList<>(readings);
+        expected.sort((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
+        assertEquals(expected, decoded);
+        assertEquals(1000, header.count());
+        assertEquals(800, header.counts()[2]);
+        assertEquals(50.5, header.maxs()[1]);
+    }
+
+    @Test
+    void shouldCompressRegularReadingsWellBelowRawSize() {
+        List<SensorData> readings = new ArrayList<>();
+        for (int i = 0; i < 4096; i++) {
+            readings.add(reading(1_700_000_000_000L + i * 1000L, 21.5 + (i % 10) / 10.0, 48.0, 3.0));
+        }
+
+        var frame = SegmentChunk.of(readings).encode(0);
+
+        // 8 byte timestamp and three 8 byte doubles uncompressed
+        assertTrue(frame.length < 4096 * 32 / 4, "Frame of " + frame.length + " bytes");
+    }
+
+    @Test
+    void shouldRejectCorruptFrame() {
+        var frame = SegmentChunk.of(List.of(reading(1000L, 1.0, 2.0, 3.0))).encode(0);
+        frame[frame.length - 1] ^= 1;
+
+        assertNull(SegmentChunk.readHeader(ByteBuffer.wrap(frame), 0, frame.length));
+        assertNull(SegmentChunk.readHeader(ByteBuffer.wrap(frame), 0, frame.length - 1));
+    }
+
+    private static SensorData reading(long timestamp, Double temperature, Double humidity, Double windSpeed) {
+        var reading = new SensorData();
+        reading.setSensorId("sensor1");
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(temperature);
+        reading.setHumidity(humidity);
+        reading.setWindSpeed(windSpeed);
+        return reading;
+    }
+}
@@ -0,0 +1,264 @@
+package org.example.weathersensor.data.segment;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentSensorStoreTest {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final long START = 1_700_006_400_000L; // Midnight UTC
+
+    @TempDir
+    Path directory;
+
+    private SensorProperties properties;
+    private SegmentSensorStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties = new SensorProperties();
+        properties.getStorage().getSegment().setDirectory(directory);
+        properties.getStorage().getSegment().setFsync(false);
+        properties.getStorage().getSegment().setTailChunks(4);
+        properties.getStorage().getSegment().setMaxChunkReadings(10);
+        store = new SegmentSensorStore(properties);
+    }
+
+    @Test
+    void shouldFindReadingsAcrossPartitionsAndTail() {
+        for (int i = 0; i < 50; i++) {
+            // One reading per write, so readings end up in tails, absorbed chunks and two partitions
+            store.saveAll(List.of(reading("sensor1", START + DAY - 25 * 60_000 + i * 60_000L, i)));
+        }
+        store.saveAll(List.of(reading("sensor2", START + DAY, 100)));
+
+        var found = store.findBySensorIdAndTimestampBetween("sensor1", new Date(START + DAY - 10 * 60_000), new Date(START + DAY + 10 * 60_000));
+
+        assertEquals(21, found.size());
+        assertEquals(15.0, found.get(0).getTemperature());
+        assertEquals(35.0, found.get(20).getTemperature());
+        assertTrue(found.stream().allMatch(reading -> reading.getSensorId().equals("sensor1")));
+    }
+
+    @Test
+    void shouldAggregateWholeAndPartialChunks() {
+        List<SensorData> readings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            readings.add(reading("sensor1", START + i * 1000L, i));
+        }
+        readings.get(10).setHumidity(null);
+        store.saveAll(readings);
+        store.saveAll(List.of(reading("sensor2", START + 5000, 1000)));
+
+        var aggregate = store.aggregateBySensorIdInAndTimestampBetween(List.of("sensor1", "sensor2", "sensor3"),
+                new Date(START + 5000), new Date(START + 94_000));
+
+        assertEquals(91, aggregate.count(Metric.TEMPERATURE));
+        assertEquals(sum(5, 94) + 1000, aggregate.sum(Metric.TEMPERATURE));
+        assertEquals(5.0, aggregate.min(Metric.TEMPERATURE));
+        assertEquals(1000.0, aggregate.max(Metric.TEMPERATURE));
+        assertEquals(90, aggregate.count(Metric.HUMIDITY));
+        assertEquals(0, store.aggregateBySensorIdInAndTimestampBetween(List.of("sensor1"), new Date(0), new Date(1)).count(Metric.WINDSPEED));
+        assertNull(store.aggregateBySensorIdInAndTimestampBetween(List.of("sensor1"), new Date(0), new Date(1)).min(Metric.WINDSPEED));
+    }
+
+    @Test
+    void shouldRecoverAfterRestartAndDropTornWrite() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            store.saveAll(List.of(reading("sensor1", START + i * 1000L, i)));
+        }
+        var tail = onlyFile(".tail");
+        Files.write(tail, new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        var reopened = new SegmentSensorStore(properties);
+        reopened.saveAll(List.of(reading("sensor1", START + 6000, 6)));
+
+        var found = reopened.findBySensorIdAndTimestampBetween("sensor1", new Date(START), new Date(START + DAY));
+        assertEquals(7, found.size());
+        assertEquals(6.0, found.get(6).getTemperature());
+    }
+
+    @Test
+    void shouldNotDuplicateTailAbsorbedBeforeCrash() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            store.saveAll(List.of(reading("sensor1", START + i * 1000L, i)));
+        }
+        var tail = onlyFile(".tail");
+        var copy = Files.readAllBytes(tail);
+        store.saveAll(List.of(reading("sensor1", START + 3000, 3))); // Absorbs the tail into the base
+        // As if the process died right after appending to the base, before deleting the tail
+        Files.write(tail, copy);
+
+        var reopened = new SegmentSensorStore(properties);
+
+        assertEquals(4, reopened.findBySensorIdAndTimestampBetween("sensor1", new Date(START), new Date(START + DAY)).size());
+        assertFalse(Files.exists(tail));
+    }
+
+    @Test
+    void shouldSealPastPartitionsIntoFewChunks() throws IOException {
+        for (int i = 0; i < 40; i++) {
+            store.saveAll(List.of(reading("sensor1", START + i * 1000L, i)));
+        }
+
+        store.sealBefore(START + 2 * DAY);
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+        var reopened = new SegmentSensorStore(properties);
+        var found = reopened.findBySensorIdAndTimestampBetween("sensor1", new Date(START), new Date(START + DAY));
+        assertEquals(40, found.size());
+        List<SensorData> scanned = new ArrayList<>();
+        reopened.scan(new Date(START + 30_000), 4, scanned::addAll);
+        assertEquals(10, scanned.size());
+    }
+
+    private Path onlyFile(String suffix) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).findFirst().orElseThrow();
+        }
+    }
+
+    private static double sum(int from, int to) {
+        return (from + to) * (to - from + 1) / 2.0;
+    }
+
+    @Test
+    void shouldDropWholePartitionsThatEndedBeforeCutoff() throws IOException {
+        for (int day = 0; day < 3; day++) {
+            store.saveAll(List.of(reading("sensor1", START + day * DAY, day), reading("sensor1", START + day * DAY + 1, day)));
+        }
+        store.saveAll(List.of(reading("sensor2", START, 10)));
+
+        // The second day is only partly before the cutoff, it is kept whole
+        var deleted = store.deleteBefore(new Date(START + DAY + DAY / 2), 100);
+
+        assertEquals(3, deleted);
+        var left = store.findBySensorIdAndTimestampBetween("sensor1", new Date(START), new Date(START + 3 * DAY));
+        assertEquals(List.of(1.0, 1.0, 2.0, 2.0), left.stream().map(SensorData::getTemperature).toList());
+        assertTrue(store.findBySensorIdAndTimestampBetween("sensor2", new Date(START), new Date(START + DAY)).isEmpty());
+        assertEquals(0, store.deleteBefore(new Date(START + DAY + DAY / 2), 100));
+
+        var reopened = new SegmentSensorStore(properties);
+        assertEquals(4, reopened.findBySensorIdAndTimestampBetween("sensor1", new Date(START), new Date(START + 3 * DAY)).size());
+    }
+
+    @Test
+    void shouldConfirmOnlySequenceNumbersActuallyStored() throws IOException {
+        properties.getStorage().getSegment().setRecentSequences(64);
+        store = new SegmentSensorStore(properties);
+        for (long sequence = 1; sequence <= 100; sequence++) {
+            if (sequence != 90) {
+                var stored = reading("sensor1", START + sequence * 1000, sequence);
+                stored.setSequenceNumber(sequence);
+                store.saveAll(List.of(stored));
+            }
+        }
+
+        assertTrue(store.containsSequence("sensor1", 100));
+        assertTrue(store.containsSequence("sensor1", 60));
+        // Never stored, older than the window, or another sensor: a new reading that must not be dropped
+        assertFalse(store.containsSequence("sensor1", 90));
+        assertFalse(store.containsSequence("sensor1", 10));
+        assertFalse(store.containsSequence("sensor2", 100));
+        // Forgotten on restart, where retries are stored twice rather than readings lost
+        assertFalse(new SegmentSensorStore(properties).containsSequence("sensor1", 100));
+    }
+
+    @Test
+    void shouldOnlyAppendReadingsOfCommittedTransactions() {
+        var transactions = transactions();
+        var from = new Date(START);
+        var to = new Date(START + DAY);
+
+        assertThrows(IllegalStateException.class, () -> transactions.executeWithoutResult(status -> {
+            store.saveAll(List.of(reading("sensor1", START + 1000, 1)));
+            throw new IllegalStateException("rollups failed to commit");
+        }));
+        transactions.executeWithoutResult(status -> {
+            store.saveAll(List.of(reading("sensor1", START + 2000, 2)));
+            assertTrue(store.findBySensorIdAndTimestampBetween("sensor1", from, to).isEmpty());
+        });
+
+        var found = store.findBySensorIdAndTimestampBetween("sensor1", from, to);
+        assertEquals(List.of(2.0), found.stream().map(SensorData::getTemperature).toList());
+    }
+
+    @Test
+    void shouldCutOffChunksOfCommitFailingAfterTheyWereAppended() {
+        var transactions = transactions();
+        var from = new Date(START);
+        var to = new Date(START + DAY);
+        store.saveAll(List.of(reading("sensor1", START + 1000, 1)));
+
+        assertThrows(IllegalStateException.class, () -> transactions.executeWithoutResult(status -> {
+            var failing = reading("sensor1", START + 2000, 2);
+            failing.setSequenceNumber(5L);
+            store.saveAll(List.of(failing));
+            // Registered after the store, so it fails the commit once the chunks were appended
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("database commit failed");
+                }
+            });
+        }));
+        store.saveAll(List.of(reading("sensor1", START + 3000, 3)));
+
+        var found = store.findBySensorIdAndTimestampBetween("sensor1", from, to);
+        assertEquals(List.of(1.0, 3.0), found.stream().map(SensorData::getTemperature).toList());
+        assertFalse(store.containsSequence("sensor1", 5));
+        var reopened = assertDoesNotThrow(() -> new SegmentSensorStore(properties));
+        assertEquals(2, reopened.findBySensorIdAndTimestampBetween("sensor1", from, to).size());
+    }
+
+    @Test
+    void shouldFailCommitWhenChunksCannotBeAppended() throws IOException {
+        // A file where the directory of the sensor belongs
+        Files.writeString(directory.resolve(HexFormat.of().formatHex("sensor9".getBytes(StandardCharsets.UTF_8))), "");
+
+        assertThrows(DataAccessResourceFailureException.class, () -> transactions().executeWithoutResult(
+                status -> store.saveAll(List.of(reading("sensor1", START + 1000, 1), reading("sensor9", START, 9)))));
+
+        assertTrue(store.findBySensorIdAndTimestampBetween("sensor1", new Date(START), new Date(START + DAY)).isEmpty());
+    }
+
+    private static TransactionTemplate transactions() {
+        var dataSource = new DriverManagerDataSource("jdbc:h2:mem:segment-" + UUID.randomUUID(), "sa", "");
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, double value) {
+        var reading = new SensorData();
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(value);
+        reading.setHumidity(value / 2);
+        reading.setWindSpeed(1.5);
+        return reading;
+    }
+}
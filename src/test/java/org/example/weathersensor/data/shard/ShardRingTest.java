@@ -0,0 +1,37 @@
+package org.example.weathersensor.data.shard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRingTest {
+    private static final int SENSORS = 10_000;
+
+    @Test
+    void shouldSpreadSensorsEvenly() {
+        var ring = new ShardRing(4, 128);
+        var counts = new int[4];
+        for (int i = 0; i < SENSORS; i++) {
+            counts[ring.shardOf("sensor" + i)]++;
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - SENSORS / 4) < SENSORS / 10, "Uneven spread " + count);
+        }
+    }
+
+    @Test
+    void shouldOnlyMoveSensorsToAddedShard() {
+        var before = new ShardRing(4, 128);
+        var after = new ShardRing(5, 128);
+        var moved = 0;
+        for (int i = 0; i < SENSORS; i++) {
+            var from = before.shardOf("sensor" + i);
+            var to = after.shardOf("sensor" + i);
+            if (from != to) {
+                assertEquals(4, to);
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - SENSORS / 5) < SENSORS / 10, "Moved " + moved);
+    }
+}
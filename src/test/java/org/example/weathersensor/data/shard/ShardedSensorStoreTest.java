@@ -0,0 +1,235 @@
+package org.example.weathersensor.data.shard;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShardedSensorStoreTest {
+    private final List<ShardedSensorStore> stores = new ArrayList<>();
+    private SensorProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SensorProperties();
+        // Kept in memory until the JVM exits, so a second store can reopen the same shards
+        properties.getStorage().getSharded().setUrl("jdbc:h2:mem:shard-" + UUID.randomUUID() + "-%d;DB_CLOSE_DELAY=-1");
+        properties.getStorage().getSharded().setShards(3);
+        properties.getStorage().getSharded().setPoolSize(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(ShardedSensorStore::destroy);
+    }
+
+    @Test
+    void shouldKeepEverySensorOnItsOwnShard() {
+        var store = open();
+        var readings = IntStream.range(0, 60).mapToObj(i -> reading("sensor" + i % 20, i * 1000L, i)).toList();
+
+        store.saveAll(readings);
+
+        assertEquals(60, readings.stream().map(SensorData::getId).distinct().count());
+        var found = store.findBySensorIdAndTimestampBetween("sensor7", new Date(0), new Date(60_000));
+        assertEquals(List.of(7.0, 27.0, 47.0), found.stream().map(SensorData::getTemperature).toList());
+        for (Shard shard : store.shards()) {
+            shard.sensorIds().forEach(sensorId -> assertSame(shard, store.shardOf(sensorId)));
+        }
+    }
+
+    @Test
+    void shouldMergePartialAggregatesOfEveryShard() {
+        var store = open();
+        var sensors = new LinkedHashSet<String>();
+        List<SensorData> readings = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sensors.add("sensor" + i);
+            readings.add(reading("sensor" + i, 1000, i));
+        }
+        store.saveAll(readings);
+
+        var groups = store.split(sensors, 1);
+        var aggregate = store.aggregateBySensorIdInAndTimestampBetween(sensors, new Date(0), new Date(2000));
+
+        assertEquals(3, groups.size());
+        assertEquals(20, groups.stream().mapToInt(List::size).sum());
+        assertEquals(20, aggregate.count(Metric.TEMPERATURE));
+        assertEquals(190.0, aggregate.sum(Metric.TEMPERATURE));
+        assertEquals(0.0, aggregate.min(Metric.TEMPERATURE));
+        assertEquals(19.0, aggregate.max(Metric.TEMPERATURE));
+        assertEquals(0, aggregate.count(Metric.WINDSPEED));
+        assertNull(aggregate.max(Metric.WINDSPEED));
+    }
+
+    @Test
+    void shouldAggregateAndScanEverySensorOnItsOwn() {
+        var store = open();
+        store.saveAll(IntStream.range(0, 60).mapToObj(i -> reading("sensor" + i % 20, i * 1000L, i)).toList());
+
+        Map<String, Double> sums = new TreeMap<>();
+        store.aggregateBySensor(null, new Date(0), new Date(60_000),
+                (sensorId, aggregate) -> sums.put(sensorId, aggregate.sum(Metric.TEMPERATURE)));
+        List<SensorData> scanned = new ArrayList<>();
+        store.scanBySensor(List.of("sensor3", "sensor4"), new Date(0), new Date(30_000), scanned::add);
+
+        assertEquals(20, sums.size());
+        assertEquals(3.0 + 23.0 + 43.0, sums.get("sensor3"));
+        assertEquals(4, scanned.size());
+        var sensor3 = scanned.stream().filter(reading -> reading.getSensorId().equals("sensor3"))
+                .map(SensorData::getTemperature).toList();
+        assertEquals(List.of(3.0, 23.0), sensor3);
+    }
+
+    @Test
+    void shouldFindLatestReadingOfEverySensor() {
+        var store = open();
+        store.saveAll(IntStream.range(0, 60).mapToObj(i -> reading("sensor" + i % 20, i * 1000L, i)).toList());
+
+        Map<String, Double> latest = new TreeMap<>();
+        store.latestBySensor(reading -> latest.put(reading.getSensorId(), reading.getTemperature()));
+
+        assertEquals(20, latest.size());
+        assertEquals(45.0, latest.get("sensor5"));
+    }
+
+    @Test
+    void shouldMoveSensorsToAddedShard() {
+        var store = open();
+        store.saveAll(IntStream.range(0, 200).mapToObj(i -> reading("sensor" + i % 50, i * 1000L, i)).toList());
+        store.destroy();
+
+        properties.getStorage().getSharded().setShards(4);
+        var grown = open();
+        var rebalancer = new ShardRebalancer(mock(SensorDataRepository.class), grown, properties);
+        var moved = rebalancer.rebalance();
+
+        assertTrue(moved > 0);
+        assertEquals(0, rebalancer.rebalance());
+        assertFalse(grown.shards().get(3).sensorIds().isEmpty());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(4, grown.findBySensorIdAndTimestampBetween("sensor" + i, new Date(0), new Date(200_000)).size());
+        }
+        // New ids never collide with the ones that moved
+        grown.saveAll(IntStream.range(0, 50).mapToObj(i -> reading("sensor" + i, 500_000, i)).toList());
+        List<Long> ids = new ArrayList<>();
+        grown.scan(null, 64, page -> page.forEach(reading -> ids.add(reading.getId())));
+        assertEquals(250, new HashSet<>(ids).size());
+    }
+
+    @Test
+    void shouldNotReuseMigratedIdsOnAnyShard() {
+        var store = open();
+        // Sensors of shard 0 bring only low ids, the others a dense range that the shard id form falls into
+        List<SensorData> migrated = new ArrayList<>();
+        var nextId = 100L;
+        for (int i = 0; i < 30; i++) {
+            var sensorId = "sensor" + i;
+            if (store.shardOf(sensorId).index() == 0) {
+                migrated.add(reading(sensorId, i * 1000L, i));
+                migrated.get(migrated.size() - 1).setId((long) i);
+            } else {
+                for (int k = 0; k < 150; k++) {
+                    migrated.add(reading(sensorId, k * 1000L, k));
+                    migrated.get(migrated.size() - 1).setId(nextId++);
+                }
+            }
+        }
+        migrated.sort(Comparator.comparing(SensorData::getId));
+        var repository = mock(SensorDataRepository.class);
+        when(repository.findByIdGreaterThanOrderById(anyLong(), any())).thenReturn(migrated).thenReturn(List.of());
+        new ShardRebalancer(repository, store, properties).migrate();
+
+        var lowSensor = migrated.get(0).getSensorId();
+        store.saveAll(IntStream.range(0, 5).mapToObj(i -> reading(lowSensor, 500_000 + i, i)).toList());
+        store.destroy();
+        properties.getStorage().getSharded().setShards(4);
+        var grown = open();
+        new ShardRebalancer(repository, grown, properties).rebalance();
+
+        List<Long> ids = new ArrayList<>();
+        grown.scan(null, 256, page -> page.forEach(reading -> ids.add(reading.getId())));
+        assertEquals(migrated.size() + 5, ids.size());
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    @Test
+    void shouldRemoveRowsOfEarlierShardsWhenLaterShardFails() {
+        var store = open();
+        var sensors = IntStream.range(0, 20).mapToObj(i -> "sensor" + i).toList();
+        var last = sensors.stream().max(Comparator.comparingInt(sensorId -> store.shardOf(sensorId).index())).orElseThrow();
+        var stored = reading(last, 1000, 1);
+        stored.setSequenceNumber(7L);
+        store.saveAll(List.of(stored));
+        List<SensorData> write = new ArrayList<>(sensors.stream().map(sensorId -> reading(sensorId, 2000, 2)).toList());
+        var repeated = reading(last, 3000, 3);
+        repeated.setSequenceNumber(7L);
+        write.add(repeated);
+
+        assertThrows(DuplicateKeyException.class, () -> transactions().executeWithoutResult(status -> store.saveAll(write)));
+
+        assertEquals(1, count(store));
+    }
+
+    @Test
+    void shouldRemoveRowsWhenCommitFailsAfterShardsWereWritten() {
+        var store = open();
+
+        assertThrows(IllegalStateException.class, () -> transactions().executeWithoutResult(status -> {
+            store.saveAll(IntStream.range(0, 20).mapToObj(i -> reading("sensor" + i, 1000, i)).toList());
+            // Registered after the store, so it fails the commit once every shard holds its rows
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("database commit failed");
+                }
+            });
+        }));
+        transactions().executeWithoutResult(status -> store.saveAll(List.of(reading("sensor1", 2000, 1))));
+
+        assertEquals(1, count(store));
+    }
+
+    private static long count(ShardedSensorStore store) {
+        List<Long> ids = new ArrayList<>();
+        store.scan(null, 256, page -> page.forEach(reading -> ids.add(reading.getId())));
+        return ids.size();
+    }
+
+    private static TransactionTemplate transactions() {
+        var dataSource = new DriverManagerDataSource("jdbc:h2:mem:sharded-" + UUID.randomUUID(), "sa", "");
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    private ShardedSensorStore open() {
+        var store = new ShardedSensorStore(properties);
+        stores.add(store);
+        return store;
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, double temperature) {
+        var reading = new SensorData();
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(temperature);
+        return reading;
+    }
+}
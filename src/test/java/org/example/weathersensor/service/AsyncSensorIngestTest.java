@@ -0,0 +1,129 @@
+package org.example.weathersensor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AsyncSensorIngestTest {
+
+    private SensorDataWriter writer;
+    private SensorProperties properties;
+    private AsyncSensorIngest ingest;
+    private List<SensorData> written;
+
+    @BeforeEach
+    void setUp() {
+        writer = mock(SensorDataWriter.class);
+        written = Collections.synchronizedList(new ArrayList<>());
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            List<SensorData> readings = invocation.getArgument(0);
+            written.addAll(readings);
+            return readings;
+        });
+        properties = new SensorProperties();
+        properties.getIngest().getAsync().setEnabled(true);
+        properties.getIngest().getAsync().setLinger(Duration.ofMillis(50));
+        ingest = new AsyncSensorIngest(writer, new SensorMeters(new SimpleMeterRegistry(), properties), properties);
+    }
+
+    @Test
+    void shouldCommitEverythingAcceptedBeforeStop() {
+        properties.getIngest().getAsync().setMaxBatch(10);
+        ingest.start();
+        for (int i = 0; i < 95; i++) {
+            assertTrue(ingest.offer(List.of(new SensorData())));
+        }
+
+        ingest.stop();
+
+        assertEquals(95, written.size());
+        var stats = ingest.stats();
+        assertEquals(0, stats.queueDepth());
+        assertEquals(95, stats.committed());
+        assertTrue(stats.commits() >= 10);
+        assertFalse(ingest.offer(List.of(new SensorData())));
+    }
+
+    @Test
+    void shouldRefuseReadingsBeyondCapacity() {
+        properties.getIngest().getAsync().setCapacity(3);
+        ingest.start();
+        // The writer may already be committing, so only the first offer is guaranteed to fit
+        assertTrue(ingest.offer(List.of(new SensorData(), new SensorData(), new SensorData())));
+        assertFalse(ingest.offer(List.of(new SensorData(), new SensorData(), new SensorData(), new SensorData())));
+
+        ingest.stop();
+
+        assertEquals(4, ingest.stats().rejected());
+        assertEquals(3, written.size());
+    }
+
+    @Test
+    void shouldRetryFailedGroupReadingByReading() {
+        var poison = new SensorData();
+        poison.setSensorId("poison");
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            List<SensorData> readings = invocation.getArgument(0);
+            if (readings.contains(poison)) {
+                throw new DataIntegrityViolationException("constraint violated");
+            }
+            written.addAll(readings);
+            return readings;
+        });
+        ingest.start();
+        ingest.offer(List.of(new SensorData(), poison, new SensorData()));
+
+        ingest.stop();
+
+        assertEquals(2, written.size());
+        assertEquals(1, ingest.stats().failed());
+    }
+
+    @Test
+    void shouldKeepCommittingAfterWriterFailsOutsideDataAccess() throws InterruptedException {
+        var broken = new SensorData();
+        broken.setSensorId("broken");
+        var fatal = new SensorData();
+        fatal.setSensorId("fatal");
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            List<SensorData> readings = invocation.getArgument(0);
+            if (readings.contains(broken)) {
+                throw new TransactionSystemException("commit failed");
+            }
+            if (readings.contains(fatal)) {
+                throw new StackOverflowError();
+            }
+            written.addAll(readings);
+            return readings;
+        });
+        properties.getIngest().getAsync().setMaxBatch(1);
+        ingest.start();
+        assertTrue(ingest.offer(List.of(broken)));
+        assertTrue(ingest.offer(List.of(fatal)));
+        var later = new SensorData();
+        assertTrue(ingest.offer(List.of(later)));
+        for (int i = 0; i < 100 && written.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(List.of(later), written);
+        assertTrue(ingest.offer(List.of(new SensorData())));
+        ingest.stop();
+
+        assertEquals(2, written.size());
+        assertEquals(0, ingest.stats().queueDepth());
+        assertEquals(2, ingest.stats().failed());
+    }
+}
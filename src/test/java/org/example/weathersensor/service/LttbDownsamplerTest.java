@@ -0,0 +1,47 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LttbDownsamplerTest {
+
+    @Test
+    void shouldReturnShortSeriesUnchanged() {
+        var downsampler = new LttbDownsampler(5, 0, 1000);
+        for (int i = 0; i < 5; i++) {
+            downsampler.add(new SeriesPoint(new Date(i * 100L), i));
+        }
+
+        var points = downsampler.finish();
+
+        assertEquals(5, points.size());
+        assertEquals(4.0, points.get(4).value());
+    }
+
+    @Test
+    void shouldCapPointsAndKeepEndsAndPeaks() {
+        var downsampler = new LttbDownsampler(20, 0, 9999);
+        for (int i = 0; i < 10_000; i++) {
+            downsampler.add(new SeriesPoint(new Date(i), i == 4321 ? 100.0 : Math.sin(i / 500.0)));
+        }
+
+        var points = downsampler.finish();
+
+        assertTrue(points.size() <= 20);
+        assertTrue(points.size() >= 18);
+        assertEquals(0, points.get(0).timestamp().getTime());
+        assertEquals(9999, points.get(points.size() - 1).timestamp().getTime());
+        assertTrue(points.stream().anyMatch(point -> point.value() == 100.0));
+        for (int i = 1; i < points.size(); i++) {
+            assertTrue(points.get(i).timestamp().after(points.get(i - 1).timestamp()));
+        }
+    }
+
+    @Test
+    void shouldRejectTooFewPoints() {
+        assertThrows(IllegalArgumentException.class, () -> new LttbDownsampler(2, 0, 1000));
+    }
+}
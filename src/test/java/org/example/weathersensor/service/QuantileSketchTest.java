@@ -0,0 +1,77 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+
+    @Test
+    void shouldStayWithinRelativeAccuracy() {
+        var random = new Random(42);
+        var values = new double[10_000];
+        var sketch = new QuantileSketch(0.01);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 5; // Negative, zero-ish and positive readings
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.01, 0.25, 0.5, 0.9, 0.95, 0.99}) {
+            var expected = values[(int) (q * (values.length - 1))];
+            assertEquals(expected, sketch.quantile(q), Math.abs(expected) * 0.01 + 1e-9, "quantile " + q);
+        }
+        assertEquals(values[0], sketch.quantile(0.0));
+        assertEquals(values[values.length - 1], sketch.quantile(1.0));
+    }
+
+    @Test
+    void shouldMergeLikeASingleSketch() {
+        var whole = new QuantileSketch(0.01);
+        var first = new QuantileSketch(0.01);
+        var second = new QuantileSketch(0.01);
+        for (int i = 0; i < 1000; i++) {
+            whole.add(i);
+            (i % 2 == 0 ? first : second).add(i);
+        }
+
+        first.merge(second);
+
+        assertEquals(whole.count(), first.count());
+        assertEquals(whole.sum(), first.sum());
+        for (double q : new double[]{0.1, 0.5, 0.99}) {
+            assertEquals(whole.quantile(q), first.quantile(q));
+        }
+    }
+
+    @Test
+    void shouldRoundTripThroughBytes() {
+        var sketch = new QuantileSketch(0.02);
+        for (double v : new double[]{-12.5, 0.0, 3.25, 18.0, 18.0, 1e6}) {
+            sketch.add(v);
+        }
+
+        var copy = QuantileSketch.fromBytes(sketch.toBytes());
+
+        assertEquals(sketch.count(), copy.count());
+        assertEquals(sketch.min(), copy.min());
+        assertEquals(sketch.max(), copy.max());
+        assertEquals(sketch.relativeAccuracy(), copy.relativeAccuracy());
+        for (double q : new double[]{0.0, 0.2, 0.4, 0.6, 0.8, 1.0}) {
+            assertEquals(sketch.quantile(q), copy.quantile(q));
+        }
+    }
+
+    @Test
+    void shouldReturnNaNWhenEmpty() {
+        assertTrue(Double.isNaN(new QuantileSketch(0.01).quantile(0.5)));
+    }
+
+    @Test
+    void shouldRejectMergingDifferentAccuracies() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)));
+    }
+}
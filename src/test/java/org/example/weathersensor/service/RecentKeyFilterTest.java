@@ -0,0 +1,48 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentKeyFilterTest {
+
+    @Test
+    void shouldRememberAtLeastTheLastCapacityKeys() {
+        var filter = new RecentKeyFilter(1000, 0.01);
+        for (long sequenceNumber = 0; sequenceNumber < 5000; sequenceNumber++) {
+            filter.add("sensor1", sequenceNumber);
+        }
+
+        for (long sequenceNumber = 4000; sequenceNumber < 5000; sequenceNumber++) {
+            assertTrue(filter.mightContain("sensor1", sequenceNumber));
+        }
+    }
+
+    @Test
+    void shouldForgetKeysOfOlderGenerations() {
+        var filter = new RecentKeyFilter(1000, 0.01);
+        for (long sequenceNumber = 0; sequenceNumber < 3000; sequenceNumber++) {
+            filter.add("sensor1", sequenceNumber);
+        }
+
+        var remembered = 0;
+        for (long sequenceNumber = 0; sequenceNumber < 1000; sequenceNumber++) {
+            remembered += filter.mightContain("sensor1", sequenceNumber) ? 1 : 0;
+        }
+        assertTrue(remembered < 50, "remembered " + remembered);
+    }
+
+    @Test
+    void shouldKeepFalsePositivesNearTheConfiguredRate() {
+        var filter = new RecentKeyFilter(10_000, 0.01);
+        for (long sequenceNumber = 0; sequenceNumber < 20_000; sequenceNumber++) {
+            filter.add("sensor1", sequenceNumber);
+        }
+
+        var falsePositives = 0;
+        for (long sequenceNumber = 0; sequenceNumber < 20_000; sequenceNumber++) {
+            falsePositives += filter.mightContain("sensor2", sequenceNumber) ? 1 : 0;
+        }
+        assertTrue(falsePositives < 400, "false positives " + falsePositives);
+    }
+}
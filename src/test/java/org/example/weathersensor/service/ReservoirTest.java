@@ -0,0 +1,55 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReservoirTest {
+
+    @Test
+    void shouldKeepEveryValueWithEqualProbability() {
+        var random = new Random(42);
+        var kept = new int[1000];
+        for (int trial = 0; trial < 2000; trial++) {
+            var reservoir = new Reservoir(100);
+            for (int value = 0; value < 1000; value++) {
+                reservoir.add(value, random);
+            }
+            for (double value : reservoir.values()) {
+                kept[(int) value]++;
+            }
+        }
+
+        // Every value is expected 200 times, early and late values alike
+        assertEquals(200, average(kept, 0, 100), 15);
+        assertEquals(200, average(kept, 900, 1000), 15);
+    }
+
+    @Test
+    void shouldContinueStoredSampleAndShrinkToSmallerCapacity() {
+        var random = new Random(7);
+        var reservoir = new Reservoir(10);
+        for (int value = 0; value < 5; value++) {
+            reservoir.add(value, random);
+        }
+
+        var continued = Reservoir.of(reservoir.population(), reservoir.toBytes(), 10, random);
+        continued.add(5, random);
+        var shrunk = Reservoir.of(continued.population(), continued.toBytes(), 3, random);
+
+        assertEquals(6, continued.population());
+        assertArrayEquals(new double[]{0, 1, 2, 3, 4, 5}, continued.values());
+        assertEquals(3, shrunk.values().length);
+        assertEquals(6, shrunk.population());
+    }
+
+    private static double average(int[] counts, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += counts[i];
+        }
+        return sum / (to - from);
+    }
+}
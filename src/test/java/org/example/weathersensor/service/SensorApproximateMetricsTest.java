@@ -0,0 +1,113 @@
+package org.example.weathersensor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.MetricSample;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SensorApproximateMetricsTest {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    @Mock
+    private SensorSamples samples;
+
+    @Mock
+    private SensorRollups rollups;
+
+    @Mock
+    private SensorStore store;
+
+    private SensorApproximateMetrics approximate;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        approximate = new SensorApproximateMetrics(samples, rollups, store, new StatisticRegistry(List.of()),
+                new SensorMeters(new SimpleMeterRegistry(), new SensorProperties()));
+        when(samples.isEnabled()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldCombineSampledDaysWithExactEdges() {
+        // Day one sampled completely, day two 4 out of 100 values
+        when(samples.find(eq(Set.of("sensor1")), any(), eq(DAY), eq(3 * DAY))).thenReturn(List.of(
+                new MetricSample(Metric.TEMPERATURE, 2, bytes(10.0, 20.0)),
+                new MetricSample(Metric.TEMPERATURE, 100, bytes(1.0, 2.0, 3.0, 4.0))));
+        when(store.aggregateBySensorIdInAndTimestampBetween(any(), any(Date.class), any(Date.class)))
+                .thenReturn(aggregate(0, 0.0));
+        when(store.aggregateBySensorIdInAndTimestampBetween(any(), eq(new Date(DAY / 2)), eq(new Date(DAY - 1))))
+                .thenReturn(aggregate(3, 30.0));
+
+        var result = approximate.getMetrics(List.of("sensor1"), List.of("temperature"), "sum",
+                Optional.of(new Date(DAY / 2)), Optional.of(new Date(3 * DAY)), 0.95);
+
+        var sum = result.get("temperature");
+        assertEquals(30.0 + 30.0 + 250.0, sum.estimate(), 1e-9);
+        assertTrue(sum.lower() < sum.estimate() && sum.upper() > sum.estimate());
+        assertEquals(sum.estimate() - sum.lower(), sum.upper() - sum.estimate(), 1e-9);
+        assertEquals(3 + 2 + 4, sum.sampleSize());
+        assertEquals(3 + 2 + 100, sum.population());
+    }
+
+    @Test
+    void shouldHaveNoErrorWhenEveryValueIsSampled() {
+        when(samples.find(any(), any(), anyLong(), anyLong()))
+                .thenReturn(List.of(new MetricSample(Metric.HUMIDITY, 3, bytes(40.0, 50.0, 60.0))));
+
+        var result = approximate.getMetrics(List.of("sensor1"), List.of("humidity"), "average",
+                Optional.of(new Date(0)), Optional.of(new Date(DAY - 1)), 0.99);
+
+        assertEquals(new ApproximateMetric(50.0, 50.0, 50.0, 0.99, 3, 3), result.get("humidity"));
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void shouldRejectStatisticsWithoutEstimator() {
+        assertThrows(IllegalArgumentException.class, () -> approximate.getMetrics(List.of("sensor1"),
+                List.of("temperature"), "p95", Optional.empty(), Optional.empty(), 0.95));
+        assertThrows(IllegalArgumentException.class, () -> approximate.getMetrics(List.of("sensor1"),
+                List.of("temperature"), "average", Optional.empty(), Optional.empty(), 1.0));
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void shouldComputeQuantileOfStandardNormalDistribution() {
+        assertEquals(1.959964, StratifiedEstimate.normalQuantile(0.975), 1e-6);
+        assertEquals(2.575829, StratifiedEstimate.normalQuantile(0.995), 1e-6);
+        assertEquals(-1.644854, StratifiedEstimate.normalQuantile(0.05), 1e-6);
+    }
+
+    private static byte[] bytes(double... values) {
+        var buffer = ByteBuffer.allocate(values.length * Double.BYTES);
+        for (double value : values) {
+            buffer.putDouble(value);
+        }
+        return buffer.array();
+    }
+
+    private static SensorDataAggregate aggregate(long count, double sum) {
+        Double bound = count == 0 ? null : sum / count;
+        return new SensorDataAggregate(count, sum, bound, bound, null, 0L, null, null, null, null, 0L, null, null, null, null);
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class SensorDataExporterTest {
+
+    @Mock
+    private SensorStore store;
+
+    private SensorDataExporter exporter;
+
+    private final Date start = new Date(0);
+    private final Date end = new Date(10_000);
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        exporter = new SensorDataExporter(store, new ObjectMapper(),
+                new SensorMeters(new SimpleMeterRegistry(), new SensorProperties()), new SensorProperties());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldMergeSensorsByTimestampIntoCsv() throws Exception {
+        when(store.streamBySensorIdAndTimestampBetween(eq("sensor1"), any(Date.class), any(Date.class)))
+                .thenReturn(Stream.of(reading("sensor1", 1000, 10.5), reading("sensor1", 3000, 11.0)));
+        when(store.streamBySensorIdAndTimestampBetween(eq("sensor2"), any(Date.class), any(Date.class)))
+                .thenReturn(Stream.of(reading("sensor2", 1000, null), reading("sensor2", 2000, 12.0)));
+        var out = new ByteArrayOutputStream();
+
+        var written = exporter.export(List.of("sensor1", "sensor2", "sensor1"), start, end, ExportFormat.CSV, out);
+
+        assertEquals(4, written);
+        assertEquals("""
+                sensorId,timestamp,temperature,humidity,windSpeed
+                sensor1,1970-01-01T00:00:01Z,10.5,50.0,
+                sensor2,1970-01-01T00:00:01Z,,50.0,
+                sensor2,1970-01-01T00:00:02Z,12.0,50.0,
+                sensor1,1970-01-01T00:00:03Z,11.0,50.0,
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldWriteOneJsonDocumentPerLine() throws Exception {
+        when(store.streamBySensorIdAndTimestampBetween(eq("sensor1"), any(Date.class), any(Date.class)))
+                .thenReturn(Stream.of(reading("sensor1", 1000, 10.5), reading("sensor1", 2000, 11.0)));
+        var out = new ByteArrayOutputStream();
+
+        exporter.export(List.of("sensor1"), start, end, ExportFormat.NDJSON, out);
+
+        var lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        var mapper = new ObjectMapper();
+        assertEquals(10.5, mapper.readTree(lines[0]).get("temperature").asDouble());
+        assertEquals(2000, mapper.readTree(lines[1]).get("timestamp").asLong());
+    }
+
+    @Test
+    void shouldCloseEveryCursor() throws Exception {
+        var closed = new AtomicInteger();
+        when(store.streamBySensorIdAndTimestampBetween(any(), any(Date.class), any(Date.class)))
+                .thenAnswer(invocation -> Stream.<SensorData>empty().onClose(closed::incrementAndGet));
+
+        var written = exporter.export(List.of("sensor1", "sensor2"), start, end, ExportFormat.NDJSON, new ByteArrayOutputStream());
+
+        assertEquals(0, written);
+        assertEquals(2, closed.get());
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, Double temperature) {
+        var data = new SensorData();
+        data.setSensorId(sensorId);
+        data.setTimestamp(new Date(timestamp));
+        data.setTemperature(temperature);
+        data.setHumidity(50.0);
+        return data;
+    }
+}
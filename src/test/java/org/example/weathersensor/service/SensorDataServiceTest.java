@@ -1,13 +1,20 @@
 package org.example.weathersensor.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
 import org.example.weathersensor.data.SensorData;
-import org.example.weathersensor.data.SensorDataRepository;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 
 import java.util.*;
 
@@ -17,7 +24,39 @@ import static org.mockito.Mockito.*;
 class SensorDataServiceTest {
 
     @Mock
-    private SensorDataRepository repository;
+    private SensorStore store;
+
+    @Mock
+    private SensorDataWriter writer;
+
+    @Mock
+    private AsyncSensorIngest asyncIngest;
+
+    @Mock
+    private SensorRollups rollups;
+
+    @Mock
+    private SensorHotWindow hotWindow;
+
+    @Mock
+    private SensorSketches sketches;
+
+    @Spy
+    private StatisticRegistry statistics = new StatisticRegistry(List.of());
+
+    @Spy
+    private SensorQueryExecutor queries = new SensorQueryExecutor(1, false);
+
+    @Spy
+    private SensorProperties properties = new SensorProperties();
+
+    @Spy
+    private SensorMetricsCache cache = new SensorMetricsCache(properties);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private SensorMeters meters = new SensorMeters(registry, properties);
 
     @InjectMocks
     private SensorDataService service;
@@ -27,6 +66,8 @@ class SensorDataServiceTest {
     @BeforeEach
     void setUp() {
         openMocks = MockitoAnnotations.openMocks(this);
+        properties.getCache().setEnabled(false);
+        when(store.split(any(), anyInt())).thenCallRealMethod();
     }
 
     @AfterEach
@@ -42,8 +83,9 @@ class SensorDataServiceTest {
         Optional<Date> startDate = Optional.empty();
         Optional<Date> endDate = Optional.empty();
 
+        properties.getQuery().setAggregatePushdown(false);
         List<SensorData> data = new ArrayList<>();
-        when(repository.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
 
         var result = service.getMetrics(sensorId, metrics, statistic, startDate, endDate);
 
@@ -61,9 +103,10 @@ class SensorDataServiceTest {
         var statistic = "average";
         var endDate = new Date();
         var startDate = new Date(endDate.getTime() - 48 * 60 * 60 * 1000);
+        properties.getQuery().setAggregatePushdown(false);
         List<SensorData> data = populateSensorData(sensorId.get(0));
 
-        when(repository.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
 
         // Test for avg value
         var result = service.getMetrics(sensorId, metrics, statistic, Optional.of(startDate), Optional.of(endDate));
@@ -101,6 +144,197 @@ class SensorDataServiceTest {
         assertEquals(10, result.get("windspeed"));
     }
 
+    @Test
+    void shouldSkipMissingReadingsAndComputeSpreadStatistics() {
+        properties.getQuery().setAggregatePushdown(false);
+        var data = populateSensorData("sensor1");
+        data.add(new SensorData()); // Reading without any metric
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
+        var metrics = List.of("temperature", "humidity");
+
+        assertEquals(Map.of("temperature", 2.0, "humidity", 2.0),
+                service.getMetrics(List.of("sensor1"), metrics, "count", Optional.empty(), Optional.empty()));
+        assertEquals(Map.of("temperature", 10.0, "humidity", 4.5),
+                service.getMetrics(List.of("sensor1"), metrics, "range", Optional.empty(), Optional.empty()));
+        assertEquals(Map.of("temperature", 25.0, "humidity", 5.0625),
+                service.getMetrics(List.of("sensor1"), metrics, "variance", Optional.empty(), Optional.empty()));
+        assertEquals(Map.of("temperature", 5.0, "humidity", 2.25),
+                service.getMetrics(List.of("sensor1"), metrics, "STDDEV", Optional.empty(), Optional.empty()));
+        verify(store, times(4)).findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class));
+    }
+
+    @Test
+    void shouldReturnNaNForSpreadOfEmptyRange() {
+        properties.getQuery().setAggregatePushdown(false);
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(List.of());
+
+        var result = service.getMetrics(List.of("sensor1"), List.of("temperature"), "stddev", Optional.empty(), Optional.empty());
+
+        assertEquals(Double.NaN, result.get("temperature"));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenInvalidStatistic() {
+        var exception = assertThrows(IllegalArgumentException.class, () -> service.getMetrics(
+                List.of("sensor1"), List.of("temperature"), "median-ish", Optional.empty(), Optional.empty()));
+
+        assertEquals("Invalid statistic: median-ish", exception.getMessage());
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void shouldComputeMetricsInDatabaseForAllSensorsAtOnce() {
+        var sensorId = List.of("sensor1", "sensor2", "sensor1");
+        var metrics = List.of("temperature", "humidity", "windspeed");
+        var aggregate = new SensorDataAggregate(2L, 50.0, 20.0, 30.0, 1300.0, 2L, 95.5, 45.5, 50.0, 4570.25, 2L, 10.0, 4.5, 5.5, 50.5);
+        when(store.aggregateBySensorIdInAndTimestampBetween(anyCollection(), any(Date.class), any(Date.class)))
+                .thenReturn(aggregate);
+
+        var result = service.getMetrics(sensorId, metrics, "average", Optional.empty(), Optional.empty());
+        assertEquals(25.0, result.get("temperature"));
+        assertEquals(47.8, result.get("humidity"));
+        assertEquals(5.0, result.get("windspeed"));
+
+        result = service.getMetrics(sensorId, metrics, "max", Optional.empty(), Optional.empty());
+        assertEquals(30.0, result.get("temperature"));
+        assertEquals(50.0, result.get("humidity"));
+        assertEquals(5.5, result.get("windspeed"));
+
+        verify(store, times(2)).aggregateBySensorIdInAndTimestampBetween(
+                eq(List.of("sensor1", "sensor2")), any(Date.class), any(Date.class));
+        verify(store, never()).findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class));
+    }
+
+    @Test
+    void shouldServeRepeatedQueryFromCache() {
+        var cached = new SensorDataService(store, writer, asyncIngest, rollups, hotWindow, sketches,
+                statistics, queries, new SensorMetricsCache(new SensorProperties()), meters, properties);
+        var aggregate = new SensorDataAggregate(2L, 50.0, 20.0, 30.0, 1300.0, 0L, null, null, null, null, 0L, null, null, null, null);
+        when(store.aggregateBySensorIdInAndTimestampBetween(anyCollection(), any(Date.class), any(Date.class)))
+                .thenReturn(aggregate);
+        var start = Optional.of(new Date(System.currentTimeMillis() - 72 * 60 * 60 * 1000));
+        var end = Optional.of(new Date(System.currentTimeMillis() - 48 * 60 * 60 * 1000));
+
+        var first = cached.getMetrics(List.of("sensor1", "sensor2"), List.of("temperature"), "AVERAGE", start, end);
+        var second = cached.getMetrics(List.of("sensor2", "sensor1"), List.of("temperature"), "average", start, end);
+
+        assertEquals(25.0, first.get("temperature"));
+        assertEquals(first, second);
+        verify(rollups, times(1)).isEnabled();
+    }
+
+    @Test
+    void shouldMergePartialAggregatesOfConcurrentQueries() {
+        var parallel = new SensorQueryExecutor(2, false);
+        var concurrentService = new SensorDataService(store, writer, asyncIngest, rollups, hotWindow, sketches,
+                statistics, parallel, cache, meters, properties);
+        properties.getRollup().setEnabled(false);
+        when(store.aggregateBySensorIdInAndTimestampBetween(eq(List.of("sensor1")), any(Date.class), any(Date.class)))
+                .thenReturn(new SensorDataAggregate(2L, 50.0, 20.0, 30.0, 1300.0, 0L, null, null, null, null, 0L, null, null, null, null));
+        when(store.aggregateBySensorIdInAndTimestampBetween(eq(List.of("sensor2", "sensor3")), any(Date.class), any(Date.class)))
+                .thenReturn(new SensorDataAggregate(1L, 10.0, 10.0, 10.0, 100.0, 0L, null, null, null, null, 0L, null, null, null, null));
+
+        try {
+            var metrics = List.of("temperature");
+            var sensors = List.of("sensor1", "sensor2", "sensor3");
+            assertEquals(20.0, concurrentService.getMetrics(sensors, metrics, "average", Optional.empty(), Optional.empty()).get("temperature"));
+            assertEquals(10.0, concurrentService.getMetrics(sensors, metrics, "min", Optional.empty(), Optional.empty()).get("temperature"));
+            assertEquals(3.0, concurrentService.getMetrics(sensors, metrics, "count", Optional.empty(), Optional.empty()).get("temperature"));
+        } finally {
+            parallel.destroy();
+        }
+    }
+
+    @Test
+    void shouldRecordTierSensorsAndRowsOfQueries() {
+        properties.getQuery().setAggregatePushdown(false);
+        var data = new SensorData();
+        data.setTemperature(20.0);
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class)))
+                .thenReturn(List.of(data, data));
+
+        service.getMetrics(List.of("sensor1", "sensor2", "sensor1"), List.of("temperature"), "max", Optional.empty(), Optional.empty());
+
+        assertEquals(1, registry.get("sensor.query").tags("statistic", "max", "tier", "memory").timer().count());
+        assertEquals(2.0, registry.get("sensor.query.sensors").summary().totalAmount());
+        assertEquals(4.0, registry.get("sensor.query.rows").tags("operation", "find").summary().totalAmount());
+        assertEquals(2, registry.get("sensor.store").tags("operation", "find").timer().count());
+    }
+
+    @Test
+    void shouldMergePerSensorSummariesInMemory() {
+        var parallel = new SensorQueryExecutor(4, false);
+        var concurrentService = new SensorDataService(store, writer, asyncIngest, rollups, hotWindow, sketches,
+                statistics, parallel, cache, meters, properties);
+        properties.getQuery().setAggregatePushdown(false);
+        for (int i = 1; i <= 8; i++) {
+            var data = new SensorData();
+            data.setTemperature((double) i);
+            when(store.findBySensorIdAndTimestampBetween(eq("sensor" + i), any(Date.class), any(Date.class)))
+                    .thenReturn(List.of(data));
+        }
+        var sensors = List.of("sensor1", "sensor2", "sensor3", "sensor4", "sensor5", "sensor6", "sensor7", "sensor8");
+
+        try {
+            var result = concurrentService.getMetrics(sensors, List.of("temperature"), "sum", Optional.empty(), Optional.empty());
+            assertEquals(36.0, result.get("temperature"));
+        } finally {
+            parallel.destroy();
+        }
+    }
+
+    @Test
+    void shouldReturnNaNForMinOfEmptyRangeInDatabase() {
+        var aggregate = new SensorDataAggregate(0L, null, null, null, null, 0L, null, null, null, null, 0L, null, null, null, null);
+        when(store.aggregateBySensorIdInAndTimestampBetween(anyCollection(), any(Date.class), any(Date.class)))
+                .thenReturn(aggregate);
+
+        var result = service.getMetrics(List.of("sensor1"), List.of("temperature"), "min", Optional.empty(), Optional.empty());
+
+        assertEquals(Double.NaN, result.get("temperature"));
+    }
+
+    @Test
+    void shouldAnswerFromHotWindowWithoutDatabase() {
+        var summary = new MetricSummary();
+        summary.add(21.0);
+        when(hotWindow.summarize(eq(Set.of("sensor1")), any(Date.class), any(Date.class), any()))
+                .thenReturn(Optional.of(Map.of(Metric.TEMPERATURE, summary)));
+
+        var result = service.getMetrics(List.of("sensor1"), List.of("temperature"), "average", Optional.empty(), Optional.empty());
+
+        assertEquals(21.0, result.get("temperature"));
+        verifyNoInteractions(store, rollups);
+    }
+
+    @Test
+    void shouldAnswerPercentilesFromSketches() {
+        var sketch = new QuantileSketch(0.01);
+        for (int i = 1; i <= 100; i++) {
+            sketch.add(i);
+        }
+        when(sketches.isEnabled()).thenReturn(true);
+        when(sketches.newSummary()).thenReturn(MetricSummary.withSketch(0.01));
+        when(sketches.summarize(eq(Set.of("sensor1")), eq(List.of(Metric.WINDSPEED)), any(Date.class), any(Date.class), any()))
+                .thenReturn(Map.of(Metric.WINDSPEED, MetricSummary.of(sketch)));
+
+        var result = service.getMetrics(List.of("sensor1"), List.of("windspeed"), "p95", Optional.empty(), Optional.empty());
+
+        assertEquals(95.0, result.get("windspeed"), 95.0 * 0.01);
+        verifyNoInteractions(store, rollups);
+    }
+
+    @Test
+    void shouldComputePercentilesInMemoryWithoutSketchStore() {
+        when(sketches.newSummary()).thenAnswer(invocation -> MetricSummary.withSketch(0.01));
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class)))
+                .thenReturn(populateSensorData("sensor1"));
+
+        var result = service.getMetrics(List.of("sensor1"), List.of("temperature"), "p50", Optional.empty(), Optional.empty());
+
+        assertEquals(20.0, result.get("temperature"), 20.0 * 0.01);
+    }
+
     @Test
     void shouldThrowExceptionWhenStartDateIsInFuture() {
         var sensorId = List.of("sensor1");
@@ -128,16 +362,22 @@ class SensorDataServiceTest {
     }
 
     @Test
-    void shouldThrowExceptionWhenDateRangeExceedsOneMonth() {
+    void shouldAnswerRangesLongerThanOneMonthFromRollups() {
         var sensorId = List.of("sensor1");
-        var metrics = List.of("temperature", "humidity", "windspeed");
-        var statistic = "average";
+        var metrics = List.of("temperature");
         var endDate = new Date();
-        var startDate = new Date(endDate.getTime() - 32L * 24 * 60 * 60 * 1000);
+        var startDate = new Date(endDate.getTime() - 90L * 24 * 60 * 60 * 1000);
+        var summary = new MetricSummary();
+        summary.add(20.0);
+        summary.add(30.0);
+        when(rollups.isEnabled()).thenReturn(true);
+        when(rollups.summarize(eq(Set.of("sensor1")), eq(startDate), eq(endDate), any()))
+                .thenReturn(Map.of(Metric.TEMPERATURE, summary));
 
-        var exception = assertThrows(IllegalArgumentException.class, () -> service.getMetrics(sensorId, metrics, statistic, Optional.of(startDate), Optional.of(endDate)));
+        var result = service.getMetrics(sensorId, metrics, "max", Optional.of(startDate), Optional.of(endDate));
 
-        assertEquals("Date range cannot exceed 1 month", exception.getMessage());
+        assertEquals(30.0, result.get("temperature"));
+        verify(store, never()).findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class));
     }
 
     @Test
@@ -149,13 +389,99 @@ class SensorDataServiceTest {
         Optional<Date> endDate = Optional.empty();
 
         List<SensorData> data = populateSensorData(sensorId.get(0));
-        when(repository.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
+        when(store.findBySensorIdAndTimestampBetween(anyString(), any(Date.class), any(Date.class))).thenReturn(data);
 
         var exception = assertThrows(IllegalArgumentException.class, () -> service.getMetrics(sensorId, metrics, statistic, startDate, endDate));
 
         assertEquals("Invalid metric: invalidMetric", exception.getMessage());
     }
 
+    @Test
+    void shouldSaveBatchInChunksWithSharedTimestamp() {
+        properties.getIngest().setBatchSize(2);
+        var batch = List.of(reading("sensor1"), reading("sensor1"), reading("sensor2"));
+        when(writer.write(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        var result = service.saveSensorDataBatch(batch);
+
+        assertEquals(3, result.accepted());
+        assertEquals(0, result.rejected());
+        verify(writer, times(2)).write(anyList());
+        assertNotNull(batch.get(0).getTimestamp());
+        assertEquals(batch.get(0).getTimestamp(), batch.get(2).getTimestamp());
+    }
+
+    @Test
+    void shouldReportRejectedReadingsInBatch() {
+        properties.getIngest().setBatchSize(2);
+        var batch = List.of(reading("sensor1"), reading(null), reading("sensor1"), reading("sensor2"));
+        when(writer.write(anyList()))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(new DataIntegrityViolationException("constraint violated"));
+
+        var result = service.saveSensorDataBatch(batch);
+
+        assertEquals(2, result.accepted());
+        assertEquals(2, result.rejected());
+        assertEquals(1, result.rejections().get(0).index());
+        assertEquals("Missing sensor id", result.rejections().get(0).reason());
+        assertEquals(3, result.rejections().get(1).index());
+        assertEquals("constraint violated", result.rejections().get(1).reason());
+    }
+
+    @Test
+    void shouldDropReadingRejectedByUniqueIndexAndStoreTheRest() {
+        var retried = reading("sensor1");
+        retried.setSequenceNumber(4L);
+        var batch = List.of(reading("sensor1"), retried, reading("sensor2"));
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            List<SensorData> readings = invocation.getArgument(0);
+            if (readings.contains(retried)) {
+                throw new DuplicateKeyException("unique index violated");
+            }
+            return readings;
+        });
+
+        var result = service.saveSensorDataBatch(batch);
+
+        assertEquals(2, result.accepted());
+        assertEquals(0, result.rejected());
+        assertEquals(1, result.duplicates());
+        verify(writer, times(4)).write(anyList());
+        assertEquals(1, registry.counter(SensorMeters.INGEST_DUPLICATES, "check", "index").count());
+    }
+
+    @Test
+    void shouldEnqueueValidReadingsOfBatch() {
+        var batch = List.of(reading("sensor1"), reading(" "), reading("sensor2"));
+        when(asyncIngest.offer(anyList())).thenReturn(true);
+
+        var result = service.enqueueSensorDataBatch(batch);
+
+        assertEquals(2, result.accepted());
+        assertEquals(1, result.rejected());
+        verify(asyncIngest).offer(List.of(batch.get(0), batch.get(2)));
+        verifyNoInteractions(writer);
+    }
+
+    @Test
+    void shouldThrowExceptionWhenIngestQueueIsFull() {
+        when(asyncIngest.offer(anyList())).thenReturn(false);
+
+        var exception = assertThrows(IngestQueueFullException.class, () -> service.enqueueSensorData(reading("sensor1")));
+
+        assertEquals(properties.getIngest().getAsync().getRetryAfter(), exception.getRetryAfter());
+    }
+
+    private static SensorData reading(String sensorId) {
+        var data = new SensorData();
+        data.setSensorId(sensorId);
+        data.setTemperature(20.0);
+        data.setHumidity(50.0);
+        data.setWindSpeed(5.0);
+        return data;
+    }
+
     private static List<SensorData> populateSensorData(String sensorId) {
         List<SensorData> data = new ArrayList<>();
 
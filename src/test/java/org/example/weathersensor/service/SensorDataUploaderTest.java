@@ -0,0 +1,200 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class SensorDataUploaderTest {
+
+    @Mock
+    private SensorDataWriter writer;
+
+    private final SensorProperties properties = new SensorProperties();
+
+    private SensorDataUploader uploader;
+
+    private final List<SensorData> inserted = new ArrayList<>();
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        properties.getIngest().setBulkBatchSize(2);
+        uploader = new SensorDataUploader(writer, new ObjectMapper(), properties);
+        doAnswer(invocation -> {
+            List<SensorData> batch = invocation.getArgument(0);
+            inserted.addAll(batch);
+            return batch;
+        }).when(writer).insert(anyList());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldParseQuotedCsvWithColumnsInAnyOrder() throws Exception {
+        var csv = "Timestamp,Temperature,sensor_id,windSpeed\r\n"
+                + "1000,10.5,\"sensor,1\",\r\n"
+                + "1970-01-01T00:00:02Z,,\"sensor \"\"2\"\"\",3.5\r\n"
+                + "\r\n"
+                + "3000,11,sensor3,\n";
+
+        var result = uploader.upload(input(csv), ExportFormat.CSV);
+
+        assertEquals(3, result.accepted());
+        assertEquals(0, result.rejected());
+        assertEquals("sensor,1", inserted.get(0).getSensorId());
+        assertEquals(10.5, inserted.get(0).getTemperature());
+        assertNull(inserted.get(0).getWindSpeed());
+        assertEquals("sensor \"2\"", inserted.get(1).getSensorId());
+        assertEquals(2000, inserted.get(1).getTimestamp().getTime());
+        assertEquals(3.5, inserted.get(1).getWindSpeed());
+        verify(writer, times(2)).insert(anyList());
+    }
+
+    @Test
+    void shouldRejectInvalidRecordsAndContinue() throws Exception {
+        var csv = """
+                sensorId,timestamp,humidity
+                sensor1,1000,50
+                sensor1,yesterday,50
+                ,1000,50
+                sensor1,2000,wet
+                sensor1,3000,NaN
+                sensor1,4000,60
+                """;
+
+        var result = uploader.upload(input(csv), ExportFormat.CSV);
+
+        assertEquals(2, result.accepted());
+        assertEquals(4, result.rejected());
+        assertEquals(List.of(1, 2, 3, 4), result.rejections().stream().map(BatchIngestResult.Rejection::index).toList());
+        assertEquals("Invalid timestamp: yesterday", result.rejections().get(0).reason());
+        assertEquals(60.0, inserted.get(1).getHumidity());
+    }
+
+    @Test
+    void shouldRejectCsvWithoutRequiredColumns() {
+        assertThrows(IllegalArgumentException.class, () -> uploader.upload(input("sensorId,temperature\n"), ExportFormat.CSV));
+        verifyNoInteractions(writer);
+    }
+
+    @Test
+    void shouldParseNdjsonAndSkipUnknownFields() throws Exception {
+        var ndjson = """
+                {"id":7,"sensorId":"sensor1","timestamp":1000,"temperature":10.5,"extra":{"a":[1,2]}}
+                {"sensorId":"sensor1","timestamp":"1970-01-01T00:00:02.000+00:00","humidity":null}
+                {"sensorId":"sensor1","temperature":11}
+                {"sensorId":"sensor1","timestamp":3000,"windSpeed":{"value":1}}
+                [1,2]
+                {"sensorId":"sensor2","timestamp":4000,"windSpeed":"4.5"}
+                """;
+
+        var result = uploader.upload(input(ndjson), ExportFormat.NDJSON);
+
+        assertEquals(3, result.accepted());
+        assertEquals(List.of(2, 3, 4), result.rejections().stream().map(BatchIngestResult.Rejection::index).toList());
+        assertNull(inserted.get(0).getId());
+        assertEquals(10.5, inserted.get(0).getTemperature());
+        assertEquals(2000, inserted.get(1).getTimestamp().getTime());
+        assertEquals(4.5, inserted.get(2).getWindSpeed());
+    }
+
+    @Test
+    void shouldKeepReadingsBeforeMalformedJson() throws Exception {
+        var ndjson = """
+                {"sensorId":"sensor1","timestamp":1000}
+                {"sensorId":"sensor1","timestamp":
+                """;
+
+        var result = uploader.upload(input(ndjson), ExportFormat.NDJSON);
+
+        assertEquals(1, result.accepted());
+        assertEquals(1, result.rejected());
+        assertTrue(result.rejections().get(0).reason().startsWith("Malformed JSON"));
+    }
+
+    @Test
+    void shouldRejectReadingsOfFailedBatch() throws Exception {
+        doThrow(new DataIntegrityViolationException("constraint")).doAnswer(invocation -> invocation.getArgument(0))
+                .when(writer).insert(anyList());
+        var csv = "sensorId,timestamp\nsensor1,1000\nsensor1,2000\nsensor1,3000\n";
+
+        var result = uploader.upload(input(csv), ExportFormat.CSV);
+
+        assertEquals(1, result.accepted());
+        assertEquals(List.of(0, 1), result.rejections().stream().map(BatchIngestResult.Rejection::index).toList());
+    }
+
+    @Test
+    void shouldParseSequenceNumbers() throws Exception {
+        var csv = """
+                sensorId,timestamp,sequence_number
+                sensor1,1000,7
+                sensor1,2000,
+                sensor1,3000,seven
+                """;
+        var ndjson = """
+                {"sensorId":"sensor1","timestamp":4000,"sequenceNumber":8}
+                {"sensorId":"sensor1","timestamp":5000,"sequenceNumber":"9"}
+                {"sensorId":"sensor1","timestamp":6000,"sequenceNumber":99999999999999999999}
+                """;
+
+        var csvResult = uploader.upload(input(csv), ExportFormat.CSV);
+        var ndjsonResult = uploader.upload(input(ndjson), ExportFormat.NDJSON);
+
+        assertEquals("Invalid sequenceNumber: seven", csvResult.rejections().get(0).reason());
+        assertEquals(List.of(2), ndjsonResult.rejections().stream().map(BatchIngestResult.Rejection::index).toList());
+        assertEquals(Arrays.asList(7L, null, 8L, 9L), inserted.stream().map(SensorData::getSequenceNumber).toList());
+    }
+
+    @Test
+    void shouldCountDuplicatesLeftOutByWriter() throws Exception {
+        doAnswer(invocation -> List.of(invocation.<List<SensorData>>getArgument(0).get(0))).when(writer).insert(anyList());
+        var csv = "sensorId,timestamp,sequenceNumber\nsensor1,1000,1\nsensor1,2000,1\nsensor1,3000,2\n";
+
+        var result = uploader.upload(input(csv), ExportFormat.CSV);
+
+        assertEquals(2, result.accepted());
+        assertEquals(1, result.duplicates());
+        assertEquals(0, result.rejected());
+    }
+
+    @Test
+    void shouldInsertBatchOneByOneWhenUniqueIndexRejectsIt() throws Exception {
+        var duplicate = new DuplicateKeyException("uk_sensor_data_sensor_id_sequence_number");
+        when(writer.insert(anyList())).thenThrow(duplicate).thenReturn(List.of(new SensorData())).thenThrow(duplicate);
+        var csv = "sensorId,timestamp,sequenceNumber\nsensor1,1000,1\nsensor1,2000,2\n";
+
+        var result = uploader.upload(input(csv), ExportFormat.CSV);
+
+        assertEquals(1, result.accepted());
+        assertEquals(1, result.duplicates());
+        assertEquals(0, result.rejected());
+        verify(writer, times(3)).insert(anyList());
+    }
+
+    private static ByteArrayInputStream input(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
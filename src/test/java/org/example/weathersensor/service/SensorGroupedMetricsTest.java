@@ -0,0 +1,118 @@
+package org.example.weathersensor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorDataAggregate;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class SensorGroupedMetricsTest {
+
+    @Mock
+    private SensorStore store;
+
+    @Mock
+    private SensorSketches sketches;
+
+    private SensorGroupedMetrics grouped;
+
+    private final Optional<Date> start = Optional.of(new Date(0));
+    private final Optional<Date> end = Optional.of(new Date(3_600_000));
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        grouped = new SensorGroupedMetrics(store, sketches, new StatisticRegistry(List.of()),
+                new SensorMeters(new SimpleMeterRegistry(), new SensorProperties()), new ObjectMapper(), new SensorProperties());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldWriteStatisticPerSensorFromOneGroupedAggregate() throws Exception {
+        doAnswer(invocation -> {
+            BiConsumer<String, SensorDataAggregate> consumer = invocation.getArgument(3);
+            consumer.accept("sensor1", aggregate(2, 30.0, 10.0, 20.0));
+            consumer.accept("sensor2", aggregate(1, 5.0, 5.0, 5.0));
+            return null;
+        }).when(store).aggregateBySensor(isNull(), any(Date.class), any(Date.class), any(BiConsumer.class));
+        var out = new ByteArrayOutputStream();
+
+        var sensors = grouped.write(Optional.empty(), List.of("temperature"), "average", Optional.empty(), start, end, out);
+
+        assertEquals(2, sensors);
+        assertEquals("{\"sensor1\":{\"temperature\":15.0},\"sensor2\":{\"temperature\":5.0}}",
+                out.toString(StandardCharsets.UTF_8));
+        verify(store, never()).scanBySensor(any(), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldFoldReadingsPerSensorAndBucketInOnePass() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<SensorData> consumer = invocation.getArgument(3);
+            consumer.accept(reading("sensor1", 60_000, 10.0));
+            consumer.accept(reading("sensor1", 120_000, 20.0));
+            consumer.accept(reading("sensor1", 400_000, null));
+            consumer.accept(reading("sensor2", 1_000_000, 7.0));
+            return null;
+        }).when(store).scanBySensor(eq(new LinkedHashSet<>(List.of("sensor1", "sensor2"))), any(Date.class), any(Date.class),
+                any(Consumer.class));
+        var out = new ByteArrayOutputStream();
+
+        grouped.write(Optional.of(List.of("sensor1", "sensor2")), List.of("temperature"), "max", Optional.of("5m"),
+                start, end, out);
+
+        assertEquals("{\"sensor1\":[{\"timestamp\":0,\"temperature\":20.0}]," +
+                "\"sensor2\":[{\"timestamp\":900000,\"temperature\":7.0}]}", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shouldRejectTooManyBucketsBeforeWriting() {
+        var out = new ByteArrayOutputStream();
+
+        assertThrows(IllegalArgumentException.class, () -> grouped.write(Optional.empty(), List.of("temperature"),
+                "average", Optional.of("1ms"), start, end, out));
+        assertEquals(0, out.size());
+        verifyNoInteractions(store);
+    }
+
+    private static SensorDataAggregate aggregate(long count, double sum, double min, double max) {
+        return new SensorDataAggregate(count, sum, min, max, 0.0, 0L, null, null, null, null, 0L, null, null, null, null);
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, Double temperature) {
+        var reading = new SensorData();
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(temperature);
+        return reading;
+    }
+}
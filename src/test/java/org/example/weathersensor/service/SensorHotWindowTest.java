@@ -0,0 +1,101 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SensorHotWindowTest {
+
+    private SensorProperties properties;
+    private SensorHotWindow hotWindow;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SensorProperties();
+        hotWindow = new SensorHotWindow(mock(SensorStore.class), properties);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    void shouldSummarizeReadingsWrittenSinceStartup() {
+        hotWindow.onSaved(List.of(
+                reading("sensor1", now + 10, 20.0, null),
+                reading("sensor2", now + 20, 30.0, 50.0),
+                reading("sensor1", now + 5, 10.0, 40.0))); // Out of order
+
+        var result = hotWindow.summarize(Set.of("sensor1", "sensor2"), new Date(now), new Date(now + 15), MetricSummary::new).orElseThrow();
+
+        assertEquals(2, result.get(Metric.TEMPERATURE).count());
+        assertEquals(30.0, result.get(Metric.TEMPERATURE).sum());
+        assertEquals(1, result.get(Metric.HUMIDITY).count());
+        assertEquals(40.0, result.get(Metric.HUMIDITY).max());
+    }
+
+    @Test
+    void shouldFeedSketchesWhenRequested() {
+        for (int i = 1; i <= 100; i++) {
+            hotWindow.onSaved(List.of(reading("sensor1", now + i, (double) i, null)));
+        }
+
+        var result = hotWindow.summarize(Set.of("sensor1"), new Date(now), new Date(now + 100),
+                () -> MetricSummary.withSketch(0.01)).orElseThrow();
+
+        assertEquals(95.0, result.get(Metric.TEMPERATURE).sketch().quantile(0.95), 1.0);
+    }
+
+    @Test
+    void shouldDeclineRangesStartingBeforeTheWindow() {
+        hotWindow.onSaved(List.of(reading("sensor1", now + 10, 20.0, 50.0)));
+
+        assertTrue(hotWindow.summarize(Set.of("sensor1"), new Date(now - 60_000), new Date(now + 15), MetricSummary::new).isEmpty());
+        assertTrue(hotWindow.summarize(Set.of("unknown"), new Date(now - 60_000), new Date(now + 15), MetricSummary::new).isEmpty());
+        assertTrue(hotWindow.summarize(Set.of("unknown"), new Date(now + 1), new Date(now + 15), MetricSummary::new).isPresent());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyWrittenSensorWhenOverBudget() {
+        properties.getHotWindow().setMaxMemory(DataSize.ofBytes(2 * 256 * SensorRingBuffer.BYTES_PER_READING));
+        hotWindow.onSaved(List.of(reading("sensor1", now + 1, 20.0, 50.0)));
+        hotWindow.onSaved(List.of(reading("sensor2", now + 2, 20.0, 50.0)));
+        hotWindow.onSaved(List.of(reading("sensor3", now + 3, 20.0, 50.0)));
+
+        assertEquals(2 * 256 * SensorRingBuffer.BYTES_PER_READING, hotWindow.allocatedBytes());
+        // One of the older sensors lost its readings, so that range can no longer be answered from memory
+        assertTrue(hotWindow.summarize(Set.of("sensor1", "sensor2"), new Date(now), new Date(now + 5), MetricSummary::new).isEmpty());
+        assertTrue(hotWindow.summarize(Set.of("sensor3"), new Date(now + 3), new Date(now + 5), MetricSummary::new).isPresent());
+    }
+
+    @Test
+    void shouldOverwriteOldestReadingsWhenBufferCannotGrow() {
+        properties.getHotWindow().setMaxMemory(DataSize.ofBytes(256 * SensorRingBuffer.BYTES_PER_READING));
+        for (int i = 0; i < 300; i++) {
+            hotWindow.onSaved(List.of(reading("sensor1", now + i, (double) i, null)));
+        }
+
+        assertTrue(hotWindow.summarize(Set.of("sensor1"), new Date(now), new Date(now + 300), MetricSummary::new).isEmpty());
+        var result = hotWindow.summarize(Set.of("sensor1"), new Date(now + 44), new Date(now + 300), MetricSummary::new).orElseThrow();
+        assertEquals(256, result.get(Metric.TEMPERATURE).count());
+        assertEquals(44.0, result.get(Metric.TEMPERATURE).min());
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, Double temperature, Double humidity) {
+        var data = new SensorData();
+        data.setSensorId(sensorId);
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setTimestamp(new Date(timestamp));
+        return data;
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.weathersensor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SensorIngestKeysTest {
+
+    @Mock
+    private SensorStore store;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SensorProperties properties = new SensorProperties();
+    private SensorIngestKeys keys;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        keys = new SensorIngestKeys(store, new SensorMeters(registry, properties), properties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldAdmitKeysAboveHighWaterMarkWithoutStoreLookup() {
+        keys.onSaved(List.of(reading("sensor1", 1L), reading("sensor1", 2L)));
+        var batch = List.of(reading("sensor1", 3L), reading("sensor2", 1L), reading("sensor1", null));
+
+        assertSame(batch, keys.admit(batch));
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void shouldDropKeysRepeatedWithinBatch() {
+        var batch = List.of(reading("sensor1", 1L), reading("sensor1", 1L), reading("sensor2", 1L));
+
+        assertEquals(List.of(batch.get(0), batch.get(2)), keys.admit(batch));
+        assertEquals(1, registry.counter(SensorMeters.INGEST_DUPLICATES, "check", "batch").count());
+    }
+
+    @Test
+    void shouldConfirmRecentlySeenKeysWithStore() {
+        keys.onSaved(List.of(reading("sensor1", 5L), reading("sensor1", 9L)));
+        when(store.containsSequence("sensor1", 5L)).thenReturn(true);
+        var retried = reading("sensor1", 5L);
+        var late = reading("sensor1", 7L);
+
+        assertEquals(List.of(late), keys.admit(List.of(retried, late)));
+        verify(store).containsSequence("sensor1", 5L);
+        assertEquals(1, registry.counter(SensorMeters.INGEST_DUPLICATES, "check", "filter").count());
+    }
+
+    @Test
+    void shouldLoadRecentKeysFromStoreAtStartup() {
+        doAnswer(invocation -> {
+            BiConsumer<String, Long> consumer = invocation.getArgument(1);
+            consumer.accept("sensor1", 9L);
+            consumer.accept("sensor1", 5L);
+            return null;
+        }).when(store).recentSequences(eq(1_000_000), any());
+        when(store.containsSequence("sensor1", 5L)).thenReturn(true);
+        keys.afterSingletonsInstantiated();
+        var retried = reading("sensor1", 5L);
+        var next = reading("sensor1", 10L);
+
+        assertEquals(List.of(next), keys.admit(List.of(retried, next)));
+        verify(store).containsSequence("sensor1", 5L);
+    }
+
+    @Test
+    void shouldAdmitEverythingWhenDisabled() {
+        properties.getIngest().getDedup().setEnabled(false);
+        keys.onSaved(List.of(reading("sensor1", 5L)));
+        var batch = List.of(reading("sensor1", 5L), reading("sensor1", 5L));
+
+        assertSame(batch, keys.admit(batch));
+        verifyNoInteractions(store);
+    }
+
+    private static SensorData reading(String sensorId, Long sequenceNumber) {
+        var data = new SensorData();
+        data.setSensorId(sensorId);
+        data.setSequenceNumber(sequenceNumber);
+        data.setTemperature(20.0);
+        return data;
+    }
+}
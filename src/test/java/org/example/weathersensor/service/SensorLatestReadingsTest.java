@@ -0,0 +1,86 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+class SensorLatestReadingsTest {
+
+    @Mock
+    private SensorStore store;
+
+    @InjectMocks
+    private SensorLatestReadings latestReadings;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldWarmUpFromStoreAndKeepNewestReading() {
+        doAnswer(invocation -> {
+            Consumer<SensorData> consumer = invocation.getArgument(0);
+            consumer.accept(reading("sensor2", 5000, 20.0));
+            consumer.accept(reading("sensor1", 1000, 10.0));
+            return null;
+        }).when(store).latestBySensor(any(Consumer.class));
+        latestReadings.afterSingletonsInstantiated();
+
+        latestReadings.onSaved(List.of(reading("sensor1", 2000, 11.0), reading("sensor2", 4000, 19.0)));
+        var all = latestReadings.getLatest(Optional.empty());
+
+        assertEquals(List.of("sensor1", "sensor2"), List.copyOf(all.keySet()));
+        assertEquals(11.0, all.get("sensor1").temperature());
+        assertEquals(20.0, all.get("sensor2").temperature()); // The backfilled older reading is ignored
+        assertEquals(new Date(5000), all.get("sensor2").timestamp());
+    }
+
+    @Test
+    void shouldReturnRequestedSensorsInRequestOrder() {
+        latestReadings.onSaved(List.of(reading("a", 1000, 1.0), reading("b", 1000, 2.0)));
+
+        var result = latestReadings.getLatest(Optional.of(List.of("b", "unknown", "a")));
+
+        assertEquals(List.of("b", "a"), List.copyOf(result.keySet()));
+    }
+
+    @Test
+    void shouldKeepNewestReadingUnderConcurrentWrites() {
+        IntStream.range(0, 10_000).parallel()
+                .forEach(i -> latestReadings.onSaved(List.of(reading("sensor1", i, (double) i))));
+
+        assertEquals(9_999.0, latestReadings.getLatest(Optional.empty()).get("sensor1").temperature());
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, Double temperature) {
+        var reading = new SensorData();
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(temperature);
+        return reading;
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SensorLiveAggregatesTest {
+
+    @Mock
+    private SensorHotWindow hotWindow;
+
+    @Mock
+    private SensorStore store;
+
+    private final SensorProperties properties = new SensorProperties();
+
+    private SensorLiveAggregates live;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        live = new SensorLiveAggregates(hotWindow, store, new StatisticRegistry(List.of()), properties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldShareIdenticalSubscriptionsAndLoadRecentReadingsFromMemory() {
+        var now = System.currentTimeMillis();
+        when(hotWindow.readingsSince(any(), any())).thenReturn(Optional.of(new ArrayList<>(List.of(
+                reading("sensor1", now - 10 * 60_000, 50.0), reading("sensor2", now - 1000, 20.0)))));
+
+        live.subscribe(List.of("sensor1", "sensor2"), List.of("temperature"), "max", "5m");
+        live.subscribe(List.of("sensor2", "sensor1"), List.of("TEMPERATURE"), "MAX", "PT5M");
+
+        assertEquals(1, live.subscriptionCount());
+        verify(hotWindow, times(1)).readingsSince(any(), any());
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void shouldUpdateFromStoredReadings() {
+        when(hotWindow.readingsSince(any(), any())).thenReturn(Optional.of(new ArrayList<>()));
+        live.subscribe(List.of("sensor1"), List.of("temperature", "humidity"), "count", "1m");
+        var now = System.currentTimeMillis();
+
+        live.onSaved(List.of(reading("sensor1", now, 21.0), reading("sensor3", now, 22.0),
+                reading("sensor1", now - 2 * 60_000, 23.0)));
+
+        assertEquals(List.of(Map.of("temperature", 1.0, "humidity", 1.0)), live.currentValues());
+    }
+
+    @Test
+    void shouldLoadFromStoreWhenMemoryDoesNotCoverWindow() {
+        when(hotWindow.readingsSince(any(), any())).thenReturn(Optional.empty());
+        when(store.findBySensorIdAndTimestampBetween(eq("sensor1"), any(), any()))
+                .thenReturn(List.of(reading("sensor1", System.currentTimeMillis() - 1000, 5.0)));
+
+        live.subscribe(List.of("sensor1"), List.of("temperature"), "sum", "1h");
+
+        assertEquals(List.of(Map.of("temperature", 5.0)), live.currentValues());
+    }
+
+    @Test
+    void shouldRejectPercentilesAndLongWindows() {
+        assertThrows(IllegalArgumentException.class, () -> live.subscribe(List.of("sensor1"), List.of("temperature"), "p99", "5m"));
+        assertThrows(IllegalArgumentException.class, () -> live.subscribe(List.of("sensor1"), List.of("temperature"), "max", "2d"));
+        assertEquals(0, live.subscriptionCount());
+    }
+
+    private static SensorData reading(String sensorId, long timestamp, double value) {
+        var reading = new SensorData();
+        reading.setSensorId(sensorId);
+        reading.setTimestamp(new Date(timestamp));
+        reading.setTemperature(value);
+        reading.setHumidity(value);
+        return reading;
+    }
+}
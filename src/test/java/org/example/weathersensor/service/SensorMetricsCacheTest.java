@@ -0,0 +1,120 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorMetricsCacheTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private SensorProperties properties;
+    private SensorMetricsCache cache;
+    private AtomicInteger computations;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SensorProperties();
+        cache = new SensorMetricsCache(properties);
+        computations = new AtomicInteger();
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    void shouldCacheRangesInThePast() {
+        var key = key("sensor1", now - 3 * HOUR, now - 2 * HOUR);
+
+        cache.get(key, this::compute);
+        var result = cache.get(key, this::compute);
+
+        assertEquals(1.0, result.get("temperature"));
+        assertEquals(1, computations.get());
+        var stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    @Test
+    void shouldExpireOpenRangesAfterTtl() throws InterruptedException {
+        properties.getCache().setOpenRangeTtl(Duration.ofMillis(20));
+        var key = SensorMetricsCache.key(List.of("sensor1"), List.of("temperature"), "average", Optional.empty(), Optional.empty());
+
+        cache.get(key, this::compute);
+        Thread.sleep(40);
+        cache.get(key, this::compute);
+
+        assertEquals(2, computations.get());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void shouldOnlyInvalidateEntriesOfSensorCoveringWrite() {
+        var coveringOwn = key("sensor1", now - HOUR, now + HOUR);
+        var pastOwn = key("sensor1", now - 3 * HOUR, now - 2 * HOUR);
+        var coveringOther = key("sensor2", now - HOUR, now + HOUR);
+        List.of(coveringOwn, pastOwn, coveringOther).forEach(key -> cache.get(key, this::compute));
+
+        cache.onSaved(List.of(reading("sensor1", now)));
+        List.of(coveringOwn, pastOwn, coveringOther).forEach(key -> cache.get(key, this::compute));
+
+        assertEquals(4, computations.get());
+        assertEquals(1, cache.stats().invalidations());
+    }
+
+    @Test
+    void shouldNotStoreResultComputedWhileSensorWasWritten() {
+        var key = key("sensor1", now - HOUR, now + HOUR);
+
+        cache.get(key, () -> {
+            cache.onSaved(List.of(reading("sensor1", now)));
+            return compute();
+        });
+        cache.get(key, this::compute);
+
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedBeyondMaxEntries() {
+        properties.getCache().setMaxEntries(2);
+        var first = key("sensor1", now - 3 * HOUR, now - 2 * HOUR);
+        var second = key("sensor2", now - 3 * HOUR, now - 2 * HOUR);
+        var third = key("sensor3", now - 3 * HOUR, now - 2 * HOUR);
+
+        cache.get(first, this::compute);
+        cache.get(second, this::compute);
+        cache.get(first, this::compute);
+        cache.get(third, this::compute);
+        cache.get(first, this::compute);
+        cache.get(second, this::compute);
+
+        assertEquals(4, computations.get());
+        assertEquals(2, cache.stats().size());
+    }
+
+    private Map<String, Double> compute() {
+        return Map.of("temperature", (double) computations.incrementAndGet());
+    }
+
+    private static SensorMetricsCache.Key key(String sensorId, long start, long end) {
+        return SensorMetricsCache.key(List.of(sensorId), List.of("temperature"), "average",
+                Optional.of(new Date(start)), Optional.of(new Date(end)));
+    }
+
+    private static SensorData reading(String sensorId, long timestamp) {
+        var data = new SensorData();
+        data.setSensorId(sensorId);
+        data.setTimestamp(new Date(timestamp));
+        return data;
+    }
+}
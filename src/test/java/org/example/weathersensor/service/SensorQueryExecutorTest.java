@@ -0,0 +1,100 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorQueryExecutorTest {
+
+    private final SensorQueryExecutor executor = new SensorQueryExecutor(3, false);
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void shouldReturnResultsInKeyOrder() {
+        var result = executor.map(List.of(3, 1, 2), key -> {
+            sleep(key * 10L);
+            return key * 10;
+        });
+
+        assertEquals(List.of(30, 10, 20), result);
+    }
+
+    @Test
+    void shouldRunTasksConcurrentlyUpToParallelism() throws InterruptedException {
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+        var started = new CountDownLatch(3);
+
+        executor.map(List.of(1, 2, 3, 4, 5, 6), key -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            await(started);
+            running.decrementAndGet();
+            return key;
+        });
+
+        assertEquals(3, peak.get());
+    }
+
+    @Test
+    void shouldRethrowFailureOfTask() {
+        var exception = assertThrows(IllegalStateException.class, () -> executor.map(List.of(1, 2), key -> {
+            if (key == 2) {
+                throw new IllegalStateException("sensor2 failed");
+            }
+            return key;
+        }));
+
+        assertEquals("sensor2 failed", exception.getMessage());
+    }
+
+    @Test
+    void shouldRunOnCallingThreadWithoutParallelism() {
+        var sequential = new SensorQueryExecutor(1, false);
+        var caller = Thread.currentThread();
+
+        var threads = sequential.map(List.of(1, 2), key -> Thread.currentThread());
+
+        assertEquals(List.of(caller, caller), threads);
+    }
+
+    @Test
+    void shouldRunOnCallingThreadInsideTransaction() {
+        var caller = Thread.currentThread();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            var threads = executor.map(List.of(1, 2), key -> Thread.currentThread());
+
+            assertEquals(List.of(caller, caller), threads);
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.weathersensor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.RollupResolution;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SensorRetentionTest {
+
+    @Mock
+    private SensorStore store;
+
+    @Mock
+    private SensorRollups rollups;
+
+    private final SensorProperties properties = new SensorProperties();
+
+    private SensorRetention retention;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        properties.getRetention().setEnabled(true);
+        properties.getRetention().setChunkSize(100);
+        properties.getRetention().setPause(Duration.ZERO);
+        retention = new SensorRetention(store, rollups, new SensorMeters(new SimpleMeterRegistry(), properties), properties);
+        when(rollups.isEnabled()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldDeleteInChunksUntilOneComesBackShort() {
+        when(store.deleteBefore(any(Date.class), eq(100))).thenReturn(100L, 100L, 40L);
+        var before = System.currentTimeMillis();
+
+        retention.expire();
+
+        var cutoff = ArgumentCaptor.forClass(Date.class);
+        verify(store, times(3)).deleteBefore(cutoff.capture(), eq(100));
+        var expected = before - properties.getRetention().getRaw().toMillis();
+        assertTrue(Math.abs(cutoff.getValue().getTime() - expected) < 60_000);
+        verify(rollups, never()).expire(any(), any(), anyInt());
+    }
+
+    @Test
+    void shouldExpireMinuteRollupsWhenConfigured() {
+        properties.getRetention().setMinuteRollups(Duration.ofDays(400));
+        when(rollups.expire(eq(RollupResolution.MINUTE), any(Date.class), eq(100))).thenReturn(100, 0);
+
+        retention.expire();
+
+        verify(rollups, times(2)).expire(eq(RollupResolution.MINUTE), any(Date.class), eq(100));
+    }
+
+    @Test
+    void shouldKeepReadingsWithoutRollups() {
+        when(rollups.isEnabled()).thenReturn(false);
+
+        retention.expire();
+
+        verifyNoInteractions(store);
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SensorRollupsTest {
+    private static final long MINUTE = RollupResolution.MINUTE.millis();
+    private static final long HOUR = RollupResolution.HOUR.millis();
+    private static final long DAY = RollupResolution.DAY.millis();
+
+    @Mock
+    private SensorRollupRepository rollupRepository;
+
+    @Spy
+    private SensorProperties properties = new SensorProperties();
+
+    @InjectMocks
+    private SensorRollups rollups;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldFoldReadingsIntoOneDeltaPerBucket() {
+        var timestamp = new Date(10 * DAY + 5 * HOUR + 30 * MINUTE);
+        var readings = List.of(reading(timestamp, 20.0, 50.0), reading(new Date(timestamp.getTime() + 1000), 30.0, null));
+
+        rollups.record(readings);
+
+        var captor = ArgumentCaptor.forClass(Collection.class);
+        verify(rollupRepository).accumulate(captor.capture());
+        Collection<SensorRollup> deltas = captor.getValue();
+        assertEquals(6, deltas.size()); // Temperature and humidity at three resolutions, wind speed absent
+        var hourlyTemperature = deltas.stream()
+                .filter(d -> d.getResolution() == RollupResolution.HOUR && d.getMetric() == Metric.TEMPERATURE)
+                .findFirst().orElseThrow();
+        assertEquals(10 * DAY + 5 * HOUR, hourlyTemperature.getBucketStart());
+        assertEquals(2, hourlyTemperature.getCount());
+        assertEquals(50.0, hourlyTemperature.getSum());
+        assertEquals(20.0, hourlyTemperature.getMin());
+        assertEquals(30.0, hourlyTemperature.getMax());
+        assertEquals(1300.0, hourlyTemperature.getSumSquares());
+    }
+
+    @Test
+    void shouldUseCoarsestBucketsAndScanOnlyRaggedEdges() {
+        var ids = Set.of("sensor1");
+        // From 23:59:30 on day 1 to 01:01:10 on day 4
+        var start = new Date(DAY + 23 * HOUR + 59 * MINUTE + 30_000);
+        var end = new Date(4 * DAY + HOUR + MINUTE + 10_000);
+        when(rollupRepository.aggregate(eq(RollupResolution.DAY), eq(ids), anyLong(), anyLong()))
+                .thenReturn(List.of(new MetricAggregate(Metric.TEMPERATURE, 10, 100.0, 5.0, 15.0, 1100.0)));
+        List<Date[]> rawRanges = new ArrayList<>();
+
+        var result = rollups.summarize(ids, start, end, (from, to) -> {
+            rawRanges.add(new Date[]{from, to});
+            var summary = new MetricSummary();
+            summary.add(1.0);
+            return Map.of(Metric.TEMPERATURE, summary);
+        });
+
+        verify(rollupRepository).aggregate(RollupResolution.DAY, ids, 2 * DAY, 4 * DAY);
+        verify(rollupRepository).aggregate(RollupResolution.HOUR, ids, 4 * DAY, 4 * DAY + HOUR);
+        verify(rollupRepository).aggregate(RollupResolution.MINUTE, ids, 4 * DAY + HOUR, 4 * DAY + HOUR + MINUTE);
+        assertEquals(2, rawRanges.size());
+        assertEquals(start, rawRanges.get(0)[0]);
+        assertEquals(new Date(2 * DAY - 1), rawRanges.get(0)[1]);
+        assertEquals(new Date(4 * DAY + HOUR + MINUTE), rawRanges.get(1)[0]);
+        assertEquals(end, rawRanges.get(1)[1]);
+        assertEquals(12, result.get(Metric.TEMPERATURE).count());
+        assertEquals(1.0, result.get(Metric.TEMPERATURE).min());
+        assertEquals(15.0, result.get(Metric.TEMPERATURE).max());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldAnswerEdgesFromCoarserBucketsOnceRetentionExpiredThem() {
+        properties.getRetention().setEnabled(true);
+        properties.getRetention().setRaw(Duration.ofDays(2));
+        properties.getRetention().setMinuteRollups(Duration.ofDays(4));
+        var now = System.currentTimeMillis();
+        // A reading every ten minutes over the last ten days
+        var first = RollupResolution.HOUR.bucketStart(now - 10 * DAY);
+        List<SensorData> readings = new ArrayList<>();
+        for (long timestamp = first; timestamp < now - HOUR; timestamp += 10 * MINUTE) {
+            readings.add(reading(new Date(timestamp), 1.0, null));
+        }
+        rollups.record(readings);
+        var captor = ArgumentCaptor.forClass(Collection.class);
+        verify(rollupRepository).accumulate(captor.capture());
+        // What retention leaves behind: no minute rollups past four days, no raw readings past two
+        List<SensorRollup> stored = new ArrayList<>((Collection<SensorRollup>) captor.getValue());
+        stored.removeIf(rollup -> rollup.getResolution() == RollupResolution.MINUTE && rollup.getBucketStart() < now - 4 * DAY);
+        when(rollupRepository.aggregate(any(), any(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            RollupResolution resolution = invocation.getArgument(0);
+            long from = invocation.getArgument(2);
+            long to = invocation.getArgument(3);
+            var count = stored.stream()
+                    .filter(rollup -> rollup.getResolution() == resolution && rollup.getMetric() == Metric.TEMPERATURE
+                            && rollup.getBucketStart() >= from && rollup.getBucketStart() < to)
+                    .mapToLong(SensorRollup::getCount).sum();
+            return count == 0 ? List.of() : List.of(new MetricAggregate(Metric.TEMPERATURE, count, (double) count, 1.0, 1.0, (double) count));
+        });
+        BiFunction<Date, Date, Map<Metric, MetricSummary>> raw = (from, to) -> {
+            var summary = new MetricSummary();
+            readings.stream()
+                    .filter(reading -> reading.getTimestamp().getTime() >= now - 2 * DAY)
+                    .filter(reading -> !reading.getTimestamp().before(from) && !reading.getTimestamp().after(to))
+                    .forEach(reading -> summary.add(reading.getTemperature()));
+            return Map.of(Metric.TEMPERATURE, summary);
+        };
+
+        // Ragged edges at 7 days, where only hours are left, and at 3 days, where minutes are left
+        var start = now - 7 * DAY - 17 * MINUTE;
+        var end = now - 3 * DAY + 23 * MINUTE;
+        var oldRange = rollups.summarize(Set.of("sensor1"), new Date(start), new Date(end), raw);
+        // From minutes into the raw readings
+        var recent = rollups.summarize(Set.of("sensor1"), new Date(end), new Date(now - 2 * HOUR), raw);
+
+        assertEquals(count(readings, RollupResolution.HOUR.bucketStart(start), RollupResolution.MINUTE.bucketStart(end) + MINUTE),
+                oldRange.get(Metric.TEMPERATURE).count());
+        assertEquals(count(readings, RollupResolution.MINUTE.bucketStart(end), now - 2 * HOUR + 1),
+                recent.get(Metric.TEMPERATURE).count());
+    }
+
+    private static long count(List<SensorData> readings, long from, long to) {
+        return readings.stream().filter(reading -> reading.getTimestamp().getTime() >= from
+                && reading.getTimestamp().getTime() < to).count();
+    }
+
+    private static SensorData reading(Date timestamp, Double temperature, Double humidity) {
+        var data = new SensorData();
+        data.setSensorId("sensor1");
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setTimestamp(timestamp);
+        return data;
+    }
+}
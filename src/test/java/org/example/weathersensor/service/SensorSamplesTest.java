@@ -0,0 +1,91 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorSampleRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Import({SensorSamples.class, SensorProperties.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SensorSamplesTest {
+    @Autowired
+    private SensorSamples samples;
+    @Autowired
+    private SensorSampleRepository repository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldContinueSampleOfDayCreatedByConcurrentWrite() throws Exception {
+        var inserted = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var first = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            samples.record(List.of(reading(1.0)));
+            inserted.countDown();
+            await(commit);
+        }));
+        inserted.await();
+        // Misses the uncommitted day of the first write and waits on them when inserting its own
+        var second = CompletableFuture.runAsync(() -> samples.record(List.of(reading(3.0))));
+        Thread.sleep(200);
+        commit.countDown();
+        first.get();
+        second.get();
+
+        var stored = repository.findSamples(Set.of("sensor1"), Set.of(Metric.TEMPERATURE), 0, Long.MAX_VALUE);
+        assertEquals(1, stored.size());
+        assertEquals(2, stored.get(0).population());
+        var values = Reservoir.values(stored.get(0).sample());
+        Arrays.sort(values);
+        assertArrayEquals(new double[]{1.0, 3.0}, values);
+    }
+
+    @Test
+    void shouldGiveUpOnDaysThatKeepConflicting() {
+        var conflicting = mock(SensorSampleRepository.class);
+        when(conflicting.insertNew(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertThrows(ConcurrencyFailureException.class,
+                () -> new SensorSamples(conflicting, new SensorProperties()).record(List.of(reading(1.0))));
+        verify(conflicting, times(SensorSamples.MAX_ROUNDS)).insertNew(anyList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SensorData reading(double temperature) {
+        var reading = new SensorData();
+        reading.setSensorId("sensor1");
+        reading.setTimestamp(new Date(3_600_000));
+        reading.setTemperature(temperature);
+        return reading;
+    }
+}
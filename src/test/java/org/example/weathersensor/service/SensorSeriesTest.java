@@ -0,0 +1,110 @@
+package org.example.weathersensor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class SensorSeriesTest {
+
+    @Mock
+    private SensorStore store;
+
+    @Mock
+    private SensorSketches sketches;
+
+    private final SensorProperties properties = new SensorProperties();
+
+    private SensorSeries series;
+
+    private final Optional<Date> start = Optional.of(new Date(0));
+    private final Optional<Date> end = Optional.of(new Date(3_600_000));
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        series = new SensorSeries(store, sketches, new StatisticRegistry(List.of()),
+                new SensorMeters(new SimpleMeterRegistry(), properties), properties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldComputeStatisticPerBucketAcrossSensors() {
+        when(store.streamBySensorIdAndTimestampBetween(eq("sensor1"), any(Date.class), any(Date.class)))
+                .thenReturn(Stream.of(reading(60_000, 10.0, 1.0), reading(400_000, 30.0, null)));
+        when(store.streamBySensorIdAndTimestampBetween(eq("sensor2"), any(Date.class), any(Date.class)))
+                .thenReturn(Stream.of(reading(120_000, 20.0, 3.0), reading(1_000_000, 5.0, 7.0)));
+
+        var result = series.getSeries(List.of("sensor1", "sensor2"), List.of("temperature", "windspeed"), "average",
+                "5m", start, end, Optional.empty());
+
+        assertEquals(List.of(new SeriesPoint(new Date(0), 15.0), new SeriesPoint(new Date(300_000), 30.0),
+                new SeriesPoint(new Date(900_000), 5.0)), result.get("temperature"));
+        assertEquals(List.of(new SeriesPoint(new Date(0), 2.0), new SeriesPoint(new Date(900_000), 7.0)),
+                result.get("windspeed"));
+    }
+
+    @Test
+    void shouldDownsampleToRequestedPoints() {
+        when(store.streamBySensorIdAndTimestampBetween(eq("sensor1"), any(Date.class), any(Date.class)))
+                .thenReturn(IntStream.range(0, 3600).mapToObj(i -> reading(i * 1000L, Math.sin(i / 60.0), null)));
+
+        var result = series.getSeries(List.of("sensor1"), List.of("temperature"), "max", "1s", start, end, Optional.of(50));
+
+        assertTrue(result.get("temperature").size() <= 50);
+        assertEquals(new Date(3_599_000), result.get("temperature").get(result.get("temperature").size() - 1).timestamp());
+    }
+
+    @Test
+    void shouldRejectRangeStartingBeforeExpiredReadings() {
+        properties.getRetention().setEnabled(true);
+
+        var error = assertThrows(IllegalArgumentException.class, () -> series.getSeries(List.of("sensor1"),
+                List.of("temperature"), "max", "1h", start, end, Optional.empty()));
+
+        assertTrue(error.getMessage().startsWith("Raw readings are only kept for"));
+    }
+
+    @Test
+    void shouldRejectTooManyBucketsWithoutDownsampling() {
+        assertThrows(IllegalArgumentException.class, () -> series.getSeries(List.of("sensor1"), List.of("temperature"),
+                "average", "10ms", start, end, Optional.empty()));
+    }
+
+    @Test
+    void shouldRejectInvalidInterval() {
+        assertThrows(IllegalArgumentException.class, () -> series.getSeries(List.of("sensor1"), List.of("temperature"),
+                "average", "often", start, end, Optional.empty()));
+    }
+
+    private static SensorData reading(long timestamp, Double temperature, Double windSpeed) {
+        var data = new SensorData();
+        data.setSensorId("sensor");
+        data.setTimestamp(new Date(timestamp));
+        data.setTemperature(temperature);
+        data.setWindSpeed(windSpeed);
+        return data;
+    }
+}
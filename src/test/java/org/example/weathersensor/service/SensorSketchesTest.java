@@ -0,0 +1,91 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.example.weathersensor.data.Metric;
+import org.example.weathersensor.data.RollupResolution;
+import org.example.weathersensor.data.SensorData;
+import org.example.weathersensor.data.SensorSketchRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Import({SensorSketches.class, SensorProperties.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SensorSketchesTest {
+    @Autowired
+    private SensorSketches sketches;
+    @Autowired
+    private SensorSketchRepository repository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldMergeConcurrentWritesCreatingTheSameBucket() throws Exception {
+        var inserted = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var first = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            sketches.record(List.of(reading(1.0)));
+            inserted.countDown();
+            await(commit);
+        }));
+        inserted.await();
+        // Misses the uncommitted buckets of the first write and waits on them when inserting its own
+        var second = CompletableFuture.runAsync(() -> sketches.record(List.of(reading(3.0))));
+        Thread.sleep(200);
+        commit.countDown();
+        first.get();
+        second.get();
+
+        for (RollupResolution resolution : List.of(RollupResolution.HOUR, RollupResolution.DAY)) {
+            var stored = repository.findSketches(resolution, Set.of("sensor1"), Set.of(Metric.TEMPERATURE), 0, Long.MAX_VALUE);
+            assertEquals(1, stored.size());
+            var sketch = QuantileSketch.fromBytes(stored.get(0).sketch());
+            assertEquals(2, sketch.count());
+            assertEquals(4.0, sketch.sum());
+        }
+    }
+
+    @Test
+    void shouldGiveUpOnBucketsThatKeepConflicting() {
+        var conflicting = mock(SensorSketchRepository.class);
+        when(conflicting.insertNew(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertThrows(ConcurrencyFailureException.class,
+                () -> new SensorSketches(conflicting, new SensorProperties()).record(List.of(reading(1.0))));
+        verify(conflicting, times(SensorSketches.MAX_ROUNDS)).insertNew(anyList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SensorData reading(double temperature) {
+        var reading = new SensorData();
+        reading.setSensorId("sensor1");
+        reading.setTimestamp(new Date(3_600_000));
+        reading.setTemperature(temperature);
+        return reading;
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.weathersensor.service;
+
+import org.example.weathersensor.config.SensorProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SensorWarmUpTest {
+
+    @Mock
+    private SensorDataService service;
+    @Mock
+    private SensorDataWriter writer;
+    @Mock
+    private SensorMetricsCache cache;
+    @Mock
+    private TransactionTemplate transactions;
+    @Mock
+    private TransactionStatus status;
+    @Mock
+    private ConfigurableApplicationContext context;
+
+    private final SensorProperties properties = new SensorProperties();
+    private SensorWarmUp warmUp;
+
+    AutoCloseable openMocks;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        openMocks = MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(status);
+            return null;
+        }).when(transactions).executeWithoutResult(any(Consumer.class));
+        warmUp = new SensorWarmUp(service, writer, cache, transactions, properties, context);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openMocks.close();
+    }
+
+    @Test
+    void shouldRollBackWarmUpReadingsAndClearCache() {
+        properties.getStorage().setEngine(SensorProperties.Engine.JPA);
+
+        assertEquals(3, warmUp.warmUp(3, TimeUnit.MINUTES.toNanos(1)));
+
+        verify(writer, times(3)).write(argThat(readings -> readings.size() == 1
+                && SensorWarmUp.SENSOR_ID.equals(readings.get(0).getSensorId())));
+        verify(status, times(3)).setRollbackOnly();
+        verify(service, times(3)).getMetrics(eq(List.of(SensorWarmUp.SENSOR_ID)), anyList(), anyString(), any(), any());
+        verify(cache).clear();
+    }
+
+    @Test
+    void shouldOnlyQueryWhenEngineCannotRollBackWrites() {
+        properties.getStorage().setEngine(SensorProperties.Engine.SEGMENT);
+
+        assertEquals(2, warmUp.warmUp(2, TimeUnit.MINUTES.toNanos(1)));
+
+        verifyNoInteractions(writer, transactions);
+        verify(service, times(2)).getMetrics(anyList(), anyList(), anyString(), any(), any());
+    }
+
+    @Test
+    void shouldStopAtTimeout() {
+        assertEquals(0, warmUp.warmUp(10, 0));
+
+        verifyNoInteractions(service);
+        verify(cache).clear();
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowTest {
+
+    @Test
+    void shouldMatchRecomputedWindow() {
+        var random = new Random(42);
+        var window = new SlidingWindow(1000);
+        List<long[]> kept = new ArrayList<>();
+        long now = 0;
+        for (int i = 0; i < 5000; i++) {
+            now += random.nextInt(50);
+            var value = random.nextInt(200) - 100.0;
+            window.add(now, value);
+            kept.add(new long[]{now, Double.doubleToLongBits(value)});
+            window.advance(now);
+
+            var expected = new MetricSummary();
+            for (long[] reading : kept) {
+                if (reading[0] >= now - 1000) {
+                    expected.add(Double.longBitsToDouble(reading[1]));
+                }
+            }
+            var actual = window.summary();
+            assertEquals(expected.count(), actual.count());
+            assertEquals(expected.min(), actual.min());
+            assertEquals(expected.max(), actual.max());
+            assertEquals(expected.sum(), actual.sum(), 1e-6);
+        }
+    }
+
+    @Test
+    void shouldEmptyWhenEveryReadingLeft() {
+        var window = new SlidingWindow(1000);
+        window.add(0, 0.1);
+        window.add(10, 0.2);
+
+        window.advance(2000);
+
+        var summary = window.summary();
+        assertEquals(0, summary.count());
+        assertEquals(0.0, summary.sum());
+        assertTrue(Double.isNaN(summary.max()));
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.weathersensor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticRegistryTest {
+
+    @Test
+    void shouldResolveStandardStatisticsCaseInsensitively() {
+        var registry = new StatisticRegistry(List.of());
+
+        assertEquals(StandardStatistic.AVERAGE, registry.get("Average"));
+        assertEquals(StandardStatistic.STDDEV, registry.get("stddev"));
+    }
+
+    @Test
+    void shouldRegisterPluggedInStatistics() {
+        var midRange = new Statistic() {
+            @Override
+            public String key() {
+                return "midrange";
+            }
+
+            @Override
+            public double apply(MetricSummary summary) {
+                return (summary.min() + summary.max()) / 2;
+            }
+        };
+        var registry = new StatisticRegistry(List.of(midRange));
+        var summary = new MetricSummary();
+        summary.add(10.0);
+        summary.add(20.0);
+
+        assertEquals(15.0, registry.get("midrange").apply(summary));
+    }
+
+    @Test
+    void shouldRejectUnknownStatistic() {
+        var registry = new StatisticRegistry(List.of());
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> registry.get("mode"));
+
+        assertEquals("Invalid statistic: mode", exception.getMessage());
+    }
+}